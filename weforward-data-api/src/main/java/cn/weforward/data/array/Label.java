@@ -10,6 +10,8 @@
  */
 package cn.weforward.data.array;
 
+import java.util.List;
+
 import cn.weforward.common.Nameable;
 import cn.weforward.common.ResultPage;
 
@@ -58,6 +60,13 @@ public interface Label<E extends LabelElement> extends Nameable {
 	 */
 	E put(E element, int options);
 
+	/**
+	 * 批量置入标签项（同OPTION_NONE的put，不返回旧项）
+	 * 
+	 * @param elements 要置入的标签项
+	 */
+	void putAll(List<E> elements);
+
 	/**
 	 * 移除标签项
 	 * 
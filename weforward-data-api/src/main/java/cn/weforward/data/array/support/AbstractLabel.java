@@ -10,6 +10,8 @@
  */
 package cn.weforward.data.array.support;
 
+import java.util.List;
+
 import cn.weforward.data.array.Label;
 import cn.weforward.data.array.LabelElement;
 
@@ -38,4 +40,11 @@ public abstract class AbstractLabel<E extends LabelElement> implements Label<E>
 		put(element, OPTION_NONE);
 	}
 
+	@Override
+	public void putAll(List<E> elements) {
+		for (E e : elements) {
+			put(e, OPTION_NONE);
+		}
+	}
+
 }
@@ -10,6 +10,9 @@
  */
 package cn.weforward.data.counter;
 
+import java.util.Collection;
+import java.util.Map;
+
 import org.slf4j.LoggerFactory;
 
 import cn.weforward.common.Nameable;
@@ -63,6 +66,14 @@ public interface Counter extends Nameable {
 	 */
 	long get(String id);
 
+	/**
+	 * 批量取得计数项的值，未在缓存的项一次性由存储加载
+	 * 
+	 * @param ids 计数项
+	 * @return 计数项与计数值的映射，没有的项值为0
+	 */
+	Map<String, Long> getAll(Collection<String> ids);
+
 	/**
 	 * 计数加1
 	 * 
@@ -80,6 +91,23 @@ public interface Counter extends Nameable {
 	 */
 	long inc(String id, int step);
 
+	/**
+	 * 指定ID的计数值加step且不需要返回值，热点计数项上的并发累加分散到分条单元格，比{@link #inc(String, int)}争用少
+	 * 
+	 * @param id   计数项
+	 * @param step 增加的值（负数为减小）
+	 */
+	default void add(String id, int step) {
+		inc(id, step);
+	}
+
+	/**
+	 * 批量累加多个计数项
+	 * 
+	 * @param steps 计数项与增加的值（负数为减小）
+	 */
+	void incAll(Map<String, Integer> steps);
+
 	/**
 	 * 计数减1
 	 * 
@@ -10,6 +10,9 @@
  */
 package cn.weforward.data.counter.label;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -84,12 +87,15 @@ public class LabelCounterFactory extends DbCounterFactory implements CounterFact
 	protected void doUpdate(DbCounter counter, DirtyData<CounterItem> data) {
 		LabelCounter labelCounter = (LabelCounter) counter;
 		try {
+			List<CounterItem> items = new ArrayList<CounterItem>();
 			while (data.hasNext()) {
 				CounterItem item = data.next();
 				if (null != item) {
-					labelCounter.m_Label.put(item, Label.OPTION_FORCE);
+					item.snapshot();
+					items.add(item);
 				}
 			}
+			labelCounter.m_Label.putAll(items);
 		} catch (Exception e) {
 			_Logger.error("保存计数项失败 " + data, e);
 		} finally {
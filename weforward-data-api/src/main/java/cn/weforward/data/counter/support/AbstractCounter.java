@@ -10,6 +10,10 @@
  */
 package cn.weforward.data.counter.support;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
 import cn.weforward.data.counter.Counter;
 
 /**
@@ -41,4 +45,20 @@ public abstract class AbstractCounter implements Counter {
 		return inc(id, -1);
 	}
 
+	@Override
+	public Map<String, Long> getAll(Collection<String> ids) {
+		Map<String, Long> result = new HashMap<String, Long>(ids.size());
+		for (String id : ids) {
+			result.put(id, get(id));
+		}
+		return result;
+	}
+
+	@Override
+	public void incAll(Map<String, Integer> steps) {
+		for (Map.Entry<String, Integer> e : steps.entrySet()) {
+			inc(e.getKey(), e.getValue());
+		}
+	}
+
 }
@@ -10,6 +10,10 @@
  */
 package cn.weforward.data.counter.support;
 
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
 import cn.weforward.data.UniteId;
 import cn.weforward.data.array.LabelElement;
 import cn.weforward.protocol.datatype.DtObject;
@@ -28,16 +32,43 @@ import cn.weforward.protocol.support.datatype.SimpleDtObject;
  * 
  * 所以（准）总值=value+hold
  * 
+ * 需要返回值的累加（inc/dec/addAndGet）直接原子累加value，返回值与调用一一对应，所以热点项上的并发累加都争用value；
+ * 不需要返回值的累加（{@link #accumulate(long)}，即计数器的add/incAll）先尝试CAS value，有竞争时改为分散到按线程分条的单元格（类似LongAdder），
+ * 刷写时由{@link #snapshot()}合并回value
+ * 
  * @author liangyi
  * 
  */
 public class CounterItem implements LabelElement {
+	/** 分条单元格之间的间隔（避免伪共享，8个long为64字节） */
+	static final int CELL_PAD = 8;
+	/** 分条数（不小于CPU数的2的幂） */
+	static final int STRIPES;
+	static {
+		int n = Runtime.getRuntime().availableProcessors();
+		int s = 1;
+		while (s < n && s < 64) {
+			s <<= 1;
+		}
+		STRIPES = s;
+	}
+	static final AtomicLongFieldUpdater<CounterItem> _Value = AtomicLongFieldUpdater.newUpdater(CounterItem.class,
+			"value");
+	static final AtomicIntegerFieldUpdater<CounterItem> _Dirty = AtomicIntegerFieldUpdater
+			.newUpdater(CounterItem.class, "m_Dirty");
+
 	/** 统计ID */
 	public final String id;
-	/** 当前（变化中的）计数 */
+	/** 当前（变化中的）计数，不含还在分条单元格中的部分，读取请使用{@link #getValue()} */
 	public volatile long value;
 	/** 同步后（中心服务器）返回的总值减去当前值的结果 */
 	public volatile long hold;
+	/** hold最后由存储同步的时间（毫秒） */
+	public volatile long synced = System.currentTimeMillis();
+	/** 出现竞争后才创建的分条单元格 */
+	private volatile AtomicLongArray m_Cells;
+	/** 是否已标记待刷写（1为已标记） */
+	private volatile int m_Dirty;
 
 	/**
 	 * 构造初始值为0的项
@@ -65,7 +96,7 @@ public class CounterItem implements LabelElement {
 	 * @return 数值
 	 */
 	public long getTotal() {
-		return (value + hold);
+		return (getValue() + hold);
 	}
 
 	/**
@@ -74,7 +105,14 @@ public class CounterItem implements LabelElement {
 	 * @return 值
 	 */
 	public long getValue() {
-		return value;
+		long v = value;
+		AtomicLongArray cells = m_Cells;
+		if (null != cells) {
+			for (int i = 0; i < cells.length(); i += CELL_PAD) {
+				v += cells.get(i);
+			}
+		}
+		return v;
 	}
 
 	/**
@@ -83,7 +121,7 @@ public class CounterItem implements LabelElement {
 	 * @return 累加后的值
 	 */
 	public long inc() {
-		return ((++value) + hold);
+		return addAndGet(1);
 	}
 
 	/**
@@ -92,18 +130,71 @@ public class CounterItem implements LabelElement {
 	 * @return 减少后的值
 	 */
 	public long dec() {
-		return ((--value) + hold);
+		return addAndGet(-1);
 	}
 
 	/**
-	 * 累加指定值（为负数则是减）
+	 * 累加指定值（为负数则是减），由value的原子累加得出返回值，并发的累加各自得到不同的值
 	 * 
 	 * @param add 累加值（负数则为减）
 	 * @return 累加后的值
 	 */
 	public long addAndGet(int add) {
-		value += add;
-		return (value + hold);
+		long v = _Value.addAndGet(this, add);
+		AtomicLongArray cells = m_Cells;
+		if (null != cells) {
+			for (int i = 0; i < cells.length(); i += CELL_PAD) {
+				v += cells.get(i);
+			}
+		}
+		return v + hold;
+	}
+
+	/**
+	 * 无锁累加且不需要返回值，有竞争时分散到分条单元格
+	 * 
+	 * @param x 累加值（负数则为减）
+	 */
+	public void accumulate(long x) {
+		AtomicLongArray cells = m_Cells;
+		if (null == cells) {
+			long v = value;
+			if (_Value.compareAndSet(this, v, v + x)) {
+				return;
+			}
+			// 有竞争，改用分条单元格
+			cells = cells();
+		}
+		int h = (int) Thread.currentThread().getId() * 0x9E3779B9;
+		cells.getAndAdd(((h >>> 16) & (STRIPES - 1)) * CELL_PAD, x);
+	}
+
+	private AtomicLongArray cells() {
+		AtomicLongArray cells = m_Cells;
+		if (null == cells) {
+			synchronized (this) {
+				cells = m_Cells;
+				if (null == cells) {
+					cells = new AtomicLongArray(STRIPES * CELL_PAD);
+					m_Cells = cells;
+				}
+			}
+		}
+		return cells;
+	}
+
+	/* 把分条单元格的值合并到value */
+	private long fold() {
+		AtomicLongArray cells = m_Cells;
+		if (null != cells) {
+			for (int i = 0; i < cells.length(); i += CELL_PAD) {
+				long d = cells.getAndSet(i, 0);
+				if (0 != d) {
+					_Value.getAndAdd(this, d);
+				}
+			}
+		}
+		return value;
 	}
 
 	/**
@@ -111,7 +202,13 @@ public class CounterItem implements LabelElement {
 	 * 
 	 * @param v 绝对值
 	 */
-	public void set(long v) {
+	public synchronized void set(long v) {
+		AtomicLongArray cells = m_Cells;
+		if (null != cells) {
+			for (int i = 0; i < cells.length(); i += CELL_PAD) {
+				cells.set(i, 0);
+			}
+		}
 		value = v - hold;
 	}
 
@@ -122,15 +219,45 @@ public class CounterItem implements LabelElement {
 	 * @return 总值没变化返回false
 	 */
 	public boolean syncTotal(long total) {
-		if (getTotal() == total) {
+		long v = getValue();
+		if (v + hold == total) {
 			return false;
 		}
-		this.hold = total - this.value;
+		this.hold = total - v;
 		return true;
 	}
 
+	/**
+	 * 由存储同步其它节点的值之和（不影响当前节点的value）
+	 * 
+	 * @param hold 其它节点的值之和
+	 */
+	public void syncHold(long hold) {
+		this.hold = hold;
+		this.synced = System.currentTimeMillis();
+	}
+
+	/**
+	 * 标记待刷写
+	 * 
+	 * @return 之前未标记（需要通知缓存）返回true
+	 */
+	public boolean markDirty() {
+		return 0 == m_Dirty && _Dirty.compareAndSet(this, 0, 1);
+	}
+
+	/**
+	 * 刷写时取当前节点的值：先清除待刷写标记再合并分条单元格，之后的累加会重新标记
+	 * 
+	 * @return 当前节点的值
+	 */
+	public synchronized long snapshot() {
+		m_Dirty = 0;
+		return fold();
+	}
+
 	public int getIntValue() {
-		return long2int(this.value);
+		return long2int(getValue());
 	}
 
 	/**
@@ -150,7 +277,7 @@ public class CounterItem implements LabelElement {
 
 	@Override
 	public String toString() {
-		return "{id:" + id + ",v:" + value + ",vv:" + getTotal() + "}";
+		return "{id:" + id + ",v:" + getValue() + ",vv:" + getTotal() + "}";
 	}
 
 	/** 映射器 */
@@ -165,7 +292,7 @@ public class CounterItem implements LabelElement {
 		public DtObject toDtObject(CounterItem object) throws ObjectMappingException {
 			SimpleDtObject dt = new SimpleDtObject();
 			dt.put("id", object.id);
-			dt.put("v", object.value);
+			dt.put("v", object.getValue());
 			return dt;
 		}
 
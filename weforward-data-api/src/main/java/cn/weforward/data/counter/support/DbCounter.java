@@ -10,11 +10,20 @@
  */
 package cn.weforward.data.counter.support;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 import cn.weforward.common.GcCleanable;
 import cn.weforward.common.util.LruCache;
 import cn.weforward.common.util.LruCache.CacheNode;
 import cn.weforward.data.counter.Counter;
-import cn.weforward.data.util.Flushable;
+import cn.weforward.data.util.PartitionFlushable;
 
 /**
  * 暂存内存且持久化于数据库的计数器基类
@@ -26,6 +35,10 @@ public abstract class DbCounter extends AbstractCounter implements Counter, GcCl
 	protected Cache m_Cache;
 	protected LruCache.Loader<String, CounterItem> m_Loader;
 	protected DbCounterFactory m_Factory;
+	/** 近期被读取、需要由后台刷新其它节点值的计数项 */
+	protected final Set<String> m_HotKeys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	/** 后台刷新的最大项数，超出的项在过时后读取时再同步加载 */
+	protected int m_MaxHotKeys = 10000;
 
 	public DbCounter(String name, DbCounterFactory factory) {
 		super(name);
@@ -69,17 +82,208 @@ public abstract class DbCounter extends AbstractCounter implements Counter, GcCl
 
 	@Override
 	public long get(String id) {
-		CounterItem item = m_Cache.getHintLoad(id, m_Loader, m_Factory.getExpire());
-		return (null == item) ? 0 : item.getTotal();
+		int staleness = m_Factory.getStaleness();
+		if (staleness <= 0) {
+			CounterItem item = m_Cache.getHintLoad(id, m_Loader, m_Factory.getExpire());
+			return (null == item) ? 0 : item.getTotal();
+		}
+		CounterItem item = m_Cache.getHintLoad(id, m_Loader);
+		if (null == item) {
+			return 0;
+		}
+		if (item.synced + staleness * 1000L < System.currentTimeMillis()) {
+			// 没有被后台刷新且已过时，同步加载
+			converge(Collections.singletonList(id));
+		}
+		if (m_HotKeys.size() < m_MaxHotKeys) {
+			m_HotKeys.add(id);
+		}
+		return item.getTotal();
+	}
+
+	@Override
+	public Map<String, Long> getAll(Collection<String> ids) {
+		Map<String, CounterItem> items = cached(ids, false);
+		int staleness = m_Factory.getStaleness();
+		int window = (staleness > 0) ? staleness : m_Factory.getExpire();
+		if (window > 0) {
+			// 过时的项一次性同步
+			long deadline = System.currentTimeMillis() - window * 1000L;
+			List<String> stales = null;
+			for (CounterItem item : items.values()) {
+				if (item.synced < deadline) {
+					if (null == stales) {
+						stales = new ArrayList<String>();
+					}
+					stales.add(item.id);
+				}
+			}
+			if (null != stales) {
+				converge(stales);
+			}
+		}
+		Map<String, Long> result = new HashMap<String, Long>(ids.size());
+		for (String id : ids) {
+			CounterItem item = items.get(id);
+			result.put(id, (null == item) ? 0L : item.getTotal());
+			if (staleness > 0 && null != item && m_HotKeys.size() < m_MaxHotKeys) {
+				m_HotKeys.add(id);
+			}
+		}
+		return result;
 	}
 
+	@Override
+	public void incAll(Map<String, Integer> steps) {
+		Map<String, CounterItem> items = cached(steps.keySet(), true);
+		for (Map.Entry<String, Integer> e : steps.entrySet()) {
+			String id = e.getKey();
+			CounterItem item = items.get(id);
+			if (null == item) {
+				// 加载失败的项逐项处理
+				inc(id, e.getValue());
+				continue;
+			}
+			item.accumulate(e.getValue());
+			if (item.markDirty()) {
+				m_Cache.markUpdated(id);
+			}
+		}
+	}
+
+	/**
+	 * 取得已在缓存的项，未在缓存的项一次性由存储加载后放入缓存
+	 * 
+	 * @param ids    计数项id
+	 * @param create 存储中也没有的项是否创建
+	 * @return 计数项id与项的映射，（加载失败或不创建时）没有的项不在其中
+	 */
+	private Map<String, CounterItem> cached(Collection<String> ids, boolean create) {
+		Map<String, CounterItem> result = new HashMap<String, CounterItem>(ids.size());
+		List<String> missing = null;
+		for (String id : ids) {
+			CounterItem item = m_Cache.get(id);
+			if (null != item) {
+				result.put(id, item);
+			} else {
+				if (null == missing) {
+					missing = new ArrayList<String>();
+				}
+				missing.add(id);
+			}
+		}
+		if (null == missing) {
+			return result;
+		}
+		Map<String, CounterItem> loaded = m_Factory.doLoadBatch(this, missing);
+		if (null == loaded) {
+			// 加载失败
+			return result;
+		}
+		for (String id : missing) {
+			CounterItem item = loaded.get(id);
+			if (null == item) {
+				if (!create) {
+					continue;
+				}
+				item = new CounterItem(id);
+			}
+			CounterItem old = m_Cache.putIfAbsent(id, item);
+			result.put(id, (null == old) ? item : old);
+		}
+		return result;
+	}
+
+	/**
+	 * 后台刷新的最大项数
+	 * 
+	 * @param max 项数
+	 */
+	public void setMaxHotKeys(int max) {
+		m_MaxHotKeys = max;
+	}
+
+	/**
+	 * 批量刷新近期被读取的项的其它节点值
+	 */
+	public void converge() {
+		if (m_HotKeys.isEmpty()) {
+			return;
+		}
+		List<String> ids = new ArrayList<String>(m_HotKeys);
+		m_HotKeys.removeAll(ids);
+		int batch = m_Factory.getMaxBatch() > 0 ? m_Factory.getMaxBatch() : ids.size();
+		for (int i = 0; i < ids.size(); i += batch) {
+			converge(ids.subList(i, Math.min(i + batch, ids.size())));
+		}
+	}
+
+	/**
+	 * 刷新指定的（已在缓存的）项的其它节点值
+	 * 
+	 * @param ids 计数项id
+	 */
+	protected void converge(List<String> ids) {
+		Map<String, CounterItem> loaded = m_Factory.doLoadBatch(this, ids);
+		if (null == loaded) {
+			return;
+		}
+		for (String id : ids) {
+			CounterItem item = m_Cache.get(id);
+			if (null == item) {
+				continue;
+			}
+			CounterItem other = loaded.get(id);
+			if (null == other) {
+				// 存储中还没有（其它节点也未写入过）
+				item.synced = System.currentTimeMillis();
+			} else {
+				item.syncHold(other.hold);
+			}
+		}
+	}
+
+	/**
+	 * 返回值与调用一一对应，已在缓存的项直接原子累加其value，热点项上会争用；不需要返回值时应使用{@link #add(String, int)}或{@link #incAll(Map)}
+	 */
 	@Override
 	public long inc(String id, int step) {
+		CounterItem item = m_Cache.get(id);
+		if (null != item) {
+			// 已在缓存的项无锁累加，每个刷写周期只需通知缓存一次
+			long v = item.addAndGet(step);
+			if (!item.markDirty()) {
+				return v;
+			}
+			m_Cache.markUpdated(id);
+			if (item == m_Cache.get(id)) {
+				return v;
+			}
+			// 累加期间项已被淘汰出缓存，改由缓存更新（重新加载）
+		}
 		Adder adder = new Adder(step);
 		m_Cache.update(id, adder);
 		return adder.value;
 	}
 
+	@Override
+	public void add(String id, int step) {
+		CounterItem item = m_Cache.get(id);
+		if (null != item) {
+			// 不需要返回值，有竞争时分散到分条单元格
+			item.accumulate(step);
+			if (!item.markDirty()) {
+				return;
+			}
+			m_Cache.markUpdated(id);
+			if (item == m_Cache.get(id)) {
+				return;
+			}
+			// 累加期间项已被淘汰出缓存，改由缓存更新（重新加载）
+		}
+		m_Cache.update(id, new Adder(step));
+	}
+
 	@Override
 	public long set(String id, long value) {
 		Setter setter = new Setter(value);
@@ -153,6 +357,7 @@ public abstract class DbCounter extends AbstractCounter implements Counter, GcCl
 				}
 			}
 			value = current.addAndGet(step);
+			current.markDirty();
 			return current;
 		}
 
@@ -197,7 +402,7 @@ public abstract class DbCounter extends AbstractCounter implements Counter, GcCl
 	 * @author liangyi
 	 *
 	 */
-	public class Cache extends LruCache<String, CounterItem> implements Flushable {
+	public class Cache extends LruCache<String, CounterItem> implements PartitionFlushable {
 		public Cache(String name) {
 			super(name);
 			setNullTimeout(m_Factory.m_NullTimeout);
@@ -228,6 +433,12 @@ public abstract class DbCounter extends AbstractCounter implements Counter, GcCl
 			}
 		}
 
+		@Override
+		public int getPartitionKey() {
+			// 整个计数器的更新表一起刷写，按计数器名分区
+			return DbCounter.this.getName().hashCode();
+		}
+
 		@Override
 		protected void afterNodeUpdate(Node<String, CounterItem> p) {
 			super.afterNodeUpdate(p);
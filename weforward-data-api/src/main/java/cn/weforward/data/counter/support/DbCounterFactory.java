@@ -10,6 +10,12 @@
  */
 package cn.weforward.data.counter.support;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
 import cn.weforward.common.GcCleanable;
 import cn.weforward.common.sys.GcCleaner;
 import cn.weforward.common.util.LruCache.DirtyData;
@@ -37,6 +43,10 @@ public abstract class DbCounterFactory extends AbstractCounterFactory
 	protected int m_MaxBatch;
 	/** 计数器项重新加载间隔（秒） */
 	protected int m_Expire;
+	/** 其它节点的值最大可容忍的过时（秒），大于0时由后台批量刷新 */
+	protected int m_Staleness;
+	/** 后台刷新的定时器 */
+	protected Timer m_ConvergeTimer;
 
 	public DbCounterFactory(String serverId) {
 		m_ServerId = serverId;
@@ -97,6 +107,52 @@ public abstract class DbCounterFactory extends AbstractCounterFactory
 		return m_Expire;
 	}
 
+	/**
+	 * 开启/关闭后台收敛其它节点的值。开启后读取计数项不再按Expire逐项重新加载，
+	 * 而是由后台每staleness/2秒以一次批量查询刷新近期被读取的项，未被刷新且过时超过staleness的项在读取时再同步加载
+	 * 
+	 * @param seconds
+	 *            最大可容忍的过时（秒），0为关闭
+	 */
+	public synchronized void setStaleness(int seconds) {
+		m_Staleness = seconds;
+		if (null != m_ConvergeTimer) {
+			m_ConvergeTimer.cancel();
+			m_ConvergeTimer = null;
+		}
+		if (seconds <= 0) {
+			return;
+		}
+		long period = Math.max(1, seconds / 2) * 1000L;
+		m_ConvergeTimer = new Timer("counter-converge-" + m_ServerId, true);
+		m_ConvergeTimer.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				converge();
+			}
+		}, period, period);
+	}
+
+	public int getStaleness() {
+		return m_Staleness;
+	}
+
+	/**
+	 * 刷新所有计数器近期被读取的项
+	 */
+	protected void converge() {
+		for (Counter c : this) {
+			if (!(c instanceof DbCounter)) {
+				continue;
+			}
+			try {
+				((DbCounter) c).converge();
+			} catch (Throwable e) {
+				Counter._Logger.warn("刷新计数项失败 " + c.getName(), e);
+			}
+		}
+	}
+
 	@Override
 	public void onGcCleanup(int policy) {
 		for (Counter c : this) {
@@ -118,7 +174,27 @@ public abstract class DbCounterFactory extends AbstractCounterFactory
 	protected abstract CounterItem doLoad(DbCounter counter, String id);
 
 	/**
-	 * 更新计数项到数据库
+	 * 由数据库批量加载计数项，默认逐项调用doLoad，子类应以一次查询实现
+	 * 
+	 * @param counter
+	 *            计数器
+	 * @param ids
+	 *            计数项id
+	 * @return 计数项id与项的映射，没有的项不在其中，加载失败返回null
+	 */
+	protected Map<String, CounterItem> doLoadBatch(DbCounter counter, List<String> ids) {
+		Map<String, CounterItem> result = new HashMap<String, CounterItem>(ids.size());
+		for (String id : ids) {
+			CounterItem item = doLoad(counter, id);
+			if (null != item) {
+				result.put(id, item);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * 更新计数项到数据库，须使用{@link CounterItem#snapshot()}取要写入的值
 	 * 
 	 * @param counter
 	 *            计数器
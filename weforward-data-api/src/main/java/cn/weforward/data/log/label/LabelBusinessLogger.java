@@ -10,7 +10,11 @@
  */
 package cn.weforward.data.log.label;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import cn.weforward.common.ResultPage;
 import cn.weforward.common.util.ResultPageHelper;
@@ -46,7 +50,29 @@ public class LabelBusinessLogger extends AbstractBusinessLogger {
 
 	@Override
 	public void writeLog(BusinessLog log) {
+		m_LabelSet.add(log.getTarget(), toItem(log));
+	}
+
+	@Override
+	protected void writeLogs(List<BusinessLog> logs) {
+		// 按对象（标签）分组批量写入
+		Map<String, List<LogItem>> groups = new LinkedHashMap<String, List<LogItem>>();
+		for (BusinessLog log : logs) {
+			List<LogItem> items = groups.get(log.getTarget());
+			if (null == items) {
+				items = new ArrayList<LogItem>();
+				groups.put(log.getTarget(), items);
+			}
+			items.add(toItem(log));
+		}
+		for (Map.Entry<String, List<LogItem>> e : groups.entrySet()) {
+			m_LabelSet.openLabel(e.getKey()).putAll(e.getValue());
+		}
+	}
+
+	private LogItem toItem(BusinessLog log) {
 		long t = log.getTime().getTime();
+		int ordinal;
 		synchronized (this) {
 			if (t != m_LastTime) {
 				m_LastTime = t;
@@ -54,9 +80,9 @@ public class LabelBusinessLogger extends AbstractBusinessLogger {
 			} else {
 				++m_Ordinal;
 			}
+			ordinal = m_Ordinal;
 		}
-		LogItem e = new LogItem(log, m_ServerId, m_Ordinal);
-		m_LabelSet.add(log.getTarget(), e);
+		return new LogItem(log, m_ServerId, ordinal);
 	}
 
 	@SuppressWarnings("unchecked")
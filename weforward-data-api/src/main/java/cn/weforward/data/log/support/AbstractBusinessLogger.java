@@ -11,6 +11,7 @@
 package cn.weforward.data.log.support;
 
 import java.util.Date;
+import java.util.List;
 
 import cn.weforward.common.ResultPage;
 import cn.weforward.common.crypto.Hex;
@@ -20,6 +21,7 @@ import cn.weforward.data.UniteId;
 import cn.weforward.data.log.BusinessLog;
 import cn.weforward.data.log.BusinessLogger;
 import cn.weforward.data.log.vo.BusinessLogVo;
+import cn.weforward.data.metrics.Metrics;
 
 /**
  * 抽象日志记录器实现 日志的ID为：“对象ID_十六进时间戳_服务器标识”，时间戳由0~7位的补充序数及8~59位（自1970后的）毫秒数
@@ -34,6 +36,8 @@ public abstract class AbstractBusinessLogger implements BusinessLogger {
 	protected long m_LastTime;
 	/** 最后生成的ID补充序数 */
 	protected int m_LastOrdinal;
+	/** 异步分组提交写入器，为null则同步写入 */
+	protected volatile GroupCommitLogWriter m_Writer;
 
 	public AbstractBusinessLogger(String name) {
 		m_Name = name;
@@ -53,7 +57,75 @@ public abstract class AbstractBusinessLogger implements BusinessLogger {
 	public void writeLog(String id, String author, String action, String what, String note) {
 		long t = nextTimestamp();
 		Date time = new Date(t >> 8);
-		writeLog(new BusinessLogVo(genId(id, t), time, id, author, action, what, note));
+		BusinessLogVo log = new BusinessLogVo(genId(id, t), time, id, author, action, what, note);
+		GroupCommitLogWriter writer = m_Writer;
+		if (null == writer) {
+			writeLog(log);
+		} else {
+			writer.write(log);
+		}
+	}
+
+	/**
+	 * 启用异步分组提交写入
+	 * 
+	 * @param capacity  队列容量，&lt;=0则关闭异步写入
+	 * @param batchSize 每批最多项数
+	 * @param maxDelay  最早一项最多等待的时间（毫秒）
+	 * @param overflow  队列满时的溢出策略 {@link GroupCommitLogWriter#OVERFLOW_BLOCK}/
+	 *                  {@link GroupCommitLogWriter#OVERFLOW_DROP}/
+	 *                  {@link GroupCommitLogWriter#OVERFLOW_SPILL}
+	 */
+	public synchronized void setAsync(int capacity, int batchSize, int maxDelay, int overflow) {
+		GroupCommitLogWriter old = m_Writer;
+		if (capacity > 0) {
+			GroupCommitLogWriter writer = new GroupCommitLogWriter(this, capacity);
+			writer.setBatchSize(batchSize);
+			writer.setMaxDelay(maxDelay);
+			writer.setOverflow(overflow);
+			writer.start();
+			m_Writer = writer;
+		} else {
+			m_Writer = null;
+		}
+		if (null != old) {
+			old.destroy();
+		}
+	}
+
+	/**
+	 * 异步分组提交写入器
+	 * 
+	 * @return 未启用返回null
+	 */
+	public GroupCommitLogWriter getWriter() {
+		return m_Writer;
+	}
+
+	/**
+	 * 设置记录指标（只对异步写入）
+	 * 
+	 * @param metrics 指标
+	 */
+	public void setMetrics(Metrics metrics) {
+		GroupCommitLogWriter writer = m_Writer;
+		if (null != writer) {
+			writer.setMetrics(metrics);
+		}
+	}
+
+	/**
+	 * 关闭，若启用了异步写入则等待队列中的日志写完
+	 */
+	public void destroy() {
+		GroupCommitLogWriter writer;
+		synchronized (this) {
+			writer = m_Writer;
+			m_Writer = null;
+		}
+		if (null != writer) {
+			writer.destroy();
+		}
 	}
 
 	static public BusinessLogVo createVoById(String id) {
@@ -123,6 +195,17 @@ public abstract class AbstractBusinessLogger implements BusinessLogger {
 	 */
 	protected abstract void writeLog(BusinessLog log);
 
+	/**
+	 * 批量写日志，默认逐项写入，子类应以一次批量操作实现
+	 * 
+	 * @param logs 日志
+	 */
+	protected void writeLogs(List<BusinessLog> logs) {
+		for (BusinessLog log : logs) {
+			writeLog(log);
+		}
+	}
+
 	@Override
 	public ResultPage<BusinessLog> getLogs(String target) {
 		return searchLogs(target, null, null);
@@ -0,0 +1,325 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.data.log.support;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cn.weforward.common.DestroyableExt;
+import cn.weforward.common.sys.Shutdown;
+import cn.weforward.data.log.BusinessLog;
+import cn.weforward.data.metrics.Metrics;
+
+/**
+ * 日志的异步分组提交写入器
+ * <p>
+ * 日志先放入有界的环形队列，由后台线程在累积到批量项数或最早一项等待超过最大延时后，以一次批量写入（
+ * {@link AbstractBusinessLogger#writeLogs(List)}）提交，队列满时按溢出策略处理
+ * 
+ * @author daibo
+ *
+ */
+public class GroupCommitLogWriter implements Runnable, DestroyableExt {
+	/** 日志记录器 */
+	final static Logger _Logger = LoggerFactory.getLogger(GroupCommitLogWriter.class);
+
+	/** 溢出策略：阻塞等待队列有空位 */
+	public static final int OVERFLOW_BLOCK = 0;
+	/** 溢出策略：丢弃日志（并计数） */
+	public static final int OVERFLOW_DROP = 1;
+	/** 溢出策略：溢出的日志由调用线程直接（同步）写入 */
+	public static final int OVERFLOW_SPILL = 2;
+
+	/** 写入失败的最多重试次数 */
+	static final int MAX_RETRIES = 3;
+
+	/** 所属日志器 */
+	protected final AbstractBusinessLogger m_Logger;
+	/** 待写入的日志队列 */
+	protected final ArrayBlockingQueue<BusinessLog> m_Queue;
+	/** 每批最多项数 */
+	protected int m_BatchSize = 200;
+	/** 最早一项最多等待的时间（毫秒） */
+	protected int m_MaxDelay = 100;
+	/** 溢出策略 OVERFLOW_xxx */
+	protected int m_Overflow = OVERFLOW_SPILL;
+	/** 后台写入线程 */
+	protected Thread m_Thread;
+	/** 已停止接收 */
+	protected volatile boolean m_Stop;
+
+	/** 每批写入的项数 */
+	protected Metrics.Recorder m_Batch = Metrics.Recorder.NONE;
+	/** 写入的耗时（毫秒） */
+	protected Metrics.Recorder m_Latency = Metrics.Recorder.NONE;
+	/** 丢弃的项数 */
+	protected Metrics.Recorder m_Dropped = Metrics.Recorder.NONE;
+	/** 溢出而同步写入的项数 */
+	protected Metrics.Recorder m_Spilled = Metrics.Recorder.NONE;
+	/** 写入失败的次数 */
+	protected Metrics.Recorder m_Errors = Metrics.Recorder.NONE;
+
+	/**
+	 * 构造写入器
+	 * 
+	 * @param logger   所属日志器
+	 * @param capacity 队列容量
+	 */
+	public GroupCommitLogWriter(AbstractBusinessLogger logger, int capacity) {
+		m_Logger = logger;
+		m_Queue = new ArrayBlockingQueue<BusinessLog>(capacity);
+	}
+
+	/**
+	 * 每批最多项数
+	 * 
+	 * @param size 项数
+	 */
+	public void setBatchSize(int size) {
+		m_BatchSize = Math.max(1, size);
+	}
+
+	public int getBatchSize() {
+		return m_BatchSize;
+	}
+
+	/**
+	 * 最早一项最多等待的时间
+	 * 
+	 * @param mills 毫秒
+	 */
+	public void setMaxDelay(int mills) {
+		m_MaxDelay = Math.max(0, mills);
+	}
+
+	public int getMaxDelay() {
+		return m_MaxDelay;
+	}
+
+	/**
+	 * 队列满时的溢出策略
+	 * 
+	 * @param overflow OVERFLOW_xxx
+	 */
+	public void setOverflow(int overflow) {
+		m_Overflow = overflow;
+	}
+
+	public int getOverflow() {
+		return m_Overflow;
+	}
+
+	/**
+	 * 设置记录指标，以log.&lt;name&gt;.为前缀
+	 * 
+	 * @param metrics 指标，为null则不记录
+	 */
+	public void setMetrics(Metrics metrics) {
+		if (null == metrics) {
+			metrics = Metrics.NONE;
+		}
+		String prefix = "log." + m_Logger.getName() + ".";
+		metrics.gauge(prefix + "queue", new Metrics.Gauge() {
+			@Override
+			public long getValue() {
+				return m_Queue.size();
+			}
+		});
+		m_Batch = metrics.histogram(prefix + "batch");
+		m_Latency = metrics.histogram(prefix + "latency");
+		m_Dropped = metrics.counter(prefix + "dropped");
+		m_Spilled = metrics.counter(prefix + "spilled");
+		m_Errors = metrics.counter(prefix + "error");
+	}
+
+	/**
+	 * 待写入的项数
+	 * 
+	 * @return 项数
+	 */
+	public int getPending() {
+		return m_Queue.size();
+	}
+
+	/**
+	 * 启动后台写入线程
+	 */
+	public synchronized void start() {
+		if (null != m_Thread) {
+			return;
+		}
+		m_Stop = false;
+		m_Thread = new Thread(this, "logwriter-" + m_Logger.getName());
+		m_Thread.setDaemon(true);
+		m_Thread.start();
+		Shutdown.register(this);
+	}
+
+	/**
+	 * 放入日志
+	 * 
+	 * @param log 日志
+	 */
+	public void write(BusinessLog log) {
+		if (m_Stop) {
+			// 已停止，直接写入
+			m_Logger.writeLogs(Collections.singletonList(log));
+			return;
+		}
+		if (m_Queue.offer(log)) {
+			return;
+		}
+		switch (m_Overflow) {
+		case OVERFLOW_BLOCK:
+			try {
+				while (!m_Queue.offer(log, m_MaxDelay + 1000, TimeUnit.MILLISECONDS)) {
+					if (m_Stop) {
+						m_Logger.writeLogs(Collections.singletonList(log));
+						return;
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				m_Logger.writeLogs(Collections.singletonList(log));
+			}
+			break;
+		case OVERFLOW_DROP:
+			m_Dropped.record(1);
+			if (_Logger.isDebugEnabled()) {
+				_Logger.debug("队列满，丢弃日志 " + log.getId());
+			}
+			break;
+		default:
+			m_Spilled.record(1);
+			m_Logger.writeLogs(Collections.singletonList(log));
+			break;
+		}
+	}
+
+	@Override
+	public void run() {
+		List<BusinessLog> batch = new ArrayList<BusinessLog>(m_BatchSize);
+		for (;;) {
+			try {
+				BusinessLog first = m_Queue.poll(1000, TimeUnit.MILLISECONDS);
+				if (null == first) {
+					if (m_Stop) {
+						break;
+					}
+					continue;
+				}
+				batch.add(first);
+				// 累积到批量项数或超过最大延时
+				long deadline = System.currentTimeMillis() + m_MaxDelay;
+				while (batch.size() < m_BatchSize) {
+					m_Queue.drainTo(batch, m_BatchSize - batch.size());
+					long remain = deadline - System.currentTimeMillis();
+					if (batch.size() >= m_BatchSize || remain <= 0 || m_Stop) {
+						break;
+					}
+					BusinessLog log = m_Queue.poll(remain, TimeUnit.MILLISECONDS);
+					if (null == log) {
+						break;
+					}
+					batch.add(log);
+				}
+				flush(batch);
+			} catch (InterruptedException e) {
+				if (!m_Stop) {
+					_Logger.warn("忽略中断", e);
+				}
+			} catch (Throwable e) {
+				_Logger.error("写入线程异常", e);
+			} finally {
+				batch.clear();
+			}
+		}
+		// 写完剩余的
+		for (;;) {
+			m_Queue.drainTo(batch, m_BatchSize);
+			if (batch.isEmpty()) {
+				break;
+			}
+			flush(batch);
+			batch.clear();
+		}
+	}
+
+	/* 写入一批日志，失败时重试 */
+	private void flush(List<BusinessLog> batch) {
+		long ts = System.currentTimeMillis();
+		for (int i = 0;; i++) {
+			try {
+				m_Logger.writeLogs(batch);
+				break;
+			} catch (RuntimeException e) {
+				m_Errors.record(1);
+				if (i >= MAX_RETRIES) {
+					_Logger.error("写入失败，丢弃" + batch.size() + "项日志 " + m_Logger.getName(), e);
+					return;
+				}
+				_Logger.warn("写入失败，稍后重试 " + m_Logger.getName(), e);
+				try {
+					Thread.sleep(1000L << i);
+				} catch (InterruptedException ee) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+		m_Batch.record(batch.size());
+		m_Latency.record(System.currentTimeMillis() - ts);
+	}
+
+	@Override
+	public boolean destroySignal() {
+		m_Stop = true;
+		return !m_Queue.isEmpty();
+	}
+
+	/**
+	 * 停止接收并等待写完队列中的日志
+	 */
+	@Override
+	public void destroy() {
+		Thread thread;
+		synchronized (this) {
+			m_Stop = true;
+			thread = m_Thread;
+			m_Thread = null;
+		}
+		if (null != thread) {
+			try {
+				thread.join(30 * 1000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		// 停止期间才放入的由当前线程写入
+		List<BusinessLog> batch = new ArrayList<BusinessLog>();
+		m_Queue.drainTo(batch);
+		if (!batch.isEmpty()) {
+			_Logger.warn(toString() + " 剩余" + batch.size() + "项");
+			flush(batch);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "{n:" + m_Logger.getName() + ",q:" + m_Queue.size() + ",b:" + m_BatchSize + ",d:" + m_MaxDelay
+				+ ",o:" + m_Overflow + "}";
+	}
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.data.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按2的幂分桶的分布统计，记录无锁，百分位为所在桶上限的估值
+ * 
+ * @author liangyi
+ *
+ */
+public class Histogram implements Metrics.Recorder {
+	/** 桶数，第i桶记录[2^(i-1),2^i)的值，第0桶记录不大于0的值 */
+	protected static final int BUCKETS = 64;
+
+	/** 各桶的计数 */
+	protected final LongAdder[] m_Buckets;
+	/** 总数 */
+	protected final LongAdder m_Count = new LongAdder();
+	/** 累计值 */
+	protected final LongAdder m_Sum = new LongAdder();
+	/** 最大值 */
+	protected final AtomicLong m_Max = new AtomicLong();
+
+	public Histogram() {
+		m_Buckets = new LongAdder[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			m_Buckets[i] = new LongAdder();
+		}
+	}
+
+	@Override
+	public void record(long value) {
+		int i = (value <= 0) ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value));
+		m_Buckets[i].increment();
+		m_Count.increment();
+		m_Sum.add(value);
+		long max = m_Max.get();
+		while (value > max && !m_Max.compareAndSet(max, value)) {
+			max = m_Max.get();
+		}
+	}
+
+	public long getCount() {
+		return m_Count.sum();
+	}
+
+	public long getSum() {
+		return m_Sum.sum();
+	}
+
+	public long getMax() {
+		return m_Max.get();
+	}
+
+	public long getMean() {
+		long count = getCount();
+		return (0 == count) ? 0 : getSum() / count;
+	}
+
+	/**
+	 * 百分位估值
+	 * 
+	 * @param percent 百分位（0~100）
+	 * @return 值所在桶的上限（不超过最大值）
+	 */
+	public long getPercentile(double percent) {
+		long[] counts = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = m_Buckets[i].sum();
+			total += counts[i];
+		}
+		if (0 == total) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(total * percent / 100);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank && counts[i] > 0) {
+				long upper = (0 == i) ? 0 : ((i >= 63) ? Long.MAX_VALUE : ((1L << i) - 1));
+				return Math.min(upper, getMax());
+			}
+		}
+		return getMax();
+	}
+
+	@Override
+	public String toString() {
+		return "{c:" + getCount() + ",avg:" + getMean() + ",p99:" + getPercentile(99) + ",max:"
+				+ getMax() + "}";
+	}
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.data.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * 把{@link SimpleMetrics}的快照以只读属性导出到JMX（每个指标一个long属性）
+ * 
+ * @author liangyi
+ *
+ */
+public class JmxMetricsExporter implements DynamicMBean {
+	/** 指标注册表 */
+	protected final SimpleMetrics m_Metrics;
+	/** 注册的名称 */
+	protected ObjectName m_ObjectName;
+
+	public JmxMetricsExporter(SimpleMetrics metrics) {
+		m_Metrics = metrics;
+	}
+
+	/**
+	 * 注册到平台MBeanServer
+	 * 
+	 * @param name 对象名，如cn.weforward.data:type=Metrics
+	 */
+	public void register(String name) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName on = new ObjectName(name);
+			server.registerMBean(this, on);
+			m_ObjectName = on;
+		} catch (JMException e) {
+			throw new IllegalStateException("注册JMX失败：" + name, e);
+		}
+	}
+
+	/**
+	 * 由平台MBeanServer注销
+	 */
+	public void unregister() {
+		ObjectName on = m_ObjectName;
+		if (null == on) {
+			return;
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(on);
+		} catch (JMException e) {
+			throw new IllegalStateException("注销JMX失败：" + on, e);
+		}
+		m_ObjectName = null;
+	}
+
+	@Override
+	public Object getAttribute(String attribute) throws AttributeNotFoundException {
+		Long value = m_Metrics.snapshot().get(attribute);
+		if (null == value) {
+			throw new AttributeNotFoundException(attribute);
+		}
+		return value;
+	}
+
+	@Override
+	public void setAttribute(Attribute attribute) {
+		throw new UnsupportedOperationException("只读");
+	}
+
+	@Override
+	public AttributeList getAttributes(String[] attributes) {
+		Map<String, Long> snapshot = m_Metrics.snapshot();
+		AttributeList list = new AttributeList();
+		for (String name : attributes) {
+			Long value = snapshot.get(name);
+			if (null != value) {
+				list.add(new Attribute(name, value));
+			}
+		}
+		return list;
+	}
+
+	@Override
+	public AttributeList setAttributes(AttributeList attributes) {
+		return new AttributeList();
+	}
+
+	@Override
+	public Object invoke(String actionName, Object[] params, String[] signature) {
+		throw new UnsupportedOperationException(actionName);
+	}
+
+	@Override
+	public MBeanInfo getMBeanInfo() {
+		Map<String, Long> snapshot = m_Metrics.snapshot();
+		MBeanAttributeInfo[] attrs = new MBeanAttributeInfo[snapshot.size()];
+		int i = 0;
+		for (String name : snapshot.keySet()) {
+			attrs[i++] = new MBeanAttributeInfo(name, "long", name, true, false, false);
+		}
+		return new MBeanInfo(getClass().getName(), "weforward-data metrics", attrs, null, null,
+				null);
+	}
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.data.metrics;
+
+/**
+ * 指标记录接口，由刷写器、持久器等记录队列深度、耗时等运行指标
+ * 
+ * @author liangyi
+ *
+ */
+public interface Metrics {
+	/** 不记录任何指标 */
+	Metrics NONE = new Metrics() {
+
+		@Override
+		public Recorder histogram(String name) {
+			return Recorder.NONE;
+		}
+
+		@Override
+		public Recorder counter(String name) {
+			return Recorder.NONE;
+		}
+
+		@Override
+		public void gauge(String name, Gauge gauge) {
+		}
+
+		@Override
+		public String toString() {
+			return "none";
+		}
+	};
+
+	/**
+	 * 取得（没有则创建）分布统计的记录器，如耗时、批量大小
+	 * 
+	 * @param name 指标名
+	 * @return 记录器
+	 */
+	Recorder histogram(String name);
+
+	/**
+	 * 取得（没有则创建）累计计数的记录器，如出错次数
+	 * 
+	 * @param name 指标名
+	 * @return 记录器，每次记录的值累加
+	 */
+	Recorder counter(String name);
+
+	/**
+	 * 注册即时值指标，如队列深度
+	 * 
+	 * @param name  指标名
+	 * @param gauge 取值器
+	 */
+	void gauge(String name, Gauge gauge);
+
+	/**
+	 * 指标记录器
+	 * 
+	 * @author liangyi
+	 *
+	 */
+	interface Recorder {
+		/** 不记录 */
+		Recorder NONE = new Recorder() {
+			@Override
+			public void record(long value) {
+			}
+		};
+
+		/**
+		 * 记录值
+		 * 
+		 * @param value 值
+		 */
+		void record(long value);
+	}
+
+	/**
+	 * 即时值指标
+	 * 
+	 * @author liangyi
+	 *
+	 */
+	interface Gauge {
+		/**
+		 * 取得当前值
+		 * 
+		 * @return 值
+		 */
+		long getValue();
+	}
+}
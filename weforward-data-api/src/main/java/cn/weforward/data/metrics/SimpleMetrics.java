@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.data.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 纯Java实现的指标注册表，可由{@link #snapshot()}取得所有指标的当前值或用{@link JmxMetricsExporter}导出到JMX
+ * 
+ * @author liangyi
+ *
+ */
+public class SimpleMetrics implements Metrics {
+	/** 分布统计 */
+	protected final ConcurrentMap<String, Histogram> m_Histograms = new ConcurrentHashMap<>();
+	/** 计数 */
+	protected final ConcurrentMap<String, CounterRecorder> m_Counters = new ConcurrentHashMap<>();
+	/** 即时值 */
+	protected final ConcurrentMap<String, Gauge> m_Gauges = new ConcurrentHashMap<>();
+
+	@Override
+	public Histogram histogram(String name) {
+		Histogram h = m_Histograms.get(name);
+		if (null == h) {
+			h = new Histogram();
+			Histogram old = m_Histograms.putIfAbsent(name, h);
+			if (null != old) {
+				h = old;
+			}
+		}
+		return h;
+	}
+
+	@Override
+	public Recorder counter(String name) {
+		CounterRecorder c = m_Counters.get(name);
+		if (null == c) {
+			c = new CounterRecorder();
+			CounterRecorder old = m_Counters.putIfAbsent(name, c);
+			if (null != old) {
+				c = old;
+			}
+		}
+		return c;
+	}
+
+	@Override
+	public void gauge(String name, Gauge gauge) {
+		if (null == gauge) {
+			m_Gauges.remove(name);
+		} else {
+			m_Gauges.put(name, gauge);
+		}
+	}
+
+	/**
+	 * 所有指标的当前值，分布统计展开为name.count/name.mean/name.p50/name.p95/name.p99/name.max
+	 * 
+	 * @return 按指标名排序的表
+	 */
+	public Map<String, Long> snapshot() {
+		Map<String, Long> map = new TreeMap<>();
+		for (Map.Entry<String, CounterRecorder> e : m_Counters.entrySet()) {
+			map.put(e.getKey(), e.getValue().getValue());
+		}
+		for (Map.Entry<String, Gauge> e : m_Gauges.entrySet()) {
+			map.put(e.getKey(), e.getValue().getValue());
+		}
+		for (Map.Entry<String, Histogram> e : m_Histograms.entrySet()) {
+			String name = e.getKey();
+			Histogram h = e.getValue();
+			map.put(name + ".count", h.getCount());
+			map.put(name + ".mean", h.getMean());
+			map.put(name + ".p50", h.getPercentile(50));
+			map.put(name + ".p95", h.getPercentile(95));
+			map.put(name + ".p99", h.getPercentile(99));
+			map.put(name + ".max", h.getMax());
+		}
+		return map;
+	}
+
+	@Override
+	public String toString() {
+		return snapshot().toString();
+	}
+
+	/**
+	 * 累计计数
+	 * 
+	 * @author liangyi
+	 *
+	 */
+	static class CounterRecorder implements Recorder {
+		final LongAdder m_Value = new LongAdder();
+
+		@Override
+		public void record(long value) {
+			m_Value.add(value);
+		}
+
+		long getValue() {
+			return m_Value.sum();
+		}
+	}
+}
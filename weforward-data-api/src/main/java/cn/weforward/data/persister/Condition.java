@@ -43,6 +43,14 @@ public interface Condition {
 	short TYPE_LTE = 5;
 	/** 大于等于 &gt;= */
 	short TYPE_GTE = 6;
+	/** 在列表中 in，值为列表 */
+	short TYPE_IN = 7;
+	/** 不在列表中 not in，值为列表 */
+	short TYPE_NIN = 8;
+	/** 以指定字串开头，值为前缀 */
+	short TYPE_PREFIX = 9;
+	/** 属性是否存在（不为null），值为Boolean */
+	short TYPE_EXISTS = 10;
 
 	/** &amp; 与条件 (组合条件) */
 	short TYPE_AND = 1000;
@@ -24,6 +24,8 @@ public class ObjectWithVersion<E> {
 	protected String m_Version;
 	/** 控制实例标识 */
 	protected String m_DriveIt;
+	/** 存储中的原始数据（变化跟踪时作为快照） */
+	protected Object m_Snapshot;
 
 	public ObjectWithVersion(E obj, String ver, String driveIt) {
 		m_Object = obj;
@@ -58,4 +60,17 @@ public class ObjectWithVersion<E> {
 		return m_DriveIt;
 	}
 
+	/**
+	 * 存储中的原始数据，由持久器在加载时设置，变化跟踪时作为持久化快照
+	 * 
+	 * @return 快照，没有则为null
+	 */
+	public Object getSnapshot() {
+		return m_Snapshot;
+	}
+
+	public void setSnapshot(Object snapshot) {
+		m_Snapshot = snapshot;
+	}
+
 }
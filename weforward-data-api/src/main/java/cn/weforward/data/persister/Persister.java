@@ -10,15 +10,21 @@
  */
 package cn.weforward.data.persister;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.List;
 
 import cn.weforward.common.Nameable;
 import cn.weforward.common.ResultPage;
+import cn.weforward.common.util.TransResultPage;
 import cn.weforward.data.UniteId;
 import cn.weforward.data.exception.IdDuplicateException;
 import cn.weforward.data.persister.ext.ConditionUtil;
 import cn.weforward.data.persister.ext.OrderByUtil;
+import cn.weforward.protocol.datatype.DtObject;
+import cn.weforward.protocol.support.datatype.SimpleDtObject;
 
 /**
  * 对象持久器接口
@@ -51,6 +57,23 @@ public interface Persister<E extends Persistent> extends Nameable {
 	 */
 	E get(String id);
 
+	/**
+	 * 由ID批量取得持久对象，未在缓存的对象一次性由存储加载
+	 * 
+	 * <p>
+	 * 默认逐个调用{@link #get(String)}，持久器应覆盖为批量加载
+	 * 
+	 * @param ids 持久对象ID
+	 * @return 与ids顺序一致的持久对象列表，不存在的项为null
+	 */
+	default List<E> getAll(Collection<String> ids) {
+		List<E> result = new ArrayList<E>(ids.size());
+		for (String id : ids) {
+			result.add(get(id));
+		}
+		return result;
+	}
+
 	/**
 	 * 由持久器中删除指定ID的持久对象
 	 * 
@@ -301,6 +324,33 @@ public interface Persister<E extends Persistent> extends Nameable {
 	 */
 	ResultPage<String> searchOfId(Condition condition, OrderBy orderBy);
 
+	/**
+	 * 条件查询，只返回指定属性的视图
+	 * <p>
+	 * 直接由存储按属性投影取得数据，不加载持久对象，也不经过对象缓存，适合只展示少量属性的列表
+	 * <p>
+	 * 默认由{@link #searchOfId(Condition, OrderBy)}取得结果，视图只含对象ID，可按属性投影的持久器应覆盖
+	 * 
+	 * @param condition 条件 {@link ConditionUtil}
+	 * @param orderBy   排序 {@link OrderByUtil}
+	 * @param fields    要返回的属性名，嵌套属性使用“.”分隔，结果中总包含对象ID（_id）
+	 * @return 数据对象结果页
+	 */
+	default ResultPage<DtObject> searchView(Condition condition, OrderBy orderBy, String... fields) {
+		return new TransResultPage<DtObject, String>(searchOfId(condition, orderBy)) {
+
+			@Override
+			protected DtObject trans(String src) {
+				if (null == src) {
+					return null;
+				}
+				SimpleDtObject dt = new SimpleDtObject();
+				dt.put(Condition.ID, src);
+				return dt;
+			}
+		};
+	}
+
 	/**
 	 * 添加监听
 	 * 
@@ -10,6 +10,10 @@
  */
 package cn.weforward.data.persister.ext;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
@@ -393,6 +397,89 @@ public class ConditionUtil {
 		return new SingleCondition(name, value, Condition.TYPE_GTE);
 	}
 
+	/**
+	 * 在列表中 in
+	 * 
+	 * @param name   名称
+	 * @param values 值列表
+	 * @return 条件
+	 */
+	public static Condition in(String name, Collection<?> values) {
+		return new SingleCondition(name, toList(values), Condition.TYPE_IN);
+	}
+
+	/**
+	 * 在列表中 in
+	 * 
+	 * @param name   名称
+	 * @param values 值列表
+	 * @return 条件
+	 */
+	public static Condition in(String name, String... values) {
+		return in(name, Arrays.asList(values));
+	}
+
+	/**
+	 * 不在列表中 not in
+	 * 
+	 * @param name   名称
+	 * @param values 值列表
+	 * @return 条件
+	 */
+	public static Condition nin(String name, Collection<?> values) {
+		return new SingleCondition(name, toList(values), Condition.TYPE_NIN);
+	}
+
+	/**
+	 * 不在列表中 not in
+	 * 
+	 * @param name   名称
+	 * @param values 值列表
+	 * @return 条件
+	 */
+	public static Condition nin(String name, String... values) {
+		return nin(name, Arrays.asList(values));
+	}
+
+	/**
+	 * 以指定字串开头
+	 * 
+	 * @param name   名称
+	 * @param prefix 前缀
+	 * @return 条件
+	 */
+	public static Condition prefix(String name, String prefix) {
+		return new SingleCondition(name, null == prefix ? "" : prefix, Condition.TYPE_PREFIX);
+	}
+
+	/**
+	 * 属性存在（不为null）
+	 * 
+	 * @param name 名称
+	 * @return 条件
+	 */
+	public static Condition exists(String name) {
+		return exists(name, true);
+	}
+
+	/**
+	 * 属性是否存在（不为null）
+	 * 
+	 * @param name   名称
+	 * @param exists true/存在，false/不存在
+	 * @return 条件
+	 */
+	public static Condition exists(String name, boolean exists) {
+		return new SingleCondition(name, exists, Condition.TYPE_EXISTS);
+	}
+
+	private static List<Object> toList(Collection<?> values) {
+		if (null == values || values.isEmpty()) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(new ArrayList<Object>(values));
+	}
+
 	/**
 	 * 区间，name&gt;=from and id&lt;=to
 	 * 
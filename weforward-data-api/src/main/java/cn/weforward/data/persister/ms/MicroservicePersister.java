@@ -165,4 +165,9 @@ public class MicroservicePersister<E extends Persistent> extends AbstractPersist
 		return ResultPageHelper.empty();
 	}
 
+	@Override
+	public ResultPage<DtObject> searchView(Condition condition, OrderBy orderBy, String... fields) {
+		return ResultPageHelper.empty();
+	}
+
 }
@@ -14,8 +14,8 @@ import java.io.IOException;
 
 import cn.weforward.data.persister.ObjectWithVersion;
 import cn.weforward.data.persister.OfflineSupplier;
-import cn.weforward.data.util.Flushable;
 import cn.weforward.data.util.Flusher;
+import cn.weforward.data.util.PartitionFlushable;
 
 /**
  * 抽象离线缓存实现
@@ -89,7 +89,7 @@ public abstract class AbstractOfflineSupplier<E> implements OfflineSupplier<E> {
 	 * @author daibo
 	 *
 	 */
-	class FlushableImpl implements Flushable {
+	class FlushableImpl implements PartitionFlushable {
 		private String id;
 		private E obj;
 
@@ -103,5 +103,11 @@ public abstract class AbstractOfflineSupplier<E> implements OfflineSupplier<E> {
 			doUpdate(id, obj);
 		}
 
+		@Override
+		public int getPartitionKey() {
+			// 同一对象的多次更新落在同一分区，保持顺序
+			return 31 * System.identityHashCode(AbstractOfflineSupplier.this) + id.hashCode();
+		}
+
 	}
 }
@@ -11,10 +11,15 @@
 package cn.weforward.data.persister.support;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,10 +30,9 @@ import cn.weforward.common.sys.IdGenerator;
 import cn.weforward.common.util.FreezedList;
 import cn.weforward.common.util.LruCache;
 import cn.weforward.common.util.StringUtil;
-import cn.weforward.common.util.TransIterator;
-import cn.weforward.common.util.TransResultPage;
 import cn.weforward.data.UniteId;
 import cn.weforward.data.exception.IdDuplicateException;
+import cn.weforward.data.metrics.Metrics;
 import cn.weforward.data.persister.ChangeListener;
 import cn.weforward.data.persister.Condition;
 import cn.weforward.data.persister.ObjectWithVersion;
@@ -36,8 +40,14 @@ import cn.weforward.data.persister.OrderBy;
 import cn.weforward.data.persister.Persistent;
 import cn.weforward.data.persister.PersistentListener;
 import cn.weforward.data.persister.Persister;
+import cn.weforward.data.util.BatchFlushable;
 import cn.weforward.data.util.DelayFlusher;
+import cn.weforward.data.util.Flushable;
 import cn.weforward.data.util.Flusher;
+import cn.weforward.protocol.datatype.DtBase;
+import cn.weforward.protocol.datatype.DtObject;
+import cn.weforward.protocol.ext.ObjectMapper;
+import cn.weforward.protocol.support.datatype.SimpleDtObject;
 
 /**
  * 支持缓存的抽象持久器
@@ -50,45 +60,94 @@ import cn.weforward.data.util.Flusher;
 public abstract class AbstractPersister<E extends Persistent> implements Persister<E> {
 	/** 日志记录器 */
 	protected final static Logger _Logger = LoggerFactory.getLogger(AbstractPersister.class);
+	/** 视图中对象ID的属性名 */
+	public final static String VIEW_ID = "_id";
 	/** 持久器名 */
 	protected String m_Name;
-	/** 缓存 */
-	protected Cache m_Cache;
+	/** 分段的缓存，按ID的访问都经由它 */
+	final SegmentedCache<E> m_Segmented;
 	/** 是否开始重载接口 */
 	protected boolean m_ReloadEnabled = false;
 	/** 是否只处理当前服务器持久类 */
 	protected boolean m_ForOwnerEnabled = true;
 	/** 检查新ID有重复时的重试次数（不大于0表示不检查） */
 	protected int m_VerifyNewIdTrys;
+	/** 批量加载时每次由存储加载的最大数量 */
+	protected int m_BatchLoadSize = 500;
+	/** 是否在刷写周期内合并批量保存 */
+	protected boolean m_BatchFlushEnabled;
+	/** 是否跟踪变化（只写入与最后持久化快照相比有变化的部分） */
+	protected boolean m_ChangeTracking;
 	/** 刷写器 */
 	protected Flusher m_Flusher;
 	/** id生成器 */
 	protected IdGenerator.Tick m_IdGenerator;
 	/** 监听器 */
 	protected List<ChangeListener<E>> m_Listeners = Collections.emptyList();
+	/** innerLoad耗时（微秒） */
+	protected Metrics.Recorder m_LoadLatency = Metrics.Recorder.NONE;
+	/** innerLoadBatch耗时（微秒） */
+	protected Metrics.Recorder m_LoadBatchLatency = Metrics.Recorder.NONE;
+	/** innerSave耗时（微秒） */
+	protected Metrics.Recorder m_SaveLatency = Metrics.Recorder.NONE;
+	/** innerSaveBatch耗时（微秒） */
+	protected Metrics.Recorder m_SaveBatchLatency = Metrics.Recorder.NONE;
 	/** 加载器 */
 	LruCache.Loader<String, E> m_Loader = new LruCache.Loader<String, E>() {
 		@Override
 		public E load(String key, LruCache.CacheNode<String, E> node) {
+			PersistentCache<E>.EvictedRef ref = m_Segmented.reclaim(key);
+			E evicted = (null == ref) ? null : ref.get();
+			if (null != evicted) {
+				// 淘汰后仍被引用的对象，取回同一实例以保持单例
+				((Cache.PersistNode) node).setVersion(ref.getVersion());
+				if (m_ChangeTracking) {
+					((Cache.PersistNode) node).setSnapshot(ref.getSnapshot());
+				}
+				return evicted;
+			}
+			long t = System.nanoTime();
 			ObjectWithVersion<E> ov = innerLoad(key);
+			m_LoadLatency.record((System.nanoTime() - t) / 1000);
 			if (null == ov) {
 				return null;
 			}
-			if (ov.getObject() instanceof PersistentListener) {
-				// 调用持久对象反射后事件
-				PersistentListener listener = (PersistentListener) ov.getObject();
-				listener.onAfterReflect(AbstractPersister.this,
-						UniteId.valueOf(key, getName(), null), ov.getVersion(), ov.getDriveIt());
-			}
+			onAfterLoad(key, ov);
 			((Cache.PersistNode) node).setVersion(ov.getVersion());
+			if (m_ChangeTracking) {
+				((Cache.PersistNode) node).setSnapshot(ov.getSnapshot());
+			}
 			return ov.getObject();
 		}
 	};
 
 	protected AbstractPersister(String name) {
+		this(name, 1);
+	}
+
+	/**
+	 * 构造
+	 * 
+	 * @param name
+	 *            持久器名
+	 * @param segments
+	 *            缓存的分段数
+	 */
+	protected AbstractPersister(String name, int segments) {
 		m_Name = name;
-		m_Cache = new Cache(name);
-		GcCleaner.register(m_Cache);
+		m_Segmented = new SegmentedCache<E>(name, segments) {
+
+			@Override
+			protected PersistentCache<E> newSegment(String segmentName, int index) {
+				return new Cache(segmentName);
+			}
+
+			@Override
+			protected EvictionPolicy newEvictionPolicy(long maximum) {
+				return AbstractPersister.this.newEvictionPolicy(maximum);
+			}
+		};
+		GcCleaner.register(m_Segmented);
 	}
 
 	@Override
@@ -115,6 +174,49 @@ public abstract class AbstractPersister<E extends Persistent> implements Persist
 		m_VerifyNewIdTrys = verifyNewIdTrys;
 	}
 
+	/**
+	 * 批量加载时每次由存储加载的最大数量
+	 * 
+	 * @param size
+	 *            数量，不大于0时不分批
+	 */
+	public void setBatchLoadSize(int size) {
+		m_BatchLoadSize = size;
+	}
+
+	public int getBatchLoadSize() {
+		return m_BatchLoadSize;
+	}
+
+	/**
+	 * 是否在刷写周期内把待刷写的对象合并批量保存
+	 * 
+	 * @param enabled
+	 *            true/批量，false/逐个保存
+	 */
+	public void setBatchFlushEnabled(boolean enabled) {
+		m_BatchFlushEnabled = enabled;
+	}
+
+	public boolean isBatchFlushEnabled() {
+		return m_BatchFlushEnabled;
+	}
+
+	/**
+	 * 是否跟踪变化，启用后缓存节点保留最后持久化时存储中的数据作为快照，保存时只写入有变化的部分（版本号及最后修改时间照常更新），
+	 * 代价是每个缓存对象多占用一份快照的内存
+	 * 
+	 * @param enabled
+	 *            true/跟踪变化，false/每次写入整个对象
+	 */
+	public void setChangeTracking(boolean enabled) {
+		m_ChangeTracking = enabled;
+	}
+
+	public boolean isChangeTracking() {
+		return m_ChangeTracking;
+	}
+
 	/**
 	 * 是否控制对象单例
 	 * 
@@ -122,7 +224,87 @@ public abstract class AbstractPersister<E extends Persistent> implements Persist
 	 *            true/单例，false/非单例
 	 */
 	public void setReachable(boolean enabled) {
-		getCache().setReachable(enabled);
+		m_Segmented.setReachable(enabled);
+	}
+
+	/**
+	 * 设置记录指标，指标名以persister.&lt;name&gt;.为前缀：load/loadBatch/save/saveBatch分别为innerLoad、innerLoadBatch、innerSave、innerSaveBatch的耗时（微秒）
+	 * 
+	 * @param metrics
+	 *            指标，为null则不记录
+	 */
+	public void setMetrics(Metrics metrics) {
+		if (null == metrics) {
+			metrics = Metrics.NONE;
+		}
+		String prefix = "persister." + getName() + ".";
+		m_LoadLatency = metrics.histogram(prefix + "load");
+		m_LoadBatchLatency = metrics.histogram(prefix + "loadBatch");
+		m_SaveLatency = metrics.histogram(prefix + "save");
+		m_SaveBatchLatency = metrics.histogram(prefix + "saveBatch");
+	}
+
+	/**
+	 * 缓存的分段数（默认不分段），需在持久器使用前设置
+	 * 
+	 * @param segments
+	 *            分段数
+	 */
+	public void setCacheSegments(int segments) {
+		m_Segmented.setSegments(segments);
+	}
+
+	/**
+	 * 缓存项的空闲超时值
+	 * 
+	 * @param seconds
+	 *            超时值（秒）
+	 */
+	public void setCacheTimeout(int seconds) {
+		m_Segmented.setTimeout(seconds);
+	}
+
+	/**
+	 * 缓存空值（对象不存在）的超时值
+	 * 
+	 * @param seconds
+	 *            超时值（秒）
+	 */
+	public void setCacheNullTimeout(int seconds) {
+		m_Segmented.setNullTimeout(seconds);
+	}
+
+	/**
+	 * 缓存的最大项数，超出时按淘汰策略淘汰（待刷写的项不会被淘汰）
+	 * 
+	 * @param maximum
+	 *            最大项数，不大于0表示不控制（只按空闲超时清除）
+	 */
+	public void setCacheMaximum(long maximum) {
+		m_Segmented.setMaximum(maximum, null);
+	}
+
+	/**
+	 * 按估算的权重（如字节数）控制缓存容量
+	 * 
+	 * @param maximum
+	 *            最大总权重，不大于0表示不控制
+	 * @param weigher
+	 *            缓存项权重计算器
+	 */
+	public void setCacheMaximum(long maximum, EvictionPolicy.Weigher<? super E> weigher) {
+		m_Segmented.setMaximum(maximum, weigher);
+	}
+
+	/**
+	 * 创建缓存段的淘汰策略，子类可覆盖以替换默认的{@link TinyLfuEvictionPolicy}
+	 * 
+	 * @param maximum
+	 *            段的最大总权重
+	 * @return 淘汰策略
+	 */
+	protected EvictionPolicy newEvictionPolicy(long maximum) {
+		return new TinyLfuEvictionPolicy(maximum);
 	}
 
 	public boolean isReloadEnabled() {
@@ -211,61 +393,31 @@ public abstract class AbstractPersister<E extends Persistent> implements Persist
 	@Override
 	public ResultPage<E> startsWith(String prefix) {
 		ResultPage<String> ids = startsWithOfId(prefix);
-		return new TransResultPage<E, String>(ids) {
-
-			@Override
-			protected E trans(String src) {
-				return get(src);
-			}
-		};
+		return new PrefetchResultPage<E>(this, ids);
 	}
 
 	@Override
 	public ResultPage<E> search(Date begin, Date end) {
 		ResultPage<String> ids = searchOfId(begin, end);
-		return new TransResultPage<E, String>(ids) {
-
-			@Override
-			protected E trans(String src) {
-				return get(src);
-			}
-		};
+		return new PrefetchResultPage<E>(this, ids);
 	}
 
 	@Override
 	public ResultPage<E> searchRange(String from, String to) {
 		ResultPage<String> ids = searchRangeOfId(from, to);
-		return new TransResultPage<E, String>(ids) {
-
-			@Override
-			protected E trans(String src) {
-				return get(src);
-			}
-		};
+		return new PrefetchResultPage<E>(this, ids);
 	}
 
 	@Override
 	public Iterator<E> search(String serverId, Date begin, Date end) {
 		Iterator<String> ids = searchOfId(serverId, begin, end);
-		return new TransIterator<E, String>(ids) {
-
-			@Override
-			protected E trans(String src) {
-				return get(src);
-			}
-		};
+		return new PrefetchIterator<E>(this, ids, getBatchLoadSize());
 	}
 
 	@Override
 	public Iterator<E> searchRange(String serverId, String from, String to) {
 		Iterator<String> ids = searchRangeOfId(serverId, from, to);
-		return new TransIterator<E, String>(ids) {
-
-			@Override
-			protected E trans(String src) {
-				return get(src);
-			}
-		};
+		return new PrefetchIterator<E>(this, ids, getBatchLoadSize());
 	}
 
 	/**
@@ -277,6 +429,41 @@ public abstract class AbstractPersister<E extends Persistent> implements Persist
 	 */
 	abstract protected ObjectWithVersion<E> innerLoad(String id);
 
+	/**
+	 * 批量装入对象，默认逐个调用{@link #innerLoad(String)}，子类可覆盖为存储的批量查询
+	 * 
+	 * @param ids
+	 *            对象ID
+	 * @return 以ID为键的对象项及其版本号，没有的ID不在其中
+	 */
+	protected Map<String, ObjectWithVersion<E>> innerLoadBatch(List<String> ids) {
+		Map<String, ObjectWithVersion<E>> result = new HashMap<>(ids.size());
+		for (String id : ids) {
+			ObjectWithVersion<E> ov = innerLoad(id);
+			if (null != ov) {
+				result.put(id, ov);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * 对象由存储加载后的处理
+	 * 
+	 * @param id
+	 *            对象ID
+	 * @param ov
+	 *            对象项及其版本号
+	 */
+	private void onAfterLoad(String id, ObjectWithVersion<E> ov) {
+		if (ov.getObject() instanceof PersistentListener) {
+			// 调用持久对象反射后事件
+			PersistentListener listener = (PersistentListener) ov.getObject();
+			listener.onAfterReflect(AbstractPersister.this, UniteId.valueOf(id, getName(), null),
+					ov.getVersion(), ov.getDriveIt());
+		}
+	}
+
 	/**
 	 * 保存对象状态
 	 * 
@@ -317,6 +504,47 @@ public abstract class AbstractPersister<E extends Persistent> implements Persist
 		return innerSave(object);
 	}
 
+	/**
+	 * 保存对象状态（变化跟踪时调用）
+	 * 
+	 * @param object
+	 *            对象
+	 * @param oldVersion
+	 *            持久化前的版本号
+	 * @param holder
+	 *            快照持有者，其快照为null时需写入整个对象，保存成功后应更新其快照
+	 * @return 对象保存后版本号
+	 */
+	protected String innerSave(E object, String oldVersion, PersistentCache.SnapshotHolder holder) {
+		return innerSave(object, oldVersion);
+	}
+
+	/**
+	 * 批量保存对象状态，默认逐个调用{@link #innerSave(Persistent, String)}，子类可覆盖为存储的批量写入
+	 * 
+	 * @param objects
+	 *            对象
+	 * @param oldVersions
+	 *            各对象持久化前的版本号
+	 * @return 与objects顺序一致的保存后版本号，保存失败的项为null
+	 */
+	protected String[] innerSaveBatch(List<E> objects, List<String> oldVersions) {
+		String[] versions = new String[objects.size()];
+		for (int i = 0; i < versions.length; i++) {
+			E object = objects.get(i);
+			try {
+				String version;
+				synchronized (object) {
+					version = innerSave(object, oldVersions.get(i));
+				}
+				versions[i] = (null == version) ? "" : version;
+			} catch (RuntimeException e) {
+				_Logger.error("保存失败：" + object, e);
+			}
+		}
+		return versions;
+	}
+
 	@Override
 	public boolean isOwner(E obj) {
 		if (null == obj) {
@@ -361,7 +589,7 @@ public abstract class AbstractPersister<E extends Persistent> implements Persist
 	 * @return 对象
 	 */
 	public E getOfCache(String id) {
-		return m_Cache.get(UniteId.getOrdinal(id));
+		return m_Segmented.get(UniteId.getOrdinal(id));
 	}
 
 	public boolean hold(E object) {
@@ -375,7 +603,7 @@ public abstract class AbstractPersister<E extends Persistent> implements Persist
 			// 不是持久器支持的对象类型
 			_Logger.warn(unid + " isn't a " + getName());
 		}
-		return (m_Cache.putIfAbsent(unid.getOrdinal(), object) == object);
+		return (m_Segmented.putIfAbsent(unid.getOrdinal(), object) == object);
 	}
 
 	/**
@@ -396,7 +624,7 @@ public abstract class AbstractPersister<E extends Persistent> implements Persist
 			// 不是持久器支持的对象类型
 			throw new IllegalArgumentException(unid + " isn't a " + getName());
 		}
-		return m_Cache.put(unid.getOrdinal(), object);
+		return m_Segmented.put(unid.getOrdinal(), object);
 	}
 
 	/**
@@ -407,7 +635,7 @@ public abstract class AbstractPersister<E extends Persistent> implements Persist
 	 * @return 有则删除且返回删除的项
 	 */
 	public E removeOfCache(String id) {
-		return m_Cache.remove(id);
+		return m_Segmented.remove(id);
 	}
 
 	public void cleanup() {
@@ -418,7 +646,7 @@ public abstract class AbstractPersister<E extends Persistent> implements Persist
 		if (null == object) {
 			throw new NullPointerException("param 'object' is null");
 		}
-		m_Cache.flush(object);
+		m_Segmented.flush(object);
 	}
 
 	public E get(String id) {
@@ -444,14 +672,130 @@ public abstract class AbstractPersister<E extends Persistent> implements Persist
 			return null;
 		}
 		E p;
-		if (m_Cache.getNullTimeout() > 0) {
-			p = m_Cache.getHintLoad(ordinal, m_Loader);
+		if (m_Segmented.getNullTimeout() > 0) {
+			p = m_Segmented.getHintLoad(ordinal, m_Loader);
 		} else {
-			p = m_Cache.getAndLoad(ordinal, m_Loader, 0);
+			p = m_Segmented.getAndLoad(ordinal, m_Loader, 0);
 		}
 		return p;
 	}
 
+	@Override
+	public List<E> getAll(Collection<String> ids) {
+		if (null == ids || ids.isEmpty()) {
+			return Collections.emptyList();
+		}
+		String type = getName();
+		List<String> ordinals = new ArrayList<>(ids.size());
+		List<E> result = new ArrayList<>(ids.size());
+		List<String> misses = null;
+		for (String id : ids) {
+			String ordinal = null;
+			E p = null;
+			if (null != id && id.length() > 0) {
+				UniteId unid = UniteId.fixId(id, type);
+				if (null != type && type.length() > 0 && !type.equals(unid.getType())) {
+					// 不是持久器支持的对象类型
+					if (_Logger.isWarnEnabled()) {
+						_Logger.warn(unid + " isn't a " + getName());
+					}
+				} else {
+					ordinal = unid.getOrdinal();
+					p = m_Segmented.get(ordinal);
+					if (null == p) {
+						if (null == misses) {
+							misses = new ArrayList<>();
+						}
+						misses.add(ordinal);
+					}
+				}
+			}
+			ordinals.add(ordinal);
+			result.add(p);
+		}
+		if (null == misses) {
+			// 全部在缓存
+			return result;
+		}
+		Map<String, E> loaded = new HashMap<>(misses.size());
+		int size = m_BatchLoadSize > 0 ? m_BatchLoadSize : misses.size();
+		for (int i = 0; i < misses.size(); i += size) {
+			List<String> batch = misses.subList(i, Math.min(i + size, misses.size()));
+			long t = System.nanoTime();
+			Map<String, ObjectWithVersion<E>> ovs = innerLoadBatch(batch);
+			m_LoadBatchLatency.record((System.nanoTime() - t) / 1000);
+			if (null == ovs) {
+				continue;
+			}
+			for (Map.Entry<String, ObjectWithVersion<E>> e : ovs.entrySet()) {
+				loaded.put(e.getKey(), hold(e.getKey(), e.getValue()));
+			}
+		}
+		for (int i = 0; i < result.size(); i++) {
+			if (null == result.get(i) && null != ordinals.get(i)) {
+				result.set(i, loaded.get(ordinals.get(i)));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * 把批量（或游标遍历）加载的对象置入缓存，若缓存中已有（并发加载或更新）则以缓存中的为准
+	 * 
+	 * @param ordinal
+	 *            对象ID
+	 * @param ov
+	 *            加载的对象项及其版本号
+	 * @return 缓存中的对象
+	 */
+	protected E hold(String ordinal, ObjectWithVersion<E> ov) {
+		E object = ov.getObject();
+		if (null == object) {
+			return null;
+		}
+		E cached = m_Segmented.peek(ordinal);
+		if (null != cached) {
+			return cached;
+		}
+		String version = ov.getVersion();
+		Object snapshot = ov.getSnapshot();
+		PersistentCache<E>.EvictedRef ref = m_Segmented.reclaim(ordinal);
+		E evicted = (null == ref) ? null : ref.get();
+		if (null != evicted) {
+			// 淘汰后仍被引用的对象，取回同一实例以保持单例
+			object = evicted;
+			version = ref.getVersion();
+			snapshot = ref.getSnapshot();
+		} else {
+			onAfterLoad(ordinal, ov);
+		}
+		cached = m_Segmented.putIfAbsent(ordinal, object);
+		if (null != cached && cached != object) {
+			return cached;
+		}
+		m_Segmented.updateVersion(ordinal, object, version);
+		if (m_ChangeTracking) {
+			m_Segmented.updateSnapshot(ordinal, object, snapshot);
+		}
+		return object;
+	}
+
+	/**
+	 * 缓存中的对象（包括已淘汰但仍被引用的），不加载也不计入命中统计，用于变化通知
+	 * 
+	 * @param ordinal
+	 *            对象ID
+	 * @return 没有则返回null
+	 */
+	protected E peek(String ordinal) {
+		E cached = m_Segmented.peek(ordinal);
+		if (null == cached) {
+			PersistentCache<E>.EvictedRef ref = m_Segmented.reclaim(ordinal);
+			cached = (null == ref) ? null : ref.get();
+		}
+		return cached;
+	}
+
 	public boolean remove(String id) {
 		if (null == id || id.length() == 0) {
 			return false;
@@ -463,7 +807,7 @@ public abstract class AbstractPersister<E extends Persistent> implements Persist
 	public boolean remove(UniteId id) {
 		String ordinal = id.getOrdinal();
 		// 先由缓存删除
-		m_Cache.remove(ordinal);
+		m_Segmented.remove(ordinal);
 		// 由实际存储删除
 		boolean ret = innerDelete(ordinal);
 		return ret;
@@ -486,7 +830,7 @@ public abstract class AbstractPersister<E extends Persistent> implements Persist
 		}
 
 		// 先置入缓存
-		Cache.PersistNode node = m_Cache.updating(object);
+		PersistentCache<E>.PersistNode node = m_Segmented.updating(object);
 		Flusher f = getFlusher();
 		if (null != node && null != f) {
 			// 标记到刷写队列
@@ -496,21 +840,68 @@ public abstract class AbstractPersister<E extends Persistent> implements Persist
 
 		// 不能进入更新列表的，只好立刻执行持久化
 		String version = persist(object, null != node ? node.getVersion() : null);
-		m_Cache.updateVersion(unid.getOrdinal(), object, version);
+		m_Segmented.updateVersion(unid.getOrdinal(), object, version);
+	}
+
+	/**
+	 * 批量保存对象状态（变化跟踪时调用），默认忽略快照调用{@link #innerSaveBatch(List, List)}
+	 * 
+	 * @param objects
+	 *            对象
+	 * @param oldVersions
+	 *            各对象持久化前的版本号
+	 * @param holders
+	 *            各对象的快照持有者
+	 * @return 与objects顺序一致的保存后版本号，保存失败的项为null
+	 */
+	protected String[] innerSaveBatch(List<E> objects, List<String> oldVersions,
+			List<? extends PersistentCache.SnapshotHolder> holders) {
+		return innerSaveBatch(objects, oldVersions);
 	}
 
 	@Override
 	public void persist(E object) {
 		UniteId unid = object.getPersistenceId();
 		String version = persist(object, null != object ? getVersion(unid) : null);
-		m_Cache.updateVersion(unid.getOrdinal(), object, version);
+		m_Segmented.updateVersion(unid.getOrdinal(), object, version);
 	}
 
+	/**
+	 * 缓存，未分段时即整个缓存；分段时只是第一段
+	 * 
+	 * @return 缓存
+	 * @deprecated 分段时不能代表整个缓存，使用{@link #getSegmentedCache()}或{@link #setCacheTimeout(int)}等设置
+	 */
+	@Deprecated
 	public PersistentCache<E> getCache() {
-		return m_Cache;
+		return m_Segmented.getSegments()[0];
+	}
+
+	/**
+	 * 分段的缓存
+	 * 
+	 * @return 缓存
+	 */
+	public SegmentedCache<E> getSegmentedCache() {
+		return m_Segmented;
 	}
 
 	protected String persist(E object, String oldVersion) {
+		return persist(object, oldVersion, null);
+	}
+
+	/**
+	 * 持久化对象
+	 * 
+	 * @param object
+	 *            对象
+	 * @param oldVersion
+	 *            持久化前的版本号
+	 * @param holder
+	 *            快照持有者（缓存节点），为null则写入整个对象
+	 * @return 持久化后的版本号
+	 */
+	protected String persist(E object, String oldVersion, PersistentCache.SnapshotHolder holder) {
 		PersistentListener listener = null;
 		if (object instanceof PersistentListener) {
 			// 调用对象持久前事件
@@ -518,9 +909,15 @@ public abstract class AbstractPersister<E extends Persistent> implements Persist
 			listener.onBeforePersistence(this);
 		}
 		String version;
+		long t = System.nanoTime();
 		synchronized (object) {
-			version = innerSave(object, oldVersion);
+			if (null == holder) {
+				version = innerSave(object, oldVersion);
+			} else {
+				version = innerSave(object, oldVersion, holder);
+			}
 		}
+		m_SaveLatency.record((System.nanoTime() - t) / 1000);
 		if (null != listener) {
 			// 调用对象持久后事件
 			listener.onAfterPersistence(this, version);
@@ -528,9 +925,59 @@ public abstract class AbstractPersister<E extends Persistent> implements Persist
 		return version;
 	}
 
+	/**
+	 * 批量持久化对象
+	 * 
+	 * @param objects
+	 *            对象
+	 * @param oldVersions
+	 *            各对象持久化前的版本号
+	 * @return 与objects顺序一致的保存后版本号，保存失败的项为null
+	 */
+	protected String[] persist(List<E> objects, List<String> oldVersions) {
+		return persist(objects, oldVersions, null);
+	}
+
+	/**
+	 * 批量持久化对象
+	 * 
+	 * @param objects
+	 *            对象
+	 * @param oldVersions
+	 *            各对象持久化前的版本号
+	 * @param holders
+	 *            各对象的快照持有者（缓存节点），为null则写入整个对象
+	 * @return 与objects顺序一致的保存后版本号，保存失败的项为null
+	 */
+	protected String[] persist(List<E> objects, List<String> oldVersions,
+			List<? extends PersistentCache.SnapshotHolder> holders) {
+		for (E object : objects) {
+			if (object instanceof PersistentListener) {
+				// 调用对象持久前事件
+				((PersistentListener) object).onBeforePersistence(this);
+			}
+		}
+		long t = System.nanoTime();
+		String[] versions;
+		if (null == holders) {
+			versions = innerSaveBatch(objects, oldVersions);
+		} else {
+			versions = innerSaveBatch(objects, oldVersions, holders);
+		}
+		m_SaveBatchLatency.record((System.nanoTime() - t) / 1000);
+		for (int i = 0; i < versions.length; i++) {
+			E object = objects.get(i);
+			if (null != versions[i] && object instanceof PersistentListener) {
+				// 调用对象持久后事件
+				((PersistentListener) object).onAfterPersistence(this, versions[i]);
+			}
+		}
+		return versions;
+	}
+
 	public boolean isDirty(E instance) {
 		// 检查是否待更新
-		return m_Cache.isDirty(instance.getPersistenceId().getOrdinal());
+		return m_Segmented.isDirty(instance.getPersistenceId().getOrdinal());
 	}
 
 	@Override
@@ -546,13 +993,256 @@ public abstract class AbstractPersister<E extends Persistent> implements Persist
 	@Override
 	public ResultPage<E> search(Condition condition, OrderBy orderBy) {
 		ResultPage<String> ids = searchOfId(condition, orderBy);
-		return new TransResultPage<E, String>(ids) {
+		return new PrefetchResultPage<E>(this, ids);
+	}
 
-			@Override
-			protected E trans(String src) {
-				return get(src);
+	/**
+	 * 默认先按条件查出ID，再按页批量由存储装入对象（已在缓存的直接使用，装入的不放入缓存），由{@link #getMapper()}转换后取出指定的属性（嵌套属性返回整个顶层属性），没有映射器时不支持；
+	 * 可按属性投影的存储应覆盖
+	 */
+	@Override
+	public ResultPage<DtObject> searchView(Condition condition, OrderBy orderBy, String... fields) {
+		ObjectMapper<E> mapper = getMapper();
+		if (null == mapper) {
+			throw new UnsupportedOperationException("不支持视图查询:" + getName());
+		}
+		Set<String> names = new LinkedHashSet<>();
+		if (null != fields) {
+			for (String f : fields) {
+				if (StringUtil.isEmpty(f)) {
+					continue;
+				}
+				int index = f.indexOf(Condition.FIELD_SPEARATOR);
+				names.add(index > 0 ? f.substring(0, index) : f);
 			}
-		};
+		}
+		return new ViewResultPage(searchOfId(condition, orderBy), mapper, names);
+	}
+
+	/**
+	 * 批量装入对象并转换为视图，不在缓存中的对象装入后不放入缓存
+	 * 
+	 * @param ids
+	 *            对象ID
+	 * @param mapper
+	 *            映射器
+	 * @param names
+	 *            视图的属性
+	 * @return 与ID一一对应的视图，没有的对象为null
+	 */
+	private List<DtObject> loadViews(List<String> ids, ObjectMapper<E> mapper, Set<String> names) {
+		String type = getName();
+		List<String> ordinals = new ArrayList<>(ids.size());
+		List<E> objects = new ArrayList<>(ids.size());
+		List<String> misses = null;
+		for (String id : ids) {
+			String ordinal = null;
+			E p = null;
+			if (!StringUtil.isEmpty(id)) {
+				UniteId unid = UniteId.fixId(id, type);
+				ordinal = unid.getOrdinal();
+				p = m_Segmented.get(ordinal);
+				if (null == p) {
+					if (null == misses) {
+						misses = new ArrayList<>();
+					}
+					misses.add(ordinal);
+				}
+			}
+			ordinals.add(ordinal);
+			objects.add(p);
+		}
+		Map<String, ObjectWithVersion<E>> loaded = Collections.emptyMap();
+		if (null != misses) {
+			loaded = new HashMap<>(misses.size());
+			int size = m_BatchLoadSize > 0 ? m_BatchLoadSize : misses.size();
+			for (int i = 0; i < misses.size(); i += size) {
+				List<String> batch = misses.subList(i, Math.min(i + size, misses.size()));
+				long t = System.nanoTime();
+				Map<String, ObjectWithVersion<E>> ovs = innerLoadBatch(batch);
+				m_LoadBatchLatency.record((System.nanoTime() - t) / 1000);
+				if (null != ovs) {
+					loaded.putAll(ovs);
+				}
+			}
+		}
+		List<DtObject> result = new ArrayList<>(ids.size());
+		for (int i = 0; i < objects.size(); i++) {
+			E p = objects.get(i);
+			String ordinal = ordinals.get(i);
+			if (null == p && null != ordinal) {
+				ObjectWithVersion<E> ov = loaded.get(ordinal);
+				if (null != ov && null != ov.getObject()) {
+					// 只做反射后事件，不放入缓存
+					onAfterLoad(ordinal, ov);
+					p = ov.getObject();
+				}
+			}
+			result.add(null == p ? null : toView(mapper, ordinal, p, names));
+		}
+		return result;
+	}
+
+	/* 由对象映射出的属性中取出视图的属性 */
+	private static <E extends Persistent> DtObject toView(ObjectMapper<E> mapper, String ordinal, E object,
+			Set<String> names) {
+		SimpleDtObject dt = new SimpleDtObject();
+		dt.put(VIEW_ID, ordinal);
+		DtObject all = mapper.toDtObject(object);
+		for (String name : names) {
+			DtBase value = all.getAttribute(name);
+			if (null != value) {
+				dt.put(name, value);
+			}
+		}
+		return dt;
+	}
+
+	/**
+	 * 由ID结果页按页批量装入对象转换的视图结果页
+	 * 
+	 * @author liangyi
+	 */
+	class ViewResultPage implements ResultPage<DtObject> {
+		/** ID结果页 */
+		final ResultPage<String> m_Ids;
+		/** 映射器 */
+		final ObjectMapper<E> m_Mapper;
+		/** 视图的属性 */
+		final Set<String> m_Names;
+		/** 当前页的视图 */
+		List<DtObject> m_Items;
+		/** 当前页的位置 */
+		int m_Position;
+
+		ViewResultPage(ResultPage<String> ids, ObjectMapper<E> mapper, Set<String> names) {
+			m_Ids = ids;
+			m_Mapper = mapper;
+			m_Names = names;
+		}
+
+		/* 未定位页时逐个装入 */
+		private DtObject one(String id) {
+			if (null == id) {
+				return null;
+			}
+			return loadViews(Collections.singletonList(id), m_Mapper, m_Names).get(0);
+		}
+
+		@Override
+		public int getCount() {
+			return m_Ids.getCount();
+		}
+
+		@Override
+		public int getPageCount() {
+			return m_Ids.getPageCount();
+		}
+
+		@Override
+		public int getPageSize() {
+			return m_Ids.getPageSize();
+		}
+
+		@Override
+		public void setPageSize(int size) {
+			m_Ids.setPageSize(size);
+		}
+
+		@Override
+		public void setPage(int page) {
+			gotoPage(page);
+		}
+
+		@Override
+		public int getPage() {
+			return m_Ids.getPage();
+		}
+
+		@Override
+		public boolean gotoPage(int page) {
+			if (!m_Ids.gotoPage(page)) {
+				m_Items = Collections.emptyList();
+				m_Position = 0;
+				return false;
+			}
+			List<String> ids = new ArrayList<>(m_Ids.getPageSize());
+			while (m_Ids.hasNext()) {
+				ids.add(m_Ids.next());
+			}
+			m_Items = ids.isEmpty() ? Collections.<DtObject>emptyList() : loadViews(ids, m_Mapper, m_Names);
+			m_Position = 0;
+			return true;
+		}
+
+		@Override
+		public DtObject prev() {
+			if (null == m_Items) {
+				return one(m_Ids.prev());
+			}
+			if (m_Position <= 0) {
+				return null;
+			}
+			return m_Items.get(--m_Position);
+		}
+
+		@Override
+		public boolean hasPrev() {
+			if (null == m_Items) {
+				return m_Ids.hasPrev();
+			}
+			return m_Position > 0;
+		}
+
+		@Override
+		public DtObject next() {
+			if (null == m_Items) {
+				return one(m_Ids.next());
+			}
+			if (m_Position >= m_Items.size()) {
+				return null;
+			}
+			return m_Items.get(m_Position++);
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (null == m_Items) {
+				return m_Ids.hasNext();
+			}
+			return m_Position < m_Items.size();
+		}
+
+		@Override
+		public Iterator<DtObject> iterator() {
+			return this;
+		}
+
+		@Override
+		public DtObject move(int pos) {
+			if (null == m_Items) {
+				return one(m_Ids.move(pos));
+			}
+			if (pos < 0 || pos >= m_Items.size()) {
+				return null;
+			}
+			m_Position = pos + 1;
+			return m_Items.get(pos);
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/**
+	 * 对象的映射器，用于默认的视图查询
+	 * 
+	 * @return 映射器，默认返回null（不支持默认的视图查询）
+	 */
+	protected ObjectMapper<E> getMapper() {
+		return null;
 	}
 
 	@Override
@@ -577,7 +1267,7 @@ public abstract class AbstractPersister<E extends Persistent> implements Persist
 		// if (null == object) {
 		// return null;
 		// }
-		return m_Cache.getVersion(id.getOrdinal());
+		return m_Segmented.getVersion(id.getOrdinal());
 	}
 
 	/**
@@ -619,7 +1309,7 @@ public abstract class AbstractPersister<E extends Persistent> implements Persist
 			String oldVersion = node.getVersion();
 			// 先把状态置于更新中
 			node.updating();
-			String version = AbstractPersister.this.persist(object, oldVersion);
+			String version = AbstractPersister.this.persist(object, oldVersion, m_ChangeTracking ? node : null);
 			node.clean(version);
 			return version;
 		}
@@ -628,5 +1318,66 @@ public abstract class AbstractPersister<E extends Persistent> implements Persist
 		protected String newer(E object) {
 			return innerNew(object);
 		}
+
+		/** 批量刷写分组 */
+		final BatchFlushable.Group m_FlushGroup = new BatchFlushable.Group() {
+
+			@Override
+			public List<? extends Flushable> flush(List<BatchFlushable> items) {
+				return persist(items);
+			}
+
+			@Override
+			public String toString() {
+				return getName();
+			}
+		};
+
+		@Override
+		protected BatchFlushable.Group getFlushGroup() {
+			return m_BatchFlushEnabled ? m_FlushGroup : null;
+		}
+
+		/**
+		 * 批量持久化缓存项
+		 * 
+		 * @param items
+		 *            待刷写的缓存项
+		 * @return 持久化失败的项
+		 */
+		protected List<PersistNode> persist(List<BatchFlushable> items) {
+			List<PersistNode> nodes = new ArrayList<>(items.size());
+			List<E> objects = new ArrayList<>(items.size());
+			List<String> oldVersions = new ArrayList<>(items.size());
+			for (BatchFlushable item : items) {
+				PersistNode node = (PersistNode) item;
+				E object = node.getValue();
+				if (!node.isDirty() || null == object) {
+					continue;
+				}
+				nodes.add(node);
+				objects.add(object);
+				oldVersions.add(node.getVersion());
+				// 先把状态置于更新中
+				node.updating();
+			}
+			if (nodes.isEmpty()) {
+				return Collections.emptyList();
+			}
+			String[] versions = AbstractPersister.this.persist(objects, oldVersions, m_ChangeTracking ? nodes : null);
+			List<PersistNode> fails = null;
+			for (int i = 0; i < versions.length; i++) {
+				PersistNode node = nodes.get(i);
+				if (null == versions[i]) {
+					if (null == fails) {
+						fails = new ArrayList<>();
+					}
+					fails.add(node);
+				} else {
+					node.clean(versions[i]);
+				}
+			}
+			return null == fails ? Collections.<PersistNode>emptyList() : fails;
+		}
 	}
 }
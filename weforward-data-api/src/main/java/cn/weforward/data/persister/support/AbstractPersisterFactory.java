@@ -15,15 +15,18 @@ import java.util.List;
 
 import org.slf4j.LoggerFactory;
 
+import cn.weforward.data.metrics.Metrics;
 import cn.weforward.data.persister.BusinessDi;
 import cn.weforward.data.persister.Persistent;
 import cn.weforward.data.persister.Persister;
 import cn.weforward.data.persister.PersisterFactory;
 import cn.weforward.data.persister.PersisterSet;
 import cn.weforward.data.persister.Reloadable;
+import cn.weforward.data.util.DelayFlusher;
 import cn.weforward.data.util.FieldMapper;
 import cn.weforward.data.util.Flusher;
 import cn.weforward.data.util.MethodMapper;
+import cn.weforward.data.util.PartitionedFlusher;
 import cn.weforward.protocol.ext.ObjectMapper;
 
 /**
@@ -52,6 +55,10 @@ public abstract class AbstractPersisterFactory implements PersisterFactory {
 	protected String m_ServerId;
 	/** 映射方式 */
 	protected String m_MapperType = MAPPER_FIELD;
+	/** 指标 */
+	protected Metrics m_Metrics;
+	/** 分区刷写器的分区数（不大于0表示不使用） */
+	protected int m_FlushPartitions;
 
 	public AbstractPersisterFactory() {
 		this(null);
@@ -86,14 +93,48 @@ public abstract class AbstractPersisterFactory implements PersisterFactory {
 		return m_ServerId;
 	}
 
-	public Flusher getFlusher() {
+	public synchronized Flusher getFlusher() {
+		if (null == m_Flusher && m_FlushPartitions > 0) {
+			PartitionedFlusher f = new PartitionedFlusher(5, m_FlushPartitions);
+			f.setName("flusher-persister");
+			if (null != m_Metrics) {
+				f.setMetrics(m_Metrics);
+			}
+			m_Flusher = f;
+		}
 		return m_Flusher;
 	}
 
+	/**
+	 * 未指定刷写器时，由工厂创建各持久器共用的{@link PartitionedFlusher}，同一对象总由同一分区（线程）刷写，慢的存储只阻塞其所在的分区
+	 * 
+	 * @param partitions 分区数（刷写线程数），不大于0表示不使用（默认，各持久器使用自己的{@link DelayFlusher}）
+	 */
+	public void setFlushPartitions(int partitions) {
+		m_FlushPartitions = partitions;
+	}
+
+	public int getFlushPartitions() {
+		return m_FlushPartitions;
+	}
+
 	public void setFlusher(Flusher f) {
 		m_Flusher = f;
 	}
 
+	/**
+	 * 设置记录指标，应用于之后创建的持久器
+	 * 
+	 * @param metrics 指标
+	 */
+	public void setMetrics(Metrics metrics) {
+		m_Metrics = metrics;
+	}
+
+	public Metrics getMetrics() {
+		return m_Metrics;
+	}
+
 	@Override
 	public <E extends Persistent> Persister<E> getPersister(Class<E> clazz) {
 		return m_PersisterSet.getPersister(clazz);
@@ -125,6 +166,9 @@ public abstract class AbstractPersisterFactory implements PersisterFactory {
 			if (null != f) {
 				((AbstractPersister<?>) ps).setFlusher(f);
 			}
+			if (null != m_Metrics) {
+				((AbstractPersister<?>) ps).setMetrics(m_Metrics);
+			}
 		}
 		if (null != clazz && Reloadable.class.isAssignableFrom(clazz)) {
 			// 若对象实现Reloadable接口则开启重加载功能
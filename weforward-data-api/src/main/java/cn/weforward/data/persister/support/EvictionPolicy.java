@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.data.persister.support;
+
+import java.util.List;
+
+/**
+ * 缓存的淘汰策略，跟踪缓存项的访问与权重，在超出容量时给出需淘汰的项
+ * <p>
+ * 策略只作记录与决策，实际的淘汰由缓存执行，缓存项若仍待刷写（或正在持久化）不会被淘汰，这时由缓存调用{@link #onPinned(String, int)}放回
+ * 
+ * @author liangyi
+ *
+ */
+public interface EvictionPolicy {
+	/**
+	 * 记录缓存项被命中访问，每次命中都会调用，实现应避免在此加锁
+	 * 
+	 * @param key 缓存项标识
+	 */
+	void onAccess(String key);
+
+	/**
+	 * 整理（如处理缓冲的访问记录），由缓存定期调用，默认不做处理
+	 */
+	default void cleanUp() {
+	}
+
+	/**
+	 * 记录缓存项进入（或更新）缓存
+	 * 
+	 * @param key    缓存项标识
+	 * @param weight 缓存项权重
+	 * @return 超出容量需淘汰的项，没有则返回空列表
+	 */
+	List<String> onPut(String key, int weight);
+
+	/**
+	 * 淘汰的项不能移除（待刷写中），放回策略且不触发淘汰
+	 * 
+	 * @param key    缓存项标识
+	 * @param weight 缓存项权重
+	 */
+	void onPinned(String key, int weight);
+
+	/**
+	 * 缓存项已由缓存删除
+	 * 
+	 * @param key 缓存项标识
+	 */
+	void onRemove(String key);
+
+	/**
+	 * 清除所有记录
+	 */
+	void clear();
+
+	/**
+	 * 跟踪中的项数
+	 * 
+	 * @return 项数
+	 */
+	int size();
+
+	/**
+	 * 跟踪中的项的总权重
+	 * 
+	 * @return 总权重
+	 */
+	long getWeight();
+
+	/**
+	 * 最大总权重
+	 * 
+	 * @return 权重
+	 */
+	long getMaximum();
+
+	/**
+	 * 缓存项的权重计算器，如估算对象占用的字节数，不指定时每项权重为1（即按项数控制）
+	 * 
+	 * @author liangyi
+	 *
+	 * @param <V> 缓存对象
+	 */
+	interface Weigher<V> {
+		/**
+		 * 计算权重
+		 * 
+		 * @param key   缓存项标识
+		 * @param value 缓存对象
+		 * @return 权重，不小于1
+		 */
+		int weigh(String key, V value);
+	}
+}
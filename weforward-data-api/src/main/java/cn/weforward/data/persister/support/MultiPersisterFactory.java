@@ -11,6 +11,7 @@
 package cn.weforward.data.persister.support;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
@@ -26,6 +27,7 @@ import cn.weforward.data.persister.Persistent;
 import cn.weforward.data.persister.Persister;
 import cn.weforward.data.persister.PersisterFactory;
 import cn.weforward.data.persister.PersisterSet;
+import cn.weforward.protocol.datatype.DtObject;
 import cn.weforward.protocol.ext.ObjectMapper;
 
 /**
@@ -127,6 +129,11 @@ public class MultiPersisterFactory implements PersisterFactory {
 			return getMain().get(id);
 		}
 
+		@Override
+		public List<E> getAll(Collection<String> ids) {
+			return getMain().getAll(ids);
+		}
+
 		@Override
 		public boolean remove(UniteId id) {
 			for (Persister<E> p : m_List) {
@@ -290,6 +297,11 @@ public class MultiPersisterFactory implements PersisterFactory {
 			return getMain().searchOfId(condition, orderBy);
 		}
 
+		@Override
+		public ResultPage<DtObject> searchView(Condition condition, OrderBy orderBy, String... fields) {
+			return getMain().searchView(condition, orderBy, fields);
+		}
+
 		@Override
 		public void addListener(ChangeListener<E> l) {
 			for (Persister<E> p : m_List) {
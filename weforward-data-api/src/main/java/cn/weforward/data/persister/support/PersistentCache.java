@@ -11,10 +11,18 @@
 package cn.weforward.data.persister.support;
 
 import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
 
 import cn.weforward.common.util.LruCache;
 import cn.weforward.data.persister.Persistent;
-import cn.weforward.data.util.Flushable;
+import cn.weforward.data.util.BatchFlushable;
+import cn.weforward.data.util.PartitionFlushable;
 
 /**
  * 用于支撑持久化对象的缓冲
@@ -28,12 +36,82 @@ public abstract class PersistentCache<E extends Persistent> extends LruCache<Str
 	/** 标示正处理更新中，这种状态下的版本号可认为是相同的 */
 	public static final String VERSION_UPDATING = "...";
 
+	/** 缓存名的hash（用于刷写分区） */
+	protected final int m_NameHash;
+	/** 淘汰策略（为null则只按空闲超时清除） */
+	protected volatile EvictionPolicy m_Eviction;
+	/** 缓存项权重计算器 */
+	protected EvictionPolicy.Weigher<? super E> m_Weigher;
+	/** 命中次数 */
+	protected final LongAdder m_Hits = new LongAdder();
+	/** 未命中次数 */
+	protected final LongAdder m_Misses = new LongAdder();
+	/** 淘汰次数 */
+	protected final LongAdder m_Evictions = new LongAdder();
+	/** 已淘汰的对象（弱引用），仍被引用时再次加载取回同一实例以保持单例 */
+	protected final ConcurrentMap<String, EvictedRef> m_Evicted = new ConcurrentHashMap<>();
+	/** 已回收的淘汰对象 */
+	protected final ReferenceQueue<E> m_EvictedQueue = new ReferenceQueue<>();
+
+	/**
+	 * 持久化快照的持有者，用于变化跟踪（只写入有变化的部分）
+	 * 
+	 * @author liangyi
+	 */
+	public interface SnapshotHolder {
+		/**
+		 * 最后持久化（或加载）时存储中的数据
+		 * 
+		 * @return 快照，没有则为null
+		 */
+		Object getSnapshot();
+
+		/**
+		 * 设置快照
+		 * 
+		 * @param snapshot
+		 *            持久化后存储中的数据
+		 */
+		void setSnapshot(Object snapshot);
+	}
+
+	/**
+	 * 已淘汰对象的弱引用，附带淘汰时的版本号及快照
+	 * 
+	 * @author liangyi
+	 */
+	public class EvictedRef extends WeakReference<E> {
+		protected final String key;
+		protected final String version;
+		protected final Object snapshot;
+
+		EvictedRef(String key, E value, String version, Object snapshot) {
+			super(value, m_EvictedQueue);
+			this.key = key;
+			this.version = version;
+			this.snapshot = snapshot;
+		}
+
+		public String getVersion() {
+			return this.version;
+		}
+
+		public Object getSnapshot() {
+			return this.snapshot;
+		}
+	}
+
 	/**
 	 * 
 	 * @author liangyi
 	 */
-	protected class PersistNode extends CacheNode<String, E> implements Flushable {
+	protected class PersistNode extends CacheNode<String, E>
+			implements BatchFlushable, PartitionFlushable, SnapshotHolder {
 		protected String version;
+		/** 最后持久化（或加载）时存储中的数据（只在变化跟踪时保留） */
+		protected volatile Object snapshot;
+		/** 正由淘汰策略移出缓存（不是删除） */
+		protected volatile boolean evicting;
 
 		public PersistNode(int hash, String key, E value, Node<String, E> next) {
 			super(hash, key, value, next);
@@ -48,10 +126,29 @@ public abstract class PersistentCache<E extends Persistent> extends LruCache<Str
 			return this.version;
 		}
 
+		/**
+		 * 是否不能淘汰（待刷写或正在持久化中）
+		 * 
+		 * @return 不能淘汰返回true
+		 */
+		public boolean isPinned() {
+			return isDirty() || VERSION_UPDATING == this.version;
+		}
+
 		public void setVersion(String version) {
 			this.version = version;
 		}
 
+		@Override
+		public Object getSnapshot() {
+			return this.snapshot;
+		}
+
+		@Override
+		public void setSnapshot(Object snapshot) {
+			this.snapshot = snapshot;
+		}
+
 		@Override
 		public void flush() throws IOException {
 			E v = getValue();
@@ -65,6 +162,16 @@ public abstract class PersistentCache<E extends Persistent> extends LruCache<Str
 			// PersistentCache.this.putLru(this);
 		}
 
+		@Override
+		public Group getFlushGroup() {
+			return PersistentCache.this.getFlushGroup();
+		}
+
+		@Override
+		public int getPartitionKey() {
+			return 31 * m_NameHash + key.hashCode();
+		}
+
 		/**
 		 * 标记为更新中
 		 */
@@ -82,6 +189,7 @@ public abstract class PersistentCache<E extends Persistent> extends LruCache<Str
 
 	public PersistentCache(String name) {
 		super(name);
+		m_NameHash = (null == name) ? 0 : name.hashCode();
 		// 启用弱引用检查缓存对象来保持单例
 		setReachable(true);
 		// 1秒的空项重加载间隔
@@ -94,6 +202,181 @@ public abstract class PersistentCache<E extends Persistent> extends LruCache<Str
 		return m_NullTimeout;
 	}
 
+	/**
+	 * 设置淘汰策略
+	 * 
+	 * @param policy
+	 *            策略，为null则不控制缓存容量
+	 * @param weigher
+	 *            缓存项权重计算器，为null时每项权重为1
+	 */
+	public void setEvictionPolicy(EvictionPolicy policy, EvictionPolicy.Weigher<? super E> weigher) {
+		m_Weigher = weigher;
+		m_Eviction = policy;
+	}
+
+	public EvictionPolicy getEvictionPolicy() {
+		return m_Eviction;
+	}
+
+	public long getHitCount() {
+		return m_Hits.sum();
+	}
+
+	public long getMissCount() {
+		return m_Misses.sum();
+	}
+
+	public long getEvictionCount() {
+		return m_Evictions.sum();
+	}
+
+	/**
+	 * 记录缓存命中
+	 * 
+	 * @param ordinal
+	 *            缓存项标识
+	 */
+	protected void onHit(String ordinal) {
+		m_Hits.increment();
+		EvictionPolicy policy = m_Eviction;
+		if (null != policy) {
+			policy.onAccess(ordinal);
+		}
+	}
+
+	/**
+	 * 记录缓存未命中
+	 * 
+	 * @param ordinal
+	 *            缓存项标识
+	 */
+	protected void onMiss(String ordinal) {
+		m_Misses.increment();
+	}
+
+	/**
+	 * 对象进入缓存后由淘汰策略决定是否要淘汰（可能是对象本身）
+	 * 
+	 * @param ordinal
+	 *            缓存项标识
+	 * @param value
+	 *            对象
+	 */
+	protected void admit(String ordinal, E value) {
+		admit(ordinal, value, false);
+	}
+
+	/**
+	 * 对象进入缓存后由淘汰策略决定是否要淘汰
+	 * 
+	 * @param ordinal
+	 *            缓存项标识
+	 * @param value
+	 *            对象
+	 * @param keep
+	 *            是否保留对象本身（如刚标记更新还未进入刷写器的对象）
+	 */
+	protected void admit(String ordinal, E value, boolean keep) {
+		if (null == value) {
+			return;
+		}
+		EvictedRef ref = m_Evicted.get(ordinal);
+		if (null != ref && ref.get() == value) {
+			// 已淘汰的对象取回到缓存
+			m_Evicted.remove(ordinal, ref);
+		}
+		EvictionPolicy policy = m_Eviction;
+		if (null == policy) {
+			return;
+		}
+		List<String> victims = policy.onPut(ordinal, weigh(ordinal, value));
+		for (int i = 0; i < victims.size(); i++) {
+			String victim = victims.get(i);
+			if (keep && victim.equals(ordinal)) {
+				policy.onPinned(victim, weigh(victim, value));
+				continue;
+			}
+			E pinned = evict(victim);
+			if (null != pinned) {
+				// 待刷写的项不能淘汰，放回策略
+				policy.onPinned(victim, weigh(victim, pinned));
+			}
+		}
+	}
+
+	/**
+	 * 淘汰（不是删除）缓存项，待刷写或正在持久化的项不会被淘汰。
+	 * <p>
+	 * 淘汰的对象降级为弱引用，在仍被调用方或刷写器引用时，再次加载由{@link #reclaim(String)}取回同一实例，不会出现两个实例
+	 * 
+	 * @param ordinal
+	 *            缓存项标识
+	 * @return 不能淘汰时返回缓存的对象，已淘汰（或不在缓存）返回null
+	 */
+	protected E evict(String ordinal) {
+		PersistNode node = getNode(hash(ordinal), ordinal);
+		if (null == node) {
+			return null;
+		}
+		if (node.isPinned()) {
+			return node.getValue();
+		}
+		E value = node.getValue();
+		if (null != value) {
+			purgeEvicted();
+			m_Evicted.put(ordinal, new EvictedRef(ordinal, value, node.getVersion(), node.snapshot));
+		}
+		node.evicting = true;
+		E removed = remove(ordinal);
+		if (node.isPinned()) {
+			// 移除期间被标记了更新，放回缓存（刷写器持有原节点，照常刷写）。期间的加载已取回同一实例
+			node.evicting = false;
+			E v = node.getValue();
+			if (null != v) {
+				E cached = putIfAbsent(ordinal, v);
+				if (null != cached && cached != v && _Logger.isWarnEnabled()) {
+					_Logger.warn("淘汰期间缓存了另一实例[" + ordinal + "]" + cached + " <> " + v);
+				}
+			}
+			return v;
+		}
+		if (null != removed) {
+			m_Evictions.increment();
+			if (_Logger.isTraceEnabled()) {
+				_Logger.trace("evict:" + node);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 取回已淘汰但仍被引用的对象
+	 * 
+	 * @param ordinal
+	 *            缓存项标识
+	 * @return 没有或已回收返回null，否则调用方应以其中的对象（及版本号、快照）重新放入缓存
+	 */
+	public EvictedRef reclaim(String ordinal) {
+		purgeEvicted();
+		EvictedRef ref = m_Evicted.get(ordinal);
+		return (null == ref || null == ref.get()) ? null : ref;
+	}
+
+	/* 清除已回收的淘汰对象 */
+	private void purgeEvicted() {
+		Reference<? extends E> r;
+		while (null != (r = m_EvictedQueue.poll())) {
+			EvictedRef ref = (EvictedRef) r;
+			m_Evicted.remove(ref.key, ref);
+		}
+	}
+
+	private int weigh(String ordinal, E value) {
+		EvictionPolicy.Weigher<? super E> weigher = m_Weigher;
+		return (null == weigher) ? 1 : weigher.weigh(ordinal, value);
+	}
+
 	/**
 	 * 把对象持久化
 	 * 
@@ -114,6 +397,15 @@ public abstract class PersistentCache<E extends Persistent> extends LruCache<Str
 	 */
 	protected abstract String newer(E object);
 
+	/**
+	 * 缓存项批量刷写的分组
+	 * 
+	 * @return 分组，为null（默认）则逐项刷写
+	 */
+	protected BatchFlushable.Group getFlushGroup() {
+		return null;
+	}
+
 	@Override
 	protected PersistNode openNode(int hash, String key) {
 		return (PersistNode) super.openNode(hash, key);
@@ -168,6 +460,23 @@ public abstract class PersistentCache<E extends Persistent> extends LruCache<Str
 		return oldVersion;
 	}
 
+	/**
+	 * 更新缓存项的持久化快照（变化跟踪）
+	 * 
+	 * @param ordinal
+	 *            对象ID
+	 * @param value
+	 *            对象，与缓存中的不是同一个则忽略
+	 * @param snapshot
+	 *            存储中的数据
+	 */
+	public void updateSnapshot(String ordinal, E value, Object snapshot) {
+		PersistNode node = getNode(hash(ordinal), ordinal);
+		if (null != node && node.getValue() == value) {
+			node.setSnapshot(snapshot);
+		}
+	}
+
 	/**
 	 * 把状态变化对象置入缓存
 	 * 
@@ -210,6 +519,18 @@ public abstract class PersistentCache<E extends Persistent> extends LruCache<Str
 	protected void afterNodeRemoval(Node<String, E> p) {
 		E e = p.getValue();
 		super.afterNodeRemoval(p);
+		if (p instanceof PersistentCache<?>.PersistNode) {
+			PersistNode node = (PersistNode) p;
+			if (node.evicting) {
+				// 淘汰出缓存而不是删除
+				return;
+			}
+			m_Evicted.remove(node.key);
+			EvictionPolicy policy = m_Eviction;
+			if (null != policy) {
+				policy.onRemove(node.key);
+			}
+		}
 		if (e instanceof AbstractPersistent<?>) {
 			((AbstractPersistent<?>) e).enablDelete();
 		}
@@ -0,0 +1,74 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.data.persister.support;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import cn.weforward.data.persister.Persistent;
+import cn.weforward.data.persister.Persister;
+
+/**
+ * 按批预取的对象迭代器，每次由ID迭代器取一批ID交给持久器批量加载
+ * 
+ * @author daibo
+ *
+ * @param <E> 持久对象
+ */
+public class PrefetchIterator<E extends Persistent> implements Iterator<E> {
+	/** 持久器 */
+	protected final Persister<E> m_Persister;
+	/** ID迭代器 */
+	protected final Iterator<String> m_Ids;
+	/** 每批数量 */
+	protected final int m_BatchSize;
+	/** 当前批的对象 */
+	protected List<E> m_Items;
+	/** 当前批的位置 */
+	protected int m_Position;
+
+	public PrefetchIterator(Persister<E> persister, Iterator<String> ids, int batchSize) {
+		m_Persister = persister;
+		m_Ids = ids;
+		m_BatchSize = batchSize > 0 ? batchSize : 1;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (null != m_Items && m_Position < m_Items.size()) {
+			return true;
+		}
+		return m_Ids.hasNext();
+	}
+
+	@Override
+	public E next() {
+		if (null == m_Items || m_Position >= m_Items.size()) {
+			if (!m_Ids.hasNext()) {
+				throw new NoSuchElementException();
+			}
+			List<String> ids = new ArrayList<>(m_BatchSize);
+			while (ids.size() < m_BatchSize && m_Ids.hasNext()) {
+				ids.add(m_Ids.next());
+			}
+			m_Items = m_Persister.getAll(ids);
+			m_Position = 0;
+		}
+		return m_Items.get(m_Position++);
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+}
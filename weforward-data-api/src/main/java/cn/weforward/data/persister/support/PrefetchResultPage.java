@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.data.persister.support;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import cn.weforward.common.ResultPage;
+import cn.weforward.data.persister.Persistent;
+import cn.weforward.data.persister.Persister;
+
+/**
+ * 按页预取的对象结果页，翻页时把整页的ID一次性交给持久器批量加载
+ * 
+ * @author daibo
+ *
+ * @param <E> 持久对象
+ */
+public class PrefetchResultPage<E extends Persistent> implements ResultPage<E> {
+	/** 持久器 */
+	protected final Persister<E> m_Persister;
+	/** ID结果页 */
+	protected final ResultPage<String> m_Ids;
+	/** 当前页的对象 */
+	protected List<E> m_Items;
+	/** 当前页的位置 */
+	protected int m_Position;
+
+	public PrefetchResultPage(Persister<E> persister, ResultPage<String> ids) {
+		m_Persister = persister;
+		m_Ids = ids;
+	}
+
+	@Override
+	public int getCount() {
+		return m_Ids.getCount();
+	}
+
+	@Override
+	public int getPageCount() {
+		return m_Ids.getPageCount();
+	}
+
+	@Override
+	public int getPageSize() {
+		return m_Ids.getPageSize();
+	}
+
+	@Override
+	public void setPageSize(int size) {
+		m_Ids.setPageSize(size);
+	}
+
+	@Override
+	public void setPage(int page) {
+		gotoPage(page);
+	}
+
+	@Override
+	public int getPage() {
+		return m_Ids.getPage();
+	}
+
+	@Override
+	public boolean gotoPage(int page) {
+		if (!m_Ids.gotoPage(page)) {
+			m_Items = Collections.emptyList();
+			m_Position = 0;
+			return false;
+		}
+		List<String> ids = new ArrayList<>(m_Ids.getPageSize());
+		while (m_Ids.hasNext()) {
+			ids.add(m_Ids.next());
+		}
+		m_Items = ids.isEmpty() ? Collections.<E>emptyList() : m_Persister.getAll(ids);
+		m_Position = 0;
+		return true;
+	}
+
+	@Override
+	public E prev() {
+		if (null == m_Items) {
+			return m_Persister.get(m_Ids.prev());
+		}
+		if (m_Position <= 0) {
+			return null;
+		}
+		return m_Items.get(--m_Position);
+	}
+
+	@Override
+	public boolean hasPrev() {
+		if (null == m_Items) {
+			return m_Ids.hasPrev();
+		}
+		return m_Position > 0;
+	}
+
+	@Override
+	public E next() {
+		if (null == m_Items) {
+			// 未定位页时按原样逐个加载
+			return m_Persister.get(m_Ids.next());
+		}
+		if (m_Position >= m_Items.size()) {
+			return null;
+		}
+		return m_Items.get(m_Position++);
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (null == m_Items) {
+			return m_Ids.hasNext();
+		}
+		return m_Position < m_Items.size();
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		return this;
+	}
+
+	@Override
+	public E move(int pos) {
+		if (null == m_Items) {
+			return m_Persister.get(m_Ids.move(pos));
+		}
+		if (pos < 0 || pos >= m_Items.size()) {
+			return null;
+		}
+		m_Position = pos + 1;
+		return m_Items.get(pos);
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+}
@@ -0,0 +1,393 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.data.persister.support;
+
+import cn.weforward.common.GcCleanable;
+import cn.weforward.common.util.LruCache;
+import cn.weforward.data.persister.Persistent;
+
+/**
+ * 分段的持久对象缓存，按对象ID把缓存项分散到多个{@link PersistentCache}，各段有独立的节点表、LRU链及超时处理，减少多线程下对单个缓存的争用
+ * 
+ * @author liangyi
+ *
+ * @param <E> 可持久化对象
+ */
+public abstract class SegmentedCache<E extends Persistent> implements GcCleanable {
+	/** 默认的分段数（不小于CPU数的2的幂，最多64） */
+	public static final int DEFAULT_SEGMENTS = toSegments(Runtime.getRuntime().availableProcessors());
+	/** 最大分段数 */
+	public static final int MAX_SEGMENTS = 64;
+
+	/** 名称 */
+	protected final String m_Name;
+	/** 各段缓存（数量为2的幂） */
+	protected volatile PersistentCache<E>[] m_Segments;
+	/** 缓存的最大总权重（不大于0表示不控制） */
+	protected long m_Maximum;
+	/** 缓存项权重计算器 */
+	protected EvictionPolicy.Weigher<? super E> m_Weigher;
+	/** 空闲超时值（秒），小于0表示未设置（使用段缓存的默认值） */
+	protected int m_Timeout = -1;
+	/** 空值的超时值（秒），小于0表示未设置 */
+	protected int m_NullTimeout = -1;
+	/** 是否控制对象单例，null表示未设置 */
+	protected Boolean m_Reachable;
+
+	public SegmentedCache(String name, int segments) {
+		m_Name = name;
+		setSegments(segments);
+	}
+
+	/**
+	 * 创建段的缓存
+	 * 
+	 * @param name  段名
+	 * @param index 段序号
+	 * @return 缓存
+	 */
+	protected abstract PersistentCache<E> newSegment(String name, int index);
+
+	/**
+	 * 创建段的淘汰策略，默认为{@link TinyLfuEvictionPolicy}
+	 * 
+	 * @param maximum 段的最大总权重
+	 * @return 淘汰策略
+	 */
+	protected EvictionPolicy newEvictionPolicy(long maximum) {
+		return new TinyLfuEvictionPolicy(maximum);
+	}
+
+	/**
+	 * 设置缓存容量，超出时由淘汰策略淘汰项，容量平均分配到各段
+	 * 
+	 * @param maximum 最大总权重（未指定weigher时即最大项数），不大于0表示不控制
+	 * @param weigher 缓存项权重计算器（如估算对象的字节数），为null时每项权重为1
+	 */
+	public synchronized void setMaximum(long maximum, EvictionPolicy.Weigher<? super E> weigher) {
+		m_Maximum = maximum;
+		m_Weigher = weigher;
+		applyEviction(m_Segments);
+	}
+
+	public long getMaximum() {
+		return m_Maximum;
+	}
+
+	private void applyEviction(PersistentCache<E>[] caches) {
+		long maximum = m_Maximum;
+		long each = (maximum + caches.length - 1) / caches.length;
+		for (PersistentCache<E> c : caches) {
+			c.setEvictionPolicy(maximum > 0 ? newEvictionPolicy(each) : null, m_Weigher);
+		}
+	}
+
+	/**
+	 * 重设分段数，需在缓存使用前设置，原缓存的内容会被丢弃，已设置的容量、超时及单例控制会应用到新的各段
+	 * 
+	 * @param segments 分段数，会调整为不大于{@link #MAX_SEGMENTS}的2的幂
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized void setSegments(int segments) {
+		int count = toSegments(segments);
+		PersistentCache<E>[] caches = new PersistentCache[count];
+		for (int i = 0; i < count; i++) {
+			caches[i] = newSegment(1 == count ? m_Name : (m_Name + "#" + i), i);
+		}
+		applyEviction(caches);
+		for (PersistentCache<E> c : caches) {
+			applySettings(c);
+		}
+		m_Segments = caches;
+	}
+
+	private void applySettings(PersistentCache<E> c) {
+		if (m_Timeout >= 0) {
+			c.setTimeout(m_Timeout);
+		}
+		if (m_NullTimeout >= 0) {
+			c.setNullTimeout(m_NullTimeout);
+		}
+		if (null != m_Reachable) {
+			c.setReachable(m_Reachable);
+		}
+	}
+
+	public int getSegmentCount() {
+		return m_Segments.length;
+	}
+
+	/**
+	 * 各段的缓存
+	 * 
+	 * @return 缓存数组（不要修改）
+	 */
+	public PersistentCache<E>[] getSegments() {
+		return m_Segments;
+	}
+
+	/**
+	 * 缓存项所在的段
+	 * 
+	 * @param ordinal 缓存项标识
+	 * @return 段的缓存
+	 */
+	public PersistentCache<E> segmentFor(String ordinal) {
+		PersistentCache<E>[] caches = m_Segments;
+		if (1 == caches.length) {
+			return caches[0];
+		}
+		// 用hash的高位选段，避免与段内节点表使用的低位重叠
+		int h = ordinal.hashCode() * 0x9E3779B9;
+		return caches[h >>> (32 - Integer.numberOfTrailingZeros(caches.length))];
+	}
+
+	/**
+	 * 由缓存取得对象，不加载
+	 * 
+	 * @param ordinal 缓存项标识
+	 * @return 没有则返回null
+	 */
+	public E get(String ordinal) {
+		PersistentCache<E> c = segmentFor(ordinal);
+		E value = c.get(ordinal);
+		if (null == value) {
+			c.onMiss(ordinal);
+		} else {
+			c.onHit(ordinal);
+		}
+		return value;
+	}
+
+	/**
+	 * 由缓存取得对象，不加载也不计入命中统计
+	 * 
+	 * @param ordinal 缓存项标识
+	 * @return 没有则返回null
+	 */
+	public E peek(String ordinal) {
+		return segmentFor(ordinal).get(ordinal);
+	}
+
+	/**
+	 * 取回已淘汰但仍被引用的对象
+	 * 
+	 * @param ordinal 缓存项标识
+	 * @return 没有或已回收返回null
+	 * @see PersistentCache#reclaim(String)
+	 */
+	public PersistentCache<E>.EvictedRef reclaim(String ordinal) {
+		return segmentFor(ordinal).reclaim(ordinal);
+	}
+
+	public E put(String ordinal, E value) {
+		PersistentCache<E> c = segmentFor(ordinal);
+		E old = c.put(ordinal, value);
+		c.admit(ordinal, value);
+		return old;
+	}
+
+	public E putIfAbsent(String ordinal, E value) {
+		PersistentCache<E> c = segmentFor(ordinal);
+		E cached = c.putIfAbsent(ordinal, value);
+		if (null == cached || cached == value) {
+			c.admit(ordinal, value);
+		}
+		return cached;
+	}
+
+	public E remove(String ordinal) {
+		return segmentFor(ordinal).remove(ordinal);
+	}
+
+	public void removeAll() {
+		for (PersistentCache<E> c : m_Segments) {
+			c.removeAll();
+			EvictionPolicy policy = c.getEvictionPolicy();
+			if (null != policy) {
+				policy.clear();
+			}
+		}
+	}
+
+	public E getHintLoad(String ordinal, LruCache.Loader<String, E> loader) {
+		PersistentCache<E> c = segmentFor(ordinal);
+		E value = c.get(ordinal);
+		if (null != value) {
+			c.onHit(ordinal);
+			return value;
+		}
+		c.onMiss(ordinal);
+		value = c.getHintLoad(ordinal, loader);
+		c.admit(ordinal, value);
+		return value;
+	}
+
+	public E getAndLoad(String ordinal, LruCache.Loader<String, E> loader, int expire) {
+		PersistentCache<E> c = segmentFor(ordinal);
+		E value = c.get(ordinal);
+		if (null != value) {
+			c.onHit(ordinal);
+			return value;
+		}
+		c.onMiss(ordinal);
+		value = c.getAndLoad(ordinal, loader, expire);
+		c.admit(ordinal, value);
+		return value;
+	}
+
+	public boolean isDirty(String ordinal) {
+		return segmentFor(ordinal).isDirty(ordinal);
+	}
+
+	public String getVersion(String ordinal) {
+		return segmentFor(ordinal).getVersion(ordinal);
+	}
+
+	public String updateVersion(String ordinal, E value, String version) {
+		return segmentFor(ordinal).updateVersion(ordinal, value, version);
+	}
+
+	PersistentCache<E>.PersistNode updating(E object) {
+		String ordinal = object.getPersistenceId().getOrdinal();
+		PersistentCache<E> c = segmentFor(ordinal);
+		PersistentCache<E>.PersistNode node = c.updating(object);
+		c.admit(ordinal, object, true);
+		return node;
+	}
+
+	PersistentCache<E>.PersistNode flush(E object) {
+		return segmentFor(object.getPersistenceId().getOrdinal()).flush(object);
+	}
+
+	public int getNullTimeout() {
+		return m_Segments[0].getNullTimeout();
+	}
+
+	public synchronized void setNullTimeout(int seconds) {
+		m_NullTimeout = seconds;
+		for (PersistentCache<E> c : m_Segments) {
+			c.setNullTimeout(seconds);
+		}
+	}
+
+	public synchronized void setTimeout(int seconds) {
+		m_Timeout = seconds;
+		for (PersistentCache<E> c : m_Segments) {
+			c.setTimeout(seconds);
+		}
+	}
+
+	public synchronized void setReachable(boolean enabled) {
+		m_Reachable = enabled;
+		for (PersistentCache<E> c : m_Segments) {
+			c.setReachable(enabled);
+		}
+	}
+
+	/**
+	 * 命中次数
+	 * 
+	 * @return 各段累计
+	 */
+	public long getHitCount() {
+		long count = 0;
+		for (PersistentCache<E> c : m_Segments) {
+			count += c.getHitCount();
+		}
+		return count;
+	}
+
+	/**
+	 * 未命中次数
+	 * 
+	 * @return 各段累计
+	 */
+	public long getMissCount() {
+		long count = 0;
+		for (PersistentCache<E> c : m_Segments) {
+			count += c.getMissCount();
+		}
+		return count;
+	}
+
+	/**
+	 * 被淘汰策略淘汰的次数
+	 * 
+	 * @return 各段累计
+	 */
+	public long getEvictionCount() {
+		long count = 0;
+		for (PersistentCache<E> c : m_Segments) {
+			count += c.getEvictionCount();
+		}
+		return count;
+	}
+
+	/**
+	 * 淘汰策略跟踪的总权重
+	 * 
+	 * @return 未设置容量时返回0
+	 */
+	public long getWeightedSize() {
+		long weight = 0;
+		for (PersistentCache<E> c : m_Segments) {
+			EvictionPolicy policy = c.getEvictionPolicy();
+			if (null != policy) {
+				weight += policy.getWeight();
+			}
+		}
+		return weight;
+	}
+
+	@Override
+	public void onGcCleanup(int policy) {
+		for (PersistentCache<E> c : m_Segments) {
+			c.onGcCleanup(policy);
+			EvictionPolicy eviction = c.getEvictionPolicy();
+			if (null != eviction) {
+				eviction.cleanUp();
+			}
+		}
+	}
+
+	/* 调整为2的幂 */
+	private static int toSegments(int segments) {
+		if (segments <= 1) {
+			return 1;
+		}
+		if (segments >= MAX_SEGMENTS) {
+			return MAX_SEGMENTS;
+		}
+		return Integer.highestOneBit(segments - 1) << 1;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{n:").append(m_Name).append(",s:").append(m_Segments.length);
+		sb.append(",h:").append(getHitCount()).append(",m:").append(getMissCount());
+		if (m_Maximum > 0) {
+			sb.append(",max:").append(m_Maximum).append(",w:").append(getWeightedSize())
+					.append(",e:").append(getEvictionCount());
+		}
+		sb.append(",c:[");
+		PersistentCache<E>[] caches = m_Segments;
+		for (int i = 0; i < caches.length; i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append(caches[i]);
+		}
+		sb.append("]}");
+		return sb.toString();
+	}
+}
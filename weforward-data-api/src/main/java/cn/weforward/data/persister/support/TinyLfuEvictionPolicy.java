@@ -0,0 +1,471 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.data.persister.support;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * W-TinyLFU淘汰策略
+ * <p>
+ * 新进入的项先放在占容量1%的窗口LRU，溢出窗口的项作为候选进入主区（分试用区与保护区的SLRU），主区超出容量时由频率草图（4位计数的Count-Min
+ * Sketch，周期减半老化）比较候选与试用区最久未访问项的访问频率，频率低的被淘汰，以此阻止偶发的扫描性访问冲掉热点项
+ * <p>
+ * 命中访问不加锁，先记入按线程分条的环形读缓冲（有界，满或争用时丢弃记录），在写操作（onPut/onPinned等）或整理时于锁内批量处理
+ * 
+ * @author liangyi
+ *
+ */
+public class TinyLfuEvictionPolicy implements EvictionPolicy {
+	/** 窗口区占的比例（百分比） */
+	protected static final int WINDOW_PERCENT = 1;
+	/** 保护区占主区的比例（百分比） */
+	protected static final int PROTECTED_PERCENT = 80;
+	/** 读缓冲的分条数（不小于CPU数的2的幂，最多16） */
+	protected static final int READ_STRIPES = Math.min(16,
+			Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1));
+
+	/** 最大总权重 */
+	protected final long m_Maximum;
+	/** 窗口区最大权重 */
+	protected final long m_WindowMaximum;
+	/** 保护区最大权重 */
+	protected final long m_ProtectedMaximum;
+	/** 窗口区（按访问顺序，最久未访问的在前） */
+	protected final LinkedHashMap<String, Integer> m_Window;
+	/** 试用区 */
+	protected final LinkedHashMap<String, Integer> m_Probation;
+	/** 保护区 */
+	protected final LinkedHashMap<String, Integer> m_Protected;
+	/** 各区的权重 */
+	protected long m_WindowWeight;
+	protected long m_ProbationWeight;
+	protected long m_ProtectedWeight;
+	/** 访问频率草图 */
+	protected final FrequencySketch m_Sketch;
+	/** 命中访问的读缓冲 */
+	protected final ReadStripe[] m_ReadBuffer;
+	/** 是否有线程因读缓冲已满在处理 */
+	protected final AtomicBoolean m_Draining;
+
+	/**
+	 * 构造
+	 * 
+	 * @param maximum 最大总权重
+	 */
+	public TinyLfuEvictionPolicy(long maximum) {
+		if (maximum <= 0) {
+			throw new IllegalArgumentException("maximum必须大于0");
+		}
+		m_Maximum = maximum;
+		m_WindowMaximum = Math.max(1, maximum * WINDOW_PERCENT / 100);
+		m_ProtectedMaximum = (maximum - m_WindowMaximum) * PROTECTED_PERCENT / 100;
+		m_Window = new LinkedHashMap<>(16, 0.75f, true);
+		m_Probation = new LinkedHashMap<>(16, 0.75f, true);
+		m_Protected = new LinkedHashMap<>(16, 0.75f, true);
+		m_Sketch = new FrequencySketch(maximum);
+		m_ReadBuffer = new ReadStripe[READ_STRIPES];
+		for (int i = 0; i < m_ReadBuffer.length; i++) {
+			m_ReadBuffer[i] = new ReadStripe();
+		}
+		m_Draining = new AtomicBoolean();
+	}
+
+	@Override
+	public void onAccess(String key) {
+		ReadStripe stripe = m_ReadBuffer[probe() & (m_ReadBuffer.length - 1)];
+		if (stripe.offer(key)) {
+			return;
+		}
+		// 所在分条已满，只由一个线程处理，其它的丢弃记录
+		if (m_Draining.compareAndSet(false, true)) {
+			try {
+				synchronized (this) {
+					drainReads();
+					recordAccess(key);
+				}
+			} finally {
+				m_Draining.set(false);
+			}
+		}
+	}
+
+	/**
+	 * 处理读缓冲中的访问记录
+	 */
+	@Override
+	public synchronized void cleanUp() {
+		drainReads();
+	}
+
+	/* 处理读缓冲中的访问记录（需在锁内） */
+	private void drainReads() {
+		for (ReadStripe stripe : m_ReadBuffer) {
+			String key;
+			while (null != (key = stripe.poll())) {
+				recordAccess(key);
+			}
+		}
+	}
+
+	/* 记录访问（需在锁内） */
+	private void recordAccess(String key) {
+		m_Sketch.increment(key);
+		if (null != m_Window.get(key) || null != m_Protected.get(key)) {
+			// get已调整访问顺序
+			return;
+		}
+		Integer weight = m_Probation.remove(key);
+		if (null != weight) {
+			// 试用区再次访问，晋升到保护区
+			m_ProbationWeight -= weight;
+			m_Protected.put(key, weight);
+			m_ProtectedWeight += weight;
+			demoteProtected();
+		}
+	}
+
+	@Override
+	public synchronized List<String> onPut(String key, int weight) {
+		if (weight < 1) {
+			weight = 1;
+		}
+		drainReads();
+		if (replace(m_Window, key, weight)) {
+			m_Sketch.increment(key);
+			return evict();
+		}
+		if (replace(m_Probation, key, weight) || replace(m_Protected, key, weight)) {
+			recordAccess(key);
+			return evict();
+		}
+		m_Sketch.increment(key);
+		m_Window.put(key, weight);
+		m_WindowWeight += weight;
+		return evict();
+	}
+
+	@Override
+	public synchronized void onPinned(String key, int weight) {
+		if (weight < 1) {
+			weight = 1;
+		}
+		drainReads();
+		if (m_Window.containsKey(key) || m_Probation.containsKey(key)
+				|| m_Protected.containsKey(key)) {
+			return;
+		}
+		// 放到保护区，避免很快又被选为淘汰项
+		m_Protected.put(key, weight);
+		m_ProtectedWeight += weight;
+	}
+
+	@Override
+	public synchronized void onRemove(String key) {
+		Integer weight = m_Window.remove(key);
+		if (null != weight) {
+			m_WindowWeight -= weight;
+			return;
+		}
+		weight = m_Probation.remove(key);
+		if (null != weight) {
+			m_ProbationWeight -= weight;
+			return;
+		}
+		weight = m_Protected.remove(key);
+		if (null != weight) {
+			m_ProtectedWeight -= weight;
+		}
+	}
+
+	@Override
+	public synchronized void clear() {
+		drainReads();
+		m_Window.clear();
+		m_Probation.clear();
+		m_Protected.clear();
+		m_WindowWeight = 0;
+		m_ProbationWeight = 0;
+		m_ProtectedWeight = 0;
+	}
+
+	@Override
+	public synchronized int size() {
+		return m_Window.size() + m_Probation.size() + m_Protected.size();
+	}
+
+	@Override
+	public synchronized long getWeight() {
+		return m_WindowWeight + m_ProbationWeight + m_ProtectedWeight;
+	}
+
+	@Override
+	public long getMaximum() {
+		return m_Maximum;
+	}
+
+	/**
+	 * 取得项的访问频率估值
+	 * 
+	 * @param key 缓存项标识
+	 * @return 频率（0~15）
+	 */
+	public synchronized int frequency(String key) {
+		drainReads();
+		return m_Sketch.frequency(key);
+	}
+
+	/* 替换已有项的权重 */
+	private boolean replace(LinkedHashMap<String, Integer> region, String key, int weight) {
+		Integer old = region.get(key);
+		if (null == old) {
+			return false;
+		}
+		region.put(key, weight);
+		int diff = weight - old;
+		if (region == m_Window) {
+			m_WindowWeight += diff;
+		} else if (region == m_Probation) {
+			m_ProbationWeight += diff;
+		} else {
+			m_ProtectedWeight += diff;
+		}
+		return true;
+	}
+
+	/* 保护区超出时把最久未访问的降到试用区 */
+	private void demoteProtected() {
+		while (m_ProtectedWeight > m_ProtectedMaximum && m_Protected.size() > 1) {
+			Map.Entry<String, Integer> eldest = m_Protected.entrySet().iterator().next();
+			m_Protected.remove(eldest.getKey());
+			m_ProtectedWeight -= eldest.getValue();
+			m_Probation.put(eldest.getKey(), eldest.getValue());
+			m_ProbationWeight += eldest.getValue();
+		}
+	}
+
+	/* 执行淘汰决策，返回需淘汰的项（已由策略中移除） */
+	private List<String> evict() {
+		List<String> candidates = null;
+		// 溢出窗口的项作为候选进入试用区
+		while (m_WindowWeight > m_WindowMaximum && m_Window.size() > 1) {
+			Map.Entry<String, Integer> eldest = m_Window.entrySet().iterator().next();
+			m_Window.remove(eldest.getKey());
+			m_WindowWeight -= eldest.getValue();
+			m_Probation.put(eldest.getKey(), eldest.getValue());
+			m_ProbationWeight += eldest.getValue();
+			if (null == candidates) {
+				candidates = new ArrayList<>();
+			}
+			candidates.add(eldest.getKey());
+		}
+		if (getWeight() <= m_Maximum) {
+			return Collections.emptyList();
+		}
+		List<String> victims = new ArrayList<>();
+		int next = 0;
+		while (getWeight() > m_Maximum) {
+			String victim = eldest(m_Probation);
+			if (null == victim) {
+				// 试用区已空，由保护区或窗口区淘汰
+				victim = eldest(m_Protected);
+				if (null == victim) {
+					victim = eldest(m_Window);
+				}
+				if (null == victim) {
+					break;
+				}
+				onRemove(victim);
+				victims.add(victim);
+				continue;
+			}
+			String candidate = null;
+			while (null != candidates && next < candidates.size()) {
+				String c = candidates.get(next++);
+				if (!c.equals(victim) && m_Probation.containsKey(c)) {
+					candidate = c;
+					break;
+				}
+			}
+			if (null != candidate && m_Sketch.frequency(candidate) > m_Sketch.frequency(victim)) {
+				// 候选的频率较高，淘汰原来的项
+				onRemove(victim);
+				victims.add(victim);
+			} else {
+				// 不准入候选（或没有候选时淘汰最久未访问项）
+				String v = (null == candidate) ? victim : candidate;
+				onRemove(v);
+				victims.add(v);
+			}
+		}
+		return victims;
+	}
+
+	private static String eldest(LinkedHashMap<String, Integer> region) {
+		Iterator<String> it = region.keySet().iterator();
+		return it.hasNext() ? it.next() : null;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "{max:" + m_Maximum + ",w:" + m_WindowWeight + ",p:" + m_ProbationWeight + ",s:"
+				+ m_ProtectedWeight + ",c:" + size() + "}";
+	}
+
+	/* 当前线程所用的读缓冲分条 */
+	private static int probe() {
+		long id = Thread.currentThread().getId();
+		return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32);
+	}
+
+	/**
+	 * 读缓冲的一个分条，多写单读的有界环形缓冲，满或写入争用时丢弃
+	 * 
+	 * @author liangyi
+	 *
+	 */
+	protected static class ReadStripe {
+		/** 环的大小（2的幂） */
+		static final int SIZE = 16;
+		static final int MASK = SIZE - 1;
+
+		final AtomicReferenceArray<String> m_Slots = new AtomicReferenceArray<>(SIZE);
+		/** 已写入的位置 */
+		final AtomicLong m_Write = new AtomicLong();
+		/** 已读取的位置（只在锁内修改） */
+		volatile long m_Read;
+
+		/**
+		 * 记入访问
+		 * 
+		 * @param key 缓存项标识
+		 * @return 已满返回false，写入争用时丢弃但仍返回true
+		 */
+		boolean offer(String key) {
+			long tail = m_Write.get();
+			if (tail - m_Read >= SIZE) {
+				return false;
+			}
+			if (m_Write.compareAndSet(tail, tail + 1)) {
+				m_Slots.lazySet((int) tail & MASK, key);
+			}
+			return true;
+		}
+
+		/**
+		 * 取出一项（只在锁内调用）
+		 * 
+		 * @return 没有（或写入者还未放入）返回null
+		 */
+		String poll() {
+			long head = m_Read;
+			if (head >= m_Write.get()) {
+				return null;
+			}
+			int index = (int) head & MASK;
+			String key = m_Slots.get(index);
+			if (null == key) {
+				return null;
+			}
+			m_Slots.lazySet(index, null);
+			m_Read = head + 1;
+			return key;
+		}
+	}
+
+	/**
+	 * 4位计数的Count-Min Sketch，每个long存16个计数器，每个键使用同一个long中的4个计数器，累计次数达到采样数时全部减半
+	 * 
+	 * @author liangyi
+	 *
+	 */
+	protected static class FrequencySketch {
+		static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L,
+				0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+		static final long RESET_MASK = 0x7777777777777777L;
+		/** 表的最大长度 */
+		static final int MAX_TABLE = 1 << 16;
+
+		final long[] m_Table;
+		final int m_Mask;
+		final int m_SampleSize;
+		int m_Size;
+
+		FrequencySketch(long maximum) {
+			int len = (int) Math.min(maximum, MAX_TABLE);
+			len = (len <= 16) ? 16 : Integer.highestOneBit(len - 1) << 1;
+			m_Table = new long[len];
+			m_Mask = len - 1;
+			m_SampleSize = 10 * len;
+		}
+
+		int frequency(String key) {
+			int hash = spread(key.hashCode());
+			int start = (hash & 3) << 2;
+			int frequency = Integer.MAX_VALUE;
+			for (int i = 0; i < 4; i++) {
+				int index = indexOf(hash, i);
+				int count = (int) ((m_Table[index] >>> ((start + i) << 2)) & 0xfL);
+				frequency = Math.min(frequency, count);
+			}
+			return frequency;
+		}
+
+		void increment(String key) {
+			int hash = spread(key.hashCode());
+			int start = (hash & 3) << 2;
+			boolean added = false;
+			for (int i = 0; i < 4; i++) {
+				added |= incrementAt(indexOf(hash, i), start + i);
+			}
+			if (added && ++m_Size >= m_SampleSize) {
+				reset();
+			}
+		}
+
+		private boolean incrementAt(int i, int j) {
+			int offset = j << 2;
+			long mask = (0xfL << offset);
+			if ((m_Table[i] & mask) != mask) {
+				m_Table[i] += (1L << offset);
+				return true;
+			}
+			return false;
+		}
+
+		/* 老化，所有计数减半 */
+		private void reset() {
+			for (int i = 0; i < m_Table.length; i++) {
+				m_Table[i] = (m_Table[i] >>> 1) & RESET_MASK;
+			}
+			m_Size = (m_Size >>> 1);
+		}
+
+		private int indexOf(int item, int i) {
+			long hash = (item + SEEDS[i]) * SEEDS[i];
+			hash += (hash >>> 32);
+			return ((int) hash) & m_Mask;
+		}
+
+		private static int spread(int x) {
+			x = ((x >>> 16) ^ x) * 0x45d9f3b;
+			x = ((x >>> 16) ^ x) * 0x45d9f3b;
+			return (x >>> 16) ^ x;
+		}
+	}
+}
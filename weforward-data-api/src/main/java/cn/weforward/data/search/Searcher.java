@@ -10,7 +10,9 @@
  */
 package cn.weforward.data.search;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import cn.weforward.common.Nameable;
 
@@ -45,6 +47,21 @@ public interface Searcher extends Nameable {
 	 */
 	boolean removeElement(String elementKey);
 
+	/**
+	 * 批量更新/创建索引条目，关键词表为空的条目将被删除
+	 * 
+	 * @param elements 要索引的条目及其关联的关键词表
+	 */
+	void updateElements(Map<? extends IndexElement, ? extends List<? extends IndexKeyword>> elements);
+
+	/**
+	 * 批量删除索引条目
+	 * 
+	 * @param elementKeys 索引项目的标识
+	 * @return 在索引中且被删除的条目数
+	 */
+	int removeElements(Collection<String> elementKeys);
+
 	/**
 	 * 搜索符合指定关键词表的条目
 	 * 
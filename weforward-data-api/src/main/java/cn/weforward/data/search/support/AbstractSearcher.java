@@ -11,7 +11,9 @@
 package cn.weforward.data.search.support;
 
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import cn.weforward.data.search.IndexElement;
 import cn.weforward.data.search.IndexKeyword;
@@ -47,6 +49,24 @@ public abstract class AbstractSearcher implements Searcher {
 		updateElement(element, IndexKeywordHelper.toKeywords(keyword));
 	}
 
+	@Override
+	public void updateElements(Map<? extends IndexElement, ? extends List<? extends IndexKeyword>> elements) {
+		for (Map.Entry<? extends IndexElement, ? extends List<? extends IndexKeyword>> e : elements.entrySet()) {
+			updateElement(e.getKey(), e.getValue());
+		}
+	}
+
+	@Override
+	public int removeElements(Collection<String> elementKeys) {
+		int count = 0;
+		for (String key : elementKeys) {
+			if (removeElement(key)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
 	@Override
 	public IndexResults search(SearchOption options, String... keyword) {
 		if (null == keyword) {
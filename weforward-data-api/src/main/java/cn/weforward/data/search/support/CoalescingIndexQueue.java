@@ -0,0 +1,293 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.data.search.support;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cn.weforward.common.DestroyableExt;
+import cn.weforward.common.sys.Shutdown;
+import cn.weforward.data.search.IndexElement;
+import cn.weforward.data.search.IndexKeyword;
+import cn.weforward.data.search.Searcher;
+
+/**
+ * 合并重复项的异步索引队列
+ * <p>
+ * 索引条目的更新/删除先按条目标识放入待处理表（同一条目只保留最后一次），由后台线程定时或累积到批量项数时以
+ * {@link Searcher#updateElements(Map)}/{@link Searcher#removeElements(java.util.Collection)}批量提交
+ * 
+ * @author daibo
+ *
+ */
+public class CoalescingIndexQueue implements Runnable, DestroyableExt {
+	/** 日志记录器 */
+	final static Logger _Logger = LoggerFactory.getLogger(CoalescingIndexQueue.class);
+
+	/** 删除标记 */
+	static final Pending REMOVED = new Pending(null, null);
+
+	/** 索引器 */
+	protected final Searcher m_Searcher;
+	/** 待处理项（条目标识-最后的更新） */
+	protected final ConcurrentHashMap<String, Pending> m_Pendings = new ConcurrentHashMap<String, Pending>();
+	/** 每批最多项数 */
+	protected int m_BatchSize = 500;
+	/** 提交间隔（毫秒） */
+	protected int m_Interval = 1000;
+	/** 最多待处理项数，超出时放入方等待 */
+	protected int m_MaxPending = 100000;
+	/** 后台线程 */
+	protected Thread m_Thread;
+	/** 已停止 */
+	protected volatile boolean m_Stop;
+
+	/**
+	 * 构造队列
+	 * 
+	 * @param searcher 索引器
+	 */
+	public CoalescingIndexQueue(Searcher searcher) {
+		m_Searcher = searcher;
+	}
+
+	/**
+	 * 每批最多项数
+	 * 
+	 * @param size 项数
+	 */
+	public void setBatchSize(int size) {
+		m_BatchSize = Math.max(1, size);
+	}
+
+	/**
+	 * 提交间隔
+	 * 
+	 * @param mills 毫秒
+	 */
+	public void setInterval(int mills) {
+		m_Interval = Math.max(1, mills);
+	}
+
+	/**
+	 * 最多待处理项数
+	 * 
+	 * @param max 项数
+	 */
+	public void setMaxPending(int max) {
+		m_MaxPending = max;
+	}
+
+	/**
+	 * 待处理项数
+	 * 
+	 * @return 项数
+	 */
+	public int getPending() {
+		return m_Pendings.size();
+	}
+
+	/**
+	 * 启动后台线程
+	 */
+	public synchronized void start() {
+		if (null != m_Thread) {
+			return;
+		}
+		m_Stop = false;
+		m_Thread = new Thread(this, "indexqueue-" + m_Searcher.getName());
+		m_Thread.setDaemon(true);
+		m_Thread.start();
+		Shutdown.register(this);
+	}
+
+	/**
+	 * 更新/创建索引条目
+	 * 
+	 * @param element  要索引的条目
+	 * @param keywords 条目所关联的关键词表，为空则删除
+	 */
+	public void updateElement(IndexElement element, List<? extends IndexKeyword> keywords) {
+		put(element.getKey(), new Pending(element, keywords));
+	}
+
+	/**
+	 * 删除索引条目
+	 * 
+	 * @param elementKey 索引项目的标识
+	 */
+	public void removeElement(String elementKey) {
+		put(elementKey, REMOVED);
+	}
+
+	private void put(String key, Pending pending) {
+		if (m_Stop) {
+			// 已停止，直接提交
+			Map<String, Pending> one = new LinkedHashMap<String, Pending>(1);
+			one.put(key, pending);
+			submit(one);
+			return;
+		}
+		m_Pendings.put(key, pending);
+		int size = m_Pendings.size();
+		if (size >= m_BatchSize) {
+			synchronized (this) {
+				notifyAll();
+				while (m_MaxPending > 0 && m_Pendings.size() > m_MaxPending && !m_Stop) {
+					// 待处理项过多，等待
+					try {
+						wait(m_Interval);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	@Override
+	public void run() {
+		for (;;) {
+			try {
+				synchronized (this) {
+					if (m_Pendings.size() < m_BatchSize && !m_Stop) {
+						wait(m_Interval);
+					}
+				}
+				flush();
+				if (m_Stop && m_Pendings.isEmpty()) {
+					break;
+				}
+			} catch (InterruptedException e) {
+				if (!m_Stop) {
+					_Logger.warn("忽略中断", e);
+				}
+			} catch (Throwable e) {
+				_Logger.error("提交索引异常 " + m_Searcher.getName(), e);
+				if (m_Stop) {
+					break;
+				}
+				try {
+					Thread.sleep(m_Interval);
+				} catch (InterruptedException ee) {
+					// 继续
+				}
+			}
+		}
+	}
+
+	/**
+	 * 提交所有待处理项
+	 */
+	public void flush() {
+		while (!m_Pendings.isEmpty()) {
+			Map<String, Pending> batch = new LinkedHashMap<String, Pending>();
+			Iterator<Map.Entry<String, Pending>> it = m_Pendings.entrySet().iterator();
+			while (it.hasNext() && batch.size() < m_BatchSize) {
+				Map.Entry<String, Pending> e = it.next();
+				String key = e.getKey();
+				Pending p = m_Pendings.remove(key);
+				if (null != p) {
+					batch.put(key, p);
+				}
+			}
+			try {
+				submit(batch);
+			} catch (RuntimeException e) {
+				// 放回未被更新覆盖的项，稍后重试
+				for (Map.Entry<String, Pending> p : batch.entrySet()) {
+					m_Pendings.putIfAbsent(p.getKey(), p.getValue());
+				}
+				throw e;
+			}
+			synchronized (this) {
+				notifyAll();
+			}
+		}
+	}
+
+	private void submit(Map<String, Pending> batch) {
+		Map<IndexElement, List<? extends IndexKeyword>> updates = new LinkedHashMap<IndexElement, List<? extends IndexKeyword>>();
+		List<String> removes = new ArrayList<String>();
+		for (Map.Entry<String, Pending> e : batch.entrySet()) {
+			Pending p = e.getValue();
+			if (REMOVED == p) {
+				removes.add(e.getKey());
+			} else {
+				updates.put(p.element, p.keywords);
+			}
+		}
+		if (!updates.isEmpty()) {
+			m_Searcher.updateElements(updates);
+		}
+		if (!removes.isEmpty()) {
+			m_Searcher.removeElements(removes);
+		}
+	}
+
+	@Override
+	public boolean destroySignal() {
+		m_Stop = true;
+		synchronized (this) {
+			notifyAll();
+		}
+		return !m_Pendings.isEmpty();
+	}
+
+	/**
+	 * 停止并提交剩余的待处理项
+	 */
+	@Override
+	public void destroy() {
+		Thread thread;
+		synchronized (this) {
+			m_Stop = true;
+			notifyAll();
+			thread = m_Thread;
+			m_Thread = null;
+		}
+		if (null != thread) {
+			try {
+				thread.join(30 * 1000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		flush();
+	}
+
+	@Override
+	public String toString() {
+		return "{n:" + m_Searcher.getName() + ",p:" + m_Pendings.size() + ",b:" + m_BatchSize + ",i:" + m_Interval
+				+ "}";
+	}
+
+	/**
+	 * 待处理的更新
+	 */
+	static class Pending {
+		final IndexElement element;
+		final List<? extends IndexKeyword> keywords;
+
+		Pending(IndexElement element, List<? extends IndexKeyword> keywords) {
+			this.element = element;
+			this.keywords = keywords;
+		}
+	}
+}
@@ -1,7 +1,9 @@
 package cn.weforward.data.search.support;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import cn.weforward.data.search.IndexElement;
 import cn.weforward.data.search.IndexKeyword;
@@ -79,6 +81,22 @@ public class MultiSearcherFactory extends AbstractSearcherFactory {
 			return isok;
 		}
 
+		@Override
+		public void updateElements(Map<? extends IndexElement, ? extends List<? extends IndexKeyword>> elements) {
+			for (Searcher f : m_Finders) {
+				f.updateElements(elements);
+			}
+		}
+
+		@Override
+		public int removeElements(Collection<String> elementKeys) {
+			int count = 0;
+			for (Searcher f : m_Finders) {
+				count = Math.max(count, f.removeElements(elementKeys));
+			}
+			return count;
+		}
+
 		@Override
 		public IndexResults search(SearchOption options, String... keyword) {
 			return getMain().search(options, keyword);
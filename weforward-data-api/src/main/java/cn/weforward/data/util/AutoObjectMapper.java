@@ -43,6 +43,7 @@ import cn.weforward.common.sys.StackTracer;
 import cn.weforward.common.util.NumberUtil;
 import cn.weforward.common.util.StringUtil;
 import cn.weforward.data.UniteId;
+import cn.weforward.data.persister.Condition;
 import cn.weforward.protocol.datatype.DtBase;
 import cn.weforward.protocol.datatype.DtBoolean;
 import cn.weforward.protocol.datatype.DtDate;
@@ -114,6 +115,29 @@ public abstract class AutoObjectMapper<E> extends AbstractObjectMapper<E> {
 	 */
 	public abstract Enumeration<String> getIndexAttributeNames(int maxdeepin);
 
+	/**
+	 * 获取属性的类型，默认返回null（未知），子类可覆盖
+	 * 
+	 * @param name 属性名，多层级的以{@link Condition#FIELD_SPEARATOR}分隔，如a.b
+	 * @return 属性的类型，没有该属性或未知返回null
+	 */
+	public Class<?> getAttributeType(String name) {
+		return null;
+	}
+
+	/* 按分隔符拆分多层级的属性名 */
+	protected static String[] splitAttributeName(String name) {
+		List<String> parts = new ArrayList<>();
+		int begin = 0;
+		int end;
+		while ((end = name.indexOf(Condition.FIELD_SPEARATOR, begin)) >= 0) {
+			parts.add(name.substring(begin, end));
+			begin = end + 1;
+		}
+		parts.add(name.substring(begin));
+		return parts.toArray(new String[parts.size()]);
+	}
+
 	@SuppressWarnings("unchecked")
 	public static <E> Constructor<E> getConstructor(Class<E> clazz, Object[] parameters) {
 		try {
@@ -0,0 +1,45 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.data.util;
+
+import java.util.List;
+
+/**
+ * 可合并批量刷写的项，同一刷写周期内分组相同的项由分组一次刷写
+ * 
+ * @author liangyi
+ * 
+ */
+public interface BatchFlushable extends Flushable {
+	/**
+	 * 所属的批量刷写分组
+	 * 
+	 * @return 分组，为null则逐项刷写
+	 */
+	Group getFlushGroup();
+
+	/**
+	 * 批量刷写分组
+	 * 
+	 * @author liangyi
+	 *
+	 */
+	interface Group {
+		/**
+		 * 批量刷写
+		 * 
+		 * @param items 待刷写项
+		 * @return 刷写失败的项，全部成功返回空表或null
+		 * @throws Exception 整批失败时抛出
+		 */
+		List<? extends Flushable> flush(List<BatchFlushable> items) throws Exception;
+	}
+}
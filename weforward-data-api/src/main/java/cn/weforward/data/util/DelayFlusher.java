@@ -11,6 +11,10 @@
 package cn.weforward.data.util;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
@@ -25,6 +29,7 @@ import cn.weforward.common.sys.Shutdown;
 import cn.weforward.common.sys.StackTracer;
 import cn.weforward.common.util.SinglyLinked;
 import cn.weforward.data.exception.WrapToDataAccessException;
+import cn.weforward.data.metrics.Metrics;
 
 /**
  * 延时及周期执行刷写动作的刷写器
@@ -95,6 +100,17 @@ public class DelayFlusher implements Flusher, DestroyableExt {
 	final protected int m_FlushPeriod;
 	/** 最后周期刷写时间戳 */
 	protected volatile long m_LastPeriodFlush;
+	/** 延时队列中最早的项进入的时间戳 */
+	protected volatile long m_FirstMark;
+
+	/** 指标 */
+	protected Metrics m_Metrics = Metrics.NONE;
+	/** 每次刷写的项数 */
+	protected Metrics.Recorder m_BatchSize = Metrics.Recorder.NONE;
+	/** 由标记到刷写完成的耗时（毫秒，以每次刷写中最早标记的项计） */
+	protected Metrics.Recorder m_FlushLatency = Metrics.Recorder.NONE;
+	/** 刷写出错次数 */
+	protected Metrics.Recorder m_FlushErrors = Metrics.Recorder.NONE;
 
 	/**
 	 * 构造刷写器，5秒延时
@@ -140,6 +156,57 @@ public class DelayFlusher implements Flusher, DestroyableExt {
 		return m_MaxSuspend;
 	}
 
+	/**
+	 * 设置记录指标，指标名以flusher.&lt;name&gt;.为前缀：delay/fail为队列深度，batch为每次刷写的项数，latency为由标记到刷写完成的毫秒数，error为出错次数
+	 * 
+	 * @param metrics
+	 *            指标，为null则不记录
+	 */
+	public void setMetrics(Metrics metrics) {
+		if (null == metrics) {
+			metrics = Metrics.NONE;
+		}
+		String prefix = "flusher." + getName() + ".";
+		metrics.gauge(prefix + "delay", new Metrics.Gauge() {
+			@Override
+			public long getValue() {
+				return m_DelayList.size();
+			}
+		});
+		metrics.gauge(prefix + "fail", new Metrics.Gauge() {
+			@Override
+			public long getValue() {
+				return m_FailList.size();
+			}
+		});
+		m_BatchSize = metrics.histogram(prefix + "batch");
+		m_FlushLatency = metrics.histogram(prefix + "latency");
+		m_FlushErrors = metrics.counter(prefix + "error");
+		m_Metrics = metrics;
+	}
+
+	public Metrics getMetrics() {
+		return m_Metrics;
+	}
+
+	/**
+	 * 延时队列的项数
+	 * 
+	 * @return 项数
+	 */
+	public int getQueueSize() {
+		return m_DelayList.size();
+	}
+
+	/**
+	 * 出错列表的项数
+	 * 
+	 * @return 项数
+	 */
+	public int getFailSize() {
+		return m_FailList.size();
+	}
+
 	/**
 	 * 标记刷写出错项
 	 * 
@@ -166,6 +233,7 @@ public class DelayFlusher implements Flusher, DestroyableExt {
 					if (1 == m_DelayList.size()) {
 						// 这次首先进入的项，标记最后刷为当前时间，强迫其至少在N秒后再刷写
 						m_LastDelayFlush = System.currentTimeMillis();
+						m_FirstMark = m_LastDelayFlush;
 						if (_Logger.isDebugEnabled()) {
 							_Logger.debug("mark m_LastDelayFlush.");
 						}
@@ -307,6 +375,7 @@ public class DelayFlusher implements Flusher, DestroyableExt {
 		}
 		SinglyLinked.SinglyLinkedNode<Flushable> first;
 		int size;
+		long marked;
 		m_Lock.lock();
 		try {
 			// 使用异步的刷写（刷写过程不影响缓存的操作，把m_First取走就行了）
@@ -316,6 +385,7 @@ public class DelayFlusher implements Flusher, DestroyableExt {
 				// 没有需要刷写的项
 				return false;
 			}
+			marked = m_FirstMark;
 			m_Busy |= (BUSY_MASK_COUNT & size);
 			m_FlushPending = first;
 		} finally {
@@ -324,8 +394,26 @@ public class DelayFlusher implements Flusher, DestroyableExt {
 		if (_Logger.isDebugEnabled()) {
 			_Logger.debug("delayFlushing... " + size);
 		}
-		// 历遍（链表中）的项执行刷写
+		// 历遍（链表中）的项执行刷写，可批量刷写的项按分组收集后再一次刷写
+		Map<BatchFlushable.Group, List<BatchFlushable>> batchs = null;
 		while (null != first) {
+			if (first.value instanceof BatchFlushable) {
+				BatchFlushable item = (BatchFlushable) first.value;
+				BatchFlushable.Group group = item.getFlushGroup();
+				if (null != group) {
+					if (null == batchs) {
+						batchs = new LinkedHashMap<>();
+					}
+					List<BatchFlushable> items = batchs.get(group);
+					if (null == items) {
+						items = new ArrayList<>();
+						batchs.put(group, items);
+					}
+					items.add(item);
+					first = first.getNext();
+					continue;
+				}
+			}
 			try {
 				// 执行刷写
 				first.value.flush();
@@ -342,17 +430,61 @@ public class DelayFlusher implements Flusher, DestroyableExt {
 				} else {
 					_Logger.error("flushing fail：" + first.value, e);
 				}
+				m_FlushErrors.record(1);
 				// 把出错项标记回待刷写列表
 				markOnFail(first.value);
 			}
 			first = first.getNext();
 			m_LastDelayFlush = System.currentTimeMillis();
 		}
+		if (null != batchs) {
+			for (Map.Entry<BatchFlushable.Group, List<BatchFlushable>> e : batchs.entrySet()) {
+				flushing(e.getKey(), e.getValue());
+			}
+		}
 		m_LastDelayFlush = System.currentTimeMillis();
 		m_FlushPending = null;
+		m_BatchSize.record(size);
+		if (marked > 0) {
+			m_FlushLatency.record(m_LastDelayFlush - marked);
+		}
 		return true;
 	}
 
+	/**
+	 * 执行分组的批量刷写，失败的项标记回出错列表
+	 * 
+	 * @param group
+	 *            分组
+	 * @param items
+	 *            分组的待刷写项
+	 */
+	protected void flushing(BatchFlushable.Group group, List<BatchFlushable> items) {
+		List<? extends Flushable> fails;
+		try {
+			fails = group.flush(items);
+			if (_Logger.isDebugEnabled()) {
+				_Logger.debug("batch flushing:" + group + "(" + items.size() + ")");
+			}
+		} catch (Throwable e) {
+			if (e instanceof OutOfMemoryError) {
+				// 内存爆掉:<
+				GcCleaner.waitFor(5 * 1000);
+			} else {
+				_Logger.error("batch flushing fail：" + group + "(" + items.size() + ")", e);
+			}
+			m_FlushErrors.record(1);
+			fails = items;
+		}
+		if (null != fails) {
+			for (Flushable f : fails) {
+				// 把出错项标记回待刷写列表
+				markOnFail(f);
+			}
+		}
+		m_LastDelayFlush = System.currentTimeMillis();
+	}
+
 	/**
 	 * 执行刷写中的表
 	 * 
@@ -405,6 +537,7 @@ public class DelayFlusher implements Flusher, DestroyableExt {
 				} else {
 					_Logger.error("try flushing fail：" + first.value, e);
 				}
+				m_FlushErrors.record(1);
 				// 把出错项标记继续回列表
 				markOnFail(first.value);
 			}
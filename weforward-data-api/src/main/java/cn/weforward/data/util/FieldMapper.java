@@ -374,6 +374,19 @@ public class FieldMapper<E> extends AutoObjectMapper<E> {
 		return list;
 	}
 
+	@Override
+	public Class<?> getAttributeType(String name) {
+		Class<?> type = m_Clazz;
+		for (String part : splitAttributeName(name)) {
+			Field member = getFields(type).get(part);
+			if (null == member) {
+				return null;
+			}
+			type = member.getType();
+		}
+		return type;
+	}
+
 	@Override
 	public Enumeration<String> getIndexAttributeNames(int maxdeepin) {
 		List<String> indexs = new ArrayList<>();
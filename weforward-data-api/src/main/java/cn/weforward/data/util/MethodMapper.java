@@ -382,6 +382,19 @@ public class MethodMapper<E> extends AutoObjectMapper<E> {
 		return list;
 	}
 
+	@Override
+	public Class<?> getAttributeType(String name) {
+		Class<?> type = m_Clazz;
+		for (String part : splitAttributeName(name)) {
+			Method member = getGetMethods(type).get(part);
+			if (null == member) {
+				return null;
+			}
+			type = member.getReturnType();
+		}
+		return type;
+	}
+
 	@Override
 	public Enumeration<String> getIndexAttributeNames(int maxdeepin) {
 		List<String> indexs = new ArrayList<>();
@@ -0,0 +1,314 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.data.util;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 按分区键分派任务的有界线程池
+ * <p>
+ * 每个分区一个线程及有界队列，相同分区键的任务按提交顺序执行，队列满时提交方阻塞等待（背压）。每个任务有递增的序号，{@link #getLowWatermark()}
+ * 给出序号不大于它的任务都已执行完成的位置，可用于检查点
+ * 
+ * @author liangyi
+ *
+ */
+public class PartitionedExecutor {
+	/** 日志记录器 */
+	protected static final Logger _Logger = LoggerFactory.getLogger(PartitionedExecutor.class);
+
+	/** 名称 */
+	protected final String m_Name;
+	/** 各分区 */
+	protected final Lane[] m_Lanes;
+	/** 任务序号 */
+	protected final AtomicLong m_Sequence = new AtomicLong();
+	/** 是否已关闭 */
+	protected volatile boolean m_Closed;
+	/** 等待任务完成的锁 */
+	protected final Object m_CompleteLock = new Object();
+	/** 等待任务完成的线程数 */
+	protected volatile int m_Waiters;
+
+	/**
+	 * 构造
+	 * 
+	 * @param name       名称（线程名前缀）
+	 * @param partitions 分区数（线程数）
+	 * @param capacity   每个分区队列的容量
+	 */
+	public PartitionedExecutor(String name, int partitions, int capacity) {
+		if (partitions < 1) {
+			partitions = 1;
+		}
+		if (capacity < 1) {
+			capacity = 1;
+		}
+		m_Name = name;
+		m_Lanes = new Lane[partitions];
+		for (int i = 0; i < partitions; i++) {
+			m_Lanes[i] = new Lane(name + "-" + i, capacity);
+		}
+	}
+
+	public String getName() {
+		return m_Name;
+	}
+
+	public int getPartitionCount() {
+		return m_Lanes.length;
+	}
+
+	/**
+	 * 提交任务，分区队列满时阻塞等待
+	 * 
+	 * @param key  分区键，如表名+ID的hash
+	 * @param task 任务
+	 * @return 任务序号
+	 * @throws InterruptedException 等待时被中断
+	 */
+	public long execute(int key, Runnable task) throws InterruptedException {
+		if (m_Closed) {
+			throw new IllegalStateException("已关闭：" + m_Name);
+		}
+		key *= 0x9E3779B9;
+		return m_Lanes[(key >>> 1) % m_Lanes.length].offer(task);
+	}
+
+	/**
+	 * 序号不大于此值的任务都已执行完成
+	 * 
+	 * @return 序号，还没有任务完成时为0
+	 */
+	public long getLowWatermark() {
+		long submitted = m_Sequence.get();
+		long min = Long.MAX_VALUE;
+		for (Lane lane : m_Lanes) {
+			min = Math.min(min, lane.getPending());
+		}
+		return (Long.MAX_VALUE == min) ? submitted : (min - 1);
+	}
+
+	/**
+	 * 等待序号不大于seq的任务都执行完成
+	 * 
+	 * @param seq     任务序号
+	 * @param timeout 最多等待的毫秒数
+	 * @return 都已完成返回true，超时返回false
+	 * @throws InterruptedException 等待时被中断
+	 */
+	public boolean await(long seq, long timeout) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeout;
+		synchronized (m_CompleteLock) {
+			m_Waiters++;
+			try {
+				while (getLowWatermark() < seq) {
+					long wait = deadline - System.currentTimeMillis();
+					if (wait <= 0) {
+						return false;
+					}
+					// 限制每次等待的时长，避免错过通知时等太久
+					m_CompleteLock.wait(Math.min(wait, 100));
+				}
+				return true;
+			} finally {
+				m_Waiters--;
+			}
+		}
+	}
+
+	/* 任务完成，通知等待的线程 */
+	private void signalComplete() {
+		if (m_Waiters > 0) {
+			synchronized (m_CompleteLock) {
+				m_CompleteLock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * 各分区的队列深度
+	 * 
+	 * @return 按分区序号的任务数
+	 */
+	public int[] getQueueSizes() {
+		int[] sizes = new int[m_Lanes.length];
+		for (int i = 0; i < sizes.length; i++) {
+			sizes[i] = m_Lanes[i].size();
+		}
+		return sizes;
+	}
+
+	/**
+	 * 关闭，等待已提交的任务执行完
+	 * 
+	 * @param timeout 最多等待的毫秒数
+	 */
+	public void close(long timeout) {
+		m_Closed = true;
+		for (Lane lane : m_Lanes) {
+			lane.signalClose();
+		}
+		long deadline = System.currentTimeMillis() + timeout;
+		try {
+			for (Lane lane : m_Lanes) {
+				long wait = deadline - System.currentTimeMillis();
+				if (wait > 0) {
+					lane.m_Thread.join(wait);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{n:").append(m_Name).append(",seq:").append(m_Sequence.get()).append(",q:[");
+		for (int i = 0; i < m_Lanes.length; i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append(m_Lanes[i].size());
+		}
+		sb.append("]}");
+		return sb.toString();
+	}
+
+	/**
+	 * 带序号的任务
+	 */
+	static class Task {
+		final long seq;
+		final Runnable runnable;
+
+		Task(long seq, Runnable runnable) {
+			this.seq = seq;
+			this.runnable = runnable;
+		}
+	}
+
+	/**
+	 * 分区：单线程及其有界队列
+	 */
+	class Lane implements Runnable {
+		final ArrayDeque<Task> m_Queue;
+		final int m_Capacity;
+		final ReentrantLock m_Lock = new ReentrantLock();
+		final Condition m_NotEmpty = m_Lock.newCondition();
+		final Condition m_NotFull = m_Lock.newCondition();
+		final Thread m_Thread;
+		/** 正在执行的任务序号，空闲时为0 */
+		long m_Running;
+
+		Lane(String name, int capacity) {
+			m_Capacity = capacity;
+			m_Queue = new ArrayDeque<>(Math.min(capacity, 1024));
+			m_Thread = new Thread(this, name);
+			m_Thread.setDaemon(true);
+			m_Thread.start();
+		}
+
+		long offer(Runnable runnable) throws InterruptedException {
+			m_Lock.lockInterruptibly();
+			try {
+				while (m_Queue.size() >= m_Capacity) {
+					m_NotFull.await();
+				}
+				// 序号在分区锁内分配，保证计算低水位时不会漏掉已分配序号的任务
+				long seq = m_Sequence.incrementAndGet();
+				m_Queue.addLast(new Task(seq, runnable));
+				m_NotEmpty.signal();
+				return seq;
+			} finally {
+				m_Lock.unlock();
+			}
+		}
+
+		/* 分区中未完成的最小序号，没有则为Long.MAX_VALUE */
+		long getPending() {
+			m_Lock.lock();
+			try {
+				if (0 != m_Running) {
+					return m_Running;
+				}
+				Task head = m_Queue.peekFirst();
+				return (null == head) ? Long.MAX_VALUE : head.seq;
+			} finally {
+				m_Lock.unlock();
+			}
+		}
+
+		int size() {
+			m_Lock.lock();
+			try {
+				return m_Queue.size();
+			} finally {
+				m_Lock.unlock();
+			}
+		}
+
+		void signalClose() {
+			m_Lock.lock();
+			try {
+				m_NotEmpty.signalAll();
+			} finally {
+				m_Lock.unlock();
+			}
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				Task task;
+				m_Lock.lock();
+				try {
+					m_Running = 0;
+					while (m_Queue.isEmpty()) {
+						if (m_Closed) {
+							return;
+						}
+						m_NotEmpty.await(1, TimeUnit.SECONDS);
+					}
+					task = m_Queue.pollFirst();
+					m_Running = task.seq;
+					m_NotFull.signal();
+				} catch (InterruptedException e) {
+					_Logger.warn("分区线程中断：" + m_Thread.getName());
+					return;
+				} finally {
+					m_Lock.unlock();
+				}
+				try {
+					task.runnable.run();
+				} catch (Throwable e) {
+					_Logger.error("执行任务异常：" + m_Thread.getName(), e);
+				}
+				// 不能持有分区锁时通知（等待方持有完成锁再取分区锁）
+				m_Lock.lock();
+				try {
+					m_Running = 0;
+				} finally {
+					m_Lock.unlock();
+				}
+				signalComplete();
+			}
+		}
+	}
+}
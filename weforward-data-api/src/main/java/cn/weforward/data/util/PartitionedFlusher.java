@@ -0,0 +1,312 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.data.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import cn.weforward.common.DestroyableExt;
+import cn.weforward.common.crypto.Hex;
+import cn.weforward.common.util.SinglyLinked;
+import cn.weforward.data.metrics.Metrics;
+
+/**
+ * 多线程分区的刷写器
+ * <p>
+ * 由多个{@link DelayFlusher}组成，每个分区有独立的刷写线程、延时队列及出错列表，待刷写项按分区键（{@link PartitionFlushable}，否则按项本身）
+ * 固定到一个分区，同一对象的刷写顺序不变，而某个慢的存储只阻塞其所在的分区；未实现{@link PartitionFlushable}的项按对象标识分区，只适用于一次性的刷写项
+ * 
+ * @author liangyi
+ * 
+ */
+public class PartitionedFlusher implements Flusher, DestroyableExt {
+	/** 名称 */
+	protected String m_Name;
+	/** 各分区的刷写器 */
+	protected final DelayFlusher[] m_Partitions;
+	/** 最多等待刷写的累积项数（0表示不控制） */
+	protected int m_MaxSuspend;
+	/** 指标 */
+	protected Metrics m_Metrics = Metrics.NONE;
+
+	/**
+	 * 构造刷写器，5秒延时，分区数为CPU数
+	 */
+	public PartitionedFlusher() {
+		this(5, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * 构造刷写器
+	 * 
+	 * @param interval
+	 *            后台刷写的最小间隔（秒）
+	 * @param partitions
+	 *            分区数（刷写线程数）
+	 */
+	public PartitionedFlusher(int interval, int partitions) {
+		if (partitions < 1) {
+			partitions = 1;
+		}
+		m_Name = Hex.toHex(hashCode());
+		m_Partitions = new DelayFlusher[partitions];
+		for (int i = 0; i < partitions; i++) {
+			m_Partitions[i] = new DelayFlusher(interval);
+		}
+		updateNames();
+	}
+
+	public void setName(String name) {
+		m_Name = name;
+		updateNames();
+	}
+
+	public String getName() {
+		return m_Name;
+	}
+
+	private void updateNames() {
+		for (int i = 0; i < m_Partitions.length; i++) {
+			m_Partitions[i].setName(m_Name + "-" + i);
+		}
+	}
+
+	/**
+	 * 最多等待刷写的累积项数，平均分配到各分区
+	 * 
+	 * @param limit
+	 *            要控制的项数，0表示不控制
+	 */
+	public void setMaxSuspend(int limit) {
+		m_MaxSuspend = limit;
+		int each = (limit <= 0) ? 0 : Math.max(1, limit / m_Partitions.length);
+		for (DelayFlusher f : m_Partitions) {
+			f.setMaxSuspend(each);
+		}
+	}
+
+	public int getMaxSuspend() {
+		return m_MaxSuspend;
+	}
+
+	/**
+	 * 设置记录指标，各分区以flusher.&lt;name&gt;-&lt;序号&gt;.为前缀分别记录，另以flusher.&lt;name&gt;.为前缀记录各分区合计的delay/fail队列深度
+	 * 
+	 * @param metrics
+	 *            指标，为null则不记录
+	 */
+	public void setMetrics(Metrics metrics) {
+		if (null == metrics) {
+			metrics = Metrics.NONE;
+		}
+		for (DelayFlusher f : m_Partitions) {
+			f.setMetrics(metrics);
+		}
+		String prefix = "flusher." + getName() + ".";
+		metrics.gauge(prefix + "delay", new Metrics.Gauge() {
+			@Override
+			public long getValue() {
+				return getQueueSize();
+			}
+		});
+		metrics.gauge(prefix + "fail", new Metrics.Gauge() {
+			@Override
+			public long getValue() {
+				return getFailSize();
+			}
+		});
+		m_Metrics = metrics;
+	}
+
+	public Metrics getMetrics() {
+		return m_Metrics;
+	}
+
+	/**
+	 * 分区数
+	 * 
+	 * @return 数量
+	 */
+	public int getPartitionCount() {
+		return m_Partitions.length;
+	}
+
+	/**
+	 * 分区的刷写器
+	 * 
+	 * @param partition
+	 *            分区序号
+	 * @return 刷写器
+	 */
+	public DelayFlusher getPartition(int partition) {
+		return m_Partitions[partition];
+	}
+
+	/**
+	 * 延时队列的项数
+	 * 
+	 * @return 各分区合计
+	 */
+	public int getQueueSize() {
+		int size = 0;
+		for (DelayFlusher f : m_Partitions) {
+			size += f.getQueueSize();
+		}
+		return size;
+	}
+
+	/**
+	 * 出错列表的项数
+	 * 
+	 * @return 各分区合计
+	 */
+	public int getFailSize() {
+		int size = 0;
+		for (DelayFlusher f : m_Partitions) {
+			size += f.getFailSize();
+		}
+		return size;
+	}
+
+	/**
+	 * 各分区的延时队列深度
+	 * 
+	 * @return 按分区序号的项数
+	 */
+	public int[] getQueueSizes() {
+		int[] sizes = new int[m_Partitions.length];
+		for (int i = 0; i < sizes.length; i++) {
+			sizes[i] = m_Partitions[i].getQueueSize();
+		}
+		return sizes;
+	}
+
+	/**
+	 * 各分区的出错列表项数
+	 * 
+	 * @return 按分区序号的项数
+	 */
+	public int[] getFailSizes() {
+		int[] sizes = new int[m_Partitions.length];
+		for (int i = 0; i < sizes.length; i++) {
+			sizes[i] = m_Partitions[i].getFailSize();
+		}
+		return sizes;
+	}
+
+	/**
+	 * 分区执行刷写中的表
+	 * 
+	 * @param partition
+	 *            分区序号
+	 * @return 链表
+	 */
+	public SinglyLinked.SinglyLinkedNode<Flushable> getFlushPending(int partition) {
+		return m_Partitions[partition].getFlushPending();
+	}
+
+	/**
+	 * 各分区执行刷写中的项
+	 * 
+	 * @return 项的列表（快照）
+	 */
+	public List<Flushable> getFlushPending() {
+		List<Flushable> list = new ArrayList<>();
+		for (DelayFlusher f : m_Partitions) {
+			SinglyLinked.SinglyLinkedNode<Flushable> p = f.getFlushPending();
+			while (null != p) {
+				list.add(p.value);
+				p = p.getNext();
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * 待刷写项所在的分区
+	 * 
+	 * @param flushable
+	 *            待刷写项
+	 * @return 分区的刷写器
+	 */
+	protected DelayFlusher partitionFor(Flushable flushable) {
+		if (1 == m_Partitions.length) {
+			return m_Partitions[0];
+		}
+		int h;
+		if (flushable instanceof PartitionFlushable) {
+			h = ((PartitionFlushable) flushable).getPartitionKey();
+		} else {
+			// 没有分区键，不能保证同一对象的多个刷写项落在同一分区
+			h = System.identityHashCode(flushable);
+		}
+		h *= 0x9E3779B9;
+		return m_Partitions[(h >>> 1) % m_Partitions.length];
+	}
+
+	@Override
+	public void mark(Flushable flushable) {
+		partitionFor(flushable).mark(flushable);
+	}
+
+	@Override
+	public void flush(Flushable flushable) {
+		partitionFor(flushable).flush(flushable);
+	}
+
+	@Override
+	public void flush() {
+		for (DelayFlusher f : m_Partitions) {
+			f.flush();
+		}
+	}
+
+	@Override
+	public boolean destroySignal() {
+		boolean ret = false;
+		for (DelayFlusher f : m_Partitions) {
+			ret |= f.destroySignal();
+		}
+		return ret;
+	}
+
+	@Override
+	public void destroy() {
+		// 各分区的刷写器都已注册在shutdown时处理，这里只是给信号让它们一起刷写
+		destroySignal();
+	}
+
+	/**
+	 * 关闭刷写器，各分区同时完成剩余的刷写
+	 */
+	public void close() {
+		// 先给所有分区信号让其并行刷写，再逐个等待关闭
+		destroySignal();
+		for (DelayFlusher f : m_Partitions) {
+			f.close();
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{n:").append(getName()).append(",ms:").append(m_MaxSuspend).append(",queue:")
+				.append(getQueueSize()).append(",fail:").append(getFailSize()).append(",p:[");
+		for (int i = 0; i < m_Partitions.length; i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append(m_Partitions[i]);
+		}
+		sb.append("]}");
+		return sb.toString();
+	}
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.data.counter.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+
+/**
+ * 计数项并发累加的返回值及刷写合并
+ * 
+ * @author liangyi
+ *
+ */
+public class CounterItemTest {
+
+	@Test
+	public void concurrentInc() throws Exception {
+		final CounterItem item = new CounterItem("a");
+		item.syncHold(100);
+		final int threads = 8;
+		final int loops = 10000;
+		final Set<Long> values = ConcurrentHashMap.newKeySet();
+		List<Thread> list = new ArrayList<>();
+		for (int i = 0; i < threads; i++) {
+			Thread t = new Thread(() -> {
+				for (int j = 0; j < loops; j++) {
+					values.add(item.inc());
+				}
+			});
+			list.add(t);
+			t.start();
+		}
+		for (Thread t : list) {
+			t.join();
+		}
+		// 并发的累加各自得到不同的值
+		assertEquals(threads * loops, values.size());
+		assertEquals(threads * loops, item.getValue());
+		assertEquals(100 + threads * loops, item.getTotal());
+	}
+
+	@Test
+	public void accumulate() throws Exception {
+		final CounterItem item = new CounterItem("a", 10);
+		final int threads = 8;
+		final int loops = 10000;
+		List<Thread> list = new ArrayList<>();
+		for (int i = 0; i < threads; i++) {
+			Thread t = new Thread(() -> {
+				for (int j = 0; j < loops; j++) {
+					item.accumulate(1);
+				}
+			});
+			list.add(t);
+			t.start();
+		}
+		for (Thread t : list) {
+			t.join();
+		}
+		assertEquals(10 + threads * loops, item.getValue());
+		assertTrue(item.markDirty());
+		// 刷写时合并分条单元格，之后的累加重新标记
+		assertEquals(10 + threads * loops, item.snapshot());
+		assertEquals(10 + threads * loops, item.value);
+		assertEquals(11 + threads * loops, item.inc());
+		assertTrue(item.markDirty());
+	}
+
+	@Test
+	public void contendedThroughput() throws Exception {
+		final int threads = 8;
+		final int loops = 200000;
+		final CounterItem inc = new CounterItem("inc");
+		long incTime = run(threads, () -> {
+			for (int j = 0; j < loops; j++) {
+				inc.inc();
+			}
+		});
+		final CounterItem acc = new CounterItem("acc");
+		long accTime = run(threads, () -> {
+			for (int j = 0; j < loops; j++) {
+				acc.accumulate(1);
+			}
+		});
+		assertEquals(threads * loops, inc.getValue());
+		assertEquals(threads * loops, acc.getValue());
+		// 分条累加不比争用单个value的累加慢（宽松的比较，避免受机器负载影响）
+		assertTrue("inc:" + incTime + "ms,accumulate:" + accTime + "ms", accTime <= incTime * 3 + 100);
+	}
+
+	/* 多线程同时执行，返回耗时（毫秒） */
+	private static long run(int threads, Runnable task) throws Exception {
+		List<Thread> list = new ArrayList<>();
+		for (int i = 0; i < threads; i++) {
+			list.add(new Thread(task));
+		}
+		long start = System.nanoTime();
+		for (Thread t : list) {
+			t.start();
+		}
+		for (Thread t : list) {
+			t.join();
+		}
+		return (System.nanoTime() - start) / 1000000;
+	}
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.data.persister.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import cn.weforward.data.UniteId;
+import cn.weforward.data.persister.Persistent;
+
+/**
+ * 分段缓存的按ID选段及重设分段数后设置的保持
+ * 
+ * @author liangyi
+ *
+ */
+public class SegmentedCacheTest {
+
+	private static Persistent object(String id) {
+		UniteId unid = UniteId.valueOf(id, "test", null);
+		return () -> unid;
+	}
+
+	@Test
+	public void routing() {
+		TestCache cache = new TestCache(4);
+		assertEquals(4, cache.getSegmentCount());
+		Set<PersistentCache<Persistent>> used = new HashSet<>();
+		for (int i = 0; i < 100; i++) {
+			String id = "o" + i;
+			Persistent obj = object(id);
+			cache.put(id, obj);
+			PersistentCache<Persistent> segment = cache.segmentFor(id);
+			// 同一ID总在同一段
+			assertSame(segment, cache.segmentFor(id));
+			used.add(segment);
+			assertSame(obj, cache.get(id));
+			for (PersistentCache<Persistent> c : cache.getSegments()) {
+				if (c == segment) {
+					assertSame(obj, c.get(id));
+				} else {
+					assertNull(c.get(id));
+				}
+			}
+		}
+		// 各项分散到多个段
+		assertTrue(used.size() > 1);
+		assertEquals(100, cache.getHitCount());
+	}
+
+	@Test
+	public void settingsKeptOnResegment() {
+		TestCache cache = new TestCache(1);
+		cache.setTimeout(30);
+		cache.setNullTimeout(5);
+		cache.setReachable(false);
+		cache.setSegments(8);
+		assertEquals(8, cache.getSegmentCount());
+		for (PersistentCache<Persistent> c : cache.getSegments()) {
+			TestSegment s = (TestSegment) c;
+			assertEquals(30, s.m_TimeoutSet);
+			assertEquals(5, s.getNullTimeout());
+			assertEquals(Boolean.FALSE, s.m_ReachableSet);
+		}
+		assertEquals(5, cache.getNullTimeout());
+	}
+
+	static class TestCache extends SegmentedCache<Persistent> {
+
+		TestCache(int segments) {
+			super("test", segments);
+		}
+
+		@Override
+		protected PersistentCache<Persistent> newSegment(String name, int index) {
+			return new TestSegment(name);
+		}
+	}
+
+	/**
+	 * 记录设置值的段
+	 */
+	static class TestSegment extends PersistentCache<Persistent> {
+		int m_TimeoutSet;
+		Boolean m_ReachableSet;
+
+		TestSegment(String name) {
+			super(name);
+		}
+
+		@Override
+		public void setTimeout(int seconds) {
+			m_TimeoutSet = seconds;
+			super.setTimeout(seconds);
+		}
+
+		@Override
+		public void setReachable(boolean enabled) {
+			m_ReachableSet = enabled;
+			super.setReachable(enabled);
+		}
+
+		@Override
+		protected String persist(Persistent object, PersistNode node) {
+			return null;
+		}
+
+		@Override
+		protected String newer(Persistent object) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,174 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.data.persister.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * W-TinyLFU淘汰策略的权重上限、频率准入及抗扫描
+ * 
+ * @author liangyi
+ *
+ */
+public class TinyLfuEvictionPolicyTest {
+
+	/* 放入并按返回的淘汰项维护驻留集合 */
+	private static void put(TinyLfuEvictionPolicy policy, Set<String> resident, String key, int weight) {
+		resident.add(key);
+		List<String> victims = policy.onPut(key, weight);
+		resident.removeAll(victims);
+	}
+
+	@Test
+	public void weightBound() {
+		TinyLfuEvictionPolicy policy = new TinyLfuEvictionPolicy(100);
+		Set<String> resident = new HashSet<>();
+		for (int i = 0; i < 1000; i++) {
+			put(policy, resident, "k" + i, 1 + (i % 3));
+			assertTrue(policy.getWeight() <= policy.getMaximum());
+		}
+		assertEquals(resident.size(), policy.size());
+		long weight = 0;
+		for (String key : resident) {
+			weight += 1 + (Integer.parseInt(key.substring(1)) % 3);
+		}
+		assertEquals(weight, policy.getWeight());
+	}
+
+	@Test
+	public void replaceWeight() {
+		TinyLfuEvictionPolicy policy = new TinyLfuEvictionPolicy(100);
+		policy.onPut("a", 10);
+		policy.onPut("a", 30);
+		assertEquals(1, policy.size());
+		assertEquals(30, policy.getWeight());
+		policy.onRemove("a");
+		assertEquals(0, policy.size());
+		assertEquals(0, policy.getWeight());
+	}
+
+	@Test
+	public void frequency() {
+		TinyLfuEvictionPolicy policy = new TinyLfuEvictionPolicy(100);
+		policy.onPut("a", 1);
+		for (int i = 0; i < 5; i++) {
+			policy.onAccess("a");
+		}
+		assertEquals(6, policy.frequency("a"));
+		for (int i = 0; i < 20; i++) {
+			policy.onAccess("a");
+		}
+		// 4位计数器
+		assertEquals(15, policy.frequency("a"));
+		assertEquals(0, policy.frequency("b"));
+	}
+
+	@Test
+	public void scanResistant() {
+		TinyLfuEvictionPolicy policy = new TinyLfuEvictionPolicy(100);
+		Set<String> resident = new HashSet<>();
+		Set<String> hot = new HashSet<>();
+		for (int i = 0; i < 50; i++) {
+			String key = "hot" + i;
+			hot.add(key);
+			put(policy, resident, key, 1);
+		}
+		for (int round = 0; round < 4; round++) {
+			for (String key : hot) {
+				policy.onAccess(key);
+			}
+		}
+		// 只访问一次的大量项（缓存容量的10倍，未到老化点）不会挤掉频繁访问的项
+		for (int i = 0; i < 1000; i++) {
+			put(policy, resident, "cold" + i, 1);
+		}
+		Set<String> kept = new HashSet<>(hot);
+		kept.retainAll(resident);
+		assertEquals(hot.size(), kept.size());
+		assertTrue(policy.getWeight() <= policy.getMaximum());
+	}
+
+	@Test
+	public void readBuffer() {
+		TinyLfuEvictionPolicy policy = new TinyLfuEvictionPolicy(100);
+		for (int i = 0; i < 10; i++) {
+			policy.onPut("k" + i, 1);
+		}
+		assertTrue(policy.m_Probation.containsKey("k0"));
+		policy.onAccess("k0");
+		// 命中只记入读缓冲，由写操作或整理时处理
+		assertTrue(policy.m_Probation.containsKey("k0"));
+		policy.cleanUp();
+		assertTrue(policy.m_Protected.containsKey("k0"));
+		policy.onAccess("k1");
+		policy.onPut("k10", 1);
+		assertTrue(policy.m_Protected.containsKey("k1"));
+	}
+
+	@Test
+	public void concurrentAccess() throws Exception {
+		final TinyLfuEvictionPolicy policy = new TinyLfuEvictionPolicy(100);
+		final List<String> hot = new ArrayList<>();
+		for (int i = 0; i < 50; i++) {
+			hot.add("hot" + i);
+			policy.onPut("hot" + i, 1);
+		}
+		final AtomicReference<Throwable> error = new AtomicReference<>();
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 8; t++) {
+			Thread thread = new Thread(() -> {
+				try {
+					for (int i = 0; i < 100000; i++) {
+						policy.onAccess(hot.get(i % hot.size()));
+					}
+				} catch (Throwable e) {
+					error.compareAndSet(null, e);
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		// 命中与写入并发
+		for (int i = 0; i < 1000; i++) {
+			policy.onPut("cold" + i, 1);
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		policy.cleanUp();
+		assertNull(error.get());
+		assertTrue(policy.getWeight() <= policy.getMaximum());
+		assertEquals(policy.getWeight(), policy.size());
+		// 读缓冲有损，但频繁访问的项频率仍饱和
+		for (String key : hot) {
+			assertEquals(15, policy.frequency(key));
+		}
+	}
+
+	@Test
+	public void pinned() {
+		TinyLfuEvictionPolicy policy = new TinyLfuEvictionPolicy(10);
+		policy.onPinned("p", 1);
+		assertEquals(1, policy.size());
+		policy.onPinned("p", 1);
+		assertEquals(1, policy.getWeight());
+	}
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.data.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * 分区线程池的顺序、低水位（检查点）及背压
+ * 
+ * @author liangyi
+ *
+ */
+public class PartitionedExecutorTest {
+
+	PartitionedExecutor m_Executor;
+
+	@After
+	public void after() {
+		if (null != m_Executor) {
+			m_Executor.close(1000);
+		}
+	}
+
+	/* 与PartitionedExecutor.execute一致的分区选择 */
+	private static int lane(int key, int partitions) {
+		key *= 0x9E3779B9;
+		return (key >>> 1) % partitions;
+	}
+
+	/* 找一个与指定键不同分区的键 */
+	private static int otherKey(int key, int partitions) {
+		int other = key + 1;
+		while (lane(other, partitions) == lane(key, partitions)) {
+			other++;
+		}
+		return other;
+	}
+
+	@Test
+	public void ordered() throws Exception {
+		m_Executor = new PartitionedExecutor("test", 4, 16);
+		final List<Integer> done = Collections.synchronizedList(new ArrayList<Integer>());
+		long last = 0;
+		for (int i = 0; i < 1000; i++) {
+			final int v = i;
+			long seq = m_Executor.execute(7, () -> done.add(v));
+			assertTrue(seq > last);
+			last = seq;
+		}
+		assertTrue(m_Executor.await(last, 5000));
+		assertEquals(1000, done.size());
+		for (int i = 0; i < 1000; i++) {
+			// 相同分区键按提交顺序执行
+			assertEquals(i, done.get(i).intValue());
+		}
+		assertEquals(last, m_Executor.getLowWatermark());
+	}
+
+	@Test
+	public void lowWatermark() throws Exception {
+		m_Executor = new PartitionedExecutor("test", 4, 16);
+		final CountDownLatch blocked = new CountDownLatch(1);
+		final CountDownLatch started = new CountDownLatch(1);
+		int slow = 1;
+		int fast = otherKey(slow, m_Executor.getPartitionCount());
+		long before = m_Executor.execute(fast, () -> {
+		});
+		assertTrue(m_Executor.await(before, 5000));
+		long seq = m_Executor.execute(slow, () -> {
+			started.countDown();
+			try {
+				blocked.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		started.await();
+		long last = 0;
+		for (int i = 0; i < 10; i++) {
+			last = m_Executor.execute(fast, () -> {
+			});
+		}
+		// 后提交的任务已完成，但低水位停在未完成的任务之前
+		Thread.sleep(100);
+		assertEquals(0, m_Executor.getQueueSizes()[lane(fast, m_Executor.getPartitionCount())]);
+		assertEquals(seq - 1, m_Executor.getLowWatermark());
+		assertFalse(m_Executor.await(last, 50));
+
+		blocked.countDown();
+		assertTrue(m_Executor.await(last, 5000));
+		assertEquals(last, m_Executor.getLowWatermark());
+	}
+
+	@Test
+	public void backpressure() throws Exception {
+		m_Executor = new PartitionedExecutor("test", 1, 2);
+		final CountDownLatch blocked = new CountDownLatch(1);
+		final CountDownLatch started = new CountDownLatch(1);
+		m_Executor.execute(0, () -> {
+			started.countDown();
+			try {
+				blocked.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		started.await();
+		m_Executor.execute(0, () -> {
+		});
+		m_Executor.execute(0, () -> {
+		});
+		final CountDownLatch submitted = new CountDownLatch(1);
+		Thread t = new Thread(() -> {
+			try {
+				m_Executor.execute(0, () -> {
+				});
+				submitted.countDown();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		t.start();
+		// 队列已满，提交方等待
+		assertFalse(submitted.await(100, TimeUnit.MILLISECONDS));
+		blocked.countDown();
+		assertTrue(submitted.await(5, TimeUnit.SECONDS));
+		t.join();
+	}
+}
@@ -0,0 +1,174 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.data.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * 分区刷写器的按键顺序及分区隔离
+ * 
+ * @author liangyi
+ *
+ */
+public class PartitionedFlusherTest {
+
+	PartitionedFlusher m_Flusher;
+
+	@After
+	public void after() {
+		if (null != m_Flusher) {
+			m_Flusher.close();
+		}
+	}
+
+	@Test
+	public void serialByKey() throws Exception {
+		m_Flusher = new PartitionedFlusher(1, 4);
+		m_Flusher.setName("test");
+		final int keys = 8;
+		final int seqs = 200;
+		final Map<Integer, List<Integer>> flushed = new ConcurrentHashMap<>();
+		final Map<Integer, Set<Thread>> threads = new ConcurrentHashMap<>();
+		final Map<Integer, AtomicInteger> flushing = new ConcurrentHashMap<>();
+		final AtomicInteger overlaps = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(keys * seqs);
+		for (int k = 0; k < keys; k++) {
+			flushed.put(k, new ArrayList<Integer>());
+			threads.put(k, ConcurrentHashMap.<Thread>newKeySet());
+			flushing.put(k, new AtomicInteger());
+		}
+		for (int s = 0; s < seqs; s++) {
+			for (int k = 0; k < keys; k++) {
+				m_Flusher.mark(new Item(k, s) {
+					@Override
+					public void flush() throws IOException {
+						AtomicInteger f = flushing.get(key);
+						if (1 != f.incrementAndGet()) {
+							overlaps.incrementAndGet();
+						}
+						Thread.yield();
+						f.decrementAndGet();
+						List<Integer> list = flushed.get(key);
+						synchronized (list) {
+							list.add(seq);
+						}
+						threads.get(key).add(Thread.currentThread());
+						done.countDown();
+					}
+				});
+			}
+			if (0 == s % 50) {
+				m_Flusher.flush();
+			}
+		}
+		m_Flusher.flush();
+		assertTrue(done.await(30, TimeUnit.SECONDS));
+		// 同一键的项总由同一线程串行刷写，不会并发
+		assertEquals(0, overlaps.get());
+		for (int k = 0; k < keys; k++) {
+			List<Integer> list = flushed.get(k);
+			assertEquals(seqs, list.size());
+			assertEquals(seqs, new HashSet<>(list).size());
+			assertEquals(1, threads.get(k).size());
+		}
+		assertEquals(0, m_Flusher.getQueueSize());
+		assertEquals(0, m_Flusher.getFailSize());
+	}
+
+	@Test
+	public void blockedPartition() throws Exception {
+		m_Flusher = new PartitionedFlusher(1, 4);
+		m_Flusher.setName("test");
+		final CountDownLatch blocking = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		Item blocker = new Item(0, 0) {
+			@Override
+			public void flush() throws IOException {
+				blocking.countDown();
+				try {
+					release.await(30, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+		DelayFlusher blocked = m_Flusher.partitionFor(blocker);
+		m_Flusher.mark(blocker);
+		m_Flusher.flush();
+		assertTrue(blocking.await(10, TimeUnit.SECONDS));
+		// 其它分区的项不受阻塞的分区影响
+		List<Item> others = new ArrayList<>();
+		Set<DelayFlusher> partitions = new HashSet<>();
+		final CountDownLatch done = new CountDownLatch(8);
+		for (int k = 1; others.size() < 8; k++) {
+			Item item = new Item(k, 0) {
+				@Override
+				public void flush() throws IOException {
+					done.countDown();
+				}
+			};
+			DelayFlusher p = m_Flusher.partitionFor(item);
+			if (p == blocked) {
+				continue;
+			}
+			partitions.add(p);
+			others.add(item);
+		}
+		for (Item item : others) {
+			m_Flusher.mark(item);
+		}
+		m_Flusher.flush();
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertTrue(partitions.size() > 1);
+		for (DelayFlusher p : partitions) {
+			assertNotSame(blocked, p);
+		}
+		// 阻塞的项仍在刷写中
+		assertFalse(m_Flusher.getFlushPending().isEmpty());
+		assertTrue(m_Flusher.getFlushPending().contains(blocker));
+		release.countDown();
+	}
+
+	/**
+	 * 按键分区的刷写项
+	 */
+	static abstract class Item implements PartitionFlushable {
+		final int key;
+		final int seq;
+
+		Item(int key, int seq) {
+			this.key = key;
+			this.seq = seq;
+		}
+
+		@Override
+		public int getPartitionKey() {
+			return key;
+		}
+	}
+}
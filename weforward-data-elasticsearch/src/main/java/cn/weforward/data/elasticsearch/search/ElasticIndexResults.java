@@ -49,6 +49,7 @@ public class ElasticIndexResults extends ElasticSearchResultPage<IndexResult> im
 	public ElasticIndexResults(RestClient client, String name, JSONObject query) {
 		super(client, name, query);
 		addSource(ElasticSearcher.ID);
+		setSeek(ElasticSearcher.ID);
 	}
 
 	public void setNeedDetail(boolean need) {
@@ -11,8 +11,10 @@
 package cn.weforward.data.elasticsearch.search;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.http.StatusLine;
@@ -85,6 +87,54 @@ public class ElasticSearcher extends AbstractSearcher {
 			removeElement(element.getKey());
 			return;
 		}
+		String id = element.getKey();
+		Request request = new Request("post", "/" + getName() + "/_doc/" + id);
+		String entity = toSource(element, keywords);
+		request.setJsonEntity(entity);
+		addParameter(request);
+		Response response = null;
+		try {
+			if (_Logger.isTraceEnabled()) {
+				_Logger.trace(request.toString());
+				_Logger.trace(entity);
+			}
+			response = getClient().performRequest(request);
+			StatusLine status = response.getStatusLine();
+			if (_Logger.isTraceEnabled()) {
+				_Logger.trace(status.toString());
+				_Logger.trace(EntityUtils.toString(response.getEntity()));
+			}
+			if (status.getStatusCode() != 200 && status.getStatusCode() != 201) {
+				throw new DataAccessException("接口返回异常:" + status);
+			}
+		} catch (ResponseException e) {
+			response = e.getResponse();
+			StatusLine status = response.getStatusLine();
+			if (_Logger.isTraceEnabled()) {
+				_Logger.trace(status.toString());
+				try {
+					_Logger.trace(EntityUtils.toString(response.getEntity()));
+				} catch (IOException ee) {
+					_Logger.warn("忽略异常", ee);
+				}
+			}
+			throw new DataAccessException("插入数据异常", e);
+		} catch (IOException e) {
+			throw new DataAccessException("插入数据异常", e);
+		} finally {
+			if (null != response) {
+				try {
+					EntityUtils.consume(response.getEntity());
+				} catch (IOException e) {
+					_Logger.warn("忽略关闭异常", e);
+				}
+			}
+		}
+
+	}
+
+	/* 生成索引条目的文档 */
+	private String toSource(IndexElement element, List<? extends IndexKeyword> keywords) {
 		StringBuilder items = new StringBuilder();
 		items.append('{');
 		if (!StringUtil.isEmpty(element.getCaption())) {
@@ -145,39 +195,84 @@ public class ElasticSearcher extends AbstractSearcher {
 		items.append("\":\"");
 		items.append(id);
 		items.append("\"}");
-		Request request = new Request("post", "/" + getName() + "/_doc/" + id);
-		String entity = items.toString();
-		request.setJsonEntity(entity);
+		return items.toString();
+	}
+
+	@Override
+	public void updateElements(Map<? extends IndexElement, ? extends List<? extends IndexKeyword>> elements) {
+		if (elements.isEmpty()) {
+			return;
+		}
+		StringBuilder body = new StringBuilder();
+		for (Map.Entry<? extends IndexElement, ? extends List<? extends IndexKeyword>> e : elements.entrySet()) {
+			IndexElement element = e.getKey();
+			List<? extends IndexKeyword> keywords = e.getValue();
+			if (null == keywords || keywords.isEmpty()) {
+				appendAction(body, "delete", element.getKey());
+			} else {
+				appendAction(body, "index", element.getKey());
+				body.append(toSource(element, keywords)).append('\n');
+			}
+		}
+		JSONArray items = bulk(body.toString());
+		for (int i = 0; i < items.length(); i++) {
+			JSONObject item = items.getJSONObject(i);
+			JSONObject result = item.has("index") ? item.getJSONObject("index") : item.getJSONObject("delete");
+			if (result.has("error") && 404 != result.optInt("status")) {
+				throw new DataAccessException("批量更新数据异常:" + result.get("error"));
+			}
+		}
+	}
+
+	@Override
+	public int removeElements(Collection<String> elementKeys) {
+		if (elementKeys.isEmpty()) {
+			return 0;
+		}
+		StringBuilder body = new StringBuilder();
+		for (String key : elementKeys) {
+			appendAction(body, "delete", key);
+		}
+		JSONArray items = bulk(body.toString());
+		int count = 0;
+		for (int i = 0; i < items.length(); i++) {
+			JSONObject result = items.getJSONObject(i).getJSONObject("delete");
+			if ("deleted".equals(result.optString("result"))) {
+				count++;
+			} else if (result.has("error") && 404 != result.optInt("status")) {
+				throw new DataAccessException("批量删除数据异常:" + result.get("error"));
+			}
+		}
+		return count;
+	}
+
+	private static void appendAction(StringBuilder body, String action, String id) {
+		JSONObject meta = new JSONObject(Collections.singletonMap("_id", id));
+		body.append(new JSONObject(Collections.singletonMap(action, meta))).append('\n');
+	}
+
+	/* 执行批量操作，返回各项的结果 */
+	private JSONArray bulk(String body) {
+		Request request = new Request("post", "/" + getName() + "/_bulk");
+		request.setJsonEntity(body);
 		addParameter(request);
 		Response response = null;
 		try {
 			if (_Logger.isTraceEnabled()) {
 				_Logger.trace(request.toString());
-				_Logger.trace(entity);
 			}
 			response = getClient().performRequest(request);
 			StatusLine status = response.getStatusLine();
-			if (_Logger.isTraceEnabled()) {
-				_Logger.trace(status.toString());
-				_Logger.trace(EntityUtils.toString(response.getEntity()));
-			}
-			if (status.getStatusCode() != 200 && status.getStatusCode() != 201) {
+			if (status.getStatusCode() != 200) {
 				throw new DataAccessException("接口返回异常:" + status);
 			}
+			JSONObject result = new JSONObject(EntityUtils.toString(response.getEntity()));
+			return result.getJSONArray("items");
 		} catch (ResponseException e) {
 			response = e.getResponse();
-			StatusLine status = response.getStatusLine();
-			if (_Logger.isTraceEnabled()) {
-				_Logger.trace(status.toString());
-				try {
-					_Logger.trace(EntityUtils.toString(response.getEntity()));
-				} catch (IOException ee) {
-					_Logger.warn("忽略异常", ee);
-				}
-			}
-			throw new DataAccessException("插入数据异常", e);
+			throw new DataAccessException("批量操作异常", e);
 		} catch (IOException e) {
-			throw new DataAccessException("插入数据异常", e);
+			throw new DataAccessException("批量操作异常", e);
 		} finally {
 			if (null != response) {
 				try {
@@ -187,7 +282,6 @@ public class ElasticSearcher extends AbstractSearcher {
 				}
 			}
 		}
-
 	}
 
 	private void append(StringBuilder items, String key, String value) {
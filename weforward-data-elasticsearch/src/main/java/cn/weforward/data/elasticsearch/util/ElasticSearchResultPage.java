@@ -63,6 +63,10 @@ public abstract class ElasticSearchResultPage<E> implements ResultPage<E> {
 	protected int m_PageSize = 200;
 	/** 当前页 */
 	protected int m_Page;
+	/** 游标（search_after）翻页的唯一键属性，为null表示使用from偏移翻页 */
+	protected String m_SeekKey;
+	/** 当前页最后一项的排序值 */
+	protected JSONArray m_LastSort;
 
 	public ElasticSearchResultPage(RestClient client, String name, JSONObject query) {
 		m_Client = client;
@@ -92,17 +96,58 @@ public abstract class ElasticSearchResultPage<E> implements ResultPage<E> {
 		m_Source.put(source);
 	}
 
+	/**
+	 * 启用游标（search_after）翻页，顺序翻到下一页时以上一页最后一项的排序值定位，不再使用from偏移
+	 * 
+	 * @param key 唯一键属性（需可排序，如keyword类型），附加在排序的最后保证顺序唯一
+	 */
+	public void setSeek(String key) {
+		m_SeekKey = key;
+		m_LastSort = null;
+	}
+
 	protected void exe(int from, int size) {
+		exe(from, size, null);
+	}
+
+	/**
+	 * 执行查询
+	 * 
+	 * @param from        开始位置
+	 * @param size        数量
+	 * @param searchAfter 游标翻页的上一页最后一项的排序值，为null表示按from偏移
+	 */
+	protected void exe(int from, int size, JSONArray searchAfter) {
 		Request request = new Request("GET", "/" + m_Name + "/_search");
 		request.addParameter("size", String.valueOf(size));
-		request.addParameter("from", String.valueOf(from));
+		if (null == searchAfter) {
+			request.addParameter("from", String.valueOf(from));
+		}
 		if (m_Pretty) {
 			request.addParameter("pretty", "true");
 		}
 		JSONObject jsoncontent = new JSONObject();
 		jsoncontent.put("query", m_Query);
-		if (!m_Sort.isEmpty()) {
-			jsoncontent.put("sort", m_Sort);
+		JSONArray sort = m_Sort;
+		if (null != m_SeekKey && size > 0) {
+			sort = new JSONArray();
+			for (Object v : m_Sort) {
+				sort.put(v);
+			}
+			sort.put(new JSONObject(Collections.singletonMap(m_SeekKey, ASC)));
+		}
+		if (!sort.isEmpty()) {
+			jsoncontent.put("sort", sort);
+		}
+		if (null != searchAfter) {
+			jsoncontent.put("search_after", searchAfter);
+		}
+		if (0 == size) {
+			// 只统计总数时要精确的总数
+			jsoncontent.put("track_total_hits", true);
+		} else if (null != m_SeekKey) {
+			// 游标翻页时不统计总数，总数在getCount时才统计
+			jsoncontent.put("track_total_hits", false);
 		}
 		if (!m_Source.isEmpty()) {
 			jsoncontent.put("_source", m_Source);
@@ -127,9 +172,12 @@ public abstract class ElasticSearchResultPage<E> implements ResultPage<E> {
 			}
 			JSONObject json = new JSONObject(back);
 			JSONObject hits = json.getJSONObject("hits");
-			JSONObject total = hits.getJSONObject("total");
-			m_Count = total.getInt("value");
+			JSONObject total = hits.optJSONObject("total");
+			if (null != total) {
+				m_Count = total.getInt("value");
+			}
 			m_Caches = hits.getJSONArray("hits");
+			m_CachesIndex = 0;
 			return;
 		} catch (ResponseException e) {
 			response = e.getResponse();
@@ -137,6 +185,7 @@ public abstract class ElasticSearchResultPage<E> implements ResultPage<E> {
 			if ((status.getStatusCode() == 404)) {
 				m_Count = 0;
 				m_Caches = EMPTY;
+				m_CachesIndex = 0;
 			} else {
 				throw new DataAccessException("搜索数据异常", e);
 			}
@@ -180,8 +229,10 @@ public abstract class ElasticSearchResultPage<E> implements ResultPage<E> {
 
 	@Override
 	public void setPage(int page) {
-		m_Page = page;
-		gotoPage(page);
+		// 先由gotoPage与前一页比较（顺序翻到下一页时游标翻页），成功时其已更新页号
+		if (!gotoPage(page)) {
+			m_Page = page;
+		}
 	}
 
 	@Override
@@ -191,12 +242,28 @@ public abstract class ElasticSearchResultPage<E> implements ResultPage<E> {
 
 	@Override
 	public boolean gotoPage(int page) {
-		if (page <= 0 || page > getPageCount()) {
+		if (page <= 0) {
+			return false;
+		}
+		// 游标翻页时不需要先计算总数，由结果是否为空判断页是否存在
+		if (null == m_SeekKey && page > getPageCount()) {
 			return false;
 		}
 		int start = (page - 1) * getPageSize();
 		int size = getPageSize();
-		exe(start, size);
+		JSONArray searchAfter = null;
+		if (null != m_SeekKey && page > 1 && page == m_Page + 1) {
+			searchAfter = m_LastSort;
+		}
+		exe(start, size, searchAfter);
+		if (null != m_SeekKey) {
+			int length = m_Caches.length();
+			if (page > 1 && 0 == length) {
+				// 已没有更多的页
+				return false;
+			}
+			m_LastSort = length > 0 ? m_Caches.getJSONObject(length - 1).optJSONArray("sort") : null;
+		}
 		m_Page = page;
 		return true;
 	}
@@ -10,19 +10,32 @@
  */
 package cn.weforward.data.mongodb.array;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import org.bson.BsonDocument;
 import org.bson.Document;
 import org.bson.conversions.Bson;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.mongodb.MongoBulkWriteException;
 import com.mongodb.MongoException;
+import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.BulkWriteOptions;
 import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.WriteModel;
 import com.mongodb.client.result.DeleteResult;
 
 import cn.weforward.common.ResultPage;
@@ -64,6 +77,12 @@ public class MongodbLabel<E extends LabelElement> implements Label<E> {
 	protected String m_Serverid;
 	/** hash集合的大小 */
 	final int m_HashSize;
+	/** 由当前节点最后写入的各项版本（用于一次往返的条件替换） */
+	final ConcurrentHashMap<String, String> m_Versions = new ConcurrentHashMap<String, String>();
+	/** 最多记录版本的项数 */
+	final static int MAX_VERSIONS = 10000;
+	/** 批量写入选项 */
+	final static BulkWriteOptions BULK_OPTIONS = new BulkWriteOptions().ordered(false);
 
 	public MongodbLabel(MongoDatabase db, ObjectMapper<E> mapper, String name, String serverid, int hashsize) {
 		m_Mapper = mapper;
@@ -144,39 +163,144 @@ public class MongodbLabel<E extends LabelElement> implements Label<E> {
 	}
 
 	@Override
-	public synchronized E put(E element, int options) {
+	public E put(E element, int options) {
 		String id = genId(element);
 		MongoCollection<Document> c = getCollection();
-		FindIterable<Document> it = getCollection().find(Filters.eq(ID, id));
-		Document old = it.first();
-		String v = null == old ? null : old.getString(VERSION);
-		Document doc = toDoc(element, genVersion(v), m_Serverid, System.currentTimeMillis());
-		if (isOptions(OPTION_IF_ABSENT, options) && null == old) {
+		if (isOptions(OPTION_IF_ABSENT, options)) {
+			String v = genVersion(null);
 			try {
-				c.insertOne(doc);
+				c.insertOne(toDoc(element, v, m_Serverid, System.currentTimeMillis()));
+				remember(id, v);
+				return null;
 			} catch (MongoException e) {
 				if (MongodbUtil.isDuplicateKeyError(e)) {
-					return wrap(old);
-				} else {
-					throw e;
+					return wrap(c.find(Filters.eq(ID, id)).first());
 				}
+				throw e;
 			}
 		}
-		if (null == old) {
-			try {
-				c.insertOne(doc);
-			} catch (MongoException e) {
-				if (MongodbUtil.isDuplicateKeyError(e)) {
-					c.replaceOne(Filters.eq(ID, id), doc);
-				} else {
-					throw e;
+		String known = m_Versions.get(id);
+		if (null != known) {
+			// 快速路径：以最后写入的版本为条件一次替换
+			String v = genVersion(known);
+			Document old = c.findOneAndReplace(Filters.and(Filters.eq(ID, id), Filters.eq(VERSION, known)),
+					toDoc(element, v, m_Serverid, System.currentTimeMillis()));
+			if (null != old) {
+				remember(id, v);
+				return wrap(old);
+			}
+			// 已被其它节点改写
+			m_Versions.remove(id);
+		}
+		for (;;) {
+			Document old = c.find(Filters.eq(ID, id)).first();
+			if (null == old) {
+				String v = genVersion(null);
+				try {
+					c.insertOne(toDoc(element, v, m_Serverid, System.currentTimeMillis()));
+					remember(id, v);
+					return null;
+				} catch (MongoException e) {
+					if (!MongodbUtil.isDuplicateKeyError(e)) {
+						throw e;
+					}
+					// 同时被插入，重来
+					continue;
 				}
 			}
+			String ov = old.getString(VERSION);
+			String v = genVersion(ov);
+			old = c.findOneAndReplace(Filters.and(Filters.eq(ID, id), Filters.eq(VERSION, ov)),
+					toDoc(element, v, m_Serverid, System.currentTimeMillis()));
+			if (null != old) {
+				remember(id, v);
+				return wrap(old);
+			}
+			// 读取后被改写，重来
+		}
+	}
 
-		} else {
-			c.replaceOne(Filters.eq(ID, id), doc);
+	@Override
+	public void putAll(List<E> elements) {
+		if (elements.isEmpty()) {
+			return;
+		}
+		// 没有最后写入版本的项一次查询出其版本
+		Map<String, String> versions = new HashMap<String, String>(elements.size());
+		List<String> unknowns = new ArrayList<String>();
+		for (E e : elements) {
+			String id = genId(e);
+			String v = m_Versions.get(id);
+			if (null == v) {
+				unknowns.add(id);
+			} else {
+				versions.put(id, v);
+			}
+		}
+		if (!unknowns.isEmpty()) {
+			FindIterable<Document> it = getCollection().find(Filters.in(ID, unknowns))
+					.projection(Projections.include(VERSION));
+			try (MongoCursor<Document> cursor = it.iterator()) {
+				while (cursor.hasNext()) {
+					Document doc = cursor.next();
+					versions.put(String.valueOf(doc.get(ID)), doc.getString(VERSION));
+				}
+			}
+		}
+		long now = System.currentTimeMillis();
+		List<WriteModel<Document>> requests = new ArrayList<WriteModel<Document>>(elements.size());
+		Map<String, String> nexts = new HashMap<String, String>(elements.size());
+		for (int i = elements.size() - 1; i >= 0; i--) {
+			E e = elements.get(i);
+			String id = genId(e);
+			if (nexts.containsKey(id)) {
+				// 同一批内重复的项只写最后的
+				continue;
+			}
+			String ov = versions.get(id);
+			String v = genVersion(ov);
+			nexts.put(id, v);
+			Document doc = toDoc(e, v, m_Serverid, now);
+			if (!versions.containsKey(id)) {
+				// 还没有的项
+				requests.add(new InsertOneModel<Document>(doc));
+			} else {
+				requests.add(new ReplaceOneModel<Document>(
+						Filters.and(Filters.eq(ID, id), Filters.eq(VERSION, ov)), doc));
+			}
+		}
+		int done;
+		try {
+			BulkWriteResult result = getCollection().bulkWrite(requests, BULK_OPTIONS);
+			done = result.getInsertedCount() + result.getMatchedCount();
+		} catch (MongoBulkWriteException e) {
+			done = -1;
+		}
+		if (done == requests.size()) {
+			for (Map.Entry<String, String> e : nexts.entrySet()) {
+				remember(e.getKey(), e.getValue());
+			}
+			return;
+		}
+		// 有项被同时改写，逐项处理
+		_Logger.warn("批量写入冲突，改为逐项写入 " + m_Name + ",size:" + requests.size() + ",done:" + done);
+		for (String id : nexts.keySet()) {
+			m_Versions.remove(id);
+		}
+		for (int i = elements.size() - 1; i >= 0; i--) {
+			E e = elements.get(i);
+			if (null != nexts.remove(genId(e))) {
+				put(e, OPTION_NONE);
+			}
+		}
+	}
+
+	/* 记下最后写入的版本 */
+	private void remember(String id, String version) {
+		if (m_Versions.size() >= MAX_VERSIONS) {
+			m_Versions.clear();
 		}
-		return wrap(old);
+		m_Versions.put(id, version);
 	}
 
 	@Override
@@ -203,12 +327,14 @@ public class MongodbLabel<E extends LabelElement> implements Label<E> {
 
 	@Override
 	public E remove(String id) {
+		m_Versions.remove(genId(id));
 		Document doc = getCollection().findOneAndDelete(Filters.eq(ID, genId(id)));
 		return wrap(doc);
 	}
 
 	@Override
 	public void removeAll() {
+		m_Versions.clear();
 		if (m_HashSize > 0) {
 			removeRange(null, null);
 		} else {
@@ -218,6 +344,7 @@ public class MongodbLabel<E extends LabelElement> implements Label<E> {
 
 	@Override
 	public long removeRange(String first, String last) {
+		m_Versions.clear();
 		DeleteResult r = getCollection().deleteMany(getLimit(first, last));
 		return r.getDeletedCount();
 	}
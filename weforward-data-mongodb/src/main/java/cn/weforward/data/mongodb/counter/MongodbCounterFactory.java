@@ -10,7 +10,9 @@
  */
 package cn.weforward.data.mongodb.counter;
 
+import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -22,6 +24,7 @@ import org.slf4j.LoggerFactory;
 
 import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.UpdateOneModel;
@@ -77,6 +80,27 @@ public class MongodbCounterFactory extends DbCounterFactory {
 		if (null == doc) {
 			return null;
 		}
+		return toItem(id, doc);
+	}
+
+	@Override
+	protected Map<String, CounterItem> doLoadBatch(DbCounter counter, List<String> ids) {
+		MongodbCounter mdbCounter = (MongodbCounter) counter;
+		Map<String, CounterItem> result = new HashMap<>(ids.size());
+		FindIterable<Document> it = mdbCounter.getCollection().find(Filters.in(MongodbUtil.ID, ids))
+				.batchSize(ids.size());
+		try (MongoCursor<Document> cursor = it.iterator()) {
+			while (cursor.hasNext()) {
+				Document doc = cursor.next();
+				String id = doc.getString(MongodbUtil.ID);
+				result.put(id, toItem(id, doc));
+			}
+		}
+		return result;
+	}
+
+	/* 由文档转换为计数项 */
+	private CounterItem toItem(String id, Document doc) {
 		Set<Map.Entry<String, Object>> set = doc.entrySet();
 		// 遍历记录各服务器标识下字段的值
 		CounterItem item = new CounterItem(id);
@@ -110,7 +134,7 @@ public class MongodbCounterFactory extends DbCounterFactory {
 			while (data.hasNext()) {
 				item = data.next();
 				BsonDocument update = new BsonDocument();
-				update.put(getFieldName(), new BsonInt64(item.value));
+				update.put(getFieldName(), new BsonInt64(item.snapshot()));
 				update = new BsonDocument("$set", update);
 				UpdateOneModel<Document> updateOneModel = new UpdateOneModel<Document>(
 						Filters.eq(MongodbUtil.ID, item.id), update, m_UpdateOptions);
@@ -123,22 +147,24 @@ public class MongodbCounterFactory extends DbCounterFactory {
 				return;
 			}
 			BulkWriteResult result = mdbCounter.getCollection().bulkWrite(requests);
-			if (result.getMatchedCount() == requests.size()) {
+			// 批量累加时新建的项未经doNew，由upsert插入，同样算成功
+			int done = result.getMatchedCount() + result.getUpserts().size();
+			if (done == requests.size()) {
 				// 批处理成功
 				data.commit();
 				data = null;
 			} else {
 				// 批处理（部分）不成功
 				_Logger.warn("{requests:" + requests.size() + ",matched:" + result.getMatchedCount()
-						+ ",modified:" + result.getModifiedCount() + ",inserted:"
-						+ result.getInsertedCount() + "}");
+						+ ",modified:" + result.getModifiedCount() + ",upserts:"
+						+ result.getUpserts().size() + "}");
 			}
 			if (ts > 0) {
 				ts = System.currentTimeMillis() - ts;
 				if (ts > 100) {
 					_Logger.trace("{mills:" + ts + ",requests:" + requests.size() + ",matched:"
 							+ result.getMatchedCount() + ",modified:" + result.getModifiedCount()
-							+ ",inserted:" + result.getInsertedCount() + "}");
+							+ ",upserts:" + result.getUpserts().size() + "}");
 				}
 			}
 		} finally {
@@ -153,7 +179,7 @@ public class MongodbCounterFactory extends DbCounterFactory {
 		MongodbCounter mdbCounter = (MongodbCounter) counter;
 		// {"$set":{"x005d":100}},{upsert:true}
 		BsonDocument update = new BsonDocument();
-		update.put(getFieldName(), new BsonInt64(item.value));
+		update.put(getFieldName(), new BsonInt64(item.getValue()));
 		update = new BsonDocument("$set", update);
 		mdbCounter.getCollection().updateOne(Filters.eq(MongodbUtil.ID, item.id), update,
 				m_UpdateOptions);
@@ -10,14 +10,20 @@
  */
 package cn.weforward.data.mongodb.log;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 import org.bson.BsonString;
 import org.bson.Document;
 import org.bson.conversions.Bson;
 
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertManyOptions;
 
 import cn.weforward.common.ResultPage;
 import cn.weforward.common.util.ResultPageHelper;
@@ -54,13 +60,39 @@ public class MongodbBusinessLogger extends AbstractBusinessLogger {
 
 	@Override
 	public void writeLog(BusinessLog log) {
-		Document insert = new Document();
-		insert.append(MongodbUtil.ID, log.getId());
-		insert.append("ac", toString(log.getAction()));
-		insert.append("a", toString(log.getAuthor()));
-		insert.append("n", toString(log.getNote()));
-		insert.append("w", toString(log.getWhat()));
-		m_Collection.insertOne(insert);
+		m_Collection.insertOne(toDocument(log));
+	}
+
+	@Override
+	protected void writeLogs(List<BusinessLog> logs) {
+		if (1 == logs.size()) {
+			writeLog(logs.get(0));
+			return;
+		}
+		List<Document> docs = new ArrayList<Document>(logs.size());
+		for (BusinessLog log : logs) {
+			docs.add(toDocument(log));
+		}
+		try {
+			m_Collection.insertMany(docs, new InsertManyOptions().ordered(false));
+		} catch (MongoBulkWriteException e) {
+			// 重试时已写入的项ID重复，忽略
+			for (BulkWriteError error : e.getWriteErrors()) {
+				if (ErrorCategory.DUPLICATE_KEY != ErrorCategory.fromErrorCode(error.getCode())) {
+					throw e;
+				}
+			}
+		}
+	}
+
+	private static Document toDocument(BusinessLog log) {
+		Document doc = new Document();
+		doc.append(MongodbUtil.ID, log.getId());
+		doc.append("ac", toString(log.getAction()));
+		doc.append("a", toString(log.getAuthor()));
+		doc.append("n", toString(log.getNote()));
+		doc.append("w", toString(log.getWhat()));
+		return doc;
 	}
 
 	private static BsonString toString(String v) {
@@ -12,11 +12,20 @@ package cn.weforward.data.mongodb.persister;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Supplier;
 
 import org.bson.BsonDocument;
@@ -26,12 +35,20 @@ import org.bson.conversions.Bson;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteError;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.BulkWriteOptions;
 import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.ReplaceOneModel;
 import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
 import com.mongodb.client.model.changestream.ChangeStreamDocument;
 import com.mongodb.client.model.changestream.OperationType;
 import com.mongodb.client.result.DeleteResult;
@@ -56,8 +73,9 @@ import cn.weforward.data.persister.PersistentListener;
 import cn.weforward.data.persister.Persister;
 import cn.weforward.data.persister.Reloadable;
 import cn.weforward.data.persister.support.AbstractPersister;
+import cn.weforward.data.persister.support.PersistentCache;
 import cn.weforward.data.util.AutoObjectMapper;
-import cn.weforward.data.util.Flushable;
+import cn.weforward.data.util.PartitionFlushable;
 import cn.weforward.data.util.Flusher;
 import cn.weforward.data.util.VersionTags;
 import cn.weforward.protocol.datatype.DtObject;
@@ -95,8 +113,21 @@ public class MongodbPersister<E extends Persistent> extends AbstractPersister<E>
 	static {
 		PROJECTION_ID_ONLY.put(ID, new BsonInt32(1));
 	}
+	/** 没有变化监听器时，变化事件只需要的字段（需要时再按ID加载完整文档） */
+	private static final List<String> CHANGE_FIELDS = Arrays.asList(ID, VERSION, SERVERID,
+			DRIVEIT);
 	/** 替换条件 */
 	private static final ReplaceOptions REPLACE_OPTIONS = new ReplaceOptions().upsert(true);
+	/** 批量写入条件，单项失败不影响其它项 */
+	private static final BulkWriteOptions BULK_OPTIONS = new BulkWriteOptions().ordered(false);
+	/** 保存锁的分段数 */
+	private static final int SAVE_LOCK_STRIPES = 256;
+	/** 批量保存时每块的最大项数，即一次写入最多持有的分段锁数 */
+	private static final int SAVE_BATCH_CHUNK = 32;
+	/** 按ID分段的保存锁，保证同一对象写入的先后顺序 */
+	private final ReentrantLock[] m_SaveLocks;
+	/** 遍历时每批由服务器取回的文档数 */
+	protected int m_ScanBatchSize = 1000;
 	/** 升序 */
 	public static final short ORDERBY_ASC = 1;
 	/** 降序 */
@@ -110,6 +141,11 @@ public class MongodbPersister<E extends Persistent> extends AbstractPersister<E>
 		super(name);
 		m_Mapper = mapper;
 		m_Factory = factory;
+		m_SaveLocks = new ReentrantLock[SAVE_LOCK_STRIPES];
+		for (int i = 0; i < m_SaveLocks.length; i++) {
+			m_SaveLocks[i] = new ReentrantLock();
+		}
+		m_BatchFlushEnabled = true;
 	}
 
 	public void setFlusher(Flusher flusher) {
@@ -133,9 +169,20 @@ public class MongodbPersister<E extends Persistent> extends AbstractPersister<E>
 	}
 
 	private void stopWacherIfNeed() {
+		if (isReloadEnabled() || !m_Listeners.isEmpty()) {
+			// 还有需要监听的，重新注册以更新投影
+			m_Factory.wacher(this);
+			return;
+		}
 		m_Factory.unWacher(this);
 	}
 
+	@Override
+	public Collection<String> getChangeFields() {
+		// 监听器可能需要完整的对象，只有重载时只需要部分字段
+		return m_Listeners.isEmpty() ? CHANGE_FIELDS : null;
+	}
+
 	@Override
 	public synchronized void addListener(ChangeListener<E> l) {
 		super.addListener(l);
@@ -175,29 +222,104 @@ public class MongodbPersister<E extends Persistent> extends AbstractPersister<E>
 
 	@Override
 	public Iterator<String> searchOfId(String serverId, Date begin, Date end) {
+		return toIt(toFilter(serverId, begin, end));
+	}
+
+	@Override
+	public Iterator<String> searchRangeOfId(String serverId, String from, String to) {
+		return toIt(toRangeFilter(serverId, from, to));
+	}
+
+	/**
+	 * 以游标遍历指定时间段内的完整文档
+	 * <p>
+	 * 遍历期间服务器端保持游标，遍历完才关闭，中途放弃遍历必须调用close
+	 * 
+	 * @param serverId 服务器id，为null时不限
+	 * @param begin    开始时间，为null时不限
+	 * @param end      结束时间，为null时不限
+	 * @return 迭代器
+	 */
+	public MongodbIterator<E> stream(String serverId, Date begin, Date end) {
+		return toObjectIt(toFilter(serverId, begin, end));
+	}
+
+	/**
+	 * 以游标遍历指定ID范围内的完整文档
+	 * <p>
+	 * 遍历期间服务器端保持游标，遍历完才关闭，中途放弃遍历必须调用close
+	 * 
+	 * @param serverId 服务器id，为null时不限
+	 * @param from     开始ID，为空时不限
+	 * @param to       结束ID，为空时不限
+	 * @return 迭代器
+	 */
+	public MongodbIterator<E> streamRange(String serverId, String from, String to) {
+		return toObjectIt(toRangeFilter(serverId, from, to));
+	}
+
+	/**
+	 * 遍历时每批由服务器取回的文档数，用于searchOfId/searchRangeOfId及stream/streamRange
+	 * <p>
+	 * 游标不设noCursorTimeout，闲置超过服务器的游标超时（默认10分钟）会被回收，批次不宜过大以免单批处理过久
+	 * 
+	 * @param size 文档数，0为驱动默认
+	 */
+	public void setScanBatchSize(int size) {
+		m_ScanBatchSize = size;
+	}
+
+	private static Bson toFilter(String serverId, Date begin, Date end) {
 		Bson eq = Filters.eq(SERVERID, serverId);
 		long from = null == begin ? Long.MIN_VALUE : begin.getTime();
 		long to = null == end ? Long.MAX_VALUE : end.getTime();
 		Bson range = Filters.and(Filters.gt(LASTMODIFIED, from), Filters.lte(LASTMODIFIED, to));
-		Bson filter = Filters.and(eq, range);
-		return toIt(filter);
+		return Filters.and(eq, range);
 	}
 
-	@Override
-	public Iterator<String> searchRangeOfId(String serverId, String from, String to) {
+	private static Bson toRangeFilter(String serverId, String from, String to) {
 		Bson eq = Filters.eq(SERVERID, serverId);
 		from = null == from ? "" : from;
 		to = null == to ? "" : to;
 		Bson range = Filters.and(Filters.gte(ID, from), Filters.lte(ID, to));
-		Bson filter = Filters.and(eq, range);
-		return toIt(filter);
+		return Filters.and(eq, range);
 	}
 
 	@Override
 	public ResultPage<String> searchOfId(Condition condition, OrderBy orderBy) {
 		Bson filter = toBson(condition);
-		Bson sort = toBson(orderBy);
-		return toResult(filter, sort);
+		return toResult(filter, orderBy);
+	}
+
+	@Override
+	public ResultPage<DtObject> searchView(Condition condition, OrderBy orderBy, String... fields) {
+		Bson filter = toBson(condition);
+		// 只投影指定的属性，文档不经映射器转换也不进入对象缓存
+		BsonDocument projection = new BsonDocument();
+		projection.put(ID, new BsonInt32(1));
+		// 结果只保留指定的（顶层）属性，游标翻页附加投影的排序属性不返回
+		final Set<String> names = new HashSet<>();
+		if (null != fields) {
+			for (String f : fields) {
+				if (!StringUtil.isEmpty(f)) {
+					projection.put(f, new BsonInt32(1));
+					int index = f.indexOf(Condition.FIELD_SPEARATOR);
+					names.add(index > 0 ? f.substring(0, index) : f);
+				}
+			}
+		}
+		MongodbResultPage<DtObject> rp = new MongodbResultPage<DtObject>(getCollection(), filter,
+				toBson(orderBy)) {
+
+			@Override
+			protected DtObject to(Document doc) {
+				return null == doc ? null : toView(doc, names);
+			}
+
+		};
+		rp.setProjection(projection);
+		setSeek(rp, orderBy);
+		return rp;
 	}
 
 	private Bson toBson(Condition c) {
@@ -222,6 +344,22 @@ public class MongodbPersister<E extends Persistent> extends AbstractPersister<E>
 			return Filters.lte(c.getName(), toTItem(c.getValue()));
 		case Condition.TYPE_GTE:
 			return Filters.gte(c.getName(), toTItem(c.getValue()));
+		case Condition.TYPE_IN:
+			return Filters.in(c.getName(), toTItems(c.getValue()));
+		case Condition.TYPE_NIN:
+			return Filters.nin(c.getName(), toTItems(c.getValue()));
+		case Condition.TYPE_PREFIX: {
+			// 与startsWithOfId一样转为区间，可使用索引
+			String prefix = StringUtil.toString(c.getValue());
+			return Filters.and(Filters.gte(c.getName(), prefix),
+					Filters.lte(c.getName(), prefix + StringUtil.UNICODE_REPLACEMENT_STRING));
+		}
+		case Condition.TYPE_EXISTS:
+			// 与其它存储一致，值为null视为不存在（$exists会包含值为null的文档）
+			if (Boolean.FALSE.equals(c.getValue())) {
+				return Filters.eq(c.getName(), null);
+			}
+			return Filters.ne(c.getName(), null);
 		default:
 			throw new UnsupportedOperationException("不支持的类型[" + type + "]");
 		}
@@ -232,6 +370,17 @@ public class MongodbPersister<E extends Persistent> extends AbstractPersister<E>
 		return value;// 暂时先不用处理类型转换
 	}
 
+	private List<Object> toTItems(Object value) {
+		if (!(value instanceof Collection<?>)) {
+			return null == value ? Collections.emptyList() : Collections.singletonList(toTItem(value));
+		}
+		List<Object> list = new ArrayList<>(((Collection<?>) value).size());
+		for (Object v : (Collection<?>) value) {
+			list.add(toTItem(v));
+		}
+		return list;
+	}
+
 	private Bson toBson(OrderBy value) {
 		if (null == value) {
 			return null;
@@ -266,34 +415,288 @@ public class MongodbPersister<E extends Persistent> extends AbstractPersister<E>
 			return null;
 		}
 		E e = wrap(doc);
-		return new ObjectWithVersion<E>(e, doc.getString(VERSION), doc.getString(DRIVEIT));
+		ObjectWithVersion<E> ov = new ObjectWithVersion<E>(e, doc.getString(VERSION), doc.getString(DRIVEIT));
+		ov.setSnapshot(doc);
+		return ov;
+	}
+
+	@Override
+	protected Map<String, ObjectWithVersion<E>> innerLoadBatch(List<String> ids) {
+		List<String> filterIds = new ArrayList<>(ids.size());
+		for (String id : ids) {
+			filterIds.add(getId(id));
+		}
+		Map<String, ObjectWithVersion<E>> result = new HashMap<>(ids.size());
+		FindIterable<Document> it = getCollection().find(Filters.in(ID, filterIds))
+				.batchSize(ids.size());
+		try (MongoCursor<Document> cursor = it.iterator()) {
+			while (cursor.hasNext()) {
+				Document doc = cursor.next();
+				E e = wrap(doc);
+				ObjectWithVersion<E> ov = new ObjectWithVersion<E>(e, doc.getString(VERSION),
+						doc.getString(DRIVEIT));
+				ov.setSnapshot(doc);
+				result.put(doc.getString(ID), ov);
+			}
+		}
+		return result;
 	}
 
-	protected synchronized String innerSave(E object) {
+	protected String innerSave(E object) {
 		return innerSave(object, null);
 	}
 
-	protected synchronized String innerSave(E object, String oldVersion) {
+	protected String innerSave(E object, String oldVersion) {
 		// String version = oldVersion;
 		// if (object instanceof AbstractPersistent<?>) {
 		// version = ((AbstractPersistent<?>) object).getPersistenceVersion();
 		// }
-		MongoCollection<Document> c = getCollection();
-		// Document doc = toDoc(object, version);
-		Document doc = toDoc(object, oldVersion);
-		Bson filter = Filters.eq(ID, getId(object.getPersistenceId()));
-		UpdateResult result = c.replaceOne(filter, doc, REPLACE_OPTIONS);
-		if (_Logger.isDebugEnabled()) {
-			_Logger.debug("matchedCount:" + result.getMatchedCount());
-			_Logger.debug("modifiedCount:" + result.getModifiedCount());
-			_Logger.debug("upsertedId:" + result.getUpsertedId());
-		}
-		// if (result.getMatchedCount() == 0) {
-		// c.insertOne(doc);
-		// }
+		return save(object, oldVersion, null).getString(VERSION);
+	}
+
+	@Override
+	protected String innerSave(E object, String oldVersion, PersistentCache.SnapshotHolder holder) {
+		Object snapshot = holder.getSnapshot();
+		Document doc = save(object, oldVersion, (snapshot instanceof Document) ? (Document) snapshot : null);
+		holder.setSnapshot(doc);
 		return doc.getString(VERSION);
 	}
 
+	/* 保存，有快照时只更新变化的属性，存储中的版本已不是快照的版本则整个替换 */
+	private Document save(E object, String oldVersion, Document snapshot) {
+		MongoCollection<Document> c = getCollection();
+		String id = getId(object.getPersistenceId());
+		ReentrantLock lock = m_SaveLocks[getLockIndex(id)];
+		lock.lock();
+		try {
+			// Document doc = toDoc(object, version);
+			Document doc = toDoc(object, oldVersion);
+			UpdateResult result;
+			if (null != snapshot) {
+				result = c.updateOne(toFilter(id, snapshot), toUpdate(snapshot, doc));
+				if (result.getMatchedCount() > 0) {
+					if (_Logger.isDebugEnabled()) {
+						_Logger.debug("modifiedCount:" + result.getModifiedCount());
+					}
+					return doc;
+				}
+			}
+			Bson filter = Filters.eq(ID, id);
+			result = c.replaceOne(filter, doc, REPLACE_OPTIONS);
+			if (_Logger.isDebugEnabled()) {
+				_Logger.debug("matchedCount:" + result.getMatchedCount());
+				_Logger.debug("modifiedCount:" + result.getModifiedCount());
+				_Logger.debug("upsertedId:" + result.getUpsertedId());
+			}
+			// if (result.getMatchedCount() == 0) {
+			// c.insertOne(doc);
+			// }
+			return doc;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/* 部分更新的条件：存储中的版本仍是快照的版本 */
+	private static Bson toFilter(String id, Document snapshot) {
+		return Filters.and(Filters.eq(ID, id), Filters.eq(VERSION, snapshot.getString(VERSION)));
+	}
+
+	/* 与快照比较生成部分更新（版本号及最后修改时间总是有变化） */
+	private static Bson toUpdate(Document snapshot, Document doc) {
+		List<Bson> updates = new ArrayList<>();
+		for (Map.Entry<String, Object> e : doc.entrySet()) {
+			String key = e.getKey();
+			if (ID.equals(key)) {
+				continue;
+			}
+			if (!snapshot.containsKey(key) || !Objects.equals(e.getValue(), snapshot.get(key))) {
+				updates.add(Updates.set(key, e.getValue()));
+			}
+		}
+		for (String key : snapshot.keySet()) {
+			if (!doc.containsKey(key)) {
+				updates.add(Updates.unset(key));
+			}
+		}
+		return Updates.combine(updates);
+	}
+
+	@Override
+	protected String[] innerSaveBatch(List<E> objects, List<String> oldVersions) {
+		return saveBatch(objects, oldVersions, null);
+	}
+
+	@Override
+	protected String[] innerSaveBatch(List<E> objects, List<String> oldVersions,
+			List<? extends PersistentCache.SnapshotHolder> holders) {
+		return saveBatch(objects, oldVersions, holders);
+	}
+
+	/*
+	 * 批量保存，按保存锁的分段分成多块写入：每块中各项的分段互不相同且按分段升序加锁，只在该块写入期间持有其所需的分段锁
+	 */
+	private String[] saveBatch(List<E> objects, List<String> oldVersions,
+			List<? extends PersistentCache.SnapshotHolder> holders) {
+		int size = objects.size();
+		String[] versions = new String[size];
+		List<List<Integer>> stripes = new ArrayList<>(SAVE_LOCK_STRIPES);
+		for (int i = 0; i < SAVE_LOCK_STRIPES; i++) {
+			stripes.add(null);
+		}
+		for (int i = 0; i < size; i++) {
+			int index = getLockIndex(getId(objects.get(i).getPersistenceId()));
+			List<Integer> items = stripes.get(index);
+			if (null == items) {
+				items = new ArrayList<>();
+				stripes.set(index, items);
+			}
+			items.add(i);
+		}
+		int[] offsets = new int[SAVE_LOCK_STRIPES];
+		List<Integer> chunk = new ArrayList<>(SAVE_BATCH_CHUNK);
+		int remaining = size;
+		while (remaining > 0) {
+			// 每轮由各分段各取一项
+			for (int s = 0; s < SAVE_LOCK_STRIPES; s++) {
+				List<Integer> items = stripes.get(s);
+				if (null == items || offsets[s] >= items.size()) {
+					continue;
+				}
+				chunk.add(items.get(offsets[s]++));
+				remaining--;
+				if (chunk.size() >= SAVE_BATCH_CHUNK) {
+					saveChunk(objects, oldVersions, holders, chunk, versions);
+					chunk.clear();
+				}
+			}
+			if (!chunk.isEmpty()) {
+				saveChunk(objects, oldVersions, holders, chunk, versions);
+				chunk.clear();
+			}
+		}
+		return versions;
+	}
+
+	/*
+	 * 写入一块，与save()一样在持有分段锁后才生成文档。先锁对象再锁分段与单个保存的顺序一致，块内分段升序且互不相同，不会死锁
+	 */
+	private void saveChunk(List<E> objects, List<String> oldVersions,
+			List<? extends PersistentCache.SnapshotHolder> holders, List<Integer> chunk, String[] versions) {
+		int size = chunk.size();
+		Document[] docs = new Document[size];
+		List<WriteModel<Document>> models = new ArrayList<>(size);
+		// 部分更新的项（在块中的下标）
+		List<Integer> partials = new ArrayList<>();
+		List<ReentrantLock> locks = new ArrayList<>(size);
+		try {
+			for (int j = 0; j < size; j++) {
+				int i = chunk.get(j);
+				E object = objects.get(i);
+				String id = getId(object.getPersistenceId());
+				Document doc;
+				synchronized (object) {
+					ReentrantLock lock = m_SaveLocks[getLockIndex(id)];
+					lock.lock();
+					locks.add(lock);
+					doc = toDoc(object, oldVersions.get(i));
+				}
+				Object snapshot = (null == holders) ? null : holders.get(i).getSnapshot();
+				if (snapshot instanceof Document) {
+					models.add(new UpdateOneModel<Document>(toFilter(id, (Document) snapshot),
+							toUpdate((Document) snapshot, doc)));
+					partials.add(j);
+				} else {
+					models.add(new ReplaceOneModel<Document>(Filters.eq(ID, id), doc, REPLACE_OPTIONS));
+				}
+				docs[j] = doc;
+				versions[i] = doc.getString(VERSION);
+			}
+			BulkWriteResult result;
+			int errors = 0;
+			try {
+				result = getCollection().bulkWrite(models, BULK_OPTIONS);
+			} catch (MongoBulkWriteException e) {
+				if (null != e.getWriteConcernError()) {
+					// 写关注未满足，不能确认写入，整块都作为失败留待下次刷写
+					for (int j = 0; j < size; j++) {
+						versions[chunk.get(j)] = null;
+					}
+					_Logger.error(size + " 项保存失败：" + e.getWriteConcernError());
+					return;
+				}
+				// 只有出错的项失败
+				for (BulkWriteError error : e.getWriteErrors()) {
+					int i = chunk.get(error.getIndex());
+					versions[i] = null;
+					_Logger.error("保存失败：" + objects.get(i) + "," + error);
+				}
+				result = e.getWriteResult();
+				errors = e.getWriteErrors().size();
+			}
+			if (!partials.isEmpty()
+					&& result.getMatchedCount() + result.getUpserts().size() + errors < models.size()) {
+				// 有部分更新的项的存储版本已不是快照的版本，这些项改为整个替换（替换是幂等的）
+				replace(docs, objects, chunk, versions, partials);
+			}
+		} catch (RuntimeException e) {
+			for (int j = 0; j < size; j++) {
+				versions[chunk.get(j)] = null;
+			}
+			throw e;
+		} finally {
+			for (ReentrantLock lock : locks) {
+				lock.unlock();
+			}
+		}
+		if (null != holders) {
+			for (int j = 0; j < size; j++) {
+				int i = chunk.get(j);
+				if (null != versions[i]) {
+					holders.get(i).setSnapshot(docs[j]);
+				}
+			}
+		}
+	}
+
+	/* 整个替换部分更新的项 */
+	private void replace(Document[] docs, List<E> objects, List<Integer> chunk, String[] versions,
+			List<Integer> partials) {
+		List<WriteModel<Document>> models = new ArrayList<>(partials.size());
+		List<Integer> indexes = new ArrayList<>(partials.size());
+		for (Integer j : partials) {
+			if (null != versions[chunk.get(j)]) {
+				models.add(new ReplaceOneModel<Document>(Filters.eq(ID, docs[j].get(ID)), docs[j],
+						REPLACE_OPTIONS));
+				indexes.add(chunk.get(j));
+			}
+		}
+		if (models.isEmpty()) {
+			return;
+		}
+		try {
+			getCollection().bulkWrite(models, BULK_OPTIONS);
+		} catch (MongoBulkWriteException e) {
+			if (null != e.getWriteConcernError()) {
+				for (Integer i : indexes) {
+					versions[i] = null;
+				}
+				_Logger.error(indexes.size() + " 项保存失败：" + e.getWriteConcernError());
+				return;
+			}
+			for (BulkWriteError error : e.getWriteErrors()) {
+				int i = indexes.get(error.getIndex());
+				versions[i] = null;
+				_Logger.error("保存失败：" + objects.get(i) + "," + error);
+			}
+		}
+	}
+
+	/* 保存锁的分段 */
+	private static int getLockIndex(String id) {
+		return (id.hashCode() & 0x7FFFFFFF) % SAVE_LOCK_STRIPES;
+	}
+
 	@Override
 	protected String innerNew(E object) {
 		return innerSave(object);
@@ -373,6 +776,19 @@ public class MongodbPersister<E extends Persistent> extends AbstractPersister<E>
 		return m_Mapper.fromDtObject(dt);
 	}
 
+	/* 包装视图 */
+	static DtObject toView(Document doc, Set<String> names) {
+		SimpleDtObject dt = new SimpleDtObject();
+		dt.put(ID, String.valueOf(doc.get(ID)));
+		Document view = new Document();
+		for (Map.Entry<String, Object> e : doc.entrySet()) {
+			if (names.contains(e.getKey()) && !ID.equals(e.getKey())) {
+				view.put(e.getKey(), e.getValue());
+			}
+		}
+		return MongodbUtil.docToDt(dt, view);
+	}
+
 	/* 转换文档 */
 	private Document toDoc(E object, String version) {
 		DtObject dt = m_Mapper.toDtObject(object);
@@ -394,7 +810,7 @@ public class MongodbPersister<E extends Persistent> extends AbstractPersister<E>
 	}
 
 	/* 获取id */
-	private Object getId(UniteId id) {
+	private String getId(UniteId id) {
 		return id.getOrdinal();
 	}
 
@@ -409,9 +825,9 @@ public class MongodbPersister<E extends Persistent> extends AbstractPersister<E>
 	}
 
 	/* 转换结果id */
-	private ResultPage<String> toResult(Bson filter, Bson sort) {
+	private ResultPage<String> toResult(Bson filter, OrderBy orderBy) {
 		MongodbResultPage<String> rp = new MongodbResultPage<String>(getCollection(), filter,
-				sort) {
+				toBson(orderBy)) {
 
 			@Override
 			protected String to(Document doc) {
@@ -420,9 +836,23 @@ public class MongodbPersister<E extends Persistent> extends AbstractPersister<E>
 
 		};
 		rp.setProjection(PROJECTION_ID_ONLY);
+		setSeek(rp, orderBy);
 		return rp;
 	}
 
+	/* 无排序或只按最后修改时间排序时使用游标翻页（这两个属性的值不会为null） */
+	private static void setSeek(MongodbResultPage<?> rp, OrderBy orderBy) {
+		if (null == orderBy) {
+			rp.setSeek(null, false);
+		} else if (ListUtil.isEmpty(orderBy.getDesc()) && null != orderBy.getAsc()
+				&& orderBy.getAsc().size() == 1 && orderBy.getAsc().contains(LASTMODIFIED)) {
+			rp.setSeek(LASTMODIFIED, false);
+		} else if (ListUtil.isEmpty(orderBy.getAsc()) && null != orderBy.getDesc()
+				&& orderBy.getDesc().size() == 1 && orderBy.getDesc().contains(LASTMODIFIED)) {
+			rp.setSeek(LASTMODIFIED, true);
+		}
+	}
+
 	/* 遍历器 */
 	private Iterator<String> toIt(Bson filter) {
 		MongodbIterator<String> it = new MongodbIterator<String>(getCollection(), filter) {
@@ -434,6 +864,23 @@ public class MongodbPersister<E extends Persistent> extends AbstractPersister<E>
 
 		};
 		it.setProjection(PROJECTION_ID_ONLY);
+		it.setBatchSize(m_ScanBatchSize);
+		return it;
+	}
+
+	/* 完整文档的遍历器，对象经缓存后返回 */
+	private MongodbIterator<E> toObjectIt(Bson filter) {
+		MongodbIterator<E> it = new MongodbIterator<E>(getCollection(), filter) {
+
+			@Override
+			protected E to(Document doc) {
+				E e = wrap(doc);
+				return hold(doc.getString(ID),
+						new ObjectWithVersion<E>(e, doc.getString(VERSION), doc.getString(DRIVEIT)));
+			}
+
+		};
+		it.setBatchSize(m_ScanBatchSize);
 		return it;
 	}
 
@@ -451,14 +898,14 @@ public class MongodbPersister<E extends Persistent> extends AbstractPersister<E>
 				return;// 自己改的..
 			}
 			String id = full.getString(ID);
+			// 只投影了部分字段的事件，需要时再加载完整文档
+			boolean partial = CHANGE_FIELDS.containsAll(full.keySet());
 			E data = null;
 			try {
-				E e;
-				synchronized (m_Cache) {
-					e = m_Cache.get(id);
-				}
+				E e = peek(id);
 				if (e instanceof Reloadable) {
-					data = wrap(doc.getFullDocument());
+					Document source = partial ? loadDocument(id) : full;
+					data = (null == source) ? null : wrap(source);
 					if (data instanceof PersistentListener) {
 						// 调用持久对象反射后事件
 						PersistentListener listener = (PersistentListener) data;
@@ -466,18 +913,28 @@ public class MongodbPersister<E extends Persistent> extends AbstractPersister<E>
 								UniteId.valueOf(id, data.getClass()), full.getString(VERSION),
 								full.getString(DRIVEIT));
 					}
-					Reloadable<E> able = (Reloadable<E>) e;
-					able.onReloadAccepted(this, data);
+					if (null != data) {
+						Reloadable<E> able = (Reloadable<E>) e;
+						able.onReloadAccepted(this, data);
+					}
 				}
 			} catch (Throwable e) {
 				_Logger.warn("忽略onReloadAccepted通知异常," + id, e);
 			}
 			List<ChangeListener<E>> list = m_Listeners;
+			if (list.isEmpty()) {
+				return;
+			}
 			Supplier<E> supplierdata;
-			if (null == data) {
-				supplierdata = () -> wrap(doc.getFullDocument());
-			} else {
+			if (null != data) {
 				supplierdata = Optional.of(data)::get;
+			} else if (partial) {
+				supplierdata = () -> {
+					Document source = loadDocument(id);
+					return null == source ? null : wrap(source);
+				};
+			} else {
+				supplierdata = () -> wrap(doc.getFullDocument());
 			}
 			NameItem type;
 			switch (op) {
@@ -508,18 +965,28 @@ public class MongodbPersister<E extends Persistent> extends AbstractPersister<E>
 		}
 	}
 
+	/* 由存储加载完整文档 */
+	private Document loadDocument(String id) {
+		return getCollection().find(Filters.eq(ID, id)).first();
+	}
+
 	private String getString(Document full, String key) {
 		Object v = full.get(key);
 		return null == v ? null : String.valueOf(v);
 	}
 
-	class InitFlushable implements Flushable {
+	class InitFlushable implements PartitionFlushable {
 
 		@Override
 		public void flush() throws IOException {
 			getCollection();
 		}
 
+		@Override
+		public int getPartitionKey() {
+			return getName().hashCode();
+		}
+
 	}
 
 }
@@ -15,7 +15,9 @@ import org.bson.Document;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
 
+import cn.weforward.common.util.StringUtil;
 import cn.weforward.data.mongodb.util.MongodbUtil;
+import cn.weforward.data.mongodb.util.MongodbResumeTokenStore;
 import cn.weforward.data.mongodb.util.MongodbWatcher;
 import cn.weforward.data.persister.Persistent;
 import cn.weforward.data.persister.Persister;
@@ -55,6 +57,29 @@ public class MongodbPersisterFactory extends AbstractPersisterFactory implements
 		m_Watcher.setMaxAwaitTime(v);
 	}
 
+	/**
+	 * 把变化监听的恢复令牌保存在指定集合，重启后由最后处理的变化继续监听
+	 * 
+	 * @param collection 集合名，为空则不保存
+	 */
+	public void setResumeTokenCollection(String collection) {
+		if (StringUtil.isEmpty(collection)) {
+			m_Watcher.setResumeTokenStore(null);
+		} else {
+			m_Watcher.setResumeTokenStore(new MongodbResumeTokenStore(m_Db, collection));
+		}
+	}
+
+	/**
+	 * 处理变化事件的工作线程（按集合分区）
+	 * 
+	 * @param workers  线程数，0表示在监听线程中处理
+	 * @param capacity 每个线程的队列容量
+	 */
+	public void setWatcherWorkers(int workers, int capacity) {
+		m_Watcher.setWorkers(workers, capacity);
+	}
+
 	@Override
 	public <E extends Persistent> Persister<E> doCreatePersister(Class<E> clazz, ObjectMapper<E> mapper) {
 		return new MongodbPersister<E>(this, mapper);
@@ -11,7 +11,9 @@
 package cn.weforward.data.mongodb.search;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import org.bson.BsonDocument;
 import org.bson.BsonString;
@@ -20,12 +22,17 @@ import org.bson.conversions.Bson;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.DeleteOneModel;
 import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.ReplaceOneModel;
 import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.WriteModel;
 import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.UpdateResult;
 
@@ -52,6 +59,8 @@ public class MongodbSearcher extends AbstractSearcher {
 	final static Logger _Logger = LoggerFactory.getLogger(MongodbSearcher.class);
 	/** 替换条件 */
 	private static final ReplaceOptions REPLACE_OPTIONS = new ReplaceOptions().upsert(true);
+	/** 批量写入选项 */
+	private static final BulkWriteOptions BULK_OPTIONS = new BulkWriteOptions().ordered(false);
 	/** id属性 */
 	final static String ID = MongodbPersister.ID;
 	/** 关键字属性 */
@@ -105,6 +114,40 @@ public class MongodbSearcher extends AbstractSearcher {
 		doUpdate(element.getKey(), doc);
 	}
 
+	@Override
+	public void updateElements(Map<? extends IndexElement, ? extends List<? extends IndexKeyword>> elements) {
+		if (elements.isEmpty()) {
+			return;
+		}
+		List<WriteModel<Document>> requests = new ArrayList<>(elements.size());
+		for (Map.Entry<? extends IndexElement, ? extends List<? extends IndexKeyword>> e : elements.entrySet()) {
+			IndexElement element = e.getKey();
+			List<? extends IndexKeyword> keywords = e.getValue();
+			Bson filter = Filters.eq(ID, element.getKey());
+			if (null == keywords || keywords.isEmpty()) {
+				requests.add(new DeleteOneModel<Document>(filter));
+				continue;
+			}
+			Document doc = toDoc(element);
+			doc.put(KEYWROD, toDocs(keywords));
+			requests.add(new ReplaceOneModel<Document>(filter, doc, REPLACE_OPTIONS));
+		}
+		BulkWriteResult result = getCollection().bulkWrite(requests, BULK_OPTIONS);
+		if (_Logger.isDebugEnabled()) {
+			_Logger.debug("requests:" + requests.size() + ",matchedCount:" + result.getMatchedCount()
+					+ ",upsertedCount:" + result.getUpserts().size() + ",deletedCount:" + result.getDeletedCount());
+		}
+	}
+
+	@Override
+	public int removeElements(Collection<String> elementKeys) {
+		if (elementKeys.isEmpty()) {
+			return 0;
+		}
+		DeleteResult r = getCollection().deleteMany(Filters.in(ID, elementKeys));
+		return (int) r.getDeletedCount();
+	}
+
 	@Override
 	public boolean removeElement(String elementKey) {
 		MongoCollection<Document> c = getCollection();
@@ -172,7 +215,7 @@ public class MongodbSearcher extends AbstractSearcher {
 		return m_Collection;
 	}
 
-	private synchronized void doUpdate(String id, Document doc) {
+	private void doUpdate(String id, Document doc) {
 		MongoCollection<Document> c = getCollection();
 		Bson filter = Filters.eq(ID, id);
 		UpdateResult result = c.replaceOne(filter, doc, REPLACE_OPTIONS);
@@ -1,10 +1,14 @@
 package cn.weforward.data.mongodb.util;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.bson.BsonDocument;
 import org.bson.Document;
+import org.bson.conversions.Bson;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -16,13 +20,19 @@ import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.model.changestream.ChangeStreamDocument;
 import com.mongodb.client.model.changestream.FullDocument;
 
+import cn.weforward.data.util.PartitionedExecutor;
+
 /**
  * mongodb监控
+ * <p>
+ * 可由{@link #getPipeline()}在服务端过滤变化事件；设置{@link ResumeTokenStore}后周期保存已处理事件的恢复令牌，重启后由该位置继续；设置工作线程后事件按分区（默认按集合）分派到有界线程池处理
  * 
  * @author daibo
  *
  */
 public abstract class AbstractMongodbChangeSupport implements Runnable {
+	/** 恢复令牌已失效的错误码（ChangeStreamHistoryLost、ChangeStreamFatalError） */
+	private static final int[] RESUME_FAIL_CODES = { 286, 280 };
 	/** 日志 */
 	private static final Logger _Logger = LoggerFactory.getLogger(AbstractMongodbChangeSupport.class);
 	/** 线程 */
@@ -39,9 +49,34 @@ public abstract class AbstractMongodbChangeSupport implements Runnable {
 	private static final AtomicInteger INC = new AtomicInteger();
 
 	private long m_LastActivity;
+	/** 名称（用于保存恢复令牌） */
+	private String m_Name;
+	/** 恢复令牌存储 */
+	private ResumeTokenStore m_TokenStore;
+	/** 保存恢复令牌的间隔（毫秒） */
+	private long m_CheckpointInterval = 5 * 1000;
+	/** 最后保存恢复令牌的时间 */
+	private long m_LastCheckpoint;
+	/** 最后保存的恢复令牌 */
+	private BsonDocument m_SavedToken;
+	/** 最后收到的事件的恢复令牌（重连时由此继续） */
+	private volatile BsonDocument m_ResumeToken;
+	/** 已处理（同步分派时）的事件的恢复令牌 */
+	private BsonDocument m_ProcessedToken;
+	/** 已分派未确认处理完成的事件序号与恢复令牌 */
+	private final PendingTokens m_PendingTokens = new PendingTokens();
+	/** 工作线程数（0表示在监听线程中处理） */
+	private int m_Workers;
+	/** 每个工作线程的队列容量 */
+	private int m_QueueCapacity = 1000;
+	/** 分派事件的线程池 */
+	private PartitionedExecutor m_Executor;
+	/** 需要重新打开变化流（如过滤条件变化） */
+	private volatile boolean m_Reopen;
 
 	public AbstractMongodbChangeSupport(MongoDatabase db) {
 		m_Db = db;
+		m_Name = db.getName();
 		m_LastActivity = System.currentTimeMillis();
 	}
 
@@ -49,6 +84,91 @@ public abstract class AbstractMongodbChangeSupport implements Runnable {
 		m_MaxAwaitTime = v;
 	}
 
+	public void setName(String name) {
+		m_Name = name;
+	}
+
+	public String getName() {
+		return m_Name;
+	}
+
+	/**
+	 * 设置恢复令牌存储，需在启动前设置
+	 * 
+	 * @param store 存储，为null则不保存（重启后由当前位置开始监听）
+	 */
+	public void setResumeTokenStore(ResumeTokenStore store) {
+		m_TokenStore = store;
+	}
+
+	public ResumeTokenStore getResumeTokenStore() {
+		return m_TokenStore;
+	}
+
+	/**
+	 * 保存恢复令牌的间隔
+	 * 
+	 * @param mills 毫秒
+	 */
+	public void setCheckpointInterval(long mills) {
+		m_CheckpointInterval = mills;
+	}
+
+	/**
+	 * 设置分派事件的工作线程，需在启动前设置
+	 * 
+	 * @param workers  线程数，0表示在监听线程中处理
+	 * @param capacity 每个线程的队列容量，队列满时监听线程等待
+	 */
+	public void setWorkers(int workers, int capacity) {
+		m_Workers = workers;
+		m_QueueCapacity = capacity;
+	}
+
+	/**
+	 * 分派事件的线程池
+	 * 
+	 * @return 没有设置工作线程则返回null
+	 */
+	public PartitionedExecutor getExecutor() {
+		return m_Executor;
+	}
+
+	/**
+	 * 变化流的聚合管道，用于服务端过滤或投影事件
+	 * 
+	 * @return 管道，默认为空（所有变化）
+	 */
+	protected List<? extends Bson> getPipeline() {
+		return Collections.emptyList();
+	}
+
+	/**
+	 * 打开后管道是否已需要变化（如需要的字段变化了），在没有事件时检查，变化则以新的管道重新打开
+	 * 
+	 * @return 默认false
+	 */
+	protected boolean isPipelineChanged() {
+		return false;
+	}
+
+	/**
+	 * 事件的分区键，相同分区键的事件按顺序处理
+	 * 
+	 * @param doc 变化文档
+	 * @return 分区键，默认为集合名的hash
+	 */
+	protected int getPartitionKey(ChangeStreamDocument<Document> doc) {
+		return doc.getNamespace().getCollectionName().hashCode();
+	}
+
+	/**
+	 * 以当前的管道重新打开变化流（由最后收到的事件继续）
+	 */
+	protected void reopen() {
+		m_Reopen = true;
+	}
+
 	/**
 	 * 关闭监控
 	 */
@@ -72,6 +192,9 @@ public abstract class AbstractMongodbChangeSupport implements Runnable {
 		if (null != m_Thread) {
 			return;
 		}
+		if (m_Workers > 0 && null == m_Executor) {
+			m_Executor = new PartitionedExecutor("mongodbwatcher-" + m_Name, m_Workers, m_QueueCapacity);
+		}
 		m_Thread = new Thread(this, "mongodbwatcher-" + m_Db.getName() + "-" + INC.incrementAndGet());
 		m_Thread.setDaemon(true);
 		m_Thread.start();
@@ -95,12 +218,16 @@ public abstract class AbstractMongodbChangeSupport implements Runnable {
 
 	@Override
 	public void run() {
+		boolean first = true;
 		while (null != m_Thread) {
-			synchronized (this) {
-				try {
-					this.wait(3 * 1000);// 3秒后再启动，等系统完全跑起来
-				} catch (InterruptedException ee) {
-					break;
+			if (first) {
+				first = false;
+				synchronized (this) {
+					try {
+						this.wait(3 * 1000);// 3秒后再启动，等系统完全跑起来
+					} catch (InterruptedException ee) {
+						break;
+					}
 				}
 			}
 			try {
@@ -123,15 +250,25 @@ public abstract class AbstractMongodbChangeSupport implements Runnable {
 
 	private void doLoop() throws InterruptedException, IOException {
 		try {
-			ChangeStreamIterable<Document> it = m_Db.watch();
+			BsonDocument token = m_ResumeToken;
+			if (null == token && null != m_TokenStore) {
+				token = m_TokenStore.load(m_Name);
+				m_SavedToken = token;
+			}
+			// 先清除标记再取管道，取管道期间的reopen不会丢失
+			m_Reopen = false;
+			ChangeStreamIterable<Document> it = m_Db.watch(getPipeline());
 			long maxAwaitTime = m_MaxAwaitTime;
 			it = it.maxAwaitTime(maxAwaitTime, TimeUnit.MILLISECONDS);
 			it = it.fullDocument(FullDocument.UPDATE_LOOKUP);
+			if (null != token) {
+				it = it.resumeAfter(token);
+			}
 			m_Cursor = it.iterator();
 			if (_Logger.isTraceEnabled()) {
-				_Logger.trace("启动监听，" + "MaxAwaitTime:" + maxAwaitTime / 1000d);
+				_Logger.trace("启动监听，" + "MaxAwaitTime:" + maxAwaitTime / 1000d + ",resume:" + token);
 			}
-			while (null != m_Thread) {
+			while (null != m_Thread && !m_Reopen) {
 				m_LastActivity = System.currentTimeMillis();
 				ChangeStreamDocument<Document> doc;
 				try {
@@ -142,26 +279,33 @@ public abstract class AbstractMongodbChangeSupport implements Runnable {
 				}
 				if (null != doc) {
 					if (_Logger.isTraceEnabled()) {
-						_Logger.trace(doc.getNamespaceDocument() + "," + doc.getFullDocument().getString("_id"));
-					}
-					try {
-						onChange(doc);
-					} catch (Throwable e) {
-						_Logger.error("变化通知异常", e);
+						_Logger.trace(doc.getNamespaceDocument() + "," + doc.getDocumentKey());
 					}
+					dispatch(doc);
 				} else {
 					if (_Logger.isTraceEnabled()) {
 						_Logger.trace((maxAwaitTime / 1000d) + "s无变化");
 					}
+					if (isPipelineChanged()) {
+						reopen();
+					}
 					synchronized (this) {
 						this.wait(10);
 					}
 				}
+				checkpoint(false);
 			}
 		} catch (MongoCommandException e) {
 			if (e.getMessage().contains("The $changeStream stage is only supported on replica sets")) {
 				_Logger.error("非副本集数据库无法支持变化监听,将导致Reload功能失效");
 				throw new InterruptedException("无法支持变化监听,正常中止");
+			} else if (isResumeFail(e)) {
+				// 令牌已超出oplog范围，只能由当前位置开始
+				_Logger.error("恢复令牌已失效,由当前位置开始监听,期间的变化将丢失:" + m_ResumeToken, e);
+				m_ResumeToken = null;
+				if (null != m_TokenStore) {
+					m_TokenStore.save(m_Name, null);
+				}
 			} else {
 				throw e;
 			}
@@ -176,8 +320,71 @@ public abstract class AbstractMongodbChangeSupport implements Runnable {
 					_Logger.warn("忽略关闭异常", e);
 				}
 			}
+			checkpoint(true);
+		}
+
+	}
+
+	private static boolean isResumeFail(MongoCommandException e) {
+		for (int code : RESUME_FAIL_CODES) {
+			if (code == e.getErrorCode()) {
+				return true;
+			}
 		}
+		return false;
+	}
+
+	/* 分派事件 */
+	private void dispatch(ChangeStreamDocument<Document> doc) throws InterruptedException {
+		BsonDocument token = doc.getResumeToken();
+		m_ResumeToken = token;
+		PartitionedExecutor executor = m_Executor;
+		if (null == executor) {
+			notify(doc);
+			m_ProcessedToken = token;
+			return;
+		}
+		long seq = executor.execute(getPartitionKey(doc), () -> notify(doc));
+		if (null != m_TokenStore) {
+			m_PendingTokens.put(seq, token);
+		}
+	}
+
+	private void notify(ChangeStreamDocument<Document> doc) {
+		try {
+			onChange(doc);
+		} catch (Throwable e) {
+			_Logger.error("变化通知异常", e);
+		}
+	}
 
+	/* 保存已处理完成的事件的恢复令牌 */
+	private void checkpoint(boolean force) {
+		ResumeTokenStore store = m_TokenStore;
+		if (null == store) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		if (!force && now - m_LastCheckpoint < m_CheckpointInterval) {
+			return;
+		}
+		m_LastCheckpoint = now;
+		BsonDocument token;
+		PartitionedExecutor executor = m_Executor;
+		if (null == executor) {
+			token = m_ProcessedToken;
+		} else {
+			token = m_PendingTokens.poll(executor.getLowWatermark());
+		}
+		if (null == token || token.equals(m_SavedToken)) {
+			return;
+		}
+		try {
+			store.save(m_Name, token);
+			m_SavedToken = token;
+		} catch (Throwable e) {
+			_Logger.warn("保存恢复令牌失败:" + m_Name, e);
+		}
 	}
 
 	protected abstract void onChange(ChangeStreamDocument<Document> doc);
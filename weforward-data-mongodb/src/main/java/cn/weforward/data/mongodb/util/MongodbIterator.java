@@ -23,6 +23,8 @@ import com.mongodb.client.MongoCursor;
 
 /**
  * mongodb迭代器
+ * <p>
+ * 游标在遍历完或close时关闭，中途放弃遍历须调用close
  * 
  * @author daibo
  *
@@ -42,6 +44,8 @@ public abstract class MongodbIterator<E> implements Iterator<E>, Closeable {
 	int m_Limit;
 	/** 投影条件 */
 	protected BsonDocument m_Projection;
+	/** 每批由服务器取回的文档数，0为驱动默认 */
+	int m_BatchSize;
 
 	public MongodbIterator(MongoCollection<Document> c, Bson filter) {
 		this(c, filter, null, 0, 0);
@@ -59,6 +63,15 @@ public abstract class MongodbIterator<E> implements Iterator<E>, Closeable {
 		m_Projection = projection;
 	}
 
+	/**
+	 * 每批由服务器取回的文档数，遍历大量数据时调大可减少往返次数
+	 * 
+	 * @param size 文档数，0为驱动默认
+	 */
+	public void setBatchSize(int size) {
+		m_BatchSize = size;
+	}
+
 	private MongoCursor<Document> getIt() {
 		if (null == m_It) {
 			FindIterable<Document> it;
@@ -79,6 +92,9 @@ public abstract class MongodbIterator<E> implements Iterator<E>, Closeable {
 			if (null != m_Projection) {
 				it = it.projection(m_Projection);
 			}
+			if (m_BatchSize > 0) {
+				it = it.batchSize(m_BatchSize);
+			}
 			m_It = it.iterator();
 		}
 		return m_It;
@@ -86,7 +102,12 @@ public abstract class MongodbIterator<E> implements Iterator<E>, Closeable {
 
 	@Override
 	public boolean hasNext() {
-		return getIt().hasNext();
+		if (getIt().hasNext()) {
+			return true;
+		}
+		// 已遍历完，关闭游标
+		close();
+		return false;
 	}
 
 	@Override
@@ -16,12 +16,14 @@ import java.util.Iterator;
 import java.util.List;
 
 import org.bson.BsonDocument;
+import org.bson.BsonInt32;
 import org.bson.Document;
 import org.bson.conversions.Bson;
 
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Filters;
 
 import cn.weforward.common.ResultPage;
 
@@ -52,6 +54,18 @@ public abstract class MongodbResultPage<E> implements ResultPage<E>, Closeable {
 	int m_PageSize = 200;
 	/** 当前页 */
 	int m_Page;
+	/** 是否游标（seek）翻页 */
+	protected boolean m_Seek;
+	/** 游标翻页的排序属性，为null表示只按ID排序 */
+	protected String m_SeekField;
+	/** 游标翻页是否倒序 */
+	protected boolean m_SeekDesc;
+	/** 最后遍历项的排序属性值 */
+	protected Object m_LastSeekField;
+	/** 最后遍历项的ID */
+	protected Object m_LastSeekKey;
+	/** 是否使用估算的总数 */
+	protected boolean m_ApproximateCount;
 
 	public MongodbResultPage(MongoCollection<Document> c, Bson filter) {
 		m_Connnection = c;
@@ -68,11 +82,36 @@ public abstract class MongodbResultPage<E> implements ResultPage<E>, Closeable {
 		m_Projection = projection;
 	}
 
+	/**
+	 * 启用游标（seek）翻页，顺序翻到下一页时以上一页最后一项的（排序属性,ID）定位，不再使用skip
+	 * 
+	 * @param field 排序属性，为null表示只按ID排序（排序属性值不能为null）
+	 * @param desc  是否倒序
+	 */
+	public void setSeek(String field, boolean desc) {
+		m_Seek = true;
+		m_SeekField = MongodbUtil.ID.equals(field) ? null : field;
+		m_SeekDesc = desc;
+		m_LastSeekKey = null;
+		m_LastSeekField = null;
+	}
+
+	/**
+	 * 是否使用估算的总数，无过滤条件时使用集合的元数据估算
+	 * 
+	 * @param approximate true/估算，false/精确
+	 */
+	public void setApproximateCount(boolean approximate) {
+		m_ApproximateCount = approximate;
+	}
+
 	@Override
 	public int getCount() {
 		if (m_Count < 0) {
 			long c;
-			if (null == m_Filter) {
+			if (null == m_Filter && m_ApproximateCount) {
+				c = m_Connnection.estimatedDocumentCount();
+			} else if (null == m_Filter) {
 				c = m_Connnection.countDocuments();
 			} else {
 				c = m_Connnection.countDocuments(m_Filter);
@@ -108,8 +147,10 @@ public abstract class MongodbResultPage<E> implements ResultPage<E>, Closeable {
 
 	@Override
 	public void setPage(int page) {
-		m_Page = page;
-		gotoPage(page);
+		// 先由gotoPage与前一页比较（顺序翻到下一页时游标翻页），成功时其已更新页号
+		if (!gotoPage(page)) {
+			m_Page = page;
+		}
 	}
 
 	@Override
@@ -119,32 +160,100 @@ public abstract class MongodbResultPage<E> implements ResultPage<E>, Closeable {
 
 	@Override
 	public boolean gotoPage(int page) {
-		if (page <= 0 || page > getPageCount()) {
+		if (page <= 0) {
+			return false;
+		}
+		// 游标翻页时不需要先计算总数，由结果是否为空判断页是否存在
+		if (!m_Seek && page > getPageCount()) {
 			return false;
 		}
+		boolean seekNext = m_Seek && page > 1 && page == m_Page + 1;
+		if (seekNext && null != m_It) {
+			// 把当前页余下的项遍历完以取得最后一项
+			while (m_It.hasNext()) {
+				seeked(m_It.next());
+			}
+		}
+		seekNext = seekNext && null != m_LastSeekKey;
 		int start = (page - 1) * getPageSize();
+		Bson filter = seekNext ? getSeekFilter() : m_Filter;
 		FindIterable<Document> it;
-		if (null == m_Filter) {
+		if (null == filter) {
 			it = m_Connnection.find();
 		} else {
-			it = m_Connnection.find(m_Filter);
+			it = m_Connnection.find(filter);
 		}
 		if (null != m_Projection) {
-			it = it.projection(m_Projection);
+			BsonDocument projection = m_Projection;
+			if (null != m_SeekField && !projection.containsKey(m_SeekField)) {
+				projection = projection.clone();
+				projection.put(m_SeekField, new BsonInt32(1));
+			}
+			it = it.projection(projection);
 		}
-		if (null != m_Sort) {
-			it = it.sort(m_Sort);
+		Bson sort = m_Seek ? getSeekSort() : m_Sort;
+		if (null != sort) {
+			it = it.sort(sort);
 		}
 		int size = getPageSize();
 		if (m_Limit > 0) {
 			size = Math.min(m_Limit, size);
 		}
-		m_It = it.skip(start).limit(size).batchSize(size).iterator();
+		if (!seekNext) {
+			it = it.skip(start);
+		}
+		MongoCursor<Document> cursor = it.limit(size).batchSize(size).iterator();
+		if (m_Seek && page > 1 && !cursor.hasNext()) {
+			// 已没有更多的页
+			cursor.close();
+			return false;
+		}
+		if (null != m_It) {
+			m_It.close();
+		}
+		m_It = cursor;
 		m_Page = page;
 		m_Caches = null;
 		return true;
 	}
 
+	/* 游标翻到下一页的过滤条件 */
+	private Bson getSeekFilter() {
+		Bson seek;
+		if (null == m_SeekField) {
+			seek = m_SeekDesc ? Filters.lt(MongodbUtil.ID, m_LastSeekKey)
+					: Filters.gt(MongodbUtil.ID, m_LastSeekKey);
+		} else if (m_SeekDesc) {
+			seek = Filters.or(Filters.lt(m_SeekField, m_LastSeekField), Filters.and(
+					Filters.eq(m_SeekField, m_LastSeekField), Filters.lt(MongodbUtil.ID, m_LastSeekKey)));
+		} else {
+			seek = Filters.or(Filters.gt(m_SeekField, m_LastSeekField), Filters.and(
+					Filters.eq(m_SeekField, m_LastSeekField), Filters.gt(MongodbUtil.ID, m_LastSeekKey)));
+		}
+		return null == m_Filter ? seek : Filters.and(m_Filter, seek);
+	}
+
+	/* 游标翻页的排序，固定为（排序属性,ID） */
+	private Bson getSeekSort() {
+		int dir = m_SeekDesc ? -1 : 1;
+		Document sort = new Document();
+		if (null != m_SeekField) {
+			sort.append(m_SeekField, dir);
+		}
+		sort.append(MongodbUtil.ID, dir);
+		return sort;
+	}
+
+	/* 记录最后遍历项的游标值 */
+	private void seeked(Document doc) {
+		if (m_Seek && null != doc) {
+			m_LastSeekKey = doc.get(MongodbUtil.ID);
+			if (null != m_SeekField) {
+				m_LastSeekField = doc.get(m_SeekField);
+			}
+		}
+	}
+
 	@Override
 	public E prev() {
 		if (null == m_Caches || m_Caches.isEmpty()) {
@@ -166,6 +275,7 @@ public abstract class MongodbResultPage<E> implements ResultPage<E>, Closeable {
 			return null;
 		}
 		Document doc = m_It.next();
+		seeked(doc);
 		if (null == m_Caches) {
 			m_Caches = new ArrayList<>();
 		}
@@ -0,0 +1,76 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.data.mongodb.util;
+
+import org.bson.BsonDocument;
+import org.bson.BsonInt64;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOptions;
+
+/**
+ * 把恢复令牌保存在mongodb集合中，每个监听一个文档{_id:监听名,token:令牌,_lastmodified:时间}
+ * 
+ * @author daibo
+ *
+ */
+public class MongodbResumeTokenStore implements ResumeTokenStore {
+	/** 默认集合名 */
+	public static final String DEFAULT_COLLECTION = "_change_checkpoint";
+
+	static final String ID = "_id";
+	static final String TOKEN = "token";
+	static final String LASTMODIFIED = "_lastmodified";
+
+	static final ReplaceOptions UPSERT = new ReplaceOptions().upsert(true);
+
+	/** 集合 */
+	protected final MongoCollection<BsonDocument> m_Collection;
+
+	public MongodbResumeTokenStore(MongoDatabase db) {
+		this(db, DEFAULT_COLLECTION);
+	}
+
+	public MongodbResumeTokenStore(MongoDatabase db, String collection) {
+		m_Collection = db.getCollection(collection, BsonDocument.class);
+	}
+
+	@Override
+	public BsonDocument load(String name) {
+		BsonDocument doc = m_Collection.find(Filters.eq(ID, name)).first();
+		if (null == doc) {
+			return null;
+		}
+		BsonValue token = doc.get(TOKEN);
+		return (null != token && token.isDocument()) ? token.asDocument() : null;
+	}
+
+	@Override
+	public void save(String name, BsonDocument token) {
+		if (null == token) {
+			m_Collection.deleteOne(Filters.eq(ID, name));
+			return;
+		}
+		BsonDocument doc = new BsonDocument(ID, new BsonString(name));
+		doc.append(TOKEN, token);
+		doc.append(LASTMODIFIED, new BsonInt64(System.currentTimeMillis()));
+		m_Collection.replaceOne(Filters.eq(ID, name), doc, UPSERT);
+	}
+
+	@Override
+	public String toString() {
+		return m_Collection.getNamespace().getFullName();
+	}
+}
@@ -10,28 +10,49 @@
  */
 package cn.weforward.data.mongodb.util;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.bson.Document;
+import org.bson.conversions.Bson;
 
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
 import com.mongodb.client.model.changestream.ChangeStreamDocument;
 
 /**
  * mongodb监控
+ * <p>
+ * 只监听已注册的集合（$match），若所有注册项都只需要部分字段则只投影这些字段，事件按集合分派到工作线程处理
  * 
  * @author daibo
  *
  */
 public class MongodbWatcher extends AbstractMongodbChangeSupport {
+	/** 默认的工作线程数 */
+	public static final int DEFAULT_WORKERS = 4;
+	/** 事件中总是保留的字段 */
+	static final String[] EVENT_FIELDS = { "operationType", "ns", "documentKey", "clusterTime" };
+
 	/** 变化通知 */
 	private Map<String, DocumentChange> m_Changes;
+	/** 打开变化流时投影的字段，null表示需要完整文档 */
+	private Set<String> m_Fields;
 
 	public MongodbWatcher(MongoDatabase db) {
 		super(db);
 		m_Changes = new ConcurrentHashMap<>();
+		setName(db.getName() + ".watcher");
+		setWorkers(DEFAULT_WORKERS, 1000);
 	}
 
 	public void put(DocumentChange change) {
@@ -39,13 +60,57 @@ public class MongodbWatcher extends AbstractMongodbChangeSupport {
 			start();
 		}
 		m_Changes.put(change.getCollection().getNamespace().getCollectionName(), change);
+		// 过滤条件可能变化了
+		reopen();
 	}
 
 	public void remove(DocumentChange change) {
 		m_Changes.remove(change.getCollection().getNamespace().getCollectionName());
 		if (m_Changes.isEmpty()) {
 			stop();
+		} else {
+			reopen();
+		}
+	}
+
+	@Override
+	protected List<? extends Bson> getPipeline() {
+		List<Bson> pipeline = new ArrayList<>(2);
+		pipeline.add(Aggregates.match(Filters.in("ns.coll", new ArrayList<>(m_Changes.keySet()))));
+		Set<String> fields = getChangeFields();
+		m_Fields = fields;
+		if (null == fields) {
+			// 需要完整文档
+			return pipeline;
+		}
+		List<String> include = new ArrayList<>(EVENT_FIELDS.length + fields.size());
+		for (String f : EVENT_FIELDS) {
+			include.add(f);
+		}
+		for (String f : fields) {
+			include.add("fullDocument." + f);
+		}
+		pipeline.add(Aggregates.project(Projections.include(include)));
+		return pipeline;
+	}
+
+	@Override
+	protected boolean isPipelineChanged() {
+		// 注册项需要的字段可能随监听器的增减而变化
+		return !Objects.equals(m_Fields, getChangeFields());
+	}
+
+	/* 各注册项需要的字段，null表示需要完整文档 */
+	private Set<String> getChangeFields() {
+		Set<String> fields = new LinkedHashSet<>();
+		for (DocumentChange change : m_Changes.values()) {
+			Collection<String> cf = change.getChangeFields();
+			if (null == cf) {
+				return null;
+			}
+			fields.addAll(cf);
 		}
+		return fields;
 	}
 
 	protected void onChange(ChangeStreamDocument<Document> doc) {
@@ -71,6 +136,15 @@ public class MongodbWatcher extends AbstractMongodbChangeSupport {
 		 */
 		void onChange(ChangeStreamDocument<Document> doc);
 
+		/**
+		 * 变化文档（fullDocument）中需要的字段
+		 * 
+		 * @return 字段名，为null（默认）表示需要完整文档
+		 */
+		default Collection<String> getChangeFields() {
+			return null;
+		}
+
 		/**
 		 * 获取集合
 		 * 
@@ -0,0 +1,63 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.data.mongodb.util;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.bson.BsonDocument;
+
+/**
+ * 已分派未确认处理完成的事件的恢复令牌，按任务序号排列，由线程池的低水位得出可保存的令牌
+ * <p>
+ * 只由监听线程访问，不是线程安全的
+ * 
+ * @author daibo
+ *
+ */
+class PendingTokens {
+	/** 任务序号与恢复令牌 */
+	private final TreeMap<Long, BsonDocument> m_Tokens = new TreeMap<>();
+
+	/**
+	 * 登记已分派的事件
+	 * 
+	 * @param seq   任务序号
+	 * @param token 事件的恢复令牌
+	 */
+	void put(long seq, BsonDocument token) {
+		m_Tokens.put(seq, token);
+	}
+
+	/**
+	 * 取出序号不大于低水位的最后一个令牌，并清除这些已处理完成的令牌
+	 * 
+	 * @param watermark 低水位，序号不大于它的任务都已执行完成
+	 * @return 可保存的令牌，没有新处理完成的事件时返回null
+	 */
+	BsonDocument poll(long watermark) {
+		Map.Entry<Long, BsonDocument> e = m_Tokens.floorEntry(watermark);
+		if (null == e) {
+			return null;
+		}
+		m_Tokens.headMap(watermark, true).clear();
+		return e.getValue();
+	}
+
+	/**
+	 * 未确认处理完成的事件数
+	 * 
+	 * @return 事件数
+	 */
+	int size() {
+		return m_Tokens.size();
+	}
+}
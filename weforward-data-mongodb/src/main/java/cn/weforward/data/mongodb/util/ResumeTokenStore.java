@@ -0,0 +1,37 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.data.mongodb.util;
+
+import org.bson.BsonDocument;
+
+/**
+ * 变化流恢复令牌（resume token）的存储，用于重启后由最后处理的事件继续监听
+ * 
+ * @author daibo
+ *
+ */
+public interface ResumeTokenStore {
+	/**
+	 * 加载最后保存的令牌
+	 * 
+	 * @param name 监听名
+	 * @return 令牌，没有返回null
+	 */
+	BsonDocument load(String name);
+
+	/**
+	 * 保存令牌
+	 * 
+	 * @param name  监听名
+	 * @param token 令牌，为null表示清除
+	 */
+	void save(String name, BsonDocument token);
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.data.mongodb.persister;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.bson.Document;
+import org.junit.Test;
+
+import cn.weforward.protocol.datatype.DtBase;
+import cn.weforward.protocol.datatype.DtObject;
+import cn.weforward.protocol.datatype.DtString;
+
+/**
+ * 视图查询只返回指定的属性及ID
+ * 
+ * @author daibo
+ *
+ */
+public class MongodbViewTest {
+
+	private static Document doc() {
+		Document doc = new Document();
+		doc.put(MongodbPersister.ID, "123");
+		doc.put("name", "abc");
+		doc.put("info", new Document("code", "x").append("level", 1));
+		// 游标翻页时投影附加的排序属性
+		doc.put(MongodbPersister.LASTMODIFIED, 1000L);
+		return doc;
+	}
+
+	@Test
+	public void view() {
+		Set<String> names = new HashSet<>(Arrays.asList("name", "info"));
+		DtObject view = MongodbPersister.toView(doc(), names);
+		assertEquals(3, view.getAttributeSize());
+		assertEquals("123", ((DtString) view.getAttribute(MongodbPersister.ID)).value());
+		assertEquals("abc", ((DtString) view.getAttribute("name")).value());
+		DtBase info = view.getAttribute("info");
+		assertTrue(info instanceof DtObject);
+		assertNull(view.getAttribute(MongodbPersister.LASTMODIFIED));
+	}
+
+	@Test
+	public void onlyId() {
+		DtObject view = MongodbPersister.toView(doc(), new HashSet<String>());
+		assertEquals(1, view.getAttributeSize());
+		assertEquals("123", ((DtString) view.getAttribute(MongodbPersister.ID)).value());
+	}
+
+	@Test
+	public void requestedLastmodified() {
+		Set<String> names = new HashSet<>(Arrays.asList(MongodbPersister.LASTMODIFIED));
+		DtObject view = MongodbPersister.toView(doc(), names);
+		assertEquals(2, view.getAttributeSize());
+		assertTrue(null != view.getAttribute(MongodbPersister.LASTMODIFIED));
+	}
+}
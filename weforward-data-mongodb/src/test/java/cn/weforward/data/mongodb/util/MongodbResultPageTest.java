@@ -0,0 +1,211 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.data.mongodb.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.Test;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Filters;
+
+/**
+ * 顺序翻页（setPage）时使用游标（seek）条件，跳页时使用skip
+ * 
+ * @author daibo
+ *
+ */
+public class MongodbResultPageTest {
+
+	@Test
+	public void seekNext() {
+		FakeCollection fake = new FakeCollection(5);
+		Page page = new Page(fake.proxy());
+		page.setSeek(MongodbUtil.ID, false);
+		page.setPageSize(2);
+		page.setPage(1);
+		assertEquals(Arrays.asList(1, 2), ids(page));
+		page.setPage(2);
+		assertEquals(Arrays.asList(3, 4), ids(page));
+		page.setPage(3);
+		assertEquals(Arrays.asList(5), ids(page));
+		assertEquals(3, page.getPage());
+		// 首页按skip，之后以上一页最后一项的ID定位，不再skip
+		assertEquals(3, fake.m_Queries.size());
+		assertNull(fake.m_Queries.get(0).m_Filter);
+		assertEquals(toBson(Filters.gt(MongodbUtil.ID, 2)), fake.m_Queries.get(1).filter());
+		assertEquals(0, fake.m_Queries.get(1).m_Skip);
+		assertEquals(toBson(Filters.gt(MongodbUtil.ID, 4)), fake.m_Queries.get(2).filter());
+		assertEquals(0, fake.m_Queries.get(2).m_Skip);
+		// 已没有更多的页
+		page.setPage(4);
+		assertFalse(page.hasNext());
+		assertEquals(4, page.getPage());
+	}
+
+	@Test
+	public void jump() {
+		FakeCollection fake = new FakeCollection(5);
+		Page page = new Page(fake.proxy());
+		page.setSeek(MongodbUtil.ID, false);
+		page.setPageSize(2);
+		page.setPage(1);
+		page.setPage(3);
+		assertEquals(Arrays.asList(5), ids(page));
+		// 不是下一页时按skip
+		assertNull(fake.m_Queries.get(1).m_Filter);
+		assertEquals(4, fake.m_Queries.get(1).m_Skip);
+	}
+
+	private static List<Integer> ids(Page page) {
+		List<Integer> ids = new ArrayList<>();
+		while (page.hasNext()) {
+			ids.add(page.next());
+		}
+		return ids;
+	}
+
+	private static BsonDocument toBson(Bson filter) {
+		return filter.toBsonDocument(BsonDocument.class, MongoClientSettings.getDefaultCodecRegistry());
+	}
+
+	static class Page extends MongodbResultPage<Integer> {
+
+		Page(MongoCollection<Document> c) {
+			super(c, null);
+		}
+
+		@Override
+		protected Integer to(Document doc) {
+			return doc.getInteger(MongodbUtil.ID);
+		}
+	}
+
+	/**
+	 * 模拟的集合，文档的ID为1~n，只支持按ID顺序、ID大于的过滤及skip/limit
+	 */
+	static class FakeCollection implements InvocationHandler {
+		final List<Document> m_Docs = new ArrayList<>();
+		final List<Query> m_Queries = new ArrayList<>();
+
+		FakeCollection(int n) {
+			for (int i = 1; i <= n; i++) {
+				m_Docs.add(new Document(MongodbUtil.ID, i));
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		MongoCollection<Document> proxy() {
+			return (MongoCollection<Document>) Proxy.newProxyInstance(getClass().getClassLoader(),
+					new Class<?>[] { MongoCollection.class }, this);
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if ("find".equals(method.getName())) {
+				Query q = new Query(this, null == args || 0 == args.length ? null : (Bson) args[0]);
+				m_Queries.add(q);
+				return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { FindIterable.class }, q);
+			}
+			throw new UnsupportedOperationException(method.getName());
+		}
+	}
+
+	/**
+	 * 模拟的查询
+	 */
+	static class Query implements InvocationHandler {
+		final FakeCollection m_Collection;
+		final Bson m_Filter;
+		int m_Skip;
+		int m_Limit;
+
+		Query(FakeCollection collection, Bson filter) {
+			m_Collection = collection;
+			m_Filter = filter;
+		}
+
+		BsonDocument filter() {
+			return null == m_Filter ? null : toBson(m_Filter);
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "skip":
+				m_Skip = (Integer) args[0];
+				return proxy;
+			case "limit":
+				m_Limit = (Integer) args[0];
+				return proxy;
+			case "sort":
+			case "projection":
+			case "batchSize":
+				return proxy;
+			case "iterator":
+				return cursor();
+			}
+			throw new UnsupportedOperationException(method.getName());
+		}
+
+		private MongoCursor<?> cursor() {
+			BsonDocument filter = filter();
+			int after = 0;
+			if (null != filter) {
+				after = filter.getDocument(MongodbUtil.ID).getInt32("$gt").getValue();
+			}
+			List<Document> list = new ArrayList<>();
+			int skip = m_Skip;
+			for (Document doc : m_Collection.m_Docs) {
+				if (doc.getInteger(MongodbUtil.ID) <= after) {
+					continue;
+				}
+				if (skip > 0) {
+					skip--;
+					continue;
+				}
+				if (m_Limit > 0 && list.size() >= m_Limit) {
+					break;
+				}
+				list.add(doc);
+			}
+			final Iterator<Document> it = list.iterator();
+			return (MongoCursor<?>) Proxy.newProxyInstance(getClass().getClassLoader(),
+					new Class<?>[] { MongoCursor.class }, (p, m, a) -> {
+						switch (m.getName()) {
+						case "hasNext":
+							return it.hasNext();
+						case "next":
+							return it.next();
+						case "close":
+							return null;
+						}
+						throw new UnsupportedOperationException(m.getName());
+					});
+		}
+	}
+}
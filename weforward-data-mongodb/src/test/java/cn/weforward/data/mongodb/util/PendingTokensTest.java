@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.data.mongodb.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.bson.BsonDocument;
+import org.bson.BsonInt64;
+import org.junit.After;
+import org.junit.Test;
+
+import cn.weforward.data.util.PartitionedExecutor;
+
+/**
+ * 恢复令牌按低水位保存：只保存之前的事件都已处理完成的令牌
+ * 
+ * @author daibo
+ *
+ */
+public class PendingTokensTest {
+
+	PartitionedExecutor m_Executor;
+
+	@After
+	public void after() {
+		if (null != m_Executor) {
+			m_Executor.close(1000);
+		}
+	}
+
+	private static BsonDocument token(long v) {
+		return new BsonDocument("_data", new BsonInt64(v));
+	}
+
+	@Test
+	public void poll() {
+		PendingTokens tokens = new PendingTokens();
+		BsonDocument t1 = token(1);
+		BsonDocument t2 = token(2);
+		BsonDocument t5 = token(5);
+		tokens.put(1, t1);
+		tokens.put(2, t2);
+		tokens.put(5, t5);
+		assertNull(tokens.poll(0));
+		assertSame(t2, tokens.poll(3));
+		assertEquals(1, tokens.size());
+		// 已取出的不会重复返回
+		assertNull(tokens.poll(4));
+		assertSame(t5, tokens.poll(5));
+		assertEquals(0, tokens.size());
+	}
+
+	@Test
+	public void checkpoint() throws Exception {
+		m_Executor = new PartitionedExecutor("test", 2, 16);
+		PendingTokens tokens = new PendingTokens();
+		final CountDownLatch blocked = new CountDownLatch(1);
+		final CountDownLatch started = new CountDownLatch(1);
+		// 两个不同分区的键
+		int slow = 0;
+		int fast = 1;
+		while (laneOf(fast) == laneOf(slow)) {
+			fast++;
+		}
+		long first = m_Executor.execute(fast, () -> {
+		});
+		tokens.put(first, token(first));
+		assertTrue(m_Executor.await(first, 5000));
+		assertEquals(token(first), tokens.poll(m_Executor.getLowWatermark()));
+
+		long blockedSeq = m_Executor.execute(slow, () -> {
+			started.countDown();
+			try {
+				blocked.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		BsonDocument blockedToken = token(blockedSeq);
+		tokens.put(blockedSeq, blockedToken);
+		started.await();
+		long last = 0;
+		for (int i = 0; i < 5; i++) {
+			last = m_Executor.execute(fast, () -> {
+			});
+			tokens.put(last, token(last));
+		}
+		Thread.sleep(100);
+		// 后面的事件已处理完，但之前还有未处理完的事件，不能保存它们的令牌
+		assertNull(tokens.poll(m_Executor.getLowWatermark()));
+
+		blocked.countDown();
+		assertTrue(m_Executor.await(last, 5000));
+		assertEquals(token(last), tokens.poll(m_Executor.getLowWatermark()));
+		assertEquals(0, tokens.size());
+	}
+
+	/* 与PartitionedExecutor.execute一致的分区选择 */
+	private int laneOf(int key) {
+		key *= 0x9E3779B9;
+		return (key >>> 1) % m_Executor.getPartitionCount();
+	}
+}
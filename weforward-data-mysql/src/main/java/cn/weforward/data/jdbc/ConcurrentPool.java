@@ -0,0 +1,667 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.data.jdbc;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.LoggerFactory;
+
+import cn.weforward.common.sys.StackTracer;
+import cn.weforward.common.util.TimeUtil;
+import cn.weforward.data.metrics.Metrics;
+
+/**
+ * 无锁的池管理器，与{@link Pool}有相同的回调接口
+ * <p>
+ * 分配时先尝试当前线程上次释放的项（线程亲和），再扫描共享列表以CAS抢占空闲项，未超出最大项数时新建，否则进入公平（FIFO）的等待队列直至超时
+ * <p>
+ * 项释放时若有等待者则直接移交给队首的等待者，不经过共享列表，避免新到的线程插队
+ * <p>
+ * 后台定时任务检查超时未释放的项及空闲项的生存状态，检查中的项只是暂时不能被分配，不会阻塞分配过程
+ *
+ * @author liangyi
+ */
+public abstract class ConcurrentPool<E extends Object> {
+	/**
+	 * 用于检查连接的定时器
+	 */
+	protected final static Timer _Timer = new Timer("ConcurrentPool-Timer", true);
+
+	/**
+	 * 日志记录器
+	 */
+	public final static org.slf4j.Logger _Logger = LoggerFactory.getLogger(ConcurrentPool.class);
+	public final static boolean _TraceEnabled = _Logger.isTraceEnabled();
+
+	/** 等待者已放弃（超时或中断） */
+	private final static Object CANCELLED = new Object();
+
+	/** 池名称 */
+	private String m_Name;
+	/** 所允许的最大size */
+	private volatile int m_MaxSize;
+	/** 峰值size */
+	private volatile int m_PeakSize;
+	/** 当前项数（含正在创建中的） */
+	private final AtomicInteger m_Size = new AtomicInteger();
+	/** 池中所有项（共享列表），分配时扫描并以CAS抢占 */
+	private final CopyOnWriteArrayList<PoolElement> m_Shared = new CopyOnWriteArrayList<PoolElement>();
+	/** 项与其条目的映射，释放时查找 */
+	private final Map<E, PoolElement> m_Elements = new ConcurrentHashMap<E, PoolElement>();
+	/** 等待队列 */
+	private final ConcurrentLinkedQueue<Waiter> m_Waiters = new ConcurrentLinkedQueue<Waiter>();
+	/** 线程上次释放的项 */
+	private final ThreadLocal<PoolElement> m_Affinity = new ThreadLocal<PoolElement>();
+	/** 空闲连接是否生存检查点时间(毫秒) */
+	private long m_LiveCheckPoint;
+	/** 由连接池分配出开始计算,连接使用的过期时间(毫秒) */
+	private volatile long m_Overtime;
+	private LiveCheckTask m_Task;
+
+	/** 等待分配的时间（微秒） */
+	private Metrics.Recorder m_WaitTime = Metrics.Recorder.NONE;
+	/** 项被占用的时间（毫秒） */
+	private Metrics.Recorder m_Usage = Metrics.Recorder.NONE;
+	/** 等待超时次数 */
+	private Metrics.Recorder m_Timeouts = Metrics.Recorder.NONE;
+
+	/** 只用于创建/关闭/切换等管理操作，分配与释放不使用此锁 */
+	protected final Object m_Lock = new Object();
+
+	/**
+	 * 创建新的项置入池
+	 *
+	 * @return 新建项
+	 * @throws Exception 异常
+	 */
+	protected abstract E onPoolNewElement() throws Exception;
+
+	/**
+	 * 在池中去除项时调用清除
+	 *
+	 * @param element 被清除的项
+	 */
+	protected abstract void onPoolDeleteElement(E element);
+
+	/**
+	 * 处理超时的项(参数overtime指示超时毫秒),
+	 *
+	 * @param element  超时项
+	 * @param overtime 超时值（毫秒）
+	 * @return 返回true将在池中清除,false保留
+	 */
+	protected abstract boolean onPoolOvertimeElement(E element, long overtime);
+
+	/**
+	 * 处理检查点的项(参数idle指示空闲时间)
+	 *
+	 * @param element 检查项
+	 * @param idle    空闲时间（毫秒）
+	 * @return 返回false将在池中清除，ture则保留
+	 */
+	protected abstract boolean onPoolCheckElement(E element, long idle);
+
+	/**
+	 * 构造
+	 */
+	public ConcurrentPool() {
+		m_Name = "#" + hashCode();
+	}
+
+	/**
+	 * 创建池
+	 *
+	 * @param maxSize        池最大项数，0为不限制
+	 * @param overtime       使用超时时间（毫秒）
+	 * @param liveCheckPoint 检查时间间隔（毫秒）
+	 */
+	public void create(int maxSize, long overtime, int liveCheckPoint) {
+		close();
+		synchronized (m_Lock) {
+			// 检查间隔不能小于10秒
+			m_LiveCheckPoint = (liveCheckPoint < 10 * 1000) ? 10 * 1000 : liveCheckPoint;
+			m_MaxSize = maxSize;
+			m_Overtime = overtime;
+			m_Task = new LiveCheckTask();
+			_Timer.schedule(m_Task, m_LiveCheckPoint, m_LiveCheckPoint);
+		}
+	}
+
+	/**
+	 * 池名称，用于日志及指标
+	 *
+	 * @param name 名称
+	 */
+	public void setName(String name) {
+		m_Name = name;
+	}
+
+	public String getName() {
+		return m_Name;
+	}
+
+	/**
+	 * 设置指标收集器，导出pool.&lt;name&gt;.wait（等待分配微秒）、usage（占用毫秒）、timeout、size、using、waiting
+	 *
+	 * @param metrics 指标收集器
+	 */
+	public void setMetrics(Metrics metrics) {
+		if (null == metrics) {
+			metrics = Metrics.NONE;
+		}
+		String prefix = "pool." + getName() + ".";
+		metrics.gauge(prefix + "size", new Metrics.Gauge() {
+			@Override
+			public long getValue() {
+				return m_Size.get();
+			}
+		});
+		metrics.gauge(prefix + "using", new Metrics.Gauge() {
+			@Override
+			public long getValue() {
+				return getUsingCount();
+			}
+		});
+		metrics.gauge(prefix + "waiting", new Metrics.Gauge() {
+			@Override
+			public long getValue() {
+				return m_Waiters.size();
+			}
+		});
+		m_WaitTime = metrics.histogram(prefix + "wait");
+		m_Usage = metrics.histogram(prefix + "usage");
+		m_Timeouts = metrics.counter(prefix + "timeout");
+	}
+
+	/**
+	 * 返回可用项数
+	 */
+	public int getFreeCount() {
+		return count(PoolElement.STATE_FREE);
+	}
+
+	/**
+	 * 返回已经分配项数
+	 */
+	public int getUsingCount() {
+		return count(PoolElement.STATE_USING);
+	}
+
+	/**
+	 * 返回等待分配的线程数
+	 */
+	public int getWaitingCount() {
+		return m_Waiters.size();
+	}
+
+	public int getPeakSize() {
+		return m_PeakSize;
+	}
+
+	private int count(int state) {
+		int count = 0;
+		for (PoolElement item : m_Shared) {
+			if (state == item.getState()) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * 取得使用中的项
+	 */
+	public PoolElement getUsing(E element) {
+		PoolElement item = m_Elements.get(element);
+		if (null != item && PoolElement.STATE_USING == item.getState()) {
+			return item;
+		}
+		return null;
+	}
+
+	/**
+	 * 由池中分配
+	 *
+	 * @param timeout 等待超时值（毫秒）
+	 * @return 分配的项，超时返回null
+	 * @throws Exception 创建新项时的异常
+	 */
+	public E allocate(long timeout) throws Exception {
+		long start = System.nanoTime();
+		PoolElement item = borrow();
+		if (null == item) {
+			item = tryCreate();
+			if (null == item) {
+				item = await(start + timeout * 1000000L);
+				if (null == item) {
+					m_Timeouts.record(1);
+					_Logger.warn(m_Name + " WARNING timeout waiting for free element! size:" + m_Size.get() + '/'
+							+ m_MaxSize + ",waiting:" + m_Waiters.size());
+					return null;
+				}
+			}
+		}
+		item.active();
+		m_WaitTime.record((System.nanoTime() - start) / 1000);
+		return item.getElement();
+	}
+
+	/**
+	 * 使用完归还池
+	 *
+	 * @param element   由池分配的项
+	 * @param checkLive 返回之前检查是否可用
+	 * @return 归还成功返回true
+	 */
+	public boolean free(E element, boolean checkLive) {
+		if (null == element) {
+			_Logger.warn("ERROR free null element!");
+			return false;
+		}
+		PoolElement item = m_Elements.get(element);
+		if (null == item) {
+			// 已超时被移出池或池已被清除，删除它
+			_Logger.warn(m_Name + " Element is lost! " + element.hashCode());
+			onPoolDeleteElement(element);
+			return false;
+		}
+		if (PoolElement.STATE_USING != item.getState()) {
+			_Logger.warn(m_Name + " ERROR element is not using! " + element.hashCode());
+			return false;
+		}
+		long now = System.currentTimeMillis();
+		m_Usage.record(now - item.getLastActive());
+		if (checkLive && !onPoolCheckElement(element, now - item.getLastActive())) {
+			_Logger.warn("Free and OnPoolCheckElement is failed, remove element!");
+			discard(item);
+			return false;
+		}
+		item.free();
+		m_Affinity.set(item);
+		release(item);
+		return true;
+	}
+
+	/**
+	 * 关闭池
+	 */
+	public void close() {
+		synchronized (m_Lock) {
+			if (null != m_Task) {
+				m_Task.cancel();
+				m_Task = null;
+			}
+		}
+		clear();
+	}
+
+	/**
+	 * 清除池中的项，空闲的立即删除，使用中的在归还时删除
+	 */
+	protected void clear() {
+		synchronized (m_Lock) {
+			for (PoolElement item : m_Shared) {
+				int state = item.close();
+				detach(item);
+				if (PoolElement.STATE_USING != state && PoolElement.STATE_CHECKING != state) {
+					delete(item.getElement());
+				}
+			}
+		}
+		// 唤醒等待者重新尝试新建
+		for (Waiter w : m_Waiters) {
+			LockSupport.unpark(w.m_Thread);
+		}
+		_Logger.info(m_Name + " Pool.clear");
+	}
+
+	/**
+	 * 不经等待队列抢占空闲项，有等待者时不抢占以保证公平
+	 */
+	private PoolElement borrow() {
+		if (!m_Waiters.isEmpty()) {
+			return null;
+		}
+		PoolElement item = m_Affinity.get();
+		if (null != item && item.use()) {
+			return item;
+		}
+		return scan();
+	}
+
+	private PoolElement scan() {
+		for (PoolElement item : m_Shared) {
+			if (item.use()) {
+				return item;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 未超出最大项数时新建项
+	 */
+	private PoolElement tryCreate() throws Exception {
+		for (;;) {
+			int size = m_Size.get();
+			if (m_MaxSize > 0 && size >= m_MaxSize) {
+				return null;
+			}
+			if (m_Size.compareAndSet(size, size + 1)) {
+				break;
+			}
+		}
+		E element;
+		try {
+			element = onPoolNewElement();
+		} catch (Exception e) {
+			m_Size.decrementAndGet();
+			signal();
+			throw e;
+		}
+		if (null == element) {
+			m_Size.decrementAndGet();
+			signal();
+			throw new IllegalStateException(m_Name + " OnPoolNewElement() return is null!");
+		}
+		PoolElement item = new PoolElement(element);
+		m_Elements.put(element, item);
+		m_Shared.add(item);
+		int size = m_Size.get();
+		if (size > m_PeakSize) {
+			m_PeakSize = size;
+			if (_TraceEnabled) {
+				_Logger.trace(m_Name + " peak size: " + size + '/' + m_MaxSize);
+			}
+		}
+		return item;
+	}
+
+	/**
+	 * 进入等待队列直至被移交项或超时
+	 */
+	private PoolElement await(long deadline) throws Exception {
+		Waiter w = new Waiter(Thread.currentThread());
+		m_Waiters.offer(w);
+		try {
+			for (;;) {
+				Object v = w.get();
+				if (v instanceof ConcurrentPool.PoolElement) {
+					return cast(v);
+				}
+				if (m_Waiters.peek() == w) {
+					// 排在队首时自行抢占或新建（弥补释放与入队之间的空档及有项被删除的情况）
+					PoolElement item = scan();
+					if (null == item) {
+						item = tryCreate();
+					}
+					if (null != item) {
+						if (w.cancel()) {
+							return item;
+						}
+						// 同时已被移交了项，把多取的放回
+						release(item);
+						return cast(w.get());
+					}
+				}
+				long remain = deadline - System.nanoTime();
+				if (remain <= 0) {
+					break;
+				}
+				LockSupport.parkNanos(this, remain);
+				if (Thread.interrupted()) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+			if (w.cancel()) {
+				return null;
+			}
+			return cast(w.get());
+		} finally {
+			m_Waiters.remove(w);
+			signal();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private PoolElement cast(Object v) {
+		return (PoolElement) v;
+	}
+
+	/**
+	 * 归还使用中的项，有等待者则直接移交给队首，否则标记为空闲
+	 */
+	private void release(PoolElement item) {
+		Waiter w;
+		// 先看队首，移交成功或其已放弃/被移交才出队，项已不可移交时等待者留在队中
+		while (PoolElement.STATE_USING == item.getState() && null != (w = m_Waiters.peek())) {
+			boolean handed = w.compareAndSet(null, item);
+			m_Waiters.remove(w);
+			if (handed) {
+				LockSupport.unpark(w.m_Thread);
+				return;
+			}
+		}
+		if (!item.m_State.compareAndSet(PoolElement.STATE_USING, PoolElement.STATE_FREE)) {
+			// 池已被清除，唤醒队首重新尝试新建
+			delete(item.getElement());
+			signal();
+			return;
+		}
+		// 置为空闲后才入队的等待者由队首自行抢占
+		signal();
+	}
+
+	/**
+	 * 由池中移除并删除项
+	 */
+	private void discard(PoolElement item) {
+		item.close();
+		detach(item);
+		delete(item.getElement());
+		signal();
+	}
+
+	/**
+	 * 由池中移除项
+	 */
+	private boolean detach(PoolElement item) {
+		m_Elements.remove(item.getElement());
+		if (m_Shared.remove(item)) {
+			m_Size.decrementAndGet();
+			return true;
+		}
+		return false;
+	}
+
+	private void delete(E element) {
+		try {
+			onPoolDeleteElement(element);
+		} catch (Exception e) {
+			_Logger.error("onPoolDeleteElement --->", e);
+		}
+	}
+
+	/**
+	 * 唤醒队首的等待者重新尝试
+	 */
+	private void signal() {
+		Waiter w = m_Waiters.peek();
+		if (null != w) {
+			LockSupport.unpark(w.m_Thread);
+		}
+	}
+
+	/**
+	 * 等待者，值为null时等待中，为项时已被移交，为CANCELLED时已放弃
+	 */
+	static class Waiter extends AtomicReference<Object> {
+		private static final long serialVersionUID = 1L;
+		final Thread m_Thread;
+
+		Waiter(Thread thread) {
+			m_Thread = thread;
+		}
+
+		boolean cancel() {
+			return compareAndSet(null, CANCELLED);
+		}
+	}
+
+	/**
+	 * 池中的条目
+	 */
+	public class PoolElement {
+		final E m_Element; // 条目
+		final AtomicInteger m_State; // 状态
+		volatile long m_LastActive; // 最后活动时间
+		volatile Thread m_Owner; // 使用线程
+		volatile boolean m_Reported; // 已输出超时日志
+
+		final public static int STATE_NEW = 0; // 新建状态
+		final public static int STATE_FREE = 1; // 空闲状态
+		final public static int STATE_USING = 2; // 使用状态
+		final public static int STATE_CHECKING = 4; // 生存检查中
+		final public static int STATE_CLOSE = -1; // 关闭状态
+
+		PoolElement(E element) {
+			m_Element = element;
+			m_LastActive = System.currentTimeMillis();
+			// 新建的项直接归创建者使用
+			m_State = new AtomicInteger(STATE_USING);
+		}
+
+		boolean use() {
+			return m_State.compareAndSet(STATE_FREE, STATE_USING);
+		}
+
+		int close() {
+			return m_State.getAndSet(STATE_CLOSE);
+		}
+
+		void setState(int state) {
+			m_State.set(state);
+		}
+
+		public int getState() {
+			return m_State.get();
+		}
+
+		// 刷新项为使用状态
+		void active() {
+			m_LastActive = System.currentTimeMillis();
+			m_Owner = Thread.currentThread();
+			m_Reported = false;
+		}
+
+		// 标志项为空闲状态
+		void free() {
+			m_LastActive = System.currentTimeMillis();
+			m_Owner = null;
+		}
+
+		public long getLastActive() {
+			return m_LastActive;
+		}
+
+		public E getElement() {
+			return m_Element;
+		}
+
+		public Thread getOwner() {
+			return m_Owner;
+		}
+	}
+
+	/**
+	 * 检查超时不释放的项及空闲项的生存状态
+	 */
+	class LiveCheckTask extends TimerTask {
+		@Override
+		public void run() {
+			long now = System.currentTimeMillis();
+			for (PoolElement item : m_Shared) {
+				int state = item.getState();
+				long elapse = now - item.getLastActive();
+				if (PoolElement.STATE_USING == state && elapse > m_Overtime) {
+					overtime(item, elapse);
+				} else if (PoolElement.STATE_FREE == state && elapse > m_LiveCheckPoint) {
+					check(item, elapse);
+				}
+			}
+		}
+
+		private void overtime(PoolElement item, long elapse) {
+			if (!item.m_Reported) {
+				item.m_Reported = true;
+				StringBuilder sb = new StringBuilder(512);
+				sb.append(m_Name).append(" element '").append(item.getElement().hashCode()).append("' overtime(")
+						.append(elapse / 1000).append("s) begin at ")
+						.append(TimeUtil.formatDateTime(new Date(item.getLastActive())));
+				Thread owner = item.getOwner();
+				if (null != owner) {
+					sb.append("\ttrace stack--->\n");
+					StackTracer.printStackTrace(owner, sb);
+				}
+				_Logger.warn(sb.toString());
+			}
+			boolean isRemove;
+			try {
+				isRemove = onPoolOvertimeElement(item.getElement(), elapse);
+			} catch (Exception e) {
+				_Logger.error(StackTracer.printStackTrace(e, null).toString());
+				return;
+			}
+			if (isRemove && detach(item)) {
+				// 移出池，归还时会被删除
+				_Logger.warn(m_Name + " The element is remove! " + item.getElement().hashCode());
+				signal();
+			}
+		}
+
+		private void check(PoolElement item, long idle) {
+			if (!item.m_State.compareAndSet(PoolElement.STATE_FREE, PoolElement.STATE_CHECKING)) {
+				return;
+			}
+			if (_TraceEnabled) {
+				_Logger.trace(m_Name + " Element live check: " + item.getElement().hashCode() + "(" + (idle / 1000)
+						+ "s)");
+			}
+			boolean alive;
+			try {
+				alive = onPoolCheckElement(item.getElement(), idle);
+			} catch (Exception e) {
+				_Logger.error(StackTracer.printStackTrace(e, null).toString());
+				alive = false;
+			}
+			if (!alive) {
+				_Logger.warn(m_Name + " OnPoolCheckElement report the element is death: " + item.getElement().hashCode());
+				discard(item);
+			} else if (item.m_State.compareAndSet(PoolElement.STATE_CHECKING, PoolElement.STATE_USING)) {
+				item.free();
+				release(item);
+			} else {
+				// 检查期间池已被清除
+				delete(item.getElement());
+			}
+		}
+	}
+}
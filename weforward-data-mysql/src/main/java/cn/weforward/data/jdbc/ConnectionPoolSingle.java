@@ -19,11 +19,13 @@ import cn.weforward.common.sys.StackTracer;
 
 /**
  * 单一连接源的数据库连接池
+ * <p>
+ * 基于无锁的{@link ConcurrentPool}，分配与释放连接不需要加锁
  * 
  * @author liangyi
  * 
  */
-public class ConnectionPoolSingle extends Pool<Connection> implements ConnectionPool {
+public class ConnectionPoolSingle extends ConcurrentPool<Connection> implements ConnectionPool {
 	protected int m_MaxSize;
 	protected String m_ConnectionString;
 
@@ -122,6 +124,10 @@ public class ConnectionPoolSingle extends Pool<Connection> implements Connection
 			setDriverClassName(driverClass);
 		}
 		m_ConnectionString = connectionString;
+		String database = DataProvider.findDataBasse(connectionString);
+		if (null != database) {
+			setName(database);
+		}
 		// 连接存活检测为每分钟检查一次
 		create(maxSize, overtime * 1000, 60 * 1000);
 	}
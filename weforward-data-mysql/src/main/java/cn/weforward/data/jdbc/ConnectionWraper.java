@@ -25,6 +25,8 @@ import java.sql.Statement;
 import java.sql.SQLException;
 import java.sql.Struct;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.Executor;
@@ -33,17 +35,93 @@ import cn.weforward.common.sys.StackTracer;
 
 /**
  * 封装java.sql.Connection进入连接池 ，避免连接在使用过程中创建的Statement及ResultSet忘记关闭
+ * <p>
+ * 同时以LRU缓存由{@link #prepareCached(String)}创建的PreparedStatement，缓存跨事务保留直至连接关闭。
+ * 若要MySQL服务端预编译，连接串需加上useServerPrepStmts=true
  * 
  * @author liangyi
  * 
  */
 public class ConnectionWraper implements java.sql.Connection {
+	/** 默认缓存的PreparedStatement数 */
+	public static final int DEFAULT_STATEMENT_CACHE_SIZE = 64;
+
 	java.sql.Connection m_Host;
 	ArrayList<Statement> m_Statements;
+	// 缓存的PreparedStatement（按访问顺序）
+	final LinkedHashMap<String, PreparedStatement> m_StatementCache;
+	int m_StatementCacheSize;
 
 	public ConnectionWraper(java.sql.Connection conn) {
+		this(conn, DEFAULT_STATEMENT_CACHE_SIZE);
+	}
+
+	public ConnectionWraper(java.sql.Connection conn, int statementCacheSize) {
 		m_Host = conn;
 		m_Statements = new ArrayList<Statement>();
+		m_StatementCacheSize = statementCacheSize;
+		m_StatementCache = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true);
+	}
+
+	/**
+	 * 取得缓存的PreparedStatement，没有则创建并缓存，超出缓存数时关闭最久未使用的
+	 * 
+	 * @param sql 数据库语句
+	 * @return 已清除参数及批量的PreparedStatement，使用者不应关闭它
+	 * @throws SQLException 数据库异常
+	 */
+	public PreparedStatement prepareCached(String sql) throws SQLException {
+		PreparedStatement stm = m_StatementCache.get(sql);
+		if (null != stm) {
+			if (!stm.isClosed()) {
+				// 清除上次使用（可能因异常残留）的参数及批量
+				stm.clearParameters();
+				stm.clearBatch();
+				return stm;
+			}
+			m_StatementCache.remove(sql);
+		}
+		stm = m_Host.prepareStatement(sql);
+		if (m_StatementCacheSize <= 0) {
+			// 不缓存
+			m_Statements.add(stm);
+			return stm;
+		}
+		m_StatementCache.put(sql, stm);
+		if (m_StatementCache.size() > m_StatementCacheSize) {
+			Iterator<PreparedStatement> it = m_StatementCache.values().iterator();
+			PreparedStatement eldest = it.next();
+			it.remove();
+			try {
+				eldest.close();
+			} catch (SQLException e) {
+				Pool._Logger.warn("关闭PreparedStatement异常", e);
+			}
+		}
+		return stm;
+	}
+
+	/**
+	 * 缓存的PreparedStatement数
+	 * 
+	 * @return 数量
+	 */
+	public int getStatementCacheCount() {
+		return m_StatementCache.size();
+	}
+
+	/**
+	 * 关闭所有缓存的PreparedStatement
+	 */
+	public void freeCachedStatements() {
+		for (PreparedStatement stm : m_StatementCache.values()) {
+			try {
+				stm.close();
+			} catch (SQLException e) {
+				Pool._Logger.warn("关闭PreparedStatement异常", e);
+			}
+		}
+		m_StatementCache.clear();
 	}
 
 	/**
@@ -70,6 +148,7 @@ public class ConnectionWraper implements java.sql.Connection {
 
 	public void close() throws SQLException {
 		freeStatements();
+		freeCachedStatements();
 		m_Host.close();
 	}
 
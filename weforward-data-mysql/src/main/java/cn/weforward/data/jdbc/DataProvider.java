@@ -10,12 +10,27 @@
  */
 package cn.weforward.data.jdbc;
 
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import cn.weforward.common.Destroyable;
+import cn.weforward.data.metrics.Metrics;
 
 /**
  * 基于连接池及JDBC数据库事务接口的数据提供者
  * 
  * 其提供的事务在同一线程内共享（即使用同一个数据库连接）
+ * <p>
+ * 添加只读副本（从库）后，{@link #TYPE_READ}类型的事务由副本提供：线程中已有进行中的事务、在写后读粘滞时间内有写入或没有复制延迟可接受的副本时仍由主库提供；
+ * 副本的复制延迟由后台定时检查，读时选择延迟最小的副本，延迟相同的轮流使用
  * 
  * @author liangyi
  * 
@@ -49,8 +64,26 @@ public class DataProvider implements Destroyable {
 	 * 仅取得当前（线程共享）已启动的事务
 	 */
 	public static final int TYPE_GET = 2;
+	/**
+	 * 只读的事务，有可用的副本时由副本提供
+	 */
+	public static final int TYPE_READ = 3;
 
 	protected String m_Database;
+	// 只读副本
+	final List<Replica> m_Replicas = new CopyOnWriteArrayList<Replica>();
+	// 写后读粘滞时间（毫秒），同一粘滞键在此时间（至少为最大复制延迟加延迟的精度）内有写入则读也由主库提供，0为不粘滞
+	volatile long m_StickyTimeout = 1000;
+	// 可接受的最大复制延迟（毫秒）
+	volatile long m_MaxLag = 5 * 1000;
+	// 复制延迟检查间隔（毫秒）
+	int m_LagCheckInterval = 5 * 1000;
+	// 轮流使用副本的计数
+	final AtomicInteger m_RoundRobin = new AtomicInteger();
+	// 各粘滞键（如表名）最后写入的时间
+	final ConcurrentMap<String, Long> m_LastWrites = new ConcurrentHashMap<String, Long>();
+	LagCheckTask m_LagTask;
+	Metrics m_Metrics;
 
 	/**
 	 * 构建基于单数据库连接池的
@@ -120,6 +153,137 @@ public class DataProvider implements Destroyable {
 		m_OnThread = tm;
 	}
 
+	/**
+	 * 设置指标收集器，连接池是{@link ConcurrentPool}时导出其等待及占用时间
+	 * 
+	 * @param metrics 指标收集器
+	 */
+	public void setMetrics(Metrics metrics) {
+		if (m_ConnectionPool instanceof ConcurrentPool) {
+			((ConcurrentPool<?>) m_ConnectionPool).setMetrics(metrics);
+		}
+		m_Metrics = metrics;
+		for (Replica r : m_Replicas) {
+			r.setMetrics(metrics);
+		}
+	}
+
+	/**
+	 * 添加只读副本（从库）
+	 * 
+	 * @param connectionString 副本的连接串
+	 * @param maxSize          副本连接池最大项
+	 */
+	public void addReplica(String connectionString, int maxSize) {
+		ConnectionPoolSingle pool = new ConnectionPoolSingle(null, connectionString, maxSize, 1 * 60);
+		pool.setName(pool.getName() + ".replica" + m_Replicas.size());
+		addReplica(pool);
+	}
+
+	/**
+	 * 添加只读副本（从库）
+	 * 
+	 * @param pool 副本的连接池
+	 */
+	public synchronized void addReplica(ConnectionPool pool) {
+		String name = (pool instanceof ConcurrentPool) ? ((ConcurrentPool<?>) pool).getName()
+				: String.valueOf(m_Database) + ".replica" + m_Replicas.size();
+		Replica r = new Replica(name, pool);
+		if (null != m_Metrics) {
+			r.setMetrics(m_Metrics);
+		}
+		m_Replicas.add(r);
+		if (null == m_LagTask) {
+			m_LagTask = new LagCheckTask();
+			ConcurrentPool._Timer.schedule(m_LagTask, 0, m_LagCheckInterval);
+		}
+	}
+
+	/**
+	 * 写后读粘滞时间，同一粘滞键在此时间内有写入则读也由主库提供（保证读到写入），实际的粘滞时间不小于最大复制延迟加1秒（延迟的精度）
+	 * 
+	 * @param mills 毫秒，0为不粘滞
+	 */
+	public void setStickyTimeout(long mills) {
+		m_StickyTimeout = mills;
+	}
+
+	/**
+	 * 可接受的最大复制延迟，所有副本都超出时由主库提供读
+	 * 
+	 * @param mills 毫秒
+	 */
+	public void setMaxLag(long mills) {
+		m_MaxLag = mills;
+	}
+
+	/**
+	 * 复制延迟检查间隔，须在添加副本前设置
+	 * 
+	 * @param mills 毫秒
+	 */
+	public void setLagCheckInterval(int mills) {
+		m_LagCheckInterval = mills;
+	}
+
+	/**
+	 * 标记粘滞键刚有写入，之后粘滞时间内以该键的读由主库提供。粘滞按键而不是按线程，写入通常由刷写线程完成
+	 * 
+	 * @param key 粘滞键，如表名
+	 */
+	public void markWrite(String key) {
+		if (null == key || m_Replicas.isEmpty()) {
+			return;
+		}
+		m_LastWrites.put(key, System.currentTimeMillis());
+	}
+
+	/**
+	 * 粘滞键是否在写后读粘滞时间内
+	 * 
+	 * @param key 粘滞键，为null表示不粘滞
+	 * @return 是则返回true
+	 */
+	public boolean isSticky(String key) {
+		if (null == key || m_StickyTimeout <= 0) {
+			return false;
+		}
+		Long last = m_LastWrites.get(key);
+		if (null == last) {
+			return false;
+		}
+		// 副本的延迟只精确到秒
+		long timeout = Math.max(m_StickyTimeout, m_MaxLag + 1000);
+		return last + timeout > System.currentTimeMillis();
+	}
+
+	/**
+	 * 选择复制延迟最小的副本
+	 * 
+	 * @return 没有可用的副本返回null
+	 */
+	Replica selectReplica() {
+		int size = m_Replicas.size();
+		if (0 == size) {
+			return null;
+		}
+		int start = (m_RoundRobin.getAndIncrement() & 0x7FFFFFFF) % size;
+		Replica select = null;
+		for (int i = 0; i < size; i++) {
+			Replica r;
+			try {
+				r = m_Replicas.get((start + i) % size);
+			} catch (IndexOutOfBoundsException e) {
+				break;
+			}
+			long lag = r.m_Lag;
+			if (lag <= m_MaxLag && (null == select || lag < select.m_Lag)) {
+				select = r;
+			}
+		}
+		return select;
+	}
+
 	/*
 	 * public void close() { if (null != m_ConnectionPool) {
 	 * m_ConnectionPool.freeAllConnections(); } }
@@ -131,6 +295,16 @@ public class DataProvider implements Destroyable {
 				m_ConnectionPool = null;
 			}
 		}
+		synchronized (this) {
+			if (null != m_LagTask) {
+				m_LagTask.cancel();
+				m_LagTask = null;
+			}
+			for (Replica r : m_Replicas) {
+				r.m_Pool.freeAllConnections();
+			}
+			m_Replicas.clear();
+		}
 	}
 
 	/**
@@ -164,6 +338,21 @@ public class DataProvider implements Destroyable {
 		if (TYPE_GET == type) {
 			return (TemplateJdbc) m_OnThread.get(m_ConnectionPool);
 		}
+		if (TYPE_READ == type) {
+			if (m_Replicas.isEmpty()) {
+				return getTranstacion(TYPE_DEFAULT);
+			}
+			TemplateJdbc t = (TemplateJdbc) m_OnThread.get(m_ConnectionPool);
+			if (null != t && null != t.sqlGetConnection()) {
+				// 线程中已有进行中的事务，在同一事务中读
+				return t;
+			}
+			Replica r = selectReplica();
+			if (null == r) {
+				return getTranstacion(TYPE_DEFAULT);
+			}
+			return new ReplicaJdbc(r);
+		}
 		throw new TransactionException("Unknown type: " + type);
 	}
 
@@ -177,4 +366,127 @@ public class DataProvider implements Destroyable {
 		t.begin();
 		return t;
 	}
+
+	/**
+	 * 启动只读的事务，有可用的副本时由副本提供
+	 * 
+	 * @return jdbc模板
+	 */
+	public TemplateJdbc beginReadTranstacion() {
+		return beginReadTranstacion(null);
+	}
+
+	/**
+	 * 启动只读的事务，有可用的副本且粘滞键不在写后读粘滞时间内时由副本提供
+	 * 
+	 * @param key 粘滞键（如表名），为null则不粘滞
+	 * @return jdbc模板
+	 */
+	public TemplateJdbc beginReadTranstacion(String key) {
+		if (isSticky(key)) {
+			return beginTranstacion();
+		}
+		TemplateJdbc t = getTranstacion(TYPE_READ);
+		if (t instanceof ReplicaJdbc) {
+			try {
+				t.begin();
+				return t;
+			} catch (TransactionException e) {
+				// 副本不可用，直至下次延迟检查前不再使用
+				((ReplicaJdbc) t).m_Replica.m_Lag = Long.MAX_VALUE;
+				ConnectionPool._Logger.warn("副本不可用，转由主库读：" + ((ReplicaJdbc) t).m_Replica.m_Name, e);
+				t = getTranstacion(TYPE_DEFAULT);
+			}
+		}
+		t.begin();
+		return t;
+	}
+
+	/**
+	 * 副本的事务
+	 */
+	static class ReplicaJdbc extends TemplateJdbc {
+		final Replica m_Replica;
+
+		ReplicaJdbc(Replica replica) {
+			super(replica.m_Pool);
+			m_Replica = replica;
+		}
+	}
+
+	/**
+	 * 只读副本
+	 */
+	static class Replica {
+		final String m_Name;
+		final ConnectionPool m_Pool;
+		// 复制延迟（毫秒），Long.MAX_VALUE表示不可用
+		volatile long m_Lag;
+
+		Replica(String name, ConnectionPool pool) {
+			m_Name = name;
+			m_Pool = pool;
+		}
+
+		void setMetrics(Metrics metrics) {
+			if (m_Pool instanceof ConcurrentPool) {
+				((ConcurrentPool<?>) m_Pool).setMetrics(metrics);
+			}
+			metrics.gauge("replica." + m_Name + ".lag", new Metrics.Gauge() {
+				@Override
+				public long getValue() {
+					return m_Lag;
+				}
+			});
+		}
+
+		/**
+		 * 检查复制延迟
+		 */
+		void checkLag() {
+			Connection conn = null;
+			try {
+				conn = m_Pool.getConnection();
+				if (null == conn) {
+					m_Lag = Long.MAX_VALUE;
+					return;
+				}
+				Statement stm = conn.createStatement();
+				ResultSet rs = stm.executeQuery("SHOW SLAVE STATUS");
+				if (rs.next()) {
+					long seconds = rs.getLong("Seconds_Behind_Master");
+					// 为NULL表示复制已停止
+					m_Lag = rs.wasNull() ? Long.MAX_VALUE : seconds * 1000;
+				} else {
+					// 不是复制的从库（如代理），视为没有延迟
+					m_Lag = 0;
+				}
+				rs.close();
+				stm.close();
+			} catch (SQLException e) {
+				m_Lag = Long.MAX_VALUE;
+				ConnectionPool._Logger.warn("检查副本延迟失败：" + m_Name, e);
+				if (null != conn) {
+					m_Pool.freeConnectionAtException(conn);
+					conn = null;
+				}
+			} finally {
+				if (null != conn) {
+					m_Pool.freeConnection(conn);
+				}
+			}
+		}
+	}
+
+	/**
+	 * 定时检查副本的复制延迟
+	 */
+	class LagCheckTask extends TimerTask {
+		@Override
+		public void run() {
+			for (Replica r : m_Replicas) {
+				r.checkLag();
+			}
+		}
+	}
 }
@@ -15,6 +15,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
 
 import cn.weforward.common.sys.StackTracer;
 
@@ -33,6 +34,8 @@ public class TemplateJdbc extends SimpleTransaction {
 	protected Connection m_SqlConnection;
 	// 最后执行的SQL语句
 	protected String m_SqlLastString;
+	// 事务中是否执行过更新语句
+	protected boolean m_Updated;
 
 	TransactionDeliver m_Deliver = new TransactionDeliver() {
 		public void doCommit() throws TransactionException {
@@ -163,6 +166,7 @@ public class TemplateJdbc extends SimpleTransaction {
 	 */
 	public int sqlExecuteUpdate(String sql) throws SQLException {
 		m_SqlLastString = sql;
+		m_Updated = true;
 		if (null == m_SqlUpdateStatement) {
 			try {
 				m_SqlUpdateStatement = sqlGetConnection().createStatement();
@@ -175,6 +179,76 @@ public class TemplateJdbc extends SimpleTransaction {
 		return ret;
 	}
 
+	/**
+	 * 以预编译语句执行一条UPDATE/INSERT/DELETE语句，语句由连接缓存复用
+	 * 
+	 * @param sql    带?占位符的数据库语句
+	 * @param params 依次对应占位符的参数
+	 * @return 影响行数
+	 * @throws SQLException 数据库异常
+	 */
+	public int sqlExecuteUpdate(String sql, Object... params) throws SQLException {
+		m_Updated = true;
+		PreparedStatement ps = sqlPrepareCached(sql);
+		bind(ps, params);
+		return ps.executeUpdate();
+	}
+
+	/**
+	 * 以预编译语句执行一条查询语句，语句由连接缓存复用
+	 * 
+	 * @param sql    带?占位符的数据库语句
+	 * @param params 依次对应占位符的参数
+	 * @return 结果集，在语句下次执行前须关闭
+	 * @throws SQLException 数据库异常
+	 */
+	public ResultSet sqlExecuteQuery(String sql, Object... params) throws SQLException {
+		PreparedStatement ps = sqlPrepareCached(sql);
+		bind(ps, params);
+		return ps.executeQuery();
+	}
+
+	/**
+	 * 取得由连接缓存的PrepareStatement，使用者不应关闭它
+	 * 
+	 * @param sql 数据库语句
+	 * @return 声明
+	 * @throws SQLException 数据库异常
+	 */
+	public PreparedStatement sqlPrepareCached(String sql) throws SQLException {
+		m_SqlLastString = sql;
+		if (!isQuery(sql)) {
+			m_Updated = true;
+		}
+		Connection conn = sqlGetConnection();
+		try {
+			if (conn instanceof ConnectionWraper) {
+				return ((ConnectionWraper) conn).prepareCached(sql);
+			}
+			return conn.prepareStatement(sql);
+		} catch (SQLException e) {
+			notifyException(e);
+			throw e;
+		}
+	}
+
+	/**
+	 * 绑定参数
+	 */
+	private static void bind(PreparedStatement ps, Object[] params) throws SQLException {
+		if (null == params) {
+			return;
+		}
+		for (int i = 0; i < params.length; i++) {
+			Object p = params[i];
+			if (null == p) {
+				ps.setNull(i + 1, Types.NULL);
+			} else {
+				ps.setObject(i + 1, p);
+			}
+		}
+	}
+
 	/**
 	 * 创建PrepareStatement
 	 * 
@@ -184,6 +258,9 @@ public class TemplateJdbc extends SimpleTransaction {
 	 */
 	public PreparedStatement sqlPrepareStatement(String sql) throws SQLException {
 		m_SqlLastString = sql;
+		if (!isQuery(sql)) {
+			m_Updated = true;
+		}
 		try {
 			return sqlGetConnection().prepareStatement(sql);
 		} catch (SQLException e) {
@@ -233,12 +310,33 @@ public class TemplateJdbc extends SimpleTransaction {
 		return count;
 	}
 
+	/**
+	 * 事务中是否执行过更新（UPDATE/INSERT/DELETE等）语句
+	 * 
+	 * @return 有则返回true
+	 */
+	public boolean isUpdated() {
+		return m_Updated;
+	}
+
+	/**
+	 * 是否查询语句
+	 */
+	static boolean isQuery(String sql) {
+		int i = 0;
+		while (i < sql.length() && Character.isWhitespace(sql.charAt(i))) {
+			i++;
+		}
+		return sql.regionMatches(true, i, "SELECT", 0, 6) || sql.regionMatches(true, i, "SHOW", 0, 4);
+	}
+
 	/**
 	 * 把连接归还连接池
 	 */
 	protected void freeConnection() {
 		m_SqlUpdateStatement = null;
 		m_SqlLastString = null;
+		m_Updated = false;
 		if (null != m_SqlConnection) {
 			m_ConnectionPool.freeConnection(m_SqlConnection);
 			m_SqlConnection = null;
@@ -251,6 +349,7 @@ public class TemplateJdbc extends SimpleTransaction {
 	protected void freeConnectionAtException() {
 		m_SqlUpdateStatement = null;
 		m_SqlLastString = null;
+		m_Updated = false;
 		if (null != m_SqlConnection) {
 			m_ConnectionPool.freeConnectionAtException(m_SqlConnection);
 			m_SqlConnection = null;
@@ -13,18 +13,19 @@ package cn.weforward.data.mysql.counter;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import cn.weforward.common.util.LruCache.DirtyData;
-import cn.weforward.common.util.StringBuilderPool;
 import cn.weforward.data.counter.Counter;
 import cn.weforward.data.counter.support.CounterItem;
 import cn.weforward.data.counter.support.DbCounter;
 import cn.weforward.data.counter.support.DbCounterFactory;
 import cn.weforward.data.jdbc.DataProvider;
-import cn.weforward.data.jdbc.SqlString;
 import cn.weforward.data.jdbc.TemplateJdbc;
 import cn.weforward.data.mysql.MysqlConst;
 import cn.weforward.data.util.Flusher;
@@ -58,39 +59,16 @@ public class MysqlCounterFactory extends DbCounterFactory {
 		ResultSet rs = null;
 		TemplateJdbc jdbc = null;
 		try {
-			String sql;
-			StringBuilder builder = StringBuilderPool._128.poll();
-			try {
-				builder.append("SELECT * FROM `").append(counter.getLableName()).append("` WHERE '");
-				SqlString.escape(id, builder).append("'=id");
-				sql = builder.toString();
-			} finally {
-				StringBuilderPool._8k.offer(builder);
-			}
+			String sql = "SELECT * FROM `" + counter.getLableName() + "` WHERE id=?";
 			jdbc = ((MysqlCounter) counter).getDataProvider().beginTranstacion();
-			rs = jdbc.sqlExecuteQuery(sql);
+			rs = jdbc.sqlExecuteQuery(sql, id);
 			if (!rs.next()) {
 				// 没有计数项
 				jdbc.commit();
 				jdbc = null;
 				return null;
 			}
-			// 遍历记录各服务器标识下字段的值
-			CounterItem item = new CounterItem(id);
-			ResultSetMetaData md = rs.getMetaData();
-			String current = getFieldName().toLowerCase();
-			for (int i = 1; i <= md.getColumnCount(); i++) {
-				String name = md.getColumnName(i).toLowerCase();
-				if (name.startsWith("v_")) {
-					if (name.equals(current)) {
-						// 当前的
-						item.value = rs.getLong(i);
-					} else {
-						// 其它的
-						item.hold += rs.getLong(i);
-					}
-				}
-			}
+			CounterItem item = toItem(id, rs);
 			jdbc.commit();
 			jdbc = null;
 			return item;
@@ -111,6 +89,67 @@ public class MysqlCounterFactory extends DbCounterFactory {
 		return null;
 	}
 
+	@Override
+	protected Map<String, CounterItem> doLoadBatch(DbCounter counter, List<String> ids) {
+		ResultSet rs = null;
+		TemplateJdbc jdbc = null;
+		try {
+			StringBuilder sql = new StringBuilder(64 + ids.size() * 2);
+			sql.append("SELECT * FROM `").append(counter.getLableName()).append("` WHERE id IN (");
+			for (int i = 0; i < ids.size(); i++) {
+				if (i > 0) {
+					sql.append(',');
+				}
+				sql.append('?');
+			}
+			sql.append(')');
+			Map<String, CounterItem> result = new HashMap<String, CounterItem>(ids.size());
+			jdbc = ((MysqlCounter) counter).getDataProvider().beginTranstacion();
+			rs = jdbc.sqlExecuteQuery(sql.toString(), ids.toArray());
+			while (rs.next()) {
+				String id = rs.getString("id");
+				result.put(id, toItem(id, rs));
+			}
+			jdbc.commit();
+			jdbc = null;
+			return result;
+		} catch (SQLException e) {
+			_Logger.error(ids.size() + " 个计数器项加载失败", e);
+		} finally {
+			if (null != rs) {
+				try {
+					rs.close();
+				} catch (Throwable e) {
+					_Logger.warn("忽略关闭异常", e);
+				}
+			}
+			if (null != jdbc && !jdbc.isCompleted()) {
+				jdbc.rollback();
+			}
+		}
+		return null;
+	}
+
+	/* 遍历记录各服务器标识下字段的值 */
+	private CounterItem toItem(String id, ResultSet rs) throws SQLException {
+		CounterItem item = new CounterItem(id);
+		ResultSetMetaData md = rs.getMetaData();
+		String current = getFieldName().toLowerCase();
+		for (int i = 1; i <= md.getColumnCount(); i++) {
+			String name = md.getColumnName(i).toLowerCase();
+			if (name.startsWith("v_")) {
+				if (name.equals(current)) {
+					// 当前的
+					item.value = rs.getLong(i);
+				} else {
+					// 其它的
+					item.hold += rs.getLong(i);
+				}
+			}
+		}
+		return item;
+	}
+
 	@Override
 	protected void doUpdate(DbCounter counter, DirtyData<CounterItem> data) {
 		TemplateJdbc jdbc = null;
@@ -138,30 +177,12 @@ public class MysqlCounterFactory extends DbCounterFactory {
 
 	private void update(TemplateJdbc jdbc, DbCounter counter, CounterItem item) throws SQLException {
 		// 先尝试更新计数项
-		String sql;
-		StringBuilder builder = StringBuilderPool._128.poll();
-		try {
-			builder.append("UPDATE `").append(counter.getLableName()).append("` SET `").append(getFieldName())
-					.append("`=").append(item.value).append(" WHERE id='");
-			SqlString.escape(item.id, builder).append("'");
-			sql = builder.toString();
-		} finally {
-			StringBuilderPool._128.offer(builder);
-			builder = null;
-		}
-		if (0 == jdbc.sqlExecuteUpdate(sql)) {
+		long value = item.snapshot();
+		String sql = "UPDATE `" + counter.getLableName() + "` SET `" + getFieldName() + "`=? WHERE id=?";
+		if (0 == jdbc.sqlExecuteUpdate(sql, value, item.id)) {
 			// 若未有记录则插入
-			builder = StringBuilderPool._128.poll();
-			try {
-				builder.append("INSERT INTO `").append(counter.getLableName()).append("` (id,`").append(getFieldName())
-						.append("`) VALUES ('");
-				SqlString.escape(item.id, builder).append("',").append(item.value).append(")");
-				sql = builder.toString();
-			} finally {
-				StringBuilderPool._128.offer(builder);
-				builder = null;
-			}
-			jdbc.sqlExecuteUpdate(sql);
+			sql = "INSERT INTO `" + counter.getLableName() + "` (id,`" + getFieldName() + "`) VALUES (?,?)";
+			jdbc.sqlExecuteUpdate(sql, item.id, value);
 		}
 	}
 
@@ -19,9 +19,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import cn.weforward.common.KvPair;
 import cn.weforward.common.ResultPage;
-import cn.weforward.common.util.SimpleKvPair;
 import cn.weforward.data.exception.DataAccessException;
 import cn.weforward.data.jdbc.TemplateJdbc;
 import cn.weforward.data.log.BusinessLog;
@@ -59,6 +57,10 @@ public class MysqlBusinessLogger extends AbstractBusinessLogger {
 	private int m_DefaultStringLength;
 	/** sql表 */
 	private SqlTable m_Table;
+	/** 插入语句 */
+	private String m_InsertSql;
+	/** 每条插入语句最多的行数 */
+	private static final int MAX_ROWS_PER_INSERT = 500;
 
 	public MysqlBusinessLogger(MysqlBusinessLoggerFactory factory, String name, String serverId,
 			int defaultStringLength) {
@@ -97,24 +99,71 @@ public class MysqlBusinessLogger extends AbstractBusinessLogger {
 		return getName().toLowerCase() + "_log";
 	}
 
+	private String getInsertSql(int rows) {
+		String sql = m_InsertSql;
+		if (null == sql) {
+			sql = "INSERT INTO " + getTabelName() + "(" + SqlUtil.wrapField(ID) + "," + SqlUtil.wrapField(AUTHOR) + ","
+					+ SqlUtil.wrapField(ACTION) + "," + SqlUtil.wrapField(WHAT) + "," + SqlUtil.wrapField(NOTE)
+					+ ") VALUES(?,?,?,?,?)";
+			m_InsertSql = sql;
+		}
+		if (1 == rows) {
+			return sql;
+		}
+		StringBuilder builder = new StringBuilder(sql.length() + rows * 12);
+		builder.append(sql);
+		for (int i = 1; i < rows; i++) {
+			builder.append(",(?,?,?,?,?)");
+		}
+		return builder.toString();
+	}
+
 	@Override
 	public void writeLog(BusinessLog log) {
+		writeLogs(Collections.singletonList(log));
+	}
+
+	@Override
+	protected void writeLogs(List<BusinessLog> logs) {
 		SqlTable table = getTable();
-		String mid = log.getId();
+		// 以各字段最长的值检查一次表结构
+		BusinessLog longest = logs.get(0);
+		String author = longest.getAuthor();
+		String action = longest.getAction();
+		String what = longest.getWhat();
+		String note = longest.getNote();
+		for (int i = 1; i < logs.size(); i++) {
+			BusinessLog log = logs.get(i);
+			author = longer(author, log.getAuthor());
+			action = longer(action, log.getAction());
+			what = longer(what, log.getWhat());
+			note = longer(note, log.getNote());
+		}
 		Map<String, DtBase> content = new HashMap<>();
-		content.put(AUTHOR, new SimpleDtString(log.getAuthor()));
-		content.put(ACTION, new SimpleDtString(log.getAction()));
-		content.put(WHAT, new SimpleDtString(log.getWhat()));
-		content.put(NOTE, new SimpleDtString(log.getNote()));
+		content.put(AUTHOR, new SimpleDtString(author));
+		content.put(ACTION, new SimpleDtString(action));
+		content.put(WHAT, new SimpleDtString(what));
+		content.put(NOTE, new SimpleDtString(note));
 		synchronized (table) {
 			SqlUtil.checkTable(m_Factory.getProvider(), table, Collections.emptyList(), content, m_DefaultStringLength);
 		}
 		TemplateJdbc jdbc = null;
 		try {
 			jdbc = m_Factory.getProvider().beginTranstacion();
-			KvPair<String, DtBase> id = SimpleKvPair.valueOf(ID, new SimpleDtString(mid));
-			String sql = SqlUtil.getInsertSql(getTabelName(), id, content);
-			jdbc.sqlExecuteUpdate(sql);
+			for (int i = 0; i < logs.size(); i += MAX_ROWS_PER_INSERT) {
+				int end = Math.min(i + MAX_ROWS_PER_INSERT, logs.size());
+				Object[] params = new Object[(end - i) * 5];
+				int p = 0;
+				for (int j = i; j < end; j++) {
+					BusinessLog log = logs.get(j);
+					params[p++] = log.getId();
+					params[p++] = log.getAuthor();
+					params[p++] = log.getAction();
+					params[p++] = log.getWhat();
+					params[p++] = log.getNote();
+				}
+				jdbc.sqlExecuteUpdate(getInsertSql(end - i), params);
+			}
 			jdbc.commit();
 		} catch (SQLException e) {
 			throw new DataAccessException("写入异常", e);
@@ -123,7 +172,13 @@ public class MysqlBusinessLogger extends AbstractBusinessLogger {
 				jdbc.rollback();
 			}
 		}
+	}
 
+	private static String longer(String a, String b) {
+		if (null == a) {
+			return b;
+		}
+		return (null == b || b.length() <= a.length()) ? a : b;
 	}
 
 	@Override
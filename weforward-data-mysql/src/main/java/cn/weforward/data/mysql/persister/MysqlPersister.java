@@ -11,19 +11,26 @@
 package cn.weforward.data.mysql.persister;
 
 import java.io.IOException;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.function.Supplier;
@@ -40,11 +47,11 @@ import cn.weforward.common.util.StringUtil;
 import cn.weforward.data.UniteId;
 import cn.weforward.data.exception.DataAccessException;
 import cn.weforward.data.jdbc.DataProvider;
-import cn.weforward.data.jdbc.SqlString;
 import cn.weforward.data.jdbc.TemplateJdbc;
 import cn.weforward.data.mysql.EntityListener;
 import cn.weforward.data.mysql.EntityWatcher;
 import cn.weforward.data.mysql.persister.util.MysqlUtil;
+import cn.weforward.data.mysql.util.MysqlIterator;
 import cn.weforward.data.mysql.util.MysqlResultPage;
 import cn.weforward.data.mysql.util.SqlColumnType;
 import cn.weforward.data.mysql.util.SqlUtil;
@@ -57,8 +64,9 @@ import cn.weforward.data.persister.PersistentListener;
 import cn.weforward.data.persister.Persister;
 import cn.weforward.data.persister.Reloadable;
 import cn.weforward.data.persister.support.AbstractPersister;
+import cn.weforward.data.persister.support.PersistentCache;
 import cn.weforward.data.util.AutoObjectMapper;
-import cn.weforward.data.util.Flushable;
+import cn.weforward.data.util.PartitionFlushable;
 import cn.weforward.data.util.Flusher;
 import cn.weforward.data.util.VersionTags;
 import cn.weforward.protocol.datatype.DtBase;
@@ -107,12 +115,40 @@ public class MysqlPersister<E extends Persistent> extends AbstractPersister<E>
 	public final static String SERVERID = Condition.SERVERID;
 	/** 控制实例id */
 	public final static String DRIVEIT = Condition.DRIVEIT;
+	/** 溢出列，没有对应列或列类型不兼容的属性在后台变更表结构完成前以JSON存于此列 */
+	public final static String OVERFLOW = "_overflow";
+	/** 在线变更表结构的选项，服务器不支持时去掉选项重试 */
+	private final static String ONLINE_DDL = "ALGORITHM=INPLACE, LOCK=NONE";
+	/** 启动时检查溢出列的行数 */
+	private final static int DETECT_LIMIT = 1000;
+	/** LIKE的转义符 */
+	private final static char LIKE_ESCAPE = '!';
+	/** 嵌套索引属性对应生成列的列名前缀 */
+	public final static String GENERATED_PREFIX = "_g_";
+	/** 生成列的最大字串长度（索引键长度限制） */
+	private final static int MAX_GENERATED_STRING_LENGTH = 768;
 	/** 默认的字符串长度 */
 	private int m_DefaultStringLength;
 	/** 需要索引的属性列表 */
 	private List<String> m_NeedIndexs;
 	/** 监控 */
 	private EntityWatcher m_Watcher;
+	/** 按列集合缓存的批量插入或更新语句 */
+	private final ConcurrentMap<List<String>, String> m_UpsertSqls = new ConcurrentHashMap<>();
+	/** 按属性缓存的列计划（可直接写入的列及值类型） */
+	private final ConcurrentMap<String, ColumnPlan> m_Plans = new ConcurrentHashMap<>();
+	/** 待后台补齐或变更的列 */
+	private final ConcurrentMap<String, SqlColumnType> m_PendingColumns = new ConcurrentHashMap<>();
+	/** 后台变更表结构的线程 */
+	private Thread m_Reconciler;
+	/** 后台变更表结构失败后的重试间隔（毫秒） */
+	private int m_ReconcileRetryInterval = 60 * 1000;
+	/** 嵌套索引属性对应的生成列，按属性名 */
+	private final Map<String, GeneratedColumn> m_GeneratedByPath = new HashMap<>();
+	/** 嵌套索引属性对应的生成列，按列名 */
+	private final Map<String, GeneratedColumn> m_GeneratedByName = new HashMap<>();
+	/** 生成列是否存储（STORED），默认为虚拟列（VIRTUAL） */
+	private boolean m_GeneratedStored;
 
 	public MysqlPersister(DataProvider provider, ObjectMapper<E> mapper, int defaultStringLength) {
 		super(mapper.getName());
@@ -121,20 +157,50 @@ public class MysqlPersister<E extends Persistent> extends AbstractPersister<E>
 		m_Provider = provider;
 		m_NeedIndexs = new ArrayList<>();
 		m_NeedIndexs.add(LASTMODIFIED);
+		m_DefaultStringLength = defaultStringLength;
 		if (m_Mapper instanceof AutoObjectMapper) {
-			Enumeration<String> indexAttribute = ((AutoObjectMapper<E>) m_Mapper)
-					.getIndexAttributeNames();
+			AutoObjectMapper<E> auto = (AutoObjectMapper<E>) m_Mapper;
+			Enumeration<String> indexAttribute = auto.getIndexAttributeNames();
 			while (indexAttribute.hasMoreElements()) {
-				m_NeedIndexs.add(indexAttribute.nextElement());
+				String name = indexAttribute.nextElement();
+				if (name.indexOf(Condition.FIELD_SPEARATOR) < 0) {
+					m_NeedIndexs.add(name);
+					continue;
+				}
+				// 嵌套属性，在JSON列上建带索引的生成列，类型未知时不建，查询直接用JSON_EXTRACT
+				GeneratedColumn g = toGenerated(name, auto.getAttributeType(name));
+				if (null != g) {
+					m_GeneratedByPath.put(g.path, g);
+					m_GeneratedByName.put(g.name, g);
+				} else if (_Logger.isDebugEnabled()) {
+					_Logger.debug(m_Name + "的嵌套索引属性" + name + "类型未知或不支持，不建生成列");
+				}
 			}
 		}
-		m_DefaultStringLength = defaultStringLength;
 	}
 
 	public DataProvider getProvider() {
 		return m_Provider;
 	}
 
+	/**
+	 * 嵌套索引属性的生成列是否存储，存储的列加列时需重建表，虚拟列只建索引
+	 * 
+	 * @param stored true/STORED，false/VIRTUAL（默认）
+	 */
+	public void setGeneratedStored(boolean stored) {
+		m_GeneratedStored = stored;
+	}
+
+	/**
+	 * 后台变更表结构失败后的重试间隔
+	 * 
+	 * @param mills 毫秒
+	 */
+	public void setReconcileRetryInterval(int mills) {
+		m_ReconcileRetryInterval = mills;
+	}
+
 	public void setFlusher(Flusher flusher) {
 		super.setFlusher(flusher);
 		getFlusher().flush(new InitFlushable());
@@ -207,6 +273,7 @@ public class MysqlPersister<E extends Persistent> extends AbstractPersister<E>
 				columns.put(SERVERID, getStringType());
 				columns.put(DRIVEIT, getStringType());
 				columns.put(LASTMODIFIED, getLongType());
+				columns.put(OVERFLOW, getJsonType());
 			} else {
 				throw new DataAccessException("查询" + tablename + "时发生异常", error);
 			}
@@ -242,6 +309,11 @@ public class MysqlPersister<E extends Persistent> extends AbstractPersister<E>
 			}
 			createIndex(index);
 		}
+		if (null == columns.get(OVERFLOW)) {
+			// 旧表，由后台补齐溢出列（补齐前新属性仍同步变更表结构）
+			schedule(OVERFLOW, getJsonType());
+		}
+		scheduleGenerated(columns);
 		return columns;
 	}
 
@@ -278,6 +350,7 @@ public class MysqlPersister<E extends Persistent> extends AbstractPersister<E>
 		sb.append(" `").append(SERVERID).append("` ").append(getStringType()).append(" ,");
 		sb.append(" `").append(DRIVEIT).append("` ").append(getStringType()).append(" ,");
 		sb.append(" `").append(LASTMODIFIED).append("` ").append(getLongType()).append(" ,");
+		sb.append(" `").append(OVERFLOW).append("` ").append(getJsonType()).append(" ,");
 		sb.append("PRIMARY KEY(`").append(ID).append("`) );");
 		return sb.toString();
 	}
@@ -345,6 +418,67 @@ public class MysqlPersister<E extends Persistent> extends AbstractPersister<E>
 
 	@Override
 	public Iterator<String> searchOfId(String serverId, Date begin, Date end) {
+		return ResultPageHelper.toForeach(toResult(toWhere(serverId, begin, end), null)).iterator();
+	}
+
+	@Override
+	public Iterator<String> searchRangeOfId(String serverId, String from, String to) {
+		return ResultPageHelper.toForeach(toResult(toRangeWhere(serverId, from, to), null)).iterator();
+	}
+
+	/**
+	 * 以流式游标按ID顺序遍历指定时间段内完整的行
+	 * <p>
+	 * 遍历期间独占一个连接，遍历完才释放，中途放弃遍历必须调用close
+	 * 
+	 * @param serverId 服务器id，为null时不限
+	 * @param begin    开始时间，为null时不限
+	 * @param end      结束时间，为null时不限
+	 * @return 迭代器
+	 */
+	public MysqlIterator<E> stream(String serverId, Date begin, Date end) {
+		return toIt("*", toWhere(serverId, begin, end));
+	}
+
+	/**
+	 * 以流式游标按ID顺序遍历指定ID范围内完整的行
+	 * <p>
+	 * 遍历期间独占一个连接，遍历完才释放，中途放弃遍历必须调用close
+	 * 
+	 * @param serverId 服务器id，为null时不限
+	 * @param from     开始ID，为空时不限
+	 * @param to       结束ID，为空时不限
+	 * @return 迭代器
+	 */
+	public MysqlIterator<E> streamRange(String serverId, String from, String to) {
+		return toIt("*", toRangeWhere(serverId, from, to));
+	}
+
+	/**
+	 * 以流式游标按ID顺序遍历指定时间段内的ID，中途放弃遍历必须调用close
+	 * 
+	 * @param serverId 服务器id，为null时不限
+	 * @param begin    开始时间，为null时不限
+	 * @param end      结束时间，为null时不限
+	 * @return 迭代器
+	 */
+	public MysqlIterator<String> streamOfId(String serverId, Date begin, Date end) {
+		return toIt(SqlUtil.wrapField(ID), toWhere(serverId, begin, end));
+	}
+
+	/**
+	 * 以流式游标按ID顺序遍历指定ID范围内的ID，中途放弃遍历必须调用close
+	 * 
+	 * @param serverId 服务器id，为null时不限
+	 * @param from     开始ID，为空时不限
+	 * @param to       结束ID，为空时不限
+	 * @return 迭代器
+	 */
+	public MysqlIterator<String> streamRangeOfId(String serverId, String from, String to) {
+		return toIt(SqlUtil.wrapField(ID), toRangeWhere(serverId, from, to));
+	}
+
+	private static String toWhere(String serverId, Date begin, Date end) {
 		String range;
 		if (null == begin && null == end) {
 			range = null;
@@ -356,61 +490,100 @@ public class MysqlPersister<E extends Persistent> extends AbstractPersister<E>
 			range = SqlUtil.wrapField(LASTMODIFIED) + " BETWEEN " + begin.getTime() + " AND "
 					+ end.getTime();
 		}
-		String server;
-		if (null == serverId) {
-			server = null;
-		} else {
-			server = SqlUtil.wrapField(SERVERID) + "=" + SqlUtil.wrapValue(serverId);
-		}
-		String whereDesc;
-		if (null == range && null == server) {
-			whereDesc = null;
-		} else if (null == range) {
-			whereDesc = server;
-		} else if (null == server) {
-			whereDesc = range;
-		} else {
-			whereDesc = range + " AND " + server;
-		}
-		return ResultPageHelper.toForeach(toResult(whereDesc, null)).iterator();
+		return andServer(range, serverId);
 	}
 
-	@Override
-	public Iterator<String> searchRangeOfId(String serverId, String from, String to) {
+	private static String toRangeWhere(String serverId, String from, String to) {
 		String range;
 		if (StringUtil.isEmpty(from) && StringUtil.isEmpty(to)) {
 			range = null;
 		} else if (StringUtil.isEmpty(from)) {
-			range = SqlUtil.wrapField(ID) + " <= " + to;
+			range = SqlUtil.wrapField(ID) + " <= " + SqlUtil.wrapValue(to);
 		} else if (StringUtil.isEmpty(to)) {
-			range = SqlUtil.wrapField(ID) + " >= " + from;
+			range = SqlUtil.wrapField(ID) + " >= " + SqlUtil.wrapValue(from);
 		} else {
-			range = SqlUtil.wrapField(ID) + " BETWEEN " + from + " AND " + to;
+			range = SqlUtil.wrapField(ID) + " BETWEEN " + SqlUtil.wrapValue(from) + " AND "
+					+ SqlUtil.wrapValue(to);
 		}
-		String server;
+		return andServer(range, serverId);
+	}
+
+	private static String andServer(String range, String serverId) {
 		if (null == serverId) {
-			server = null;
-		} else {
-			server = SqlUtil.wrapField(SERVERID) + "=" + SqlUtil.wrapValue(serverId);
-		}
-		String whereDesc;
-		if (null == range && null == server) {
-			whereDesc = null;
-		} else if (null == range) {
-			whereDesc = server;
-		} else if (null == server) {
-			whereDesc = range;
-		} else {
-			whereDesc = range + " AND " + server;
+			return range;
 		}
-		return ResultPageHelper.toForeach(toResult(whereDesc, null)).iterator();
+		String server = SqlUtil.wrapField(SERVERID) + "=" + SqlUtil.wrapValue(serverId);
+		return null == range ? server : range + " AND " + server;
+	}
+
+	/* 流式游标，field为*时返回经缓存的对象，否则返回ID */
+	@SuppressWarnings("unchecked")
+	private <T> MysqlIterator<T> toIt(String field, String where) {
+		String sql = "SELECT " + field + " FROM " + getTabelName();
+		if (!StringUtil.isEmpty(where)) {
+			sql += " WHERE " + where;
+		}
+		sql += " ORDER BY " + SqlUtil.wrapField(ID);
+		final boolean full = "*".equals(field);
+		final Map<String, SqlColumnType> columns = getColumns();
+		return new MysqlIterator<T>(getProvider(), sql) {
+
+			@Override
+			protected T to(ResultSet rs) throws SQLException {
+				String id = rs.getString(ID);
+				if (!full) {
+					return (T) id;
+				}
+				return (T) hold(id, toOv(columns, rs));
+			}
+		};
 	}
 
 	@Override
 	public ResultPage<String> searchOfId(Condition condition, OrderBy orderBy) {
 		String whereDesc = toWhere(condition);
-		String orderByDesc = toOrderBy(orderBy);
-		return toResult(whereDesc, orderByDesc);
+		return toResult(whereDesc, orderBy);
+	}
+
+	@Override
+	public ResultPage<DtObject> searchView(Condition condition, OrderBy orderBy, String... fields) {
+		final Map<String, SqlColumnType> columns = getColumns();
+		// 嵌套属性取其所在的列，返回整个顶层属性
+		final Set<String> names = new LinkedHashSet<>();
+		if (null != fields) {
+			for (String f : fields) {
+				if (StringUtil.isEmpty(f)) {
+					continue;
+				}
+				int index = f.indexOf(Condition.FIELD_SPEARATOR);
+				names.add(index > 0 ? f.substring(0, index) : f);
+			}
+		}
+		names.remove(ID);
+		final boolean overflowable = (null != columns.get(OVERFLOW));
+		StringBuilder sb = new StringBuilder();
+		sb.append(SqlUtil.wrapField(ID));
+		for (String name : names) {
+			if (columns.containsKey(name) && !LASTMODIFIED.equals(name)) {
+				sb.append(',').append(SqlUtil.wrapField(name));
+			}
+		}
+		// 游标翻页需要最后修改时间列
+		sb.append(',').append(SqlUtil.wrapField(LASTMODIFIED));
+		if (overflowable) {
+			// 还未迁移为列的属性在溢出列中
+			sb.append(',').append(SqlUtil.wrapField(OVERFLOW));
+		}
+		MysqlResultPage<DtObject> rp = new MysqlResultPage<DtObject>(getProvider(), getTabelName(), sb.toString(),
+				toWhere(condition), toOrderBy(orderBy)) {
+
+			@Override
+			protected DtObject to(ResultSet rs) throws SQLException {
+				return toView(columns, names, overflowable, rs);
+			}
+		};
+		setSeek(rp, orderBy);
+		return rp;
 	}
 
 	private String toWhere(Condition c) {
@@ -472,16 +645,67 @@ public class MysqlPersister<E extends Persistent> extends AbstractPersister<E>
 		}
 
 		String name = c.getName();
+		String col;
+		String path;
 		boolean exists;
+		GeneratedColumn generated = null;
 		int index = name.indexOf(Condition.FIELD_SPEARATOR);
 		if (index > 0) {
-			String col = name.substring(0, index);
+			col = name.substring(0, index);
 			String child = name.substring(index + 1);
 			exists = getColumns().containsKey(col);
+			generated = getGenerated(name);
 			name = "JSON_EXTRACT(`" + col + "`,'$." + child + "')";
+			path = "'$.\"" + col + "\"." + child + "'";
 		} else {
+			col = name;
 			exists = getColumns().containsKey(name);
 			name = SqlUtil.wrapField(name);
+			path = "'$.\"" + col + "\"'";
+		}
+		String where = toWhere(c, name, index > 0, exists, generated);
+		if (!isOverflowed(col)) {
+			return where;
+		}
+		// 属性的值还在溢出列（没有对应列或变更未完成），溢出列中有该属性时以其值为准
+		String overflow = toWhere(c, "JSON_EXTRACT(`" + OVERFLOW + "`," + path + ")", true, true, null);
+		return "IF(JSON_CONTAINS_PATH(`" + OVERFLOW + "`,'one'," + path + ")," + overflow + "," + where + ")";
+	}
+
+	/* 属性的值是否可能在溢出列中 */
+	private boolean isOverflowed(String name) {
+		ConcurrentMap<String, SqlColumnType> columns = getColumns();
+		if (null == columns.get(OVERFLOW)) {
+			return false;
+		}
+		return !columns.containsKey(name) || m_PendingColumns.containsKey(name);
+	}
+
+	/* 单个属性的条件，name为列名或JSON_EXTRACT表达式 */
+	static String toWhere(Condition c, String name, boolean nested, boolean exists, GeneratedColumn generated) {
+		int type = c.getType();
+		if (type == Condition.TYPE_IN || type == Condition.TYPE_NIN) {
+			return toInWhere(name, nested, exists, generated, c.getValue(), type == Condition.TYPE_IN);
+		}
+		if (type == Condition.TYPE_EXISTS) {
+			boolean e = !Boolean.FALSE.equals(c.getValue());
+			if (!exists) {
+				return e ? "1<>1" : "1=1";
+			}
+			return name + (e ? " IS NOT NULL" : " IS NULL");
+		}
+		if (type == Condition.TYPE_PREFIX) {
+			if (!exists) {
+				return "1<>1";
+			}
+			String prefix = StringUtil.toString(c.getValue());
+			String like = SqlUtil.wrapValue(escapeLike(prefix) + "%") + " ESCAPE '" + LIKE_ESCAPE + "'";
+			if (nested) {
+				// JSON中的字串
+				return toGeneratedWhere(generated, prefix, " LIKE ", like) + "JSON_TYPE(" + name
+						+ ")='STRING' AND JSON_UNQUOTE(" + name + ") LIKE " + like;
+			}
+			return name + " LIKE " + like;
 		}
 		String v = toTItem(c.getValue());
 		if (type == Condition.TYPE_EQ) {
@@ -495,7 +719,7 @@ public class MysqlPersister<E extends Persistent> extends AbstractPersister<E>
 			if (null == v) {
 				return name + " IS NULL";
 			} else {
-				return name + "=" + v;
+				return toGeneratedWhere(generated, c.getValue(), "=", v) + name + "=" + v;
 			}
 		}
 		if (type == Condition.TYPE_NE) {
@@ -516,22 +740,122 @@ public class MysqlPersister<E extends Persistent> extends AbstractPersister<E>
 			return "1<>1";
 		}
 		if (type == Condition.TYPE_LT) {
-			return name + "<" + v;
+			return toGeneratedWhere(generated, c.getValue(), "<=", v) + name + "<" + v;
 		}
 		if (type == Condition.TYPE_GT) {
-			return name + ">" + v;
+			return toGeneratedWhere(generated, c.getValue(), ">=", v) + name + ">" + v;
 		}
 		if (type == Condition.TYPE_LTE) {
-			return name + "<=" + v;
+			return toGeneratedWhere(generated, c.getValue(), "<=", v) + name + "<=" + v;
 		}
 		if (type == Condition.TYPE_GTE) {
-			return name + ">=" + v;
+			return toGeneratedWhere(generated, c.getValue(), ">=", v) + name + ">=" + v;
 		}
 		throw new UnsupportedOperationException("不支持的类型[" + type + "]");
 
 	}
 
-	private String toTItem(Object value) {
+	/* in/not in，与TYPE_EQ/TYPE_NE一致，列表中的null对应IS NULL */
+	private static String toInWhere(String name, boolean nested, boolean exists, GeneratedColumn g, Object value,
+			boolean in) {
+		Collection<?> values;
+		if (value instanceof Collection<?>) {
+			values = (Collection<?>) value;
+		} else {
+			values = (null == value) ? Collections.emptyList() : Collections.singletonList(value);
+		}
+		boolean hasNull = false;
+		boolean indexable = (null != g);
+		List<String> items = new ArrayList<>(values.size());
+		for (Object v : values) {
+			if (null == v) {
+				hasNull = true;
+				continue;
+			}
+			items.add(toTItem(v));
+			indexable = indexable && g.accept(v);
+		}
+		if (!exists) {
+			// 没有该列，则值全为null
+			return (in == hasNull) ? "1=1" : "1<>1";
+		}
+		if (items.isEmpty()) {
+			if (in) {
+				return hasNull ? name + " IS NULL" : "1<>1";
+			}
+			return hasNull ? name + " IS NOT NULL" : "1=1";
+		}
+		StringBuilder sb = new StringBuilder();
+		if (!nested) {
+			sb.append(name).append(in ? " IN (" : " NOT IN (");
+			appendJoin(sb, items, ",");
+			sb.append(')');
+		} else {
+			// JSON值与列表的比较不可靠，逐个比较
+			if (in && indexable && !hasNull) {
+				sb.append(SqlUtil.wrapField(g.name)).append(" IN (");
+				appendJoin(sb, items, ",");
+				sb.append(") AND ");
+			}
+			sb.append('(');
+			for (int i = 0; i < items.size(); i++) {
+				if (i > 0) {
+					sb.append(in ? " OR " : " AND ");
+				}
+				sb.append(name).append(in ? "=" : "<>").append(items.get(i));
+			}
+			sb.append(')');
+		}
+		if (in && hasNull) {
+			return "(" + sb + ") OR " + name + " IS NULL";
+		}
+		if (!in && !hasNull) {
+			// 与Mongodb的$nin一致，值为null（或没有该属性）的也符合
+			return "(" + sb + " OR " + name + " IS NULL)";
+		}
+		return sb.toString();
+	}
+
+	private static void appendJoin(StringBuilder sb, List<String> items, String separator) {
+		for (int i = 0; i < items.size(); i++) {
+			if (i > 0) {
+				sb.append(separator);
+			}
+			sb.append(items.get(i));
+		}
+	}
+
+	/* 转义LIKE的通配符（转义符为LIKE_ESCAPE，不受NO_BACKSLASH_ESCAPES影响） */
+	private static String escapeLike(String value) {
+		StringBuilder sb = new StringBuilder(value.length() + 8);
+		for (int i = 0; i < value.length(); i++) {
+			char ch = value.charAt(i);
+			if (LIKE_ESCAPE == ch || '%' == ch || '_' == ch) {
+				sb.append(LIKE_ESCAPE);
+			}
+			sb.append(ch);
+		}
+		return sb.toString();
+	}
+
+	/* 可用生成列（的索引）的条件，作为原条件的前置过滤，生成列的值可能有精度损失，所以op为不严格的比较符 */
+	private static String toGeneratedWhere(GeneratedColumn g, Object value, String op, String v) {
+		if (null == g || null == value || !g.accept(value)) {
+			return "";
+		}
+		return SqlUtil.wrapField(g.name) + op + v + " AND ";
+	}
+
+	/* 已创建的生成列 */
+	private GeneratedColumn getGenerated(String path) {
+		if (m_GeneratedByPath.isEmpty()) {
+			return null;
+		}
+		GeneratedColumn g = m_GeneratedByPath.get(path);
+		return (null != g && getColumns().containsKey(g.name)) ? g : null;
+	}
+
+	private static String toTItem(Object value) {
 		if (null == value) {
 			return null;
 		}
@@ -550,7 +874,8 @@ public class MysqlPersister<E extends Persistent> extends AbstractPersister<E>
 		StringBuilder sb = new StringBuilder();
 		boolean first = true;
 		for (String asc : orderBy.getAsc()) {
-			if (StringUtil.isEmpty(asc) || !getColumns().containsKey(asc)) {
+			String field = toOrderField(asc);
+			if (null == field) {
 				continue;
 			}
 			if (first) {
@@ -558,11 +883,12 @@ public class MysqlPersister<E extends Persistent> extends AbstractPersister<E>
 			} else {
 				sb.append(',');
 			}
-			sb.append(SqlUtil.wrapField(asc));
+			sb.append(field);
 			sb.append(" ASC");
 		}
 		for (String desc : orderBy.getDesc()) {
-			if (StringUtil.isEmpty(desc) || !getColumns().containsKey(desc)) {
+			String field = toOrderField(desc);
+			if (null == field) {
 				continue;
 			}
 			if (first) {
@@ -570,7 +896,7 @@ public class MysqlPersister<E extends Persistent> extends AbstractPersister<E>
 			} else {
 				sb.append(',');
 			}
-			sb.append(SqlUtil.wrapField(desc));
+			sb.append(field);
 			sb.append(" DESC");
 		}
 		if (first) {
@@ -579,42 +905,74 @@ public class MysqlPersister<E extends Persistent> extends AbstractPersister<E>
 		return sb.toString();
 	}
 
-	private ResultPage<String> toResult(String whereDesc, String orderByDesc) {
-		return new MysqlResultPage<String>(getProvider(), getTabelName(), SqlUtil.wrapField(ID),
-				whereDesc, orderByDesc) {
+	/* 排序的列，嵌套属性使用其生成列，没有对应的列返回null */
+	private String toOrderField(String name) {
+		if (StringUtil.isEmpty(name)) {
+			return null;
+		}
+		if (getColumns().containsKey(name)) {
+			return SqlUtil.wrapField(name);
+		}
+		GeneratedColumn g = getGenerated(name);
+		return null == g ? null : SqlUtil.wrapField(g.name);
+	}
+
+	private ResultPage<String> toResult(String whereDesc, OrderBy orderBy) {
+		MysqlResultPage<String> rp = new MysqlResultPage<String>(getProvider(), getTabelName(),
+				SqlUtil.wrapField(ID), whereDesc, toOrderBy(orderBy)) {
 
 			@Override
 			protected String to(ResultSet rs) throws SQLException {
 				return rs.getString(ID);
 			}
 		};
+		setSeek(rp, orderBy);
+		return rp;
+	}
+
+	/* 无排序或只按最后修改时间排序时使用游标翻页（这两列的值不会为null） */
+	private static void setSeek(MysqlResultPage<?> rp, OrderBy orderBy) {
+		if (null == orderBy) {
+			rp.setSeek(ID, null, false);
+		} else if (orderBy.getAsc().size() + orderBy.getDesc().size() == 1) {
+			if (orderBy.getAsc().contains(LASTMODIFIED)) {
+				rp.setSeek(ID, LASTMODIFIED, false);
+			} else if (orderBy.getDesc().contains(LASTMODIFIED)) {
+				rp.setSeek(ID, LASTMODIFIED, true);
+			}
+		}
 	}
 
 	@Override
 	protected ObjectWithVersion<E> innerLoad(String id) {
+		return load(id, false);
+	}
+
+	/**
+	 * 加载对象
+	 * 
+	 * @param id
+	 *            对象ID
+	 * @param master
+	 *            是否由主库读（如变化通知后的重载，副本可能还没有这个变化）
+	 * @return 对象项，没有则返回null
+	 */
+	private ObjectWithVersion<E> load(String id, boolean master) {
 		Map<String, SqlColumnType> columns = getColumns();
 		String tablename = getTabelName();
-		String sql = "SELECT * FROM " + tablename + " WHERE `" + ID + "`='" + SqlString.escape(id)
-				+ "'";
+		String sql = "SELECT * FROM " + tablename + " WHERE `" + ID + "`=?";
 		TemplateJdbc jdbc = null;
 		ResultSet rs = null;
 		try {
-			jdbc = getProvider().beginTranstacion();
-			rs = jdbc.sqlExecuteQuery(sql);
-			E e = null;
-			String version = null;
-			String driveit = null;
+			jdbc = master ? getProvider().beginTranstacion() : getProvider().beginReadTranstacion(tablename);
+			rs = jdbc.sqlExecuteQuery(sql, id);
+			ObjectWithVersion<E> ov = null;
 			while (rs.next()) {
-				e = wrap(columns, rs);
-				version = rs.getString(VERSION);
-				driveit = rs.getString(DRIVEIT);
+				ov = toOv(columns, rs);
 				break;
 			}
 			jdbc.commit();
-			if (null == e) {
-				return null;
-			}
-			return new ObjectWithVersion<E>(e, version, driveit);
+			return ov;
 		} catch (SQLException e) {
 			if (isNoExistTabelException(tablename, e)) {
 				return null;
@@ -633,19 +991,120 @@ public class MysqlPersister<E extends Persistent> extends AbstractPersister<E>
 			}
 		}
 
-	} /* 包装 */
+	}
+
+	@Override
+	protected Map<String, ObjectWithVersion<E>> innerLoadBatch(List<String> ids) {
+		Map<String, SqlColumnType> columns = getColumns();
+		String tablename = getTabelName();
+		StringBuilder sb = new StringBuilder();
+		sb.append("SELECT * FROM ").append(tablename).append(" WHERE `").append(ID).append("` IN (");
+		for (int i = 0; i < ids.size(); i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append('?');
+		}
+		sb.append(')');
+		Map<String, ObjectWithVersion<E>> result = new HashMap<>(ids.size());
+		TemplateJdbc jdbc = null;
+		ResultSet rs = null;
+		try {
+			jdbc = getProvider().beginReadTranstacion(tablename);
+			rs = jdbc.sqlExecuteQuery(sb.toString(), ids.toArray());
+			while (rs.next()) {
+				result.put(rs.getString(ID), toOv(columns, rs));
+			}
+			jdbc.commit();
+			return result;
+		} catch (SQLException e) {
+			if (isNoExistTabelException(tablename, e)) {
+				return result;
+			}
+			throw new DataAccessException("批量获取数据异常", e);
+		} finally {
+			if (null != rs) {
+				try {
+					rs.close();
+				} catch (SQLException e) {
+					_Logger.warn("忽略关闭异常", e);
+				}
+			}
+			if (null != jdbc && !jdbc.isCompleted()) {
+				jdbc.rollback();
+			}
+		}
+	}
+
+	/* 包装为对象项，变化跟踪时附带各列的值作为快照 */
+	private ObjectWithVersion<E> toOv(Map<String, SqlColumnType> columns, ResultSet rs) throws SQLException {
+		Map<String, Object> snapshot = isChangeTracking() ? new HashMap<String, Object>() : null;
+		E e = wrap(columns, rs, snapshot);
+		ObjectWithVersion<E> ov = new ObjectWithVersion<E>(e, rs.getString(VERSION), rs.getString(DRIVEIT));
+		ov.setSnapshot(snapshot);
+		return ov;
+	}
 
-	private E wrap(Map<String, SqlColumnType> columns, ResultSet rs) throws SQLException {
+	/* 包装 */
+	private E wrap(Map<String, SqlColumnType> columns, ResultSet rs, Map<String, Object> snapshot)
+			throws SQLException {
 		ResultSetMetaData md = rs.getMetaData();
 		int columnCount = md.getColumnCount();
 		SimpleDtObject dt = new SimpleDtObject();
+		DtObject overflow = null;
 		for (int i = 1; i <= columnCount; i++) {
 			String name = md.getColumnName(i);
-			dt.put(name, toDtBase(columns, name, rs.getObject(i)));
+			if (name.startsWith(GENERATED_PREFIX)) {
+				continue;
+			}
+			DtBase value = toDtBase(columns, name, rs.getObject(i));
+			if (null != snapshot) {
+				snapshot.put(name, toParam(value));
+			}
+			if (OVERFLOW.equals(name)) {
+				if (value instanceof DtObject) {
+					overflow = (DtObject) value;
+				}
+				continue;
+			}
+			dt.put(name, value);
+		}
+		if (null != overflow) {
+			// 溢出列中的值比列中的新
+			Enumeration<KvPair<String, DtBase>> attr = overflow.getAttributes();
+			while (attr.hasMoreElements()) {
+				KvPair<String, DtBase> pair = attr.nextElement();
+				dt.put(pair.getKey(), pair.getValue());
+			}
 		}
 		return m_Mapper.fromDtObject(dt);
 	}
 
+	/* 包装视图，只取指定的属性，不经映射器转换 */
+	private DtObject toView(Map<String, SqlColumnType> columns, Set<String> names, boolean overflowable,
+			ResultSet rs) throws SQLException {
+		SimpleDtObject dt = new SimpleDtObject();
+		dt.put(ID, rs.getString(ID));
+		for (String name : names) {
+			if (columns.containsKey(name)) {
+				dt.put(name, toDtBase(columns, name, rs.getObject(name)));
+			}
+		}
+		if (overflowable) {
+			DtBase overflow = toDtBase(columns, OVERFLOW, rs.getObject(OVERFLOW));
+			if (overflow instanceof DtObject) {
+				// 溢出列中的值比列中的新
+				for (String name : names) {
+					DtBase value = ((DtObject) overflow).getAttribute(name);
+					if (null != value) {
+						dt.put(name, value);
+					}
+				}
+			}
+		}
+		return dt;
+	}
+
 	private DtBase toDtBase(Map<String, SqlColumnType> columns, String name, Object object) {
 		SqlColumnType col = columns.get(name);
 		DtBase base = toDtBase(object);
@@ -690,52 +1149,327 @@ public class MysqlPersister<E extends Persistent> extends AbstractPersister<E>
 	}
 
 	protected String innerSave(E object, String oldVersion) {
+		return save(object, oldVersion, null);
+	}
+
+	@Override
+	protected String innerSave(E object, String oldVersion, PersistentCache.SnapshotHolder holder) {
+		return save(object, oldVersion, holder);
+	}
+
+	/* 保存，有快照时只更新变化的列，存储中的版本已不是快照的版本则整行写入 */
+	private String save(E object, String oldVersion, PersistentCache.SnapshotHolder holder) {
 		String id = object.getPersistenceId().getOrdinal();
-		String version;
+		String version = genVersion(oldVersion);
+		Map<String, Object> params = toParams(toValues(object, version));
+		Map<String, Object> snapshot = getSnapshot(holder);
+		TemplateJdbc jdbc = null;
+		try {
+			jdbc = getProvider().beginTranstacion();
+			int count = 0;
+			if (null != snapshot) {
+				List<String> names = diff(snapshot, params);
+				Object[] args = new Object[names.size() + 2];
+				for (int i = 0; i < names.size(); i++) {
+					args[i] = params.get(names.get(i));
+				}
+				args[names.size()] = id;
+				args[names.size() + 1] = snapshot.get(VERSION);
+				count = jdbc.sqlExecuteUpdate(getUpdateSql(names), args);
+			}
+			if (0 == count) {
+				List<String> names = new ArrayList<>(params.keySet());
+				Collections.sort(names);
+				Object[] args = new Object[names.size() + 1];
+				args[0] = id;
+				for (int i = 0; i < names.size(); i++) {
+					args[i + 1] = params.get(names.get(i));
+				}
+				jdbc.sqlExecuteUpdate(getUpsertSql(names), args);
+			}
+			jdbc.commit();
+			getProvider().markWrite(getTabelName());
+		} catch (SQLException e) {
+			throw new DataAccessException("更新数据异常", e);
+		} finally {
+			if (null != jdbc && !jdbc.isCompleted()) {
+				jdbc.rollback();
+			}
+		}
+		if (null != holder) {
+			holder.setSnapshot(merge(snapshot, params));
+		}
+		return version;
+	}
+
+	@Override
+	protected String[] innerSaveBatch(List<E> objects, List<String> oldVersions) {
+		return saveBatch(objects, oldVersions, null);
+	}
+
+	@Override
+	protected String[] innerSaveBatch(List<E> objects, List<String> oldVersions,
+			List<? extends PersistentCache.SnapshotHolder> holders) {
+		return saveBatch(objects, oldVersions, holders);
+	}
+
+	/* 批量保存，有快照的项只更新变化的列 */
+	private String[] saveBatch(List<E> objects, List<String> oldVersions,
+			List<? extends PersistentCache.SnapshotHolder> holders) {
+		int size = objects.size();
+		String[] versions = new String[size];
+		List<Map<String, Object>> rows = new ArrayList<>(size);
+		List<Map<String, Object>> snapshots = new ArrayList<>(size);
+		// 按（变化的）列集合分组，同组的行共用一条预编译语句
+		Map<List<String>, List<Integer>> updates = new LinkedHashMap<>();
+		Map<List<String>, List<Integer>> upserts = new LinkedHashMap<>();
+		for (int i = 0; i < size; i++) {
+			E object = objects.get(i);
+			String version = genVersion(oldVersions.get(i));
+			Map<String, DtBase> values;
+			synchronized (object) {
+				values = toValues(object, version);
+			}
+			versions[i] = version;
+			Map<String, Object> params = toParams(values);
+			rows.add(params);
+			Map<String, Object> snapshot = getSnapshot(null == holders ? null : holders.get(i));
+			snapshots.add(snapshot);
+			if (null == snapshot) {
+				group(upserts, params.keySet(), i);
+			} else {
+				group(updates, diff(snapshot, params), i);
+			}
+		}
+		TemplateJdbc jdbc = null;
+		try {
+			jdbc = getProvider().beginTranstacion();
+			for (Map.Entry<List<String>, List<Integer>> e : updates.entrySet()) {
+				List<String> names = e.getKey();
+				PreparedStatement ps = jdbc.sqlPrepareCached(getUpdateSql(names));
+				int[] counts;
+				try {
+					for (Integer i : e.getValue()) {
+						Map<String, Object> params = rows.get(i);
+						for (int j = 0; j < names.size(); j++) {
+							setParam(ps, j + 1, params.get(names.get(j)));
+						}
+						setParam(ps, names.size() + 1, objects.get(i).getPersistenceId().getOrdinal());
+						setParam(ps, names.size() + 2, snapshots.get(i).get(VERSION));
+						ps.addBatch();
+					}
+					counts = ps.executeBatch();
+				} finally {
+					clearBatch(ps);
+				}
+				for (int k = 0; k < counts.length; k++) {
+					if (0 == counts[k]) {
+						// 存储中的版本已不是快照的版本，改为整行写入
+						int i = e.getValue().get(k);
+						group(upserts, rows.get(i).keySet(), i);
+					}
+				}
+			}
+			for (Map.Entry<List<String>, List<Integer>> e : upserts.entrySet()) {
+				List<String> names = e.getKey();
+				PreparedStatement ps = jdbc.sqlPrepareCached(getUpsertSql(names));
+				try {
+					for (Integer i : e.getValue()) {
+						Map<String, Object> params = rows.get(i);
+						ps.setString(1, objects.get(i).getPersistenceId().getOrdinal());
+						for (int j = 0; j < names.size(); j++) {
+							setParam(ps, j + 2, params.get(names.get(j)));
+						}
+						ps.addBatch();
+					}
+					ps.executeBatch();
+				} finally {
+					clearBatch(ps);
+				}
+			}
+			jdbc.commit();
+			getProvider().markWrite(getTabelName());
+		} catch (SQLException e) {
+			throw new DataAccessException("批量更新数据异常", e);
+		} finally {
+			if (null != jdbc && !jdbc.isCompleted()) {
+				jdbc.rollback();
+			}
+		}
+		if (null != holders) {
+			for (int i = 0; i < size; i++) {
+				holders.get(i).setSnapshot(merge(snapshots.get(i), rows.get(i)));
+			}
+		}
+		return versions;
+	}
+
+	/* 把行归入（排序后的）列集合对应的分组 */
+	private static void group(Map<List<String>, List<Integer>> groups, Collection<String> columns, int index) {
+		List<String> names = new ArrayList<>(columns);
+		Collections.sort(names);
+		List<Integer> group = groups.get(names);
+		if (null == group) {
+			group = new ArrayList<>();
+			groups.put(names, group);
+		}
+		group.add(index);
+	}
+
+	/* 清除缓存语句中（可能因异常残留）的批量，避免下次复用时重放 */
+	private static void clearBatch(PreparedStatement ps) {
+		try {
+			ps.clearBatch();
+		} catch (SQLException e) {
+			_Logger.warn("清除批量异常", e);
+		}
+	}
+
+	private static void setParam(PreparedStatement ps, int index, Object param) throws SQLException {
+		if (null == param) {
+			ps.setNull(index, Types.NULL);
+		} else {
+			ps.setObject(index, param);
+		}
+	}
+
+	/* 取快照持有者中的快照（各列的值） */
+	@SuppressWarnings("unchecked")
+	private static Map<String, Object> getSnapshot(PersistentCache.SnapshotHolder holder) {
+		Object snapshot = null == holder ? null : holder.getSnapshot();
+		return (snapshot instanceof Map) ? (Map<String, Object>) snapshot : null;
+	}
+
+	/* 与快照比较得出有变化的列（排序后的），版本号及最后修改时间总是有变化 */
+	private static List<String> diff(Map<String, Object> snapshot, Map<String, Object> params) {
+		List<String> names = new ArrayList<>();
+		for (Map.Entry<String, Object> e : params.entrySet()) {
+			String name = e.getKey();
+			if (!snapshot.containsKey(name) || !Objects.equals(e.getValue(), snapshot.get(name))) {
+				names.add(name);
+			}
+		}
+		Collections.sort(names);
+		return names;
+	}
+
+	/* 写入后的快照 */
+	private static Map<String, Object> merge(Map<String, Object> snapshot, Map<String, Object> params) {
+		if (null == snapshot) {
+			return new HashMap<>(params);
+		}
+		Map<String, Object> merged = new HashMap<>(snapshot);
+		merged.putAll(params);
+		return merged;
+	}
+
+	/* 转换为各列的参数 */
+	private Map<String, Object> toParams(Map<String, DtBase> values) {
+		Map<String, Object> params = new HashMap<>(values.size());
+		for (Map.Entry<String, DtBase> e : values.entrySet()) {
+			params.put(e.getKey(), toParam(e.getValue()));
+		}
+		return params;
+	}
+
+	/* 只更新部分列的语句，条件为存储中的版本仍是快照的版本 */
+	private String getUpdateSql(List<String> names) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("UPDATE ").append(getTabelName()).append(" SET ");
+		for (int i = 0; i < names.size(); i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append('`').append(names.get(i)).append("`=?");
+		}
+		sb.append(" WHERE `").append(ID).append("`=? AND `").append(VERSION).append("`=?");
+		return sb.toString();
+	}
+
+	/* 批量插入或更新的语句 */
+	private String getUpsertSql(List<String> names) {
+		String sql = m_UpsertSqls.get(names);
+		if (null != sql) {
+			return sql;
+		}
+		StringBuilder into = new StringBuilder();
+		StringBuilder value = new StringBuilder();
+		StringBuilder update = new StringBuilder();
+		into.append("INSERT INTO ").append(getTabelName()).append("(`").append(ID).append('`');
+		value.append("VALUES(?");
+		for (String name : names) {
+			into.append(",`").append(name).append('`');
+			value.append(",?");
+			if (update.length() > 0) {
+				update.append(',');
+			}
+			update.append('`').append(name).append("`=VALUES(`").append(name).append("`)");
+		}
+		into.append(')');
+		value.append(')');
+		sql = into.toString() + " " + value.toString() + " ON DUPLICATE KEY UPDATE "
+				+ update.toString();
+		m_UpsertSqls.putIfAbsent(names, sql);
+		return sql;
+	}
+
+	/* 转换为各列的值，没有对应列或列类型不兼容的属性写入溢出列并由后台补齐或变更列 */
+	private Map<String, DtBase> toValues(E object, String version) {
 		DtObject dt = m_Mapper.toDtObject(object);
 		Enumeration<KvPair<String, DtBase>> attr = dt.getAttributes();
 		Map<String, SqlColumnType> miss = new HashMap<>();
 		Map<String, SqlColumnType> change = new HashMap<>();
-		Map<String, String> content = new HashMap<>();
+		Map<String, DtBase> content = new HashMap<>();
 		ConcurrentMap<String, SqlColumnType> columns = getColumns();
+		boolean overflowable = (null != columns.get(OVERFLOW));
+		SimpleDtObject overflow = null;
 		while (attr.hasMoreElements()) {
 			KvPair<String, DtBase> pair = attr.nextElement();
 			DtBase value = pair.getValue();
 			String name = pair.getKey();
 			SqlColumnType type = columns.get(name);
-			if (null == type) {
-				if (null == value) {
-					continue;
+			if (null == type && null == value) {
+				continue;
+			}
+			if (null != type && (null == value || isCompatible(name, type, value))) {
+				content.put(name, value);
+				continue;
+			}
+			SqlColumnType currentType = changeType(value);
+			if (overflowable) {
+				schedule(name, currentType);
+				if (null == overflow) {
+					overflow = new SimpleDtObject();
 				}
-				type = changeType(value);
-				miss.putIfAbsent(name, type);
+				overflow.put(name, value);
+				continue;
+			}
+			if (null == type) {
+				miss.putIfAbsent(name, currentType);
 			} else {
-				SqlColumnType currentType = changeType(value);
-				if (!StringUtil.eq(currentType.getName(), type.getName())
-						&& currentType.getLength() > type.getLength()) {
-					change.put(name, currentType);
-				}
+				change.put(name, currentType);
 			}
-			String myValue = toValue(value);
-			content.put(name, myValue);
+			content.put(name, value);
+		}
+		if (overflowable) {
+			content.put(OVERFLOW, overflow);
 		}
-		version = genVersion(oldVersion);
-		content.put(VERSION, "'" + version + "'");
+		content.put(VERSION, new SimpleDtString(version));
 		if (null == columns.get(VERSION)) {
 			miss.put(VERSION, getStringType());
 		}
-		content.put(SERVERID, "'" + getPersisterId() + "'");
+		content.put(SERVERID, new SimpleDtString(getPersisterId()));
 		if (null == columns.get(SERVERID)) {
 			miss.put(SERVERID, getStringType());
 		}
 		if (object instanceof cn.weforward.common.DistributedObject) {
-			content.put(DRIVEIT,
-					"'" + ((cn.weforward.common.DistributedObject) object).getDriveIt() + "'");
+			content.put(DRIVEIT, new SimpleDtString(
+					String.valueOf(((cn.weforward.common.DistributedObject) object).getDriveIt())));
 			if (null == columns.get(DRIVEIT)) {
 				miss.put(DRIVEIT, getStringType());
 			}
 		}
-		content.put(LASTMODIFIED, String.valueOf(System.currentTimeMillis()));
+		content.put(LASTMODIFIED, new SimpleDtNumber(System.currentTimeMillis()));
 		if (null == columns.get(LASTMODIFIED)) {
 			miss.put(LASTMODIFIED, getLongType());
 		}
@@ -745,24 +1479,187 @@ public class MysqlPersister<E extends Persistent> extends AbstractPersister<E>
 		if (!change.isEmpty()) {
 			changeColumns(change);
 		}
-		String update = toUpdate(getTabelName(), id, content);
+		return content;
+	}
+
+	/* 值能否直接写入现有的列，判断为能的按属性缓存（列变更后列对象不同，缓存自然失效） */
+	private boolean isCompatible(String name, SqlColumnType type, DtBase value) {
+		ColumnPlan plan = m_Plans.get(name);
+		if (null != plan && plan.column == type && plan.valueClass == value.getClass()) {
+			return true;
+		}
+		if (!isCompatible(type, changeType(value))) {
+			return false;
+		}
+		if (!(value instanceof DtString) || StringUtil.eq(type.getName(), getStringType().getName())) {
+			// 字串写入非字串列时与长度有关，不缓存
+			m_Plans.put(name, new ColumnPlan(type, value.getClass()));
+		}
+		return true;
+	}
+
+	private static boolean isCompatible(SqlColumnType column, SqlColumnType value) {
+		return StringUtil.eq(value.getName(), column.getName()) || value.getLength() <= column.getLength();
+	}
+
+	/* 登记待后台补齐或变更的列 */
+	private void schedule(String name, SqlColumnType type) {
+		SqlColumnType old = m_PendingColumns.putIfAbsent(name, type);
+		if (null == old) {
+			startReconciler();
+		} else if (StringUtil.eq(old.getName(), type.getName()) && old.getLength() < type.getLength()) {
+			m_PendingColumns.replace(name, old, type);
+		}
+	}
+
+	private void startReconciler() {
+		synchronized (COLUMNS_LOCK) {
+			if (null != m_Reconciler) {
+				return;
+			}
+			m_Reconciler = new Thread(new SchemaReconciler(), "reconciler-" + getTabelName());
+			m_Reconciler.setDaemon(true);
+			m_Reconciler.start();
+		}
+	}
+
+	/* 在线补齐或变更列，然后把溢出列中的值迁移到该列 */
+	private void reconcile(String name, SqlColumnType type) {
+		ConcurrentMap<String, SqlColumnType> columns = getColumns();
+		SqlColumnType current = columns.get(name);
+		GeneratedColumn generated = m_GeneratedByName.get(name);
+		if (null != generated) {
+			if (null == current) {
+				// 存储的生成列不能在线加
+				executeDdl("ALTER TABLE " + getTabelName() + " ADD `" + name + "` "
+						+ generated.getDefinition(m_GeneratedStored), !m_GeneratedStored);
+				createIndex(name);
+				columns.put(name, type);
+			}
+			return;
+		}
+		if (null == current) {
+			executeDdl("ALTER TABLE " + getTabelName() + " ADD `" + name + "` " + type, true);
+			columns.put(name, type);
+			if (getNeedIndexs().contains(name)) {
+				createIndex(name);
+			}
+			scheduleGenerated(columns);
+		} else if (!isCompatible(current, type)) {
+			// 变更类型不能在线进行，不加选项
+			executeDdl("ALTER TABLE " + getTabelName() + " CHANGE `" + name + "` `" + name + "` " + type,
+					false);
+			columns.put(name, type);
+		}
+		if (!OVERFLOW.equals(name)) {
+			migrate(name, type);
+		}
+	}
+
+	/* 执行表结构变更 */
+	private void executeDdl(String sql, boolean online) {
 		TemplateJdbc jdbc = null;
 		try {
 			jdbc = getProvider().beginTranstacion();
-			int num = jdbc.sqlExecuteUpdate(update);
-			if (num == 0) {
-				String insert = toInsert(getTabelName(), id, content);
-				jdbc.sqlExecuteUpdate(insert);
+			if (_Logger.isTraceEnabled()) {
+				_Logger.trace("exe " + sql);
+			}
+			if (online) {
+				try {
+					jdbc.sqlExecuteUpdate(sql + ", " + ONLINE_DDL);
+				} catch (SQLException e) {
+					_Logger.warn("不支持在线变更，改为普通变更：" + sql, e);
+					jdbc.rollback();
+					jdbc = getProvider().beginTranstacion();
+					jdbc.sqlExecuteUpdate(sql);
+				}
+			} else {
+				jdbc.sqlExecuteUpdate(sql);
 			}
 			jdbc.commit();
 		} catch (SQLException e) {
-			throw new DataAccessException("更新数据异常", e);
+			throw new DataAccessException("变更表结构异常：" + sql, e);
 		} finally {
 			if (null != jdbc && !jdbc.isCompleted()) {
 				jdbc.rollback();
 			}
 		}
-		return version;
+	}
+
+	/* 把溢出列中的值迁移到列 */
+	private void migrate(String name, SqlColumnType type) {
+		String path = "'$.\"" + name + "\"'";
+		String extract = "JSON_EXTRACT(`" + OVERFLOW + "`," + path + ")";
+		String value;
+		if (StringUtil.eq(type.getName(), getJsonType().getName())) {
+			value = extract;
+		} else if (StringUtil.eq(type.getName(), "BOOL")) {
+			value = "(" + extract + "=CAST('true' AS JSON))";
+		} else {
+			value = "JSON_UNQUOTE(" + extract + ")";
+		}
+		String sql = "UPDATE " + getTabelName() + " SET `" + name + "`=" + value + ",`" + OVERFLOW
+				+ "`=JSON_REMOVE(`" + OVERFLOW + "`," + path + ") WHERE JSON_CONTAINS_PATH(`" + OVERFLOW
+				+ "`,'one'," + path + ")";
+		TemplateJdbc jdbc = null;
+		try {
+			jdbc = getProvider().beginTranstacion();
+			if (_Logger.isTraceEnabled()) {
+				_Logger.trace("exe " + sql);
+			}
+			jdbc.sqlExecuteUpdate(sql);
+			jdbc.commit();
+			getProvider().markWrite(getTabelName());
+		} catch (SQLException e) {
+			throw new DataAccessException("迁移溢出列异常：" + sql, e);
+		} finally {
+			if (null != jdbc && !jdbc.isCompleted()) {
+				jdbc.rollback();
+			}
+		}
+	}
+
+	/* 启动时检查溢出列，登记重启前未完成变更的列 */
+	private void detectOverflow() {
+		ConcurrentMap<String, SqlColumnType> columns = getColumns();
+		if (null == columns.get(OVERFLOW)) {
+			return;
+		}
+		String sql = "SELECT `" + OVERFLOW + "` FROM " + getTabelName() + " WHERE JSON_LENGTH(`" + OVERFLOW
+				+ "`)>0 LIMIT " + DETECT_LIMIT;
+		TemplateJdbc jdbc = null;
+		ResultSet rs = null;
+		try {
+			jdbc = getProvider().beginReadTranstacion(getTabelName());
+			rs = jdbc.sqlExecuteQuery(sql);
+			while (rs.next()) {
+				DtBase overflow = toDtBase(columns, OVERFLOW, rs.getObject(1));
+				if (!(overflow instanceof DtObject)) {
+					continue;
+				}
+				Enumeration<KvPair<String, DtBase>> attr = ((DtObject) overflow).getAttributes();
+				while (attr.hasMoreElements()) {
+					KvPair<String, DtBase> pair = attr.nextElement();
+					if (null != pair.getValue()) {
+						schedule(pair.getKey(), changeType(pair.getValue()));
+					}
+				}
+			}
+			jdbc.commit();
+		} catch (SQLException e) {
+			_Logger.error("忽略检查溢出列出错", e);
+		} finally {
+			if (null != rs) {
+				try {
+					rs.close();
+				} catch (SQLException e) {
+					_Logger.warn("忽略关闭异常", e);
+				}
+			}
+			if (null != jdbc && !jdbc.isCompleted()) {
+				jdbc.rollback();
+			}
+		}
 	}
 
 	private void changeColumns(Map<String, SqlColumnType> modify) {
@@ -791,95 +1688,48 @@ public class MysqlPersister<E extends Persistent> extends AbstractPersister<E>
 
 	}
 
-	private static String toUpdate(String tabelName, String id, Map<String, String> content) {
-		StringBuilder sb = new StringBuilder();
-		sb.append("UPDATE ").append(tabelName).append(" SET ");
-		Iterator<Map.Entry<String, String>> entry = content.entrySet().iterator();
-		while (entry.hasNext()) {
-			Map.Entry<String, String> e = entry.next();
-			sb.append('`').append(e.getKey()).append("`=");
-			sb.append(e.getValue());
-			break;
-		}
-		while (entry.hasNext()) {
-			Map.Entry<String, String> e = entry.next();
-			sb.append(',');
-			sb.append('`').append(e.getKey()).append("`=");
-			sb.append(e.getValue());
-		}
-		sb.append(" WHERE `").append(ID).append("`='").append(id).append('\'');
-		return sb.toString();
-	}
-
-	private static String toInsert(String tabelName, String id, Map<String, String> content) {
-		StringBuilder into = new StringBuilder();
-		StringBuilder value = new StringBuilder();
-		into.append("INSERT INTO ").append(tabelName).append("(");
-		into.append(ID);
-		value.append("VALUES('").append(id).append("'");
-		Iterator<Map.Entry<String, String>> entry = content.entrySet().iterator();
-		while (entry.hasNext()) {
-			Map.Entry<String, String> e = entry.next();
-			if (e.getValue() == null) {
-				continue;
-			}
-			into.append(',');
-			into.append(e.getKey());
-			value.append(",");
-			value.append(e.getValue());
-		}
-		into.append(')');
-		value.append(')');
-		return into.toString() + " " + value.toString();
-	}
-
 	private String genVersion(String version) {
 		return VersionTags.next(getPersisterId(), version, false);
 	}
 
-	private String toValue(DtBase value) {
+	/* 转换为预编译语句的参数 */
+	private Object toParam(DtBase value) {
 		if (null == value) {
 			return null;
 		}
 		if (value instanceof DtObject) {
-			DtObject object = (DtObject) value;
 			StringBuilder sb = new StringBuilder();
-			sb.append("'");
 			try {
-				MysqlUtil.formatObject(object, sb);
+				MysqlUtil.formatObject((DtObject) value, sb);
 			} catch (IOException e) {
 				throw new DataAccessException("转换数据异常", e);
 			}
-			sb.append("'");
 			return sb.toString();
 		} else if (value instanceof DtList) {
-			DtList object = (DtList) value;
 			StringBuilder sb = new StringBuilder();
-			sb.append("'");
 			try {
-				MysqlUtil.formatList(object, sb);
+				MysqlUtil.formatList((DtList) value, sb);
 			} catch (IOException e) {
 				throw new DataAccessException("转换数据异常", e);
 			}
-			sb.append("'");
 			return sb.toString();
 		} else if (value instanceof DtDate) {
-			return "'" + ((DtDate) value).value() + "'";
+			return ((DtDate) value).value();
 		} else if (value instanceof DtString) {
-			return "'" + SqlString.escape(((DtString) value).value()) + "'";
+			return ((DtString) value).value();
 		} else if (value instanceof DtNumber) {
 			DtNumber n = (DtNumber) value;
 			if (n.isDouble()) {
-				return String.valueOf(n.valueDouble());
+				return n.valueDouble();
 			} else if (n.isLong()) {
-				return String.valueOf(n.valueLong());
+				return n.valueLong();
 			} else if (n.isInt()) {
-				return String.valueOf(n.valueInt());
+				return n.valueInt();
 			} else {
-				return String.valueOf(n.valueDouble());
+				return n.valueDouble();
 			}
 		} else if (value instanceof DtBoolean) {
-			return String.valueOf(((DtBoolean) value).value());
+			return ((DtBoolean) value).value();
 		} else {
 			throw new UnsupportedOperationException("不支持的数据类型:" + value.getClass());
 		}
@@ -915,6 +1765,38 @@ public class MysqlPersister<E extends Persistent> extends AbstractPersister<E>
 		for (String index : indexs) {
 			createIndex(index);
 		}
+		scheduleGenerated(m_Columns);
+	}
+
+	/* 登记父列（JSON列）已存在但还未创建的生成列 */
+	private void scheduleGenerated(Map<String, SqlColumnType> columns) {
+		for (GeneratedColumn g : m_GeneratedByPath.values()) {
+			SqlColumnType parent = columns.get(g.column);
+			if (null != parent && StringUtil.eq(parent.getName(), getJsonType().getName())
+					&& null == columns.get(g.name)) {
+				schedule(g.name, g.type);
+			}
+		}
+	}
+
+	/* 嵌套索引属性对应的生成列，不支持的类型返回null */
+	private GeneratedColumn toGenerated(String path, Class<?> clazz) {
+		if (null == clazz) {
+			return null;
+		}
+		String name = GENERATED_PREFIX + path.replace(Condition.FIELD_SPEARATOR, '_');
+		if (name.length() > 64) {
+			// 超出列名的长度限制
+			return null;
+		}
+		if (String.class == clazz || Date.class == clazz || char.class == clazz || Character.class == clazz) {
+			int length = Math.min(m_DefaultStringLength, MAX_GENERATED_STRING_LENGTH);
+			return new GeneratedColumn(path, name, new SqlColumnType("VARCHAR", length), true);
+		}
+		if ((clazz.isPrimitive() && boolean.class != clazz) || Number.class.isAssignableFrom(clazz)) {
+			return new GeneratedColumn(path, name, new SqlColumnType("DOUBLE", 0), false);
+		}
+		return null;
 	}
 
 	private SqlColumnType changeType(DtBase dttype) {
@@ -973,13 +1855,13 @@ public class MysqlPersister<E extends Persistent> extends AbstractPersister<E>
 		TemplateJdbc jdbc = null;
 		try {
 			jdbc = getProvider().beginTranstacion();
-			String sql = "DELETE FROM " + getTabelName() + " WHERE " + SqlUtil.wrapField(ID) + "="
-					+ SqlUtil.wrapValue(id);
+			String sql = "DELETE FROM " + getTabelName() + " WHERE " + SqlUtil.wrapField(ID) + "=?";
 			if (_Logger.isTraceEnabled()) {
-				_Logger.trace("exe " + sql);
+				_Logger.trace("exe " + sql + " " + id);
 			}
-			num = jdbc.sqlExecuteUpdate(sql);
+			num = jdbc.sqlExecuteUpdate(sql, id);
 			jdbc.commit();
+			getProvider().markWrite(getTabelName());
 		} catch (SQLException e) {
 			throw new DataAccessException("删除列异常", e);
 		} finally {
@@ -991,16 +1873,135 @@ public class MysqlPersister<E extends Persistent> extends AbstractPersister<E>
 	}
 
 	public void clear() {
-		m_Cache.removeAll();
+		getSegmentedCache().removeAll();
 	}
 
-	class InitFlushable implements Flushable {
+	class InitFlushable implements PartitionFlushable {
 
 		@Override
 		public void flush() throws IOException {
 			getColumns();
+			detectOverflow();
+		}
+
+		@Override
+		public int getPartitionKey() {
+			return getName().hashCode();
+		}
+
+	}
+
+	/**
+	 * 后台补齐或变更列，全部完成后线程结束，有新的待变更列时再启动
+	 * 
+	 * @author daibo
+	 *
+	 */
+	class SchemaReconciler implements Runnable {
+
+		@Override
+		public void run() {
+			boolean interrupted = false;
+			try {
+				while (!m_PendingColumns.isEmpty()) {
+					boolean failed = false;
+					for (Map.Entry<String, SqlColumnType> e : m_PendingColumns.entrySet()) {
+						try {
+							reconcile(e.getKey(), e.getValue());
+							m_PendingColumns.remove(e.getKey(), e.getValue());
+						} catch (RuntimeException ex) {
+							_Logger.error("变更列" + e.getKey() + "失败", ex);
+							failed = true;
+						}
+					}
+					if (failed) {
+						Thread.sleep(m_ReconcileRetryInterval);
+					}
+				}
+			} catch (InterruptedException e) {
+				interrupted = true;
+			} finally {
+				synchronized (COLUMNS_LOCK) {
+					m_Reconciler = null;
+				}
+			}
+			if (!interrupted && !m_PendingColumns.isEmpty()) {
+				// 结束前又有新登记的
+				startReconciler();
+			}
 		}
+	}
 
+	/**
+	 * 嵌套索引属性对应的生成列，值由JSON列提取，类型不符的值为NULL
+	 * 
+	 * @author daibo
+	 *
+	 */
+	static class GeneratedColumn {
+		/** 属性名，如a.b */
+		final String path;
+		/** 所在的JSON列 */
+		final String column;
+		/** 生成列名 */
+		final String name;
+		/** 生成列类型 */
+		final SqlColumnType type;
+		/** 是否字串 */
+		final boolean string;
+
+		GeneratedColumn(String path, String name, SqlColumnType type, boolean string) {
+			this.path = path;
+			this.column = path.substring(0, path.indexOf(Condition.FIELD_SPEARATOR));
+			this.name = name;
+			this.type = type;
+			this.string = string;
+		}
+
+		/* 列定义 */
+		String getDefinition(boolean stored) {
+			String extract = "JSON_EXTRACT(`" + column + "`,'$." + path.substring(column.length() + 1) + "')";
+			StringBuilder sb = new StringBuilder();
+			sb.append(type);
+			if (string) {
+				// 与JSON字串的比较一致，区分大小写
+				sb.append(" CHARACTER SET utf8mb4 COLLATE utf8mb4_bin GENERATED ALWAYS AS (IF(JSON_TYPE(")
+						.append(extract).append(")='STRING',LEFT(JSON_UNQUOTE(").append(extract).append("),")
+						.append(type.getLength()).append("),NULL))");
+			} else {
+				sb.append(" GENERATED ALWAYS AS (IF(JSON_TYPE(").append(extract)
+						.append(") IN ('INTEGER','UNSIGNED INTEGER','DOUBLE','DECIMAL'),JSON_UNQUOTE(")
+						.append(extract).append(")+0,NULL))");
+			}
+			sb.append(stored ? " STORED" : " VIRTUAL");
+			return sb.toString();
+		}
+
+		/* 条件值能否使用生成列，字串需短于列长度（截断后仍保持比较结果） */
+		boolean accept(Object value) {
+			if (string) {
+				int length = (value instanceof Date) ? DtDate.Formater.formatDateTime((Date) value).length()
+						: ((value instanceof String) ? ((String) value).length() : Integer.MAX_VALUE);
+				return length < type.getLength();
+			}
+			return value instanceof Number;
+		}
+	}
+
+	/**
+	 * 列计划，属性值可直接写入的列及值类型
+	 * 
+	 * @author daibo
+	 *
+	 */
+	static class ColumnPlan {
+		final SqlColumnType column;
+		final Class<?> valueClass;
+
+		ColumnPlan(SqlColumnType column, Class<?> valueClass) {
+			this.column = column;
+			this.valueClass = valueClass;
+		}
 	}
 
 	@Override
@@ -1056,10 +2057,7 @@ public class MysqlPersister<E extends Persistent> extends AbstractPersister<E>
 			String id = entity.getString(ID);
 			E data = null;
 			try {
-				E e;
-				synchronized (m_Cache) {
-					e = m_Cache.get(id);
-				}
+				E e = peek(id);
 				if (e instanceof Reloadable) {
 					data = getVo(entity);
 					if (data instanceof PersistentListener) {
@@ -1110,7 +2108,8 @@ public class MysqlPersister<E extends Persistent> extends AbstractPersister<E>
 	}
 
 	private E getVo(ChangeEntity entity) {
-		return getVo(innerLoad(entity.getString(ID)));// 先简单的重新查一次
+		// 由主库重新查一次，副本可能还没有这个变化
+		return getVo(load(entity.getString(ID), true));
 	}
 
 	private E getVo(ObjectWithVersion<E> ow) {
@@ -11,6 +11,7 @@
 package cn.weforward.data.mysql.persister;
 
 import cn.weforward.data.jdbc.DataProvider;
+import cn.weforward.data.metrics.Metrics;
 import cn.weforward.data.mysql.EntityWatcher;
 import cn.weforward.data.mysql.MysqlConst;
 import cn.weforward.data.persister.Persistent;
@@ -32,6 +33,8 @@ public class MysqlPersisterFactory extends AbstractPersisterFactory {
 	protected EntityWatcher m_Watcher;
 	/** 默认字符长度 */
 	protected int m_DefaultStringLength = MysqlConst.DEFAULT_STRING_LENGTH;
+	/** 是否在刷写周期内合并批量保存 */
+	protected boolean m_BatchFlushEnabled;
 
 	public MysqlPersisterFactory(String connectionString) {
 		this(connectionString, MysqlConst.DEFAULT_POOL_MAX_SIZE);
@@ -62,14 +65,57 @@ public class MysqlPersisterFactory extends AbstractPersisterFactory {
 		m_DefaultStringLength = length;
 	}
 
+	/**
+	 * 是否在刷写周期内把同一表待刷写的对象合并为一次批量的插入或更新
+	 * 
+	 * @param enabled true/批量，false/逐个保存
+	 */
+	public void setBatchFlushEnabled(boolean enabled) {
+		m_BatchFlushEnabled = enabled;
+	}
+
+	/**
+	 * 添加只读副本（从库），加载对象及结果页查询由副本提供
+	 * 
+	 * @param connectionString 副本的连接串
+	 */
+	public void addReplica(String connectionString) {
+		m_DataProvider.addReplica(connectionString, MysqlConst.DEFAULT_POOL_MAX_SIZE);
+	}
+
+	/**
+	 * 写后读粘滞时间，持久器（表）在此时间内有写入则对它的读也由主库提供，实际不小于最大复制延迟加1秒
+	 * 
+	 * @param mills 毫秒，0为不粘滞
+	 */
+	public void setStickyTimeout(long mills) {
+		m_DataProvider.setStickyTimeout(mills);
+	}
+
+	/**
+	 * 可接受的最大复制延迟，所有副本都超出时由主库提供读
+	 * 
+	 * @param mills 毫秒
+	 */
+	public void setMaxReplicaLag(long mills) {
+		m_DataProvider.setMaxLag(mills);
+	}
+
 	public void setWatcher(EntityWatcher watcher) {
 		m_Watcher = watcher;
 	}
 
+	@Override
+	public void setMetrics(Metrics metrics) {
+		super.setMetrics(metrics);
+		m_DataProvider.setMetrics(metrics);
+	}
+
 	@Override
 	protected <E extends Persistent> Persister<E> doCreatePersister(Class<E> clazz, ObjectMapper<E> mapper) {
 		MysqlPersister<E> ps = new MysqlPersister<E>(m_DataProvider, mapper, m_DefaultStringLength);
 		ps.setWatcher(m_Watcher);
+		ps.setBatchFlushEnabled(m_BatchFlushEnabled);
 		return ps;
 	}
 
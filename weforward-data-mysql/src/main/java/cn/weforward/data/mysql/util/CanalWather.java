@@ -32,11 +32,26 @@ import com.alibaba.otter.canal.protocol.CanalEntry.RowData;
 import com.alibaba.otter.canal.protocol.Message;
 
 import cn.weforward.common.util.StringUtil;
+import cn.weforward.data.metrics.Metrics;
 import cn.weforward.data.mysql.EntityListener;
 import cn.weforward.data.mysql.EntityListener.ChangeEntity;
 import cn.weforward.data.mysql.EntityWatcher;
+import cn.weforward.data.util.PartitionedExecutor;
 
+/**
+ * 基于canal的binlog监控
+ * <p>
+ * 每次不确认地拉取一批binlog（getWithoutAck），通知按表+ID分区到工作线程并行处理，全部处理完成后才确认（ack），失败则回滚（rollback）由canal重新投递
+ * 
+ * @author daibo
+ *
+ */
 public class CanalWather implements Runnable, EntityWatcher {
+	/** 默认的工作线程数 */
+	public static final int DEFAULT_WORKERS = 4;
+	/** 分区使用的ID列 */
+	protected static final String ID = "_id";
+
 	/** 监控异常 */
 	protected static final Logger _Logger = LoggerFactory.getLogger(CanalWather.class);
 	protected CanalConnector m_Connector;
@@ -50,6 +65,28 @@ public class CanalWather implements Runnable, EntityWatcher {
 	Thread m_Thread;
 	/* 错误数 */
 	int m_ErrorNum;
+	/** 每批拉取的最大条数 */
+	protected int m_BatchSize = 1000;
+	/** 工作线程数（0表示在监控线程中通知） */
+	protected int m_Workers = DEFAULT_WORKERS;
+	/** 每个工作线程的队列容量 */
+	protected int m_QueueCapacity = 1000;
+	/** 等待一批通知处理完成的最长时间（毫秒） */
+	protected long m_AckTimeout = 60 * 1000;
+	/** 通知的线程池 */
+	protected PartitionedExecutor m_Executor;
+	/** 已拉取的最新binlog位置 */
+	protected volatile String m_ReceivedPosition;
+	/** 已拉取的最新binlog执行时间 */
+	protected volatile long m_ReceivedTime;
+	/** 已处理并确认的binlog位置 */
+	protected volatile String m_ProcessedPosition;
+	/** 已处理并确认的binlog执行时间 */
+	protected volatile long m_ProcessedTime;
+	/** 每批的条数 */
+	protected Metrics.Recorder m_BatchRecorder = Metrics.Recorder.NONE;
+	/** 每批由拉取到确认的耗时（毫秒） */
+	protected Metrics.Recorder m_AckLatency = Metrics.Recorder.NONE;
 
 	public CanalWather(String hostname, int port, String destination, String username, String password) {
 		m_Listeners = new ArrayList<>();
@@ -67,10 +104,94 @@ public class CanalWather implements Runnable, EntityWatcher {
 		m_Filter = filter;
 	}
 
-	public void start() {
+	/**
+	 * 每批拉取的最大条数
+	 * 
+	 * @param size 条数
+	 */
+	public void setBatchSize(int size) {
+		m_BatchSize = size;
+	}
+
+	public int getBatchSize() {
+		return m_BatchSize;
+	}
+
+	/**
+	 * 设置通知的工作线程，需在启动前设置
+	 * 
+	 * @param workers  线程数，0表示在监控线程中通知
+	 * @param capacity 每个线程的队列容量
+	 */
+	public void setWorkers(int workers, int capacity) {
+		m_Workers = workers;
+		m_QueueCapacity = capacity;
+	}
+
+	/**
+	 * 等待一批通知处理完成的最长时间，超时则回滚该批
+	 * 
+	 * @param mills 毫秒
+	 */
+	public void setAckTimeout(long mills) {
+		m_AckTimeout = mills;
+	}
+
+	/**
+	 * 已拉取的最新binlog位置
+	 * 
+	 * @return 日志文件名:偏移
+	 */
+	public String getReceivedPosition() {
+		return m_ReceivedPosition;
+	}
+
+	/**
+	 * 已处理并确认的binlog位置
+	 * 
+	 * @return 日志文件名:偏移
+	 */
+	public String getProcessedPosition() {
+		return m_ProcessedPosition;
+	}
+
+	/**
+	 * 已拉取与已处理的binlog执行时间之差
+	 * 
+	 * @return 毫秒
+	 */
+	public long getLag() {
+		long processed = m_ProcessedTime;
+		return (0 == processed) ? 0 : Math.max(0, m_ReceivedTime - processed);
+	}
+
+	/**
+	 * 设置记录指标，指标名以canal.&lt;destination&gt;.为前缀：lag为已拉取与已处理的binlog时间差（毫秒），batch为每批条数，ack为每批由拉取到确认的耗时（毫秒）
+	 * 
+	 * @param metrics 指标
+	 */
+	public void setMetrics(Metrics metrics) {
+		if (null == metrics) {
+			metrics = Metrics.NONE;
+		}
+		String prefix = "canal." + m_Destination + ".";
+		metrics.gauge(prefix + "lag", new Metrics.Gauge() {
+			@Override
+			public long getValue() {
+				return getLag();
+			}
+		});
+		m_BatchRecorder = metrics.histogram(prefix + "batch");
+		m_AckLatency = metrics.histogram(prefix + "ack");
+	}
+
+	public synchronized void start() {
 		if (null != m_Thread) {
 			return;
 		}
+		if (m_Workers > 0 && null == m_Executor) {
+			m_Executor = new PartitionedExecutor("canalwatcher-" + m_Destination, m_Workers, m_QueueCapacity);
+		}
 		m_Thread = new Thread(this, "canalwatcher-" + m_Filter);
 		m_Thread.start();
 	}
@@ -116,40 +237,27 @@ public class CanalWather implements Runnable, EntityWatcher {
 				m_Connector.subscribe(m_Filter);
 				m_Connector.rollback();
 				while (null != m_Thread) {
-					Message message = m_Connector.get(1, 10l, TimeUnit.SECONDS);
-					for (Entry entry : message.getEntries()) {
-						if (entry.getEntryType() == EntryType.TRANSACTIONBEGIN
-								|| entry.getEntryType() == EntryType.TRANSACTIONEND) {
-							continue;
-						}
-						String schemaName = entry.getHeader().getSchemaName();
-						String tableName = entry.getHeader().getTableName();
-						RowChange rowChage = null;
-						try {
-							rowChage = RowChange.parseFrom(entry.getStoreValue());
-						} catch (Exception e) {
-							_Logger.warn("忽略解析异常 data:" + entry.toString(), e);
-							continue;
-						}
-						EventType eventType = rowChage.getEventType();
-
-						if (eventType == EventType.DELETE) {
-							for (RowData rowData : rowChage.getRowDatasList()) {
-								onChange(schemaName, tableName,
-										changeEntiy(EntityListener.DELETE, rowData.getBeforeColumnsList()));
-							}
-						} else if (eventType == EventType.INSERT) {
-							for (RowData rowData : rowChage.getRowDatasList()) {
-								onChange(schemaName, tableName,
-										changeEntiy(EntityListener.INSERT, rowData.getAfterColumnsList()));
-							}
-						} else if (eventType == EventType.UPDATE) {
-							for (RowData rowData : rowChage.getRowDatasList()) {
-								onChange(schemaName, tableName,
-										changeEntiy(EntityListener.UPDATE, rowData.getAfterColumnsList()));
-							}
+					Message message = m_Connector.getWithoutAck(m_BatchSize, 10l, TimeUnit.SECONDS);
+					long batchId = message.getId();
+					if (-1 == batchId) {
+						// 没有数据
+						continue;
+					}
+					long begin = System.currentTimeMillis();
+					try {
+						if (!dispatch(message.getEntries())) {
+							throw new IllegalStateException("等待通知处理超时:" + m_AckTimeout + "ms");
 						}
+						m_Connector.ack(batchId);
+					} catch (Throwable e) {
+						// 回滚，由canal重新投递这批数据
+						m_Connector.rollback(batchId);
+						throw e;
 					}
+					m_ProcessedPosition = m_ReceivedPosition;
+					m_ProcessedTime = m_ReceivedTime;
+					m_BatchRecorder.record(message.getEntries().size());
+					m_AckLatency.record(System.currentTimeMillis() - begin);
 				}
 			} catch (Throwable e) {
 				_Logger.warn("监控异常", e);
@@ -161,6 +269,62 @@ public class CanalWather implements Runnable, EntityWatcher {
 
 	}
 
+	/**
+	 * 分派一批binlog的通知并等待处理完成
+	 * 
+	 * @param entries binlog项
+	 * @return 处理完成返回true，超时返回false
+	 * @throws InterruptedException 等待时被中断
+	 */
+	private boolean dispatch(List<Entry> entries) throws InterruptedException {
+		PartitionedExecutor executor = m_Executor;
+		long last = 0;
+		for (Entry entry : entries) {
+			m_ReceivedPosition = entry.getHeader().getLogfileName() + ":"
+					+ entry.getHeader().getLogfileOffset();
+			m_ReceivedTime = entry.getHeader().getExecuteTime();
+			if (entry.getEntryType() == EntryType.TRANSACTIONBEGIN
+					|| entry.getEntryType() == EntryType.TRANSACTIONEND) {
+				continue;
+			}
+			String schemaName = entry.getHeader().getSchemaName();
+			String tableName = entry.getHeader().getTableName();
+			RowChange rowChage = null;
+			try {
+				rowChage = RowChange.parseFrom(entry.getStoreValue());
+			} catch (Exception e) {
+				_Logger.warn("忽略解析异常 data:" + entry.toString(), e);
+				continue;
+			}
+			EventType eventType = rowChage.getEventType();
+			int type;
+			if (eventType == EventType.DELETE) {
+				type = EntityListener.DELETE;
+			} else if (eventType == EventType.INSERT) {
+				type = EntityListener.INSERT;
+			} else if (eventType == EventType.UPDATE) {
+				type = EntityListener.UPDATE;
+			} else {
+				continue;
+			}
+			for (RowData rowData : rowChage.getRowDatasList()) {
+				ChangeEntity entity = changeEntiy(type, (EntityListener.DELETE == type)
+						? rowData.getBeforeColumnsList() : rowData.getAfterColumnsList());
+				if (null == executor) {
+					onChange(schemaName, tableName, entity);
+					continue;
+				}
+				int key = 31 * (schemaName + "." + tableName).hashCode()
+						+ StringUtil.toString(entity.getString(ID)).hashCode();
+				last = executor.execute(key, () -> onChange(schemaName, tableName, entity));
+			}
+		}
+		if (null == executor || 0 == last) {
+			return true;
+		}
+		return executor.await(last, m_AckTimeout);
+	}
+
 	private void onChange(String database, String tabelName, ChangeEntity entity) {
 		List<EntityListener> ls = m_Listeners;
 		for (EntityListener l : ls) {
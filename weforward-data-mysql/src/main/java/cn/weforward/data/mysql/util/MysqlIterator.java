@@ -0,0 +1,169 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.data.mysql.util;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cn.weforward.data.exception.DataAccessException;
+import cn.weforward.data.jdbc.DataProvider;
+import cn.weforward.data.jdbc.TemplateJdbc;
+
+/**
+ * mysql流式游标迭代器
+ * <p>
+ * 以只进只读的结果集逐行读取（默认fetchSize为Integer.MIN_VALUE，即MySQL的流式读取），遍历期间独占一个连接，
+ * 遍历完、出错或close时立即释放，中途放弃遍历须调用close
+ * 
+ * @author daibo
+ *
+ * @param <E> 元素
+ */
+public abstract class MysqlIterator<E> implements Iterator<E>, Closeable {
+	/** 日志 */
+	private static final Logger _Logger = LoggerFactory.getLogger(MysqlIterator.class);
+	/** 流式读取 */
+	public static final int FETCH_STREAMING = Integer.MIN_VALUE;
+	/** 数据供应商 */
+	protected DataProvider m_Provider;
+	/** 查询语句 */
+	protected String m_Sql;
+	/** 每次由服务器取回的行数 */
+	protected int m_FetchSize = FETCH_STREAMING;
+	/** 独占的事务 */
+	protected TemplateJdbc m_Jdbc;
+	/** 语句 */
+	protected Statement m_Statement;
+	/** 结果集 */
+	protected ResultSet m_ResultSet;
+	/** 是否已预读下一行 */
+	protected boolean m_Fetched;
+	/** 是否已结束 */
+	protected boolean m_Closed;
+
+	public MysqlIterator(DataProvider provider, String sql) {
+		m_Provider = provider;
+		m_Sql = sql;
+	}
+
+	/**
+	 * 每次由服务器取回的行数，默认为流式读取；大于0时需要在连接串加上useCursorFetch=true才生效
+	 * 
+	 * @param size 行数
+	 */
+	public void setFetchSize(int size) {
+		m_FetchSize = size;
+	}
+
+	private ResultSet open() throws SQLException {
+		if (null == m_ResultSet) {
+			m_Jdbc = m_Provider.getTranstacion(DataProvider.TYPE_ISOLATION);
+			m_Jdbc.begin();
+			Connection conn = m_Jdbc.sqlGetConnection();
+			m_Statement = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			m_Statement.setFetchSize(m_FetchSize);
+			if (_Logger.isTraceEnabled()) {
+				_Logger.trace("exe " + m_Sql);
+			}
+			m_ResultSet = m_Statement.executeQuery(m_Sql);
+		}
+		return m_ResultSet;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (m_Closed) {
+			return false;
+		}
+		if (m_Fetched) {
+			return true;
+		}
+		try {
+			m_Fetched = open().next();
+		} catch (SQLException e) {
+			close();
+			throw new DataAccessException("查询异常", e);
+		}
+		if (!m_Fetched) {
+			// 已遍历完，释放连接
+			close();
+		}
+		return m_Fetched;
+	}
+
+	@Override
+	public E next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		m_Fetched = false;
+		try {
+			return to(m_ResultSet);
+		} catch (SQLException e) {
+			close();
+			throw new DataAccessException("读取数据异常", e);
+		}
+	}
+
+	/**
+	 * 转换当前行
+	 * 
+	 * @param rs 结果集
+	 * @return 元素
+	 * @throws SQLException 数据库异常
+	 */
+	protected abstract E to(ResultSet rs) throws SQLException;
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void close() {
+		if (m_Closed) {
+			return;
+		}
+		m_Closed = true;
+		m_Fetched = false;
+		if (null != m_ResultSet) {
+			try {
+				// 流式读取时关闭会读完剩余的行
+				m_ResultSet.close();
+			} catch (SQLException e) {
+				_Logger.warn("忽略关闭异常", e);
+			}
+			m_ResultSet = null;
+		}
+		if (null != m_Statement) {
+			try {
+				m_Statement.close();
+			} catch (SQLException e) {
+				_Logger.warn("忽略关闭异常", e);
+			}
+			m_Statement = null;
+		}
+		if (null != m_Jdbc) {
+			if (!m_Jdbc.isCompleted()) {
+				m_Jdbc.commit();
+			}
+			m_Jdbc = null;
+		}
+	}
+}
@@ -60,6 +60,18 @@ public abstract class MysqlResultPage<E> implements ResultPage<E>, Closeable {
 	protected String m_Where;
 
 	protected String m_OrderBy;
+	/** 游标翻页的唯一键列（通常为ID），为null表示使用LIMIT偏移翻页 */
+	protected String m_SeekKey;
+	/** 游标翻页的排序列，为null表示只按唯一键排序 */
+	protected String m_SeekField;
+	/** 游标翻页是否倒序 */
+	protected boolean m_SeekDesc;
+	/** 当前页最后一项的排序列值 */
+	protected Object m_LastSeekField;
+	/** 当前页最后一项的唯一键值 */
+	protected Object m_LastSeekKey;
+	/** 是否使用估算的总数 */
+	protected boolean m_ApproximateCount;
 
 	public MysqlResultPage(DataProvider provider, String tabelName, String field, String where, String orderBy) {
 		m_Provider = provider;
@@ -69,14 +81,49 @@ public abstract class MysqlResultPage<E> implements ResultPage<E>, Closeable {
 		m_OrderBy = orderBy;
 	}
 
+	/**
+	 * 启用游标（seek）翻页，顺序翻到下一页时以上一页最后一项的（排序列,唯一键）定位，不再使用LIMIT偏移
+	 * 
+	 * @param key   唯一键列（通常为ID）
+	 * @param field 排序列，为null表示只按唯一键排序（排序列值不能为null）
+	 * @param desc  是否倒序
+	 */
+	public void setSeek(String key, String field, boolean desc) {
+		m_SeekKey = key;
+		m_SeekField = StringUtil.eq(key, field) ? null : field;
+		m_SeekDesc = desc;
+		m_LastSeekKey = null;
+		m_LastSeekField = null;
+	}
+
+	/**
+	 * 是否使用估算的总数，无查询条件时取表统计信息中的行数代替count(*)
+	 * 
+	 * @param approximate true/估算，false/精确
+	 */
+	public void setApproximateCount(boolean approximate) {
+		m_ApproximateCount = approximate;
+	}
+
+	/**
+	 * 是否游标翻页
+	 * 
+	 * @return 是则返回true
+	 */
+	public boolean isSeek() {
+		return null != m_SeekKey;
+	}
+
 	@Override
 	public int getCount() {
 		if (m_Count < 0) {
 			TemplateJdbc jdbc = null;
 			ResultSet rs = null;
 			try {
-				jdbc = m_Provider.beginTranstacion();
-				String sql = getCountSql();
+				jdbc = m_Provider.beginReadTranstacion(m_TabelName);
+				String sql = (m_ApproximateCount && StringUtil.isEmpty(m_Where))
+						? getApproximateCountSql()
+						: getCountSql();
 				if (_Logger.isTraceEnabled()) {
 					_Logger.trace("exe " + sql);
 				}
@@ -128,8 +175,10 @@ public abstract class MysqlResultPage<E> implements ResultPage<E>, Closeable {
 
 	@Override
 	public void setPage(int page) {
-		m_Page = page;
-		gotoPage(page);
+		// 先由gotoPage与前一页比较（顺序翻到下一页时游标翻页），成功时其已更新页号
+		if (!gotoPage(page)) {
+			m_Page = page;
+		}
 	}
 
 	@Override
@@ -139,7 +188,11 @@ public abstract class MysqlResultPage<E> implements ResultPage<E>, Closeable {
 
 	@Override
 	public boolean gotoPage(int page) {
-		if (page <= 0 || page > getPageCount()) {
+		if (page <= 0) {
+			return false;
+		}
+		// 游标翻页时不需要先计算总数，由结果是否为空判断页是否存在
+		if (!isSeek() && page > getPageCount()) {
 			return false;
 		}
 		int start = (page - 1) * getPageSize();
@@ -147,23 +200,47 @@ public abstract class MysqlResultPage<E> implements ResultPage<E>, Closeable {
 		if (m_Limit > 0) {
 			size = Math.min(m_Limit, size);
 		}
-		String sql = getQuerySql(start, size);
+		boolean seekNext = isSeek() && page > 1 && page == m_Page + 1 && null != m_LastSeekKey;
+		String sql = seekNext ? getSeekSql(size) : getQuerySql(start, size);
 		TemplateJdbc jdbc = null;
 		ResultSet rs = null;
 		try {
-			jdbc = m_Provider.beginTranstacion();
-			rs = jdbc.sqlExecuteQuery(sql);
+			jdbc = m_Provider.beginReadTranstacion(m_TabelName);
+			if (seekNext) {
+				// 各页的游标语句相同，由连接缓存
+				if (null != m_SeekField) {
+					rs = jdbc.sqlExecuteQuery(sql, m_LastSeekField, m_LastSeekKey);
+				} else {
+					rs = jdbc.sqlExecuteQuery(sql, m_LastSeekKey);
+				}
+			} else {
+				rs = jdbc.sqlExecuteQuery(sql);
+			}
 			if (_Logger.isTraceEnabled()) {
 				_Logger.trace("exe " + sql);
 			}
 			List<E> list = new ArrayList<>();
+			Object lastField = null;
+			Object lastKey = null;
 			while (rs.next()) {
 				list.add(to(rs));
+				if (isSeek()) {
+					lastKey = rs.getObject(m_SeekKey);
+					if (null != m_SeekField) {
+						lastField = rs.getObject(m_SeekField);
+					}
+				}
 			}
 			jdbc.commit();
+			if (isSeek() && page > 1 && list.isEmpty()) {
+				// 已没有更多的页
+				return false;
+			}
 			m_Page = page;
 			m_Caches = list;
 			m_Current = 0;
+			m_LastSeekKey = lastKey;
+			m_LastSeekField = lastField;
 			return true;
 		} catch (SQLException e) {
 			throw new DataAccessException("查询异常", e);
@@ -228,15 +305,79 @@ public abstract class MysqlResultPage<E> implements ResultPage<E>, Closeable {
 	}
 
 	protected String getQuerySql(int start, int size) {
-		return "SELECT " + (StringUtil.isEmpty(m_Field) ? "*" : m_Field) + " FROM " + m_TabelName
+		String orderBy = getOrderBy();
+		return "SELECT " + getSelectField() + " FROM " + m_TabelName
 				+ (StringUtil.isEmpty(m_Where) ? "" : " WHERE " + m_Where)
-				+ (StringUtil.isEmpty(m_OrderBy) ? "" : " ORDER BY " + m_OrderBy) + " LIMIT " + start + "," + size;
+				+ (StringUtil.isEmpty(orderBy) ? "" : " ORDER BY " + orderBy) + " LIMIT " + start + "," + size;
+	}
+
+	/**
+	 * 游标翻到下一页的语句，参数依次为上一页最后一项的排序列值（有排序列时）及唯一键值
+	 * 
+	 * @param size 页大小
+	 * @return 语句
+	 */
+	protected String getSeekSql(int size) {
+		String op = m_SeekDesc ? "<" : ">";
+		String seek;
+		if (null == m_SeekField) {
+			seek = SqlUtil.wrapField(m_SeekKey) + op + "?";
+		} else {
+			seek = "(" + SqlUtil.wrapField(m_SeekField) + "," + SqlUtil.wrapField(m_SeekKey) + ")" + op + "(?,?)";
+		}
+		return "SELECT " + getSelectField() + " FROM " + m_TabelName + " WHERE "
+				+ (StringUtil.isEmpty(m_Where) ? seek : "(" + m_Where + ") AND " + seek) + " ORDER BY "
+				+ getOrderBy() + " LIMIT " + size;
+	}
+
+	/* 查询的列，游标翻页时需要带上排序列与唯一键 */
+	private String getSelectField() {
+		if (StringUtil.isEmpty(m_Field)) {
+			return "*";
+		}
+		if (!isSeek()) {
+			return m_Field;
+		}
+		StringBuilder sb = new StringBuilder(m_Field);
+		String key = SqlUtil.wrapField(m_SeekKey);
+		if (!m_Field.contains(key)) {
+			sb.append(',').append(key);
+		}
+		if (null != m_SeekField) {
+			String field = SqlUtil.wrapField(m_SeekField);
+			if (!m_Field.contains(field)) {
+				sb.append(',').append(field);
+			}
+		}
+		return sb.toString();
+	}
+
+	/* 排序，游标翻页时固定为（排序列,唯一键） */
+	private String getOrderBy() {
+		if (!isSeek()) {
+			return m_OrderBy;
+		}
+		String dir = m_SeekDesc ? " DESC" : " ASC";
+		if (null == m_SeekField) {
+			return SqlUtil.wrapField(m_SeekKey) + dir;
+		}
+		return SqlUtil.wrapField(m_SeekField) + dir + "," + SqlUtil.wrapField(m_SeekKey) + dir;
 	}
 
 	protected String getCountSql() {
 		return "SELECT count(*) FROM " + m_TabelName + (StringUtil.isEmpty(m_Where) ? "" : " WHERE " + m_Where);
 	}
 
+	/**
+	 * 由表统计信息估算总数的语句
+	 * 
+	 * @return 语句
+	 */
+	protected String getApproximateCountSql() {
+		return "SELECT TABLE_ROWS FROM information_schema.TABLES WHERE TABLE_SCHEMA=DATABASE() AND TABLE_NAME="
+				+ SqlUtil.wrapValue(m_TabelName.replace("`", ""));
+	}
+
 	protected abstract E to(ResultSet rs) throws SQLException;
 
 	@Override
@@ -0,0 +1,231 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.data.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 无锁池的分配、移交及并发上限
+ * 
+ * @author liangyi
+ *
+ */
+public class ConcurrentPoolTest {
+
+	TestPool m_Pool;
+
+	@Before
+	public void before() {
+		m_Pool = new TestPool();
+		m_Pool.setName("test");
+	}
+
+	@After
+	public void after() {
+		m_Pool.close();
+	}
+
+	@Test
+	public void maxSize() throws Exception {
+		m_Pool.create(2, 60 * 1000, 60 * 1000);
+		Object a = m_Pool.allocate(100);
+		Object b = m_Pool.allocate(100);
+		assertNotNull(a);
+		assertNotNull(b);
+		// 已达最大项数，等待超时
+		assertNull(m_Pool.allocate(50));
+		assertEquals(2, m_Pool.m_Created.get());
+		assertEquals(2, m_Pool.getUsingCount());
+
+		assertTrue(m_Pool.free(a, false));
+		assertEquals(1, m_Pool.getFreeCount());
+		// 空闲项被重用，不再新建
+		assertSame(a, m_Pool.allocate(100));
+		assertEquals(2, m_Pool.m_Created.get());
+	}
+
+	@Test
+	public void affinity() throws Exception {
+		m_Pool.create(4, 60 * 1000, 60 * 1000);
+		Object a = m_Pool.allocate(100);
+		Object b = m_Pool.allocate(100);
+		m_Pool.free(b, false);
+		m_Pool.free(a, false);
+		// 优先分配当前线程上次释放的项
+		assertSame(a, m_Pool.allocate(100));
+	}
+
+	@Test
+	public void handoff() throws Exception {
+		m_Pool.create(1, 60 * 1000, 60 * 1000);
+		Object a = m_Pool.allocate(100);
+		AtomicReference<Object> got = new AtomicReference<>();
+		CountDownLatch done = new CountDownLatch(1);
+		Thread t = new Thread(() -> {
+			try {
+				got.set(m_Pool.allocate(5000));
+			} catch (Exception e) {
+				e.printStackTrace();
+			} finally {
+				done.countDown();
+			}
+		});
+		t.start();
+		while (0 == m_Pool.getWaitingCount()) {
+			Thread.sleep(1);
+		}
+		assertTrue(m_Pool.free(a, false));
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		// 释放的项直接移交给等待者
+		assertSame(a, got.get());
+		assertEquals(0, m_Pool.getWaitingCount());
+		assertEquals(1, m_Pool.getUsingCount());
+	}
+
+	@Test
+	public void releaseAfterClear() throws Exception {
+		m_Pool.create(1, 60 * 1000, 60 * 1000);
+		Object a = m_Pool.allocate(100);
+		AtomicReference<Object> got = new AtomicReference<>();
+		CountDownLatch done = new CountDownLatch(1);
+		Thread t = new Thread(() -> {
+			try {
+				got.set(m_Pool.allocate(5000));
+			} catch (Exception e) {
+				e.printStackTrace();
+			} finally {
+				done.countDown();
+			}
+		});
+		t.start();
+		while (0 == m_Pool.getWaitingCount()) {
+			Thread.sleep(1);
+		}
+		// 归还时项已被（并发的清除）关闭，不能移交，等待者不能因此丢失
+		m_Pool.m_CloseOnCheck = true;
+		assertTrue(m_Pool.free(a, true));
+		m_Pool.clear();
+		assertTrue(done.await(2, TimeUnit.SECONDS));
+		assertNotNull(got.get());
+		assertTrue(a != got.get());
+		assertEquals(0, m_Pool.getWaitingCount());
+		assertEquals(2, m_Pool.m_Created.get());
+	}
+
+	@Test
+	public void freeLost() throws Exception {
+		m_Pool.create(1, 60 * 1000, 60 * 1000);
+		Object other = new Object();
+		assertFalse(m_Pool.free(other, false));
+		assertEquals(1, m_Pool.m_Deleted.get());
+		Object a = m_Pool.allocate(100);
+		assertTrue(m_Pool.free(a, false));
+		// 重复释放
+		assertFalse(m_Pool.free(a, false));
+	}
+
+	@Test
+	public void concurrent() throws Exception {
+		final int max = 4;
+		final int threads = 16;
+		final int loops = 2000;
+		m_Pool.create(max, 60 * 1000, 60 * 1000);
+		final AtomicInteger using = new AtomicInteger();
+		final AtomicInteger peak = new AtomicInteger();
+		final AtomicInteger timeouts = new AtomicInteger();
+		final AtomicReference<Throwable> error = new AtomicReference<>();
+		List<Thread> list = new ArrayList<>();
+		for (int i = 0; i < threads; i++) {
+			Thread t = new Thread(() -> {
+				try {
+					for (int j = 0; j < loops; j++) {
+						Object e = m_Pool.allocate(5000);
+						if (null == e) {
+							timeouts.incrementAndGet();
+							continue;
+						}
+						int n = using.incrementAndGet();
+						peak.accumulateAndGet(n, Math::max);
+						if (0 == (j & 7)) {
+							Thread.yield();
+						}
+						using.decrementAndGet();
+						if (!m_Pool.free(e, false)) {
+							throw new IllegalStateException("free fail " + e);
+						}
+					}
+				} catch (Throwable e) {
+					error.compareAndSet(null, e);
+				}
+			});
+			list.add(t);
+			t.start();
+		}
+		for (Thread t : list) {
+			t.join();
+		}
+		assertNull(error.get());
+		assertEquals(0, timeouts.get());
+		assertTrue("peak:" + peak.get(), peak.get() <= max);
+		assertTrue(m_Pool.m_Created.get() <= max);
+		assertEquals(0, m_Pool.getUsingCount());
+		assertEquals(0, m_Pool.getWaitingCount());
+		assertEquals(m_Pool.m_Created.get(), m_Pool.getFreeCount());
+	}
+
+	static class TestPool extends ConcurrentPool<Object> {
+		final AtomicInteger m_Created = new AtomicInteger();
+		final AtomicInteger m_Deleted = new AtomicInteger();
+		/** 检查项时关闭项（模拟归还与清除并发） */
+		volatile boolean m_CloseOnCheck;
+
+		@Override
+		protected Object onPoolNewElement() throws Exception {
+			m_Created.incrementAndGet();
+			return new Object();
+		}
+
+		@Override
+		protected void onPoolDeleteElement(Object element) {
+			m_Deleted.incrementAndGet();
+		}
+
+		@Override
+		protected boolean onPoolOvertimeElement(Object element, long overtime) {
+			return false;
+		}
+
+		@Override
+		protected boolean onPoolCheckElement(Object element, long idle) {
+			if (m_CloseOnCheck) {
+				m_CloseOnCheck = false;
+				getUsing(element).close();
+			}
+			return true;
+		}
+	}
+}
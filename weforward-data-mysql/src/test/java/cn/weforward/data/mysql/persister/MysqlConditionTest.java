@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.data.mysql.persister;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import cn.weforward.data.mysql.persister.MysqlPersister.GeneratedColumn;
+import cn.weforward.data.mysql.util.SqlColumnType;
+import cn.weforward.data.persister.Condition;
+import cn.weforward.data.persister.ext.ConditionUtil;
+
+/**
+ * in/not in/prefix/exists条件生成的SQL
+ * 
+ * @author daibo
+ *
+ */
+public class MysqlConditionTest {
+	static final String COL = "`status`";
+	static final String JSON = "JSON_EXTRACT(`info`,'$.code')";
+	static final GeneratedColumn GENERATED = new GeneratedColumn("info.code", "_g_info_code",
+			new SqlColumnType("VARCHAR", 64), true);
+
+	private static String where(Condition c) {
+		return MysqlPersister.toWhere(c, COL, false, true, null);
+	}
+
+	private static String nested(Condition c, GeneratedColumn g) {
+		return MysqlPersister.toWhere(c, JSON, true, true, g);
+	}
+
+	private static String missing(Condition c) {
+		return MysqlPersister.toWhere(c, COL, false, false, null);
+	}
+
+	@Test
+	public void in() {
+		assertEquals("`status` IN ('a','b')", where(ConditionUtil.in("status", "a", "b")));
+		assertEquals("`status` IN (1,2)", where(ConditionUtil.in("status", Arrays.asList(1, 2))));
+		assertEquals("(`status` IN ('a')) OR `status` IS NULL",
+				where(ConditionUtil.in("status", Arrays.asList("a", null))));
+		assertEquals("`status` IS NULL", where(ConditionUtil.in("status", Collections.singletonList(null))));
+		assertEquals("1<>1", where(ConditionUtil.in("status", Collections.emptyList())));
+		// 没有该列时值都为null
+		assertEquals("1<>1", missing(ConditionUtil.in("status", "a")));
+		assertEquals("1=1", missing(ConditionUtil.in("status", Arrays.asList("a", null))));
+	}
+
+	@Test
+	public void nin() {
+		// 与Mongodb的$nin一致，null值的行也符合
+		assertEquals("(`status` NOT IN ('a','b') OR `status` IS NULL)", where(ConditionUtil.nin("status", "a", "b")));
+		assertEquals("`status` NOT IN ('a')", where(ConditionUtil.nin("status", Arrays.asList("a", null))));
+		assertEquals("`status` IS NOT NULL", where(ConditionUtil.nin("status", Collections.singletonList(null))));
+		assertEquals("1=1", where(ConditionUtil.nin("status", Collections.emptyList())));
+		assertEquals("1=1", missing(ConditionUtil.nin("status", "a")));
+		assertEquals("1<>1", missing(ConditionUtil.nin("status", Arrays.asList("a", null))));
+	}
+
+	@Test
+	public void nestedIn() {
+		assertEquals("(" + JSON + "='a' OR " + JSON + "='b')", nested(ConditionUtil.in("info.code", "a", "b"), null));
+		// 可用生成列时加上生成列的前置过滤
+		assertEquals("`_g_info_code` IN ('a','b') AND (" + JSON + "='a' OR " + JSON + "='b')",
+				nested(ConditionUtil.in("info.code", "a", "b"), GENERATED));
+		assertEquals("((" + JSON + "<>'a' AND " + JSON + "<>'b') OR " + JSON + " IS NULL)",
+				nested(ConditionUtil.nin("info.code", "a", "b"), GENERATED));
+	}
+
+	@Test
+	public void prefix() {
+		assertEquals("`status` LIKE 'ab%' ESCAPE '!'", where(ConditionUtil.prefix("status", "ab")));
+		// 通配符及转义符本身需转义
+		assertEquals("`status` LIKE 'a!%b!_c!!%' ESCAPE '!'", where(ConditionUtil.prefix("status", "a%b_c!")));
+		assertEquals("1<>1", missing(ConditionUtil.prefix("status", "ab")));
+		assertEquals("JSON_TYPE(" + JSON + ")='STRING' AND JSON_UNQUOTE(" + JSON + ") LIKE 'ab%' ESCAPE '!'",
+				nested(ConditionUtil.prefix("info.code", "ab"), null));
+		assertEquals("`_g_info_code` LIKE 'ab%' ESCAPE '!' AND JSON_TYPE(" + JSON + ")='STRING' AND JSON_UNQUOTE("
+				+ JSON + ") LIKE 'ab%' ESCAPE '!'", nested(ConditionUtil.prefix("info.code", "ab"), GENERATED));
+	}
+
+	@Test
+	public void exists() {
+		assertEquals("`status` IS NOT NULL", where(ConditionUtil.exists("status")));
+		assertEquals("`status` IS NULL", where(ConditionUtil.exists("status", false)));
+		assertEquals("1<>1", missing(ConditionUtil.exists("status")));
+		assertEquals("1=1", missing(ConditionUtil.exists("status", false)));
+		assertEquals(JSON + " IS NOT NULL", nested(ConditionUtil.exists("info.code"), null));
+	}
+}